@@ -0,0 +1,123 @@
+package com.boydti.fawe.benchmark;
+
+import com.boydti.fawe.jnbt.anvil.MCAChunk;
+import com.boydti.fawe.jnbt.anvil.MCAFile;
+import com.boydti.fawe.jnbt.anvil.MCAQueue;
+import com.sk89q.worldedit.world.block.BlockState;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Reading and flushing a full region file (32x32 chunks of generated terrain)<br>
+ * - read: parse every chunk of the file
+ * - flush: compress and write every chunk (all of them modified)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AnvilBenchmark {
+
+    @Param({"4", "16"})
+    public int sections;
+
+    private MCAQueue queue;
+    private File source;
+    private File work;
+    private ForkJoinPool pool;
+    private MCAFile toFlush;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.init();
+        queue = BenchmarkEnvironment.createWorld("anvil").getQueue();
+        pool = new ForkJoinPool();
+        source = new File(queue.getSaveFolder(), "r.0.0.mca");
+        work = new File(BenchmarkEnvironment.createFolder("anvil-work"), "r.0.0.mca");
+
+        int height = sections << 4;
+        SplittableRandom random = new SplittableRandom(BenchmarkEnvironment.SEED);
+        MCAFile file = new MCAFile(queue, 0, 0, source);
+        file.init();
+        for (int cz = 0; cz < 32; cz++) {
+            for (int cx = 0; cx < 32; cx++) {
+                MCAChunk chunk = new MCAChunk(queue, cx, cz);
+                for (int y = 0; y < height; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        for (int x = 0; x < 16; x++) {
+                            BlockState block = BenchmarkEnvironment.getTerrain((cx << 4) + x, y, (cz << 4) + z, height, random);
+                            chunk.setBlock(x, y, z, block.getInternalId());
+                        }
+                    }
+                }
+                file.setChunk(chunk);
+            }
+        }
+        file.close(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareFlush() throws IOException {
+        Files.copy(source.toPath(), work.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        toFlush = new MCAFile(queue, work);
+        toFlush.init();
+        for (int cz = 0; cz < 32; cz++) {
+            for (int cx = 0; cx < 32; cx++) {
+                MCAChunk chunk = toFlush.getChunk(cx, cz);
+                if (chunk != null) {
+                    chunk.setModified();
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeFlush() {
+        toFlush.clear();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        MCAFile file = new MCAFile(queue, source);
+        file.init();
+        int count = 0;
+        try {
+            for (int cz = 0; cz < 32; cz++) {
+                for (int cx = 0; cx < 32; cx++) {
+                    MCAChunk chunk = file.readChunk(cx, cz);
+                    if (chunk != null) {
+                        count += chunk.getBitMask();
+                    }
+                }
+            }
+        } finally {
+            file.clear();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public MCAFile flush() {
+        toFlush.flush(pool);
+        return toFlush;
+    }
+}
@@ -0,0 +1,144 @@
+package com.boydti.fawe.benchmark;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.benchmark.headless.HeadlessFawe;
+import com.boydti.fawe.benchmark.headless.HeadlessPlatform;
+import com.boydti.fawe.benchmark.headless.HeadlessTaskManager;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.jnbt.anvil.MCAWorld;
+import com.boydti.fawe.object.random.SimplexNoise;
+import com.boydti.fawe.util.MainUtil;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+/**
+ * Sets up FAWE and WorldEdit without a server<br>
+ * - Everything is stored in a temporary directory, which is deleted on exit
+ * - All generated data uses {@link #SEED}, so each run benchmarks the same input
+ */
+public final class BenchmarkEnvironment {
+
+    public static final long SEED = 0x5EEDL;
+
+    private static File directory;
+
+    private BenchmarkEnvironment() {
+    }
+
+    /**
+     * Initialize FAWE (only the first call does anything)
+     */
+    public static synchronized void init() {
+        if (directory != null) {
+            return;
+        }
+        try {
+            File dir = Files.createTempDirectory("fawe-benchmark").toFile();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> MainUtil.deleteDirectory(dir)));
+            // The platform needs to be registered before the block types are loaded
+            WorldEdit.getInstance().getPlatformManager().register(new HeadlessPlatform());
+            HeadlessTaskManager taskManager = new HeadlessTaskManager();
+            // FAWE uses the thread it was set up on as the main thread
+            taskManager.getMainExecutor().submit(() -> {
+                Fawe.set(new HeadlessFawe(dir, taskManager));
+                return null;
+            }).get();
+            // Keep clipboards in memory, so reading a schematic doesn't create a file each time
+            Settings.IMP.CLIPBOARD.USE_DISK = false;
+            directory = dir;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static File getDirectory() {
+        init();
+        return directory;
+    }
+
+    /**
+     * @param name the folder name
+     * @return a new empty folder
+     */
+    public static File createFolder(String name) {
+        try {
+            return Files.createTempDirectory(getDirectory().toPath(), name).toFile();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param name the world name
+     * @return an empty anvil world
+     */
+    public static MCAWorld createWorld(String name) {
+        File folder = new File(createFolder(name), "region");
+        folder.mkdirs();
+        return new MCAWorld(name, folder, true);
+    }
+
+    /**
+     * @return the block at a position of the generated terrain (rolling hills, caves and ores)
+     */
+    public static BlockState getTerrain(int x, int y, int z, int height, SplittableRandom random) {
+        int surface = (height * 3) / 4 + (int) (SimplexNoise.noise(x * 0.03, z * 0.03) * (height >> 3));
+        if (y > surface) {
+            return BlockTypes.AIR.getDefaultState();
+        }
+        if (y == 0) {
+            return BlockTypes.BEDROCK.getDefaultState();
+        }
+        if (y == surface) {
+            return BlockTypes.GRASS_BLOCK.getDefaultState();
+        }
+        if (y > surface - 4) {
+            return BlockTypes.DIRT.getDefaultState();
+        }
+        if (SimplexNoise.noise(x * 0.06, y * 0.06, z * 0.06) > 0.5) {
+            return BlockTypes.CAVE_AIR.getDefaultState();
+        }
+        int ore = random.nextInt(100);
+        if (ore < 2) {
+            return BlockTypes.IRON_ORE.getDefaultState();
+        }
+        if (ore < 5) {
+            return BlockTypes.COAL_ORE.getDefaultState();
+        }
+        if (ore < 15) {
+            return BlockTypes.ANDESITE.getDefaultState();
+        }
+        return BlockTypes.STONE.getDefaultState();
+    }
+
+    /**
+     * @return a clipboard at 0,0,0 filled with the generated terrain
+     */
+    public static BlockArrayClipboard createTerrain(int width, int height, int length) {
+        init();
+        CuboidRegion region = new CuboidRegion(BlockVector3.ZERO, BlockVector3.at(width - 1, height - 1, length - 1));
+        BlockArrayClipboard clipboard = new BlockArrayClipboard(region);
+        SplittableRandom random = new SplittableRandom(SEED);
+        try {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    for (int x = 0; x < width; x++) {
+                        clipboard.setBlock(x, y, z, getTerrain(x, y, z, height, random));
+                    }
+                }
+            }
+        } catch (WorldEditException e) {
+            throw new RuntimeException(e);
+        }
+        return clipboard;
+    }
+}
@@ -0,0 +1,61 @@
+package com.boydti.fawe.benchmark;
+
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Writing and reading a clipboard of generated terrain in each format which supports saving<br>
+ * - The streams are in memory, so only the encoding and compression are measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClipboardBenchmark {
+
+    @Param({"SPONGE_SCHEMATIC", "STRUCTURE"})
+    public BuiltInClipboardFormat format;
+
+    @Param({"64"})
+    public int size;
+
+    private BlockArrayClipboard clipboard;
+    private byte[] written;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        clipboard = BenchmarkEnvironment.createTerrain(size, size, size);
+        written = write().toByteArray();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(written == null ? 1 << 16 : written.length);
+        try (ClipboardWriter writer = format.getWriter(out)) {
+            writer.write(clipboard);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public Clipboard read() throws IOException {
+        try (ClipboardReader reader = format.getReader(new ByteArrayInputStream(written))) {
+            return reader.read();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.boydti.fawe.benchmark;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FaweInputStream;
+import com.boydti.fawe.object.FaweOutputStream;
+import com.boydti.fawe.object.io.CompressionStore;
+import com.boydti.fawe.util.MainUtil;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.google.common.io.ByteStreams;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compressing and decompressing history blocks (the changes to one chunk, as written by chunk indexed history)<br>
+ * - lz4-N: the stacked compression levels ({@link MainUtil#getCompressedOS(java.io.OutputStream, int, int)})
+ * - zstd-N: a single zstd pass at level N ({@link MainUtil#getZstdOS})
+ * - zstd-N-dict: with a dictionary trained from the blocks of a different part of the terrain
+ * - The compressed size of each codec is printed once per trial
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompressionBenchmark {
+
+    @Param({"lz4-1", "lz4-4", "lz4-8", "zstd-1", "zstd-3", "zstd-9", "zstd-3-dict"})
+    public String codec;
+
+    @Param({"128"})
+    public int size;
+
+    private List<byte[]> blocks;
+    private List<byte[]> compressed;
+    private int level;
+    private boolean zstd;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkEnvironment.init();
+        String[] split = codec.split("-");
+        zstd = split[0].equals("zstd");
+        level = Integer.parseInt(split[1]);
+        boolean dictionary = split.length > 2;
+        List<byte[]> train = new ArrayList<>();
+        blocks = new ArrayList<>();
+        BlockArrayClipboard terrain = BenchmarkEnvironment.createTerrain(size, 64, size);
+        for (int cz = 0; cz < size >> 4; cz++) {
+            for (int cx = 0; cx < size >> 4; cx++) {
+                addBlocks(terrain, cx, cz, cx < size >> 5 ? train : blocks);
+            }
+        }
+        Settings.IMP.HISTORY.ZSTD_DICTIONARY = dictionary;
+        if (dictionary) {
+            ZstdDictTrainer trainer = new ZstdDictTrainer(64 << 20, CompressionStore.DICTIONARY_SIZE);
+            for (byte[] block : train) {
+                trainer.addSample(block);
+            }
+            File folder = new File(BenchmarkEnvironment.getDirectory(), Settings.IMP.PATHS.DICTIONARIES);
+            folder.mkdirs();
+            Files.write(new File(folder, "history-benchmark.zdict").toPath(), trainer.trainSamples());
+        }
+        compressed = compress();
+        long from = 0;
+        long to = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            from += blocks.get(i).length;
+            to += compressed.get(i).length;
+        }
+        System.out.println(String.format("%s: %d bytes -> %d bytes (%.2f%%)", codec, from, to, (to * 100d) / from));
+    }
+
+    /**
+     * The changes to a chunk of terrain replaced with air, split into history blocks
+     */
+    private static void addBlocks(BlockArrayClipboard terrain, int cx, int cz, List<byte[]> blocks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(CompressionStore.SAMPLE_SIZE + 8);
+        FaweOutputStream out = new FaweOutputStream(bytes);
+        for (int y = 0; y < 64; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    out.write((x << 4) | z);
+                    out.write(y);
+                    out.writeVarInt(terrain.getBlockAbs((cx << 4) + x, y, (cz << 4) + z).getInternalId());
+                    if (bytes.size() >= CompressionStore.SAMPLE_SIZE) {
+                        blocks.add(bytes.toByteArray());
+                        bytes.reset();
+                    }
+                }
+            }
+        }
+        if (bytes.size() > 0) {
+            blocks.add(bytes.toByteArray());
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> compress() throws IOException {
+        List<byte[]> result = new ArrayList<>(blocks.size());
+        for (byte[] block : blocks) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(block.length >> 1);
+            int buffer = Math.max(64, Math.min(Settings.IMP.HISTORY.BUFFER_SIZE, block.length));
+            try (FaweOutputStream out = zstd ? MainUtil.getZstdOS(bytes, level, CompressionStore.HISTORY, buffer) : MainUtil.getCompressedOS(bytes, level, buffer)) {
+                out.write(block);
+            }
+            result.add(bytes.toByteArray());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        long total = 0;
+        for (byte[] block : compressed) {
+            try (FaweInputStream in = MainUtil.getCompressedIS(new ByteArrayInputStream(block), Math.max(64, block.length))) {
+                total += ByteStreams.toByteArray(in).length;
+            }
+        }
+        return total;
+    }
+}
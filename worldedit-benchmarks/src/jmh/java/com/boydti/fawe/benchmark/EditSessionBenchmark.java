@@ -0,0 +1,100 @@
+package com.boydti.fawe.benchmark;
+
+import com.boydti.fawe.jnbt.anvil.MCAQueue;
+import com.boydti.fawe.jnbt.anvil.MCAWorld;
+import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.changeset.MemoryOptimizedHistory;
+import com.boydti.fawe.object.queue.NullFaweQueue;
+import com.boydti.fawe.object.random.SimplexRandom;
+import com.boydti.fawe.util.EditSessionBuilder;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.MaxChangedBlocksException;
+import com.sk89q.worldedit.function.pattern.Pattern;
+import com.sk89q.worldedit.function.pattern.RandomPattern;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * {@link EditSession#setBlocks} through the full extent pipeline<br>
+ * - null: only the EditSession overhead, the queue discards every block
+ * - anvil: blocks are stored in the chunks of an {@link MCAQueue} (nothing is written to disk)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EditSessionBenchmark {
+
+    @Param({"null", "anvil"})
+    public String queue;
+
+    @Param({"false", "true"})
+    public boolean history;
+
+    @Param({"128"})
+    public int size;
+
+    private MCAWorld world;
+    private CuboidRegion region;
+    private BlockState block;
+    private Pattern pattern;
+    private EditSession editSession;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.init();
+        world = BenchmarkEnvironment.createWorld("setblocks");
+        region = new CuboidRegion(BlockVector3.ZERO, BlockVector3.at(size - 1, 63, size - 1));
+        block = BlockTypes.STONE.getDefaultState();
+        RandomPattern random = new RandomPattern(new SimplexRandom(0.1));
+        random.add(BlockTypes.STONE.getDefaultState(), 1);
+        random.add(BlockTypes.ANDESITE.getDefaultState(), 1);
+        pattern = random;
+    }
+
+    @Setup(Level.Invocation)
+    public void createSession() {
+        FaweQueue faweQueue = queue.equals("null") ? new NullFaweQueue(world.getName()) : new MCAQueue(world.getName(), world.getQueue().getSaveFolder(), true);
+        EditSessionBuilder builder = new EditSessionBuilder(world)
+                .queue(faweQueue)
+                .limitUnlimited()
+                .allowedRegionsEverywhere()
+                .autoQueue(false)
+                .checkMemory(false)
+                .combineStages(false);
+        if (history) {
+            builder.fastmode(false).changeSet(new MemoryOptimizedHistory(world.getName()));
+        } else {
+            builder.fastmode(true).changeSetNull();
+        }
+        editSession = builder.build();
+    }
+
+    @TearDown(Level.Invocation)
+    public void clear() {
+        editSession.getQueue().clear();
+    }
+
+    @Benchmark
+    public int setBlocks() throws MaxChangedBlocksException {
+        return editSession.setBlocks(region, block);
+    }
+
+    @Benchmark
+    public int setBlocksPattern() throws MaxChangedBlocksException {
+        // Not a block, so the region is always visited
+        return editSession.setBlocks(region, pattern);
+    }
+}
@@ -0,0 +1,95 @@
+package com.boydti.fawe.benchmark;
+
+import com.boydti.fawe.util.ReflectionUtils;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The per section cost of the private field access done when building or copying a chunk section<br>
+ * - The NMS classes aren't available here, so {@link Section} has the same kind of fields (a palette, bits, size and block counts)
+ * - reflection: {@link Field#get(Object)} / {@link Field#set(Object, Object)} (as the 1.13 adapter used to)
+ * - handle: static final MethodHandles from {@link ReflectionUtils#getter(Field, Class, Class)} (as SectionAccessor_1_13 does)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FieldAccessBenchmark {
+
+    private static final Field fieldBits = field("bits");
+    private static final Field fieldPalette = field("palette");
+    private static final Field fieldSize = field("size");
+    private static final Field fieldNonEmptyBlockCount = field("nonEmptyBlockCount");
+    private static final Field fieldTickingBlockCount = field("tickingBlockCount");
+    private static final Field fieldLiquidCount = field("liquidCount");
+
+    private static final MethodHandle getBits = ReflectionUtils.getter(fieldBits, Section.class, long[].class);
+    private static final MethodHandle setBits = ReflectionUtils.setter(fieldBits, Section.class, long[].class);
+    private static final MethodHandle getPalette = ReflectionUtils.getter(fieldPalette, Section.class, Object[].class);
+    private static final MethodHandle setPalette = ReflectionUtils.setter(fieldPalette, Section.class, Object[].class);
+    private static final MethodHandle getSize = ReflectionUtils.getter(fieldSize, Section.class, int.class);
+    private static final MethodHandle setSize = ReflectionUtils.setter(fieldSize, Section.class, int.class);
+    private static final MethodHandle getNonEmptyBlockCount = ReflectionUtils.getter(fieldNonEmptyBlockCount, Section.class, int.class);
+    private static final MethodHandle setNonEmptyBlockCount = ReflectionUtils.setter(fieldNonEmptyBlockCount, Section.class, int.class);
+    private static final MethodHandle getTickingBlockCount = ReflectionUtils.getter(fieldTickingBlockCount, Section.class, int.class);
+    private static final MethodHandle setTickingBlockCount = ReflectionUtils.setter(fieldTickingBlockCount, Section.class, int.class);
+    private static final MethodHandle getLiquidCount = ReflectionUtils.getter(fieldLiquidCount, Section.class, int.class);
+    private static final MethodHandle setLiquidCount = ReflectionUtils.setter(fieldLiquidCount, Section.class, int.class);
+
+    private final Section from = new Section(new long[256], new Object[16], 4, 4096, 12, 3);
+    private final Section to = new Section(null, null, 0, 0, 0, 0);
+
+    private static Field field(String name) {
+        try {
+            return ReflectionUtils.setAccessible(Section.class.getDeclaredField(name));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Benchmark
+    public Section reflection() throws IllegalAccessException {
+        fieldBits.set(to, fieldBits.get(from));
+        fieldPalette.set(to, fieldPalette.get(from));
+        fieldSize.set(to, fieldSize.getInt(from));
+        fieldNonEmptyBlockCount.set(to, fieldNonEmptyBlockCount.get(from));
+        fieldTickingBlockCount.set(to, fieldTickingBlockCount.get(from));
+        fieldLiquidCount.set(to, fieldLiquidCount.get(from));
+        return to;
+    }
+
+    @Benchmark
+    public Section handle() throws Throwable {
+        setBits.invokeExact(to, (long[]) getBits.invokeExact(from));
+        setPalette.invokeExact(to, (Object[]) getPalette.invokeExact(from));
+        setSize.invokeExact(to, (int) getSize.invokeExact(from));
+        setNonEmptyBlockCount.invokeExact(to, (int) getNonEmptyBlockCount.invokeExact(from));
+        setTickingBlockCount.invokeExact(to, (int) getTickingBlockCount.invokeExact(from));
+        setLiquidCount.invokeExact(to, (int) getLiquidCount.invokeExact(from));
+        return to;
+    }
+
+    public static final class Section {
+        private long[] bits;
+        private Object[] palette;
+        private int size;
+        private int nonEmptyBlockCount;
+        private int tickingBlockCount;
+        private int liquidCount;
+
+        private Section(long[] bits, Object[] palette, int size, int nonEmptyBlockCount, int tickingBlockCount, int liquidCount) {
+            this.bits = bits;
+            this.palette = palette;
+            this.size = size;
+            this.nonEmptyBlockCount = nonEmptyBlockCount;
+            this.tickingBlockCount = tickingBlockCount;
+            this.liquidCount = liquidCount;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.boydti.fawe.benchmark;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.change.MutableBlockChange;
+import com.boydti.fawe.object.changeset.DiskStorageHistory;
+import com.boydti.fawe.object.changeset.FaweStreamChangeSet;
+import com.boydti.fawe.object.changeset.MemoryOptimizedHistory;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Writing and reading a {@link FaweStreamChangeSet} (the terrain being replaced with air)<br>
+ * - memory: {@link MemoryOptimizedHistory}
+ * - disk: {@link DiskStorageHistory}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HistoryBenchmark {
+
+    private static final UUID UUID = new UUID(0, 0);
+    private static final String WORLD = "history";
+
+    @Param({"memory", "disk"})
+    public String storage;
+
+    @Param({"0", "1", "8"})
+    public int compression;
+
+    @Param({"64"})
+    public int size;
+
+    private File folder;
+    private int[] from;
+    private int air;
+    private int index;
+    private FaweStreamChangeSet written;
+    private FaweStreamChangeSet toWrite;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.init();
+        Settings.IMP.HISTORY.COMPRESSION_LEVEL = compression;
+        folder = BenchmarkEnvironment.createFolder(WORLD);
+        BlockArrayClipboard terrain = BenchmarkEnvironment.createTerrain(size, size, size);
+        from = new int[size * size * size];
+        int i = 0;
+        for (int y = 0; y < size; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    from[i++] = terrain.getBlockAbs(x, y, z).getInternalId();
+                }
+            }
+        }
+        air = BlockTypes.AIR.getInternalId();
+        written = create();
+        write(written);
+    }
+
+    private FaweStreamChangeSet create() {
+        if (storage.equals("memory")) {
+            return new MemoryOptimizedHistory(WORLD);
+        }
+        return new DiskStorageHistory(folder, WORLD, UUID, index++);
+    }
+
+    private void write(FaweStreamChangeSet changeSet) {
+        int i = 0;
+        for (int y = 0; y < size; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    changeSet.add(x, y, z, from[i++], air);
+                }
+            }
+        }
+        changeSet.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void createChangeSet() {
+        toWrite = create();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteChangeSet() {
+        if (toWrite instanceof DiskStorageHistory) {
+            ((DiskStorageHistory) toWrite).deleteFiles();
+        }
+    }
+
+    @Benchmark
+    public FaweStreamChangeSet write() {
+        write(toWrite);
+        return toWrite;
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        int count = 0;
+        Iterator<MutableBlockChange> iter = written.getBlockIterator(false);
+        while (iter.hasNext()) {
+            count += iter.next().combinedId;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,93 @@
+package com.boydti.fawe.benchmark;
+
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.function.mask.BlockMask;
+import com.sk89q.worldedit.function.mask.BlockMaskBuilder;
+import com.sk89q.worldedit.math.MutableBlockVector3;
+import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Testing {@link BlockMaskBuilder} masks against every block of the generated terrain<br>
+ * - single: one block type
+ * - many: a few block types (the ores, dirt and grass)
+ * - inverse: everything except air
+ * - all: every block type
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MaskBenchmark {
+
+    @Param({"single", "many", "inverse", "all"})
+    public String mask;
+
+    @Param({"128"})
+    public int size;
+
+    private BlockArrayClipboard terrain;
+    private BlockMask built;
+    private final MutableBlockVector3 mutable = new MutableBlockVector3();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        terrain = BenchmarkEnvironment.createTerrain(size, 64, size);
+        BlockMaskBuilder builder = new BlockMaskBuilder();
+        switch (mask) {
+            case "single":
+                builder.add(BlockTypes.STONE);
+                break;
+            case "many":
+                builder.addTypes(BlockTypes.COAL_ORE, BlockTypes.IRON_ORE, BlockTypes.DIRT, BlockTypes.GRASS_BLOCK);
+                break;
+            case "inverse":
+                builder.addAll().remove(BlockTypes.AIR).remove(BlockTypes.CAVE_AIR);
+                break;
+            case "all":
+                builder.addAll();
+                break;
+            default:
+                throw new IllegalArgumentException(mask);
+        }
+        built = builder.build(terrain);
+    }
+
+    @Benchmark
+    public int test() {
+        int count = 0;
+        for (int y = 0; y < 64; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    if (built.test(mutable.setComponents(x, y, z))) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Only the lookup, without reading the block from the extent
+     */
+    @Benchmark
+    public int testState() {
+        int count = 0;
+        for (BlockType type : BlockTypes.values) {
+            if (type != null && built.test(type.getDefaultState())) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
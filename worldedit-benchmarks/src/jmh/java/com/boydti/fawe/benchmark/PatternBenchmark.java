@@ -0,0 +1,115 @@
+package com.boydti.fawe.benchmark;
+
+import com.boydti.fawe.object.random.SimpleRandom;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.function.pattern.RandomPattern;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.MutableBlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link RandomPattern} with a number of blocks<br>
+ * - equal: every block has the same weight
+ * - varied: random weights (which may need a SimpleRandomCollection instead of a FastRandomCollection)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PatternBenchmark {
+
+    private static final int SIZE = 64;
+
+    @Param({"2", "10", "50"})
+    public int blocks;
+
+    @Param({"equal", "varied"})
+    public String weights;
+
+    private RandomPattern pattern;
+    private BlockArrayClipboard clipboard;
+    private final MutableBlockVector3 mutable = new MutableBlockVector3();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.init();
+        pattern = new RandomPattern(new SeededRandom(BenchmarkEnvironment.SEED));
+        SplittableRandom random = new SplittableRandom(BenchmarkEnvironment.SEED);
+        int added = 0;
+        for (BlockType type : BlockTypes.values) {
+            if (added >= blocks) {
+                break;
+            }
+            if (type == null || type.getMaterial().isAir()) {
+                continue;
+            }
+            pattern.add(type.getDefaultState(), weights.equals("equal") ? 1 : 1 + random.nextInt(100));
+            added++;
+        }
+        clipboard = new BlockArrayClipboard(new CuboidRegion(BlockVector3.ZERO, BlockVector3.at(SIZE - 1, SIZE - 1, SIZE - 1)));
+    }
+
+    @Benchmark
+    public void apply(Blackhole blackhole) {
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                for (int x = 0; x < SIZE; x++) {
+                    BaseBlock block = pattern.apply(mutable.setComponents(x, y, z));
+                    blackhole.consume(block);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int applyExtent() throws WorldEditException {
+        int count = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                for (int x = 0; x < SIZE; x++) {
+                    mutable.setComponents(x, y, z);
+                    if (pattern.apply(clipboard, mutable, mutable)) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A random which only depends on the position and seed, so every run places the same blocks
+     */
+    private static class SeededRandom implements SimpleRandom {
+        private final long seed;
+
+        private SeededRandom(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        public double nextDouble(int x, int y, int z) {
+            long hash = seed;
+            hash = (hash ^ x) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ y) * 0xBF58476D1CE4E5B9L;
+            hash = (hash ^ z) * 0x94D049BB133111EBL;
+            hash ^= hash >>> 31;
+            return (hash >>> 11) * 0x1.0p-53;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.boydti.fawe.benchmark;
+
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.function.RegionFunction;
+import com.sk89q.worldedit.function.mask.BlockMaskBuilder;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.MaskIntersection;
+import com.sk89q.worldedit.function.mask.RegionMask;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.function.visitor.BreadthFirstSearch;
+import com.sk89q.worldedit.function.visitor.RecursiveVisitor;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link BreadthFirstSearch} filling the air (above ground and in the caves) of the generated terrain<br>
+ * - air: the sky, and any caves open to it
+ * - solid: everything underground, which is a single large connected area
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchBenchmark {
+
+    @Param({"air", "solid"})
+    public String fill;
+
+    @Param({"128"})
+    public int size;
+
+    private Mask mask;
+    private BlockVector3 start;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BlockArrayClipboard terrain = BenchmarkEnvironment.createTerrain(size, 64, size);
+        BlockMaskBuilder builder = new BlockMaskBuilder().addTypes(BlockTypes.AIR, BlockTypes.CAVE_AIR);
+        if (fill.equals("air")) {
+            start = BlockVector3.at(0, 63, 0);
+        } else {
+            builder = new BlockMaskBuilder().addAll().remove(BlockTypes.AIR).remove(BlockTypes.CAVE_AIR);
+            start = BlockVector3.at(0, 0, 0);
+        }
+        // Keep the search within the terrain
+        mask = new MaskIntersection(new RegionMask(terrain.getRegion()), builder.build(terrain));
+    }
+
+    @Benchmark
+    public int search() {
+        RegionFunction function = position -> true;
+        RecursiveVisitor visitor = new RecursiveVisitor(mask, function);
+        visitor.visit(start);
+        Operations.completeBlindly(visitor);
+        return visitor.getAffected();
+    }
+}
@@ -0,0 +1,117 @@
+package com.boydti.fawe.benchmark.headless;
+
+import com.boydti.fawe.IFawe;
+import com.boydti.fawe.object.FaweCommand;
+import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.queue.NullFaweQueue;
+import com.boydti.fawe.regions.FaweMaskManager;
+import com.boydti.fawe.util.TaskManager;
+import com.sk89q.worldedit.world.World;
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * The FAWE implementation used by the benchmarks<br>
+ * - There are no players, commands or plugins
+ * - New queues are {@link NullFaweQueue}s, benchmarks which need a real queue provide their own
+ */
+public class HeadlessFawe implements IFawe {
+
+    private final File directory;
+    private final HeadlessTaskManager taskManager;
+
+    public HeadlessFawe(File directory, HeadlessTaskManager taskManager) {
+        this.directory = directory;
+        this.taskManager = taskManager;
+    }
+
+    @Override
+    public void debug(String s) {
+        System.out.println(s);
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void setupCommand(String label, FaweCommand cmd) {
+    }
+
+    @Override
+    public FawePlayer wrap(Object obj) {
+        return null;
+    }
+
+    @Override
+    public void setupVault() {
+    }
+
+    @Override
+    public TaskManager getTaskManager() {
+        return taskManager;
+    }
+
+    @Override
+    public FaweQueue getNewQueue(World world, boolean fast) {
+        return new NullFaweQueue(getWorldName(world));
+    }
+
+    @Override
+    public FaweQueue getNewQueue(String world, boolean fast) {
+        return new NullFaweQueue(world);
+    }
+
+    @Override
+    public String getWorldName(World world) {
+        return world.getName();
+    }
+
+    @Override
+    public Collection<FaweMaskManager> getMaskManagers() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void startMetrics() {
+    }
+
+    @Override
+    public int getPlayerCount() {
+        return 0;
+    }
+
+    @Override
+    public String getPlatformVersion() {
+        return "headless";
+    }
+
+    @Override
+    public boolean isOnlineMode() {
+        return false;
+    }
+
+    @Override
+    public String getPlatform() {
+        return "headless";
+    }
+
+    @Override
+    public UUID getUUID(String name) {
+        return UUID.nameUUIDFromBytes(name.getBytes());
+    }
+
+    @Override
+    public String getName(UUID uuid) {
+        return uuid.toString();
+    }
+
+    @Override
+    public Object getBlocksHubApi() {
+        return null;
+    }
+}
@@ -0,0 +1,127 @@
+package com.boydti.fawe.benchmark.headless;
+
+import com.google.common.io.Resources;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.sk89q.worldedit.LocalConfiguration;
+import com.sk89q.worldedit.entity.Player;
+import com.sk89q.worldedit.extension.platform.AbstractPlatform;
+import com.sk89q.worldedit.extension.platform.Capability;
+import com.sk89q.worldedit.extension.platform.Preference;
+import com.sk89q.worldedit.util.command.Dispatcher;
+import com.sk89q.worldedit.world.World;
+import com.sk89q.worldedit.world.registry.BlockRegistry;
+import com.sk89q.worldedit.world.registry.BundledBlockData;
+import com.sk89q.worldedit.world.registry.BundledBlockRegistry;
+import com.sk89q.worldedit.world.registry.BundledRegistries;
+import com.sk89q.worldedit.world.registry.Registries;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A WorldEdit platform without a game<br>
+ * - Registers every block from the bundled blocks.json (without properties)
+ * - Uses the default configuration
+ */
+public class HeadlessPlatform extends AbstractPlatform {
+
+    private final Registries registries = new HeadlessRegistries();
+    private final LocalConfiguration configuration = new LocalConfiguration() {
+        @Override
+        public void load() {
+        }
+    };
+
+    @Override
+    public Registries getRegistries() {
+        return registries;
+    }
+
+    @Override
+    public boolean isValidMobType(String type) {
+        return false;
+    }
+
+    @Override
+    public void reload() {
+    }
+
+    @Override
+    public Player matchPlayer(Player player) {
+        return null;
+    }
+
+    @Override
+    public World matchWorld(World world) {
+        return world;
+    }
+
+    @Override
+    public void registerCommands(Dispatcher dispatcher) {
+    }
+
+    @Override
+    public void registerGameHooks() {
+    }
+
+    @Override
+    public LocalConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public String getVersion() {
+        return "headless";
+    }
+
+    @Override
+    public String getPlatformName() {
+        return "Headless";
+    }
+
+    @Override
+    public String getPlatformVersion() {
+        return "headless";
+    }
+
+    @Override
+    public Map<Capability, Preference> getCapabilities() {
+        Map<Capability, Preference> capabilities = new EnumMap<>(Capability.class);
+        for (Capability capability : Capability.values()) {
+            capabilities.put(capability, Preference.NORMAL);
+        }
+        return capabilities;
+    }
+
+    private static class HeadlessRegistries extends BundledRegistries {
+        private final BlockRegistry blockRegistry = new HeadlessBlockRegistry();
+
+        @Override
+        public BlockRegistry getBlockRegistry() {
+            return blockRegistry;
+        }
+    }
+
+    private static class HeadlessBlockRegistry extends BundledBlockRegistry {
+        @Override
+        public Collection<String> registerBlocks() {
+            List<String> ids = new ArrayList<>();
+            try {
+                URL url = BundledBlockData.class.getResource("blocks.json");
+                String data = Resources.toString(url, StandardCharsets.UTF_8);
+                for (JsonElement entry : new JsonParser().parse(data).getAsJsonArray()) {
+                    ids.add(entry.getAsJsonObject().get("id").getAsString());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.boydti.fawe.benchmark.headless;
+
+import com.boydti.fawe.util.TaskManager;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A TaskManager without a server<br>
+ * - The "main thread" is a single scheduler thread, ticking every 50ms
+ * - Async tasks run on a cached thread pool
+ */
+public class HeadlessTaskManager extends TaskManager {
+
+    private static final long TICK_MS = 50;
+
+    private final ScheduledExecutorService main = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fawe-headless-main");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService async = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "fawe-headless-async");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger index = new AtomicInteger();
+    private final Map<Integer, ScheduledFuture<?>> tasks = new ConcurrentHashMap<>();
+
+    public ScheduledExecutorService getMainExecutor() {
+        return main;
+    }
+
+    private int register(ScheduledFuture<?> future) {
+        int id = index.incrementAndGet();
+        tasks.put(id, future);
+        return id;
+    }
+
+    @Override
+    public int repeat(final Runnable r, final int interval) {
+        return register(main.scheduleAtFixedRate(r, interval * TICK_MS, interval * TICK_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public int repeatAsync(final Runnable r, final int interval) {
+        return register(async.scheduleAtFixedRate(r, interval * TICK_MS, interval * TICK_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public void async(final Runnable r) {
+        if (r == null) {
+            return;
+        }
+        async.execute(r);
+    }
+
+    @Override
+    public void task(final Runnable r) {
+        if (r == null) {
+            return;
+        }
+        main.execute(r);
+    }
+
+    @Override
+    public void later(final Runnable r, final int delay) {
+        if (r == null) {
+            return;
+        }
+        main.schedule(r, delay * TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void laterAsync(final Runnable r, final int delay) {
+        if (r == null) {
+            return;
+        }
+        async.schedule(r, delay * TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void cancel(final int task) {
+        ScheduledFuture<?> future = tasks.remove(task);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
@@ -65,10 +65,11 @@ private static boolean canTick(BlockType type) {
     public IntFaweChunk copy(boolean shallow) {
         BukkitChunk_All copy;
         if (shallow) {
-            copy = new BukkitChunk_All(getParent(), getX(), getZ(), setBlocks, count, air);
+            copy = new BukkitChunk_All(getParent(), getX(), getZ(), shareSections(), count.clone(), air.clone());
+            copy.sharedMask = sharedMask;
             copy.biomes = biomes;
         } else {
-            copy = new BukkitChunk_All(getParent(), getX(), getZ(), (int[][]) MainUtil.copyNd(setBlocks), count.clone(), air.clone());
+            copy = new BukkitChunk_All(getParent(), getX(), getZ(), copySections(), count.clone(), air.clone());
             copy.biomes = biomes != null ? biomes.clone() : null;
         }
         copy.chunk = chunk;
@@ -73,7 +73,7 @@ public BiomeType[] getBiomeArray() {
     @Nullable
     @Override
     public int[] getIdArray(int layer) {
-        int[] nextLayer = next.setBlocks[layer];
+        int[] nextLayer = next.getIdArray(layer);
         if (nextLayer == null) return null;
         int[] ids = Arrays.copyOf(nextLayer, nextLayer.length);
         int index = 0;
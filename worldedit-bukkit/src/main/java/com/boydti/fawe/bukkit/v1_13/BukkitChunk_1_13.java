@@ -62,11 +62,6 @@
 import java.util.UUID;
 
 import static com.boydti.fawe.bukkit.v0.BukkitQueue_0.getAdapter;
-import static com.boydti.fawe.bukkit.v1_13.BukkitQueue_1_13.fieldRegistryb;
-import static com.boydti.fawe.bukkit.v1_13.BukkitQueue_1_13.fieldRegistryc;
-import static com.boydti.fawe.bukkit.v1_13.BukkitQueue_1_13.fieldRegistryd;
-import static com.boydti.fawe.bukkit.v1_13.BukkitQueue_1_13.fieldRegistrye;
-import static com.boydti.fawe.bukkit.v1_13.BukkitQueue_1_13.fieldRegistryf;
 
 public class BukkitChunk_1_13 extends IntFaweChunk<Chunk, BukkitQueue_1_13> {
 
@@ -102,6 +97,7 @@ public void storeBiomes(BiomeBase[] biomes) {
 
     @Override
     public int[][] getCombinedIdArrays() {
+        unpack();
         if (this.sectionPalettes != null) {
             for (int i = 0; i < setBlocks.length; i++) {
                 getIdArray(i);
@@ -112,33 +108,32 @@ public int[][] getCombinedIdArrays() {
 
     @Override
     public int[] getIdArray(int layer) {
+        if (this.setBlocks[layer] == null) {
+            unpack(layer);
+        }
         if (this.setBlocks[layer] == null && this.sectionPalettes != null) {
             ChunkSection section = this.sectionPalettes[layer];
             int[] idsArray = this.setBlocks[layer];
             if (section != null && idsArray == null) {
                 this.setBlocks[layer] = idsArray = new int[4096];
                 if (!section.a()) {
-                    try {
-                        DataPaletteBlock<IBlockData> blocks = section.getBlocks();
-                        DataBits bits = (DataBits) BukkitQueue_1_13.fieldBits.get(blocks);
-                        DataPalette<IBlockData> palette = (DataPalette<IBlockData>) BukkitQueue_1_13.fieldPalette.get(blocks);
-
-                        long[] raw = bits.a();
-                        int bitsPerEntry = bits.c();
-
-                        new BitArray4096(raw, bitsPerEntry).toRaw(idsArray);
-                        IBlockData defaultBlock = (IBlockData) BukkitQueue_1_13.fieldDefaultBlock.get(blocks);
-                        // TODO optimize away palette.a
-                        for (int i = 0; i < 4096; i++) {
-                            IBlockData ibd = palette.a(idsArray[i]);
-                            if (ibd == null) {
-                                ibd = defaultBlock;
-                            }
-                            int ordinal = ((Spigot_v1_13_R2) getAdapter()).adaptToInt(ibd);
-                            idsArray[i] = BlockTypes.states[ordinal].getInternalId();
+                    DataPaletteBlock<IBlockData> blocks = section.getBlocks();
+                    DataBits bits = SectionAccessor_1_13.getBits(blocks);
+                    DataPalette<IBlockData> palette = SectionAccessor_1_13.getPalette(blocks);
+
+                    long[] raw = bits.a();
+                    int bitsPerEntry = bits.c();
+
+                    new BitArray4096(raw, bitsPerEntry).toRaw(idsArray);
+                    IBlockData defaultBlock = SectionAccessor_1_13.getDefaultBlock(blocks);
+                    // TODO optimize away palette.a
+                    for (int i = 0; i < 4096; i++) {
+                        IBlockData ibd = palette.a(idsArray[i]);
+                        if (ibd == null) {
+                            ibd = defaultBlock;
                         }
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
+                        int ordinal = ((Spigot_v1_13_R2) getAdapter()).adaptToInt(ibd);
+                        idsArray[i] = BlockTypes.states[ordinal].getInternalId();
                     }
                 }
             }
@@ -200,62 +195,52 @@ public ChunkSection copy(ChunkSection current) throws IllegalAccessException, In
         }
 
         // Copy counters
-        Object nonEmptyBlockCount = BukkitQueue_1_13.fieldNonEmptyBlockCount.get(current);
-        BukkitQueue_1_13.fieldNonEmptyBlockCount.set(newSection, nonEmptyBlockCount);
-
-        Object tickingBlockCount = BukkitQueue_1_13.fieldTickingBlockCount.get(current);
-        BukkitQueue_1_13.fieldTickingBlockCount.set(newSection, tickingBlockCount);
-
-        Object liquidCount = BukkitQueue_1_13.fieldLiquidCount.get(current);
-        BukkitQueue_1_13.fieldLiquidCount.set(newSection, liquidCount);
+        SectionAccessor_1_13.setNonEmptyBlockCount(newSection, SectionAccessor_1_13.getNonEmptyBlockCount(current));
+        SectionAccessor_1_13.setTickingBlockCount(newSection, SectionAccessor_1_13.getTickingBlockCount(current));
+        SectionAccessor_1_13.setLiquidCount(newSection, SectionAccessor_1_13.getLiquidCount(current));
 
         // Copy blocks
         DataPaletteBlock<IBlockData> blocks = current.getBlocks();
         DataPaletteBlock<IBlockData> blocksCopy = copy(blocks);
-        BukkitQueue_1_13.fieldSection.set(newSection, blocksCopy);
+        SectionAccessor_1_13.setBlocks(newSection, blocksCopy);
 
         return newSection;
     }
 
     public DataPaletteBlock<IBlockData> copy(DataPaletteBlock current) throws IllegalAccessException, InvocationTargetException, NoSuchFieldException {
         // Clone palette
-        DataPalette currentPalette = (DataPalette) BukkitQueue_1_13.fieldPalette.get(current);
+        DataPalette currentPalette = SectionAccessor_1_13.getPalette(current);
         DataPaletteBlock<IBlockData> paletteBlock = newDataPaletteBlock();
-        int size = BukkitQueue_1_13.fieldSize.getInt(current);
+        int size = SectionAccessor_1_13.getBitsPerEntry(current);
 
         DataPalette<IBlockData> newPalette = currentPalette;
         if (currentPalette instanceof DataPaletteHash) {
             // TODO optimize resize
             newPalette = new DataPaletteHash<>(Block.REGISTRY_ID, size, paletteBlock, GameProfileSerializer::d, GameProfileSerializer::a);
-            RegistryID<IBlockData> currReg = (RegistryID<IBlockData>) BukkitQueue_1_13.fieldHashBlocks.get(currentPalette);
-            RegistryID<IBlockData> newReg = (RegistryID<IBlockData>) BukkitQueue_1_13.fieldHashBlocks.get(newPalette);
-            int arrLen = 1 << size;
-            System.arraycopy(fieldRegistryb.get(currReg), 0, fieldRegistryb.get(newReg), 0, arrLen);
-            System.arraycopy(fieldRegistryc.get(currReg), 0, fieldRegistryc.get(newReg), 0, arrLen);
-            System.arraycopy(fieldRegistryd.get(currReg), 0, fieldRegistryd.get(newReg), 0, arrLen);
-            fieldRegistrye.set(newReg, fieldRegistrye.get(currReg));
-            fieldRegistryf.set(newReg, fieldRegistryf.get(currReg));
+            RegistryID<IBlockData> currReg = SectionAccessor_1_13.getRegistry((DataPaletteHash) currentPalette);
+            RegistryID<IBlockData> newReg = SectionAccessor_1_13.getRegistry((DataPaletteHash) newPalette);
+            SectionAccessor_1_13.copyRegistry(currReg, newReg, 1 << size);
         } else if (currentPalette instanceof DataPaletteLinear) {
             // TODO optimize resize
             newPalette = new DataPaletteLinear<>(Block.REGISTRY_ID, size, paletteBlock, GameProfileSerializer::d);
-            Object[] currArray = ((Object[]) BukkitQueue_1_13.fieldLinearBlocks.get(currentPalette));
-            Object[] newArray = ((Object[]) BukkitQueue_1_13.fieldLinearBlocks.get(newPalette));
-            BukkitQueue_1_13.fieldLinearIndex.set(newPalette, BukkitQueue_1_13.fieldLinearIndex.get(currentPalette));
+            Object[] currArray = SectionAccessor_1_13.getLinearBlocks((DataPaletteLinear) currentPalette);
+            Object[] newArray = SectionAccessor_1_13.getLinearBlocks((DataPaletteLinear) newPalette);
+            SectionAccessor_1_13.setLinearSize((DataPaletteLinear) newPalette, SectionAccessor_1_13.getLinearSize((DataPaletteLinear) currentPalette));
             for (int i = 0; i < newArray.length; i++) newArray[i] = currArray[i];
         }
 
-        BukkitQueue_1_13.fieldPalette.set(paletteBlock, newPalette);
+        SectionAccessor_1_13.setPalette(paletteBlock, newPalette);
         // Clone size
-        BukkitQueue_1_13.fieldSize.set(paletteBlock, size);
+        SectionAccessor_1_13.setBitsPerEntry(paletteBlock, size);
         // Clone palette
-        DataBits currentBits = (DataBits) BukkitQueue_1_13.fieldBits.get(current);
+        DataBits currentBits = SectionAccessor_1_13.getBits(current);
         DataBits newBits = new DataBits(currentBits.c(), currentBits.b(), currentBits.a().clone());
-        BukkitQueue_1_13.fieldBits.set(paletteBlock, newBits);
+        SectionAccessor_1_13.setBits(paletteBlock, newBits);
 
         // TODO copy only if different
-        Object defaultBlock = BukkitQueue_1_13.fieldDefaultBlock.get(current);
+        IBlockData defaultBlock = SectionAccessor_1_13.getDefaultBlock(current);
         if (defaultBlock != AIR) {
-            ReflectionUtils.setFailsafeFieldValue(BukkitQueue_1_13.fieldDefaultBlock, paletteBlock, BukkitQueue_1_13.fieldDefaultBlock.get(current));
+            ReflectionUtils.setFailsafeFieldValue(BukkitQueue_1_13.fieldDefaultBlock, paletteBlock, defaultBlock);
         }
 
         return paletteBlock;
@@ -265,11 +250,12 @@ public DataPaletteBlock<IBlockData> copy(DataPaletteBlock current) throws Illega
     public IntFaweChunk<Chunk, BukkitQueue_1_13> copy(boolean shallow) {
         BukkitChunk_1_13 copy;
         if (shallow) {
-            copy = new BukkitChunk_1_13(getParent(), getX(), getZ(), setBlocks, count, air);
+            copy = new BukkitChunk_1_13(getParent(), getX(), getZ(), shareSections(), count.clone(), air.clone());
+            copy.sharedMask = sharedMask;
             copy.biomes = biomes;
             copy.chunk = chunk;
         } else {
-            copy = new BukkitChunk_1_13(getParent(), getX(), getZ(), (int[][]) MainUtil.copyNd(setBlocks), count.clone(), air.clone());
+            copy = new BukkitChunk_1_13(getParent(), getX(), getZ(), copySections(), count.clone(), air.clone());
             copy.biomes = biomes != null ? biomes.clone() : null;
             copy.chunk = chunk;
         }
@@ -315,6 +301,31 @@ public void optimize() {
         }
     }
 
+    /**
+     * Queue a relight of the light sources in a world section which is about to be replaced<br>
+     * - Must be called on the main thread, as the section may still be modified there
+     */
+    private void relightEmitters(ChunkSection section, int bx, int by, int bz) {
+        DataPaletteBlock<IBlockData> blocks = section.getBlocks();
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    if (blocks.a(x, y, z).e() > 0) {
+                        getParent().getRelighter().addLightUpdate(bx + x, by + y, bz + z);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void copyLight(ChunkSection from, ChunkSection to) {
+        System.arraycopy(from.getEmittedLightArray().asBytes(), 0, to.getEmittedLightArray().asBytes(), 0, 2048);
+        NibbleArray sky = from.getSkyLightArray();
+        if (sky != null && to.getSkyLightArray() != null) {
+            System.arraycopy(sky.asBytes(), 0, to.getSkyLightArray().asBytes(), 0, 2048);
+        }
+    }
+
     @Override
     public void start() {
         getChunk().load(true);
@@ -472,9 +483,12 @@ public FaweChunk call() {
                     continue;
                 }
                 ChunkSection section = sections[j];
+                // Fully replaced layers swap in the section built by optimize()
+                boolean swap = section != null && count >= 4096 && this.sectionPalettes != null && this.sectionPalettes[j] != null && getParent().getSettings().QUEUE.PREPARE_SECTIONS;
                 if (copy != null) {
                     if (section != null) {
-                        copy.storeSection(copy(section), j);
+                        // A swapped out section isn't modified, so doesn't need copying
+                        copy.storeSection(swap ? section : copy(section), j);
                     }
                 }
                 if (section == null) {
@@ -488,18 +502,16 @@ public FaweChunk call() {
                         section = sections[j] = getParent().newChunkSection(j, flag, array);
                         continue;
                     }
-                } else if (count >= 4096 && false) {
+                } else if (swap) {
+                    relightEmitters(section, bx, j << 4, bz);
                     if (countAir >= 4096) {
                         sections[j] = null;
                         continue;
                     }
-                    if (this.sectionPalettes != null && this.sectionPalettes[j] != null) {
-                        section = sections[j] = this.sectionPalettes[j];
-                        continue;
-                    } else {
-                        section = sections[j] = getParent().newChunkSection(j, flag, array);
-                        continue;
-                    }
+                    ChunkSection prepared = this.sectionPalettes[j];
+                    copyLight(section, prepared);
+                    sections[j] = prepared;
+                    continue;
                 }
                 int by = j << 4;
                 DataPaletteBlock<IBlockData> nibble = section.getBlocks();
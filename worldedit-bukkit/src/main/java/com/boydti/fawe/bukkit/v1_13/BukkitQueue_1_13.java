@@ -831,18 +831,18 @@ public World getImpWorld() {
         }
     }
 
-    public static void setCount(int tickingBlockCount, int nonEmptyBlockCount, ChunkSection section) throws NoSuchFieldException, IllegalAccessException {
-        fieldFluidCount.set(section, 0); // TODO FIXME
-        fieldTickingBlockCount.set(section, tickingBlockCount);
-        fieldNonEmptyBlockCount.set(section, nonEmptyBlockCount);
+    public static void setCount(int tickingBlockCount, int nonEmptyBlockCount, ChunkSection section) {
+        SectionAccessor_1_13.setLiquidCount(section, 0); // TODO FIXME
+        SectionAccessor_1_13.setTickingBlockCount(section, tickingBlockCount);
+        SectionAccessor_1_13.setNonEmptyBlockCount(section, nonEmptyBlockCount);
     }
 
-    public int getNonEmptyBlockCount(ChunkSection section) throws IllegalAccessException {
-        return (int) fieldNonEmptyBlockCount.get(section);
+    public int getNonEmptyBlockCount(ChunkSection section) {
+        return SectionAccessor_1_13.getNonEmptyBlockCount(section);
     }
 
-    public void setPalette(ChunkSection section, DataPaletteBlock palette) throws NoSuchFieldException, IllegalAccessException {
-        fieldSection.set(section, palette);
+    public void setPalette(ChunkSection section, DataPaletteBlock palette) {
+        SectionAccessor_1_13.setBlocks(section, palette);
         Arrays.fill(section.getEmittedLightArray().asBytes(), (byte) 0);
     }
 
@@ -912,14 +912,10 @@ public static ChunkSection newChunkSection(int y2, boolean flag, int[] blocks) {
                     IBlockData ibd = ((BlockMaterial_1_13) state.getMaterial()).getState();
                     palette.a(ibd);
                 }
-                try {
-                    fieldBits.set(dataPaletteBlocks, nmsBits);
-                    fieldPalette.set(dataPaletteBlocks, palette);
-                    fieldSize.set(dataPaletteBlocks, bitsPerEntry);
-                    setCount(0, 4096 - air, section);
-                } catch (IllegalAccessException | NoSuchFieldException e) {
-                    throw new RuntimeException(e);
-                }
+                SectionAccessor_1_13.setBits(dataPaletteBlocks, nmsBits);
+                SectionAccessor_1_13.setPalette(dataPaletteBlocks, palette);
+                SectionAccessor_1_13.setBitsPerEntry(dataPaletteBlocks, bitsPerEntry);
+                setCount(0, 4096 - air, section);
 
                 return section;
             } catch (Throwable e){
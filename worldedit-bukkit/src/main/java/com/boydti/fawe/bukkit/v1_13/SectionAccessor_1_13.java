@@ -0,0 +1,212 @@
+package com.boydti.fawe.bukkit.v1_13;
+
+import com.boydti.fawe.util.ReflectionUtils;
+import net.minecraft.server.v1_13_R2.ChunkSection;
+import net.minecraft.server.v1_13_R2.DataBits;
+import net.minecraft.server.v1_13_R2.DataPalette;
+import net.minecraft.server.v1_13_R2.DataPaletteBlock;
+import net.minecraft.server.v1_13_R2.DataPaletteHash;
+import net.minecraft.server.v1_13_R2.DataPaletteLinear;
+import net.minecraft.server.v1_13_R2.IBlockData;
+import net.minecraft.server.v1_13_R2.RegistryID;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Getters and setters for the private fields of chunk sections and palettes<br>
+ * - Used once or more per section, so they're static final MethodHandles (which the JIT inlines) rather than {@link java.lang.reflect.Field}s
+ * - The handles are looked up from the fields in {@link BukkitQueue_1_13}
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class SectionAccessor_1_13 {
+    private static final MethodHandle getBits = ReflectionUtils.getter(BukkitQueue_1_13.fieldBits, DataPaletteBlock.class, DataBits.class);
+    private static final MethodHandle setBits = ReflectionUtils.setter(BukkitQueue_1_13.fieldBits, DataPaletteBlock.class, DataBits.class);
+    private static final MethodHandle getPalette = ReflectionUtils.getter(BukkitQueue_1_13.fieldPalette, DataPaletteBlock.class, DataPalette.class);
+    private static final MethodHandle setPalette = ReflectionUtils.setter(BukkitQueue_1_13.fieldPalette, DataPaletteBlock.class, DataPalette.class);
+    private static final MethodHandle getBitsPerEntry = ReflectionUtils.getter(BukkitQueue_1_13.fieldSize, DataPaletteBlock.class, int.class);
+    private static final MethodHandle setBitsPerEntry = ReflectionUtils.setter(BukkitQueue_1_13.fieldSize, DataPaletteBlock.class, int.class);
+    private static final MethodHandle getDefaultBlock = ReflectionUtils.getter(BukkitQueue_1_13.fieldDefaultBlock, DataPaletteBlock.class, IBlockData.class);
+
+    private static final MethodHandle setBlocks = ReflectionUtils.setter(BukkitQueue_1_13.fieldSection, ChunkSection.class, DataPaletteBlock.class);
+    private static final MethodHandle getNonEmptyBlockCount = ReflectionUtils.getter(BukkitQueue_1_13.fieldNonEmptyBlockCount, ChunkSection.class, int.class);
+    private static final MethodHandle setNonEmptyBlockCount = ReflectionUtils.setter(BukkitQueue_1_13.fieldNonEmptyBlockCount, ChunkSection.class, int.class);
+    private static final MethodHandle getTickingBlockCount = ReflectionUtils.getter(BukkitQueue_1_13.fieldTickingBlockCount, ChunkSection.class, int.class);
+    private static final MethodHandle setTickingBlockCount = ReflectionUtils.setter(BukkitQueue_1_13.fieldTickingBlockCount, ChunkSection.class, int.class);
+    private static final MethodHandle getLiquidCount = ReflectionUtils.getter(BukkitQueue_1_13.fieldLiquidCount, ChunkSection.class, int.class);
+    private static final MethodHandle setLiquidCount = ReflectionUtils.setter(BukkitQueue_1_13.fieldLiquidCount, ChunkSection.class, int.class);
+
+    private static final MethodHandle getHashRegistry = ReflectionUtils.getter(BukkitQueue_1_13.fieldHashBlocks, DataPaletteHash.class, RegistryID.class);
+    private static final MethodHandle getLinearBlocks = ReflectionUtils.getter(BukkitQueue_1_13.fieldLinearBlocks, DataPaletteLinear.class, Object[].class);
+    private static final MethodHandle getLinearSize = ReflectionUtils.getter(BukkitQueue_1_13.fieldLinearIndex, DataPaletteLinear.class, int.class);
+    private static final MethodHandle setLinearSize = ReflectionUtils.setter(BukkitQueue_1_13.fieldLinearIndex, DataPaletteLinear.class, int.class);
+
+    private static final MethodHandle getRegistryb = ReflectionUtils.getter(BukkitQueue_1_13.fieldRegistryb, RegistryID.class, Object.class);
+    private static final MethodHandle getRegistryc = ReflectionUtils.getter(BukkitQueue_1_13.fieldRegistryc, RegistryID.class, Object.class);
+    private static final MethodHandle getRegistryd = ReflectionUtils.getter(BukkitQueue_1_13.fieldRegistryd, RegistryID.class, Object.class);
+    private static final MethodHandle getRegistrye = ReflectionUtils.getter(BukkitQueue_1_13.fieldRegistrye, RegistryID.class, int.class);
+    private static final MethodHandle setRegistrye = ReflectionUtils.setter(BukkitQueue_1_13.fieldRegistrye, RegistryID.class, int.class);
+    private static final MethodHandle getRegistryf = ReflectionUtils.getter(BukkitQueue_1_13.fieldRegistryf, RegistryID.class, int.class);
+    private static final MethodHandle setRegistryf = ReflectionUtils.setter(BukkitQueue_1_13.fieldRegistryf, RegistryID.class, int.class);
+
+    private SectionAccessor_1_13() {
+    }
+
+    public static DataBits getBits(DataPaletteBlock blocks) {
+        try {
+            return (DataBits) getBits.invokeExact(blocks);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setBits(DataPaletteBlock blocks, DataBits bits) {
+        try {
+            setBits.invokeExact(blocks, bits);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static DataPalette<IBlockData> getPalette(DataPaletteBlock blocks) {
+        try {
+            return (DataPalette) getPalette.invokeExact(blocks);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setPalette(DataPaletteBlock blocks, DataPalette palette) {
+        try {
+            setPalette.invokeExact(blocks, palette);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static int getBitsPerEntry(DataPaletteBlock blocks) {
+        try {
+            return (int) getBitsPerEntry.invokeExact(blocks);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setBitsPerEntry(DataPaletteBlock blocks, int bitsPerEntry) {
+        try {
+            setBitsPerEntry.invokeExact(blocks, bitsPerEntry);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static IBlockData getDefaultBlock(DataPaletteBlock blocks) {
+        try {
+            return (IBlockData) getDefaultBlock.invokeExact(blocks);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setBlocks(ChunkSection section, DataPaletteBlock blocks) {
+        try {
+            setBlocks.invokeExact(section, blocks);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static int getNonEmptyBlockCount(ChunkSection section) {
+        try {
+            return (int) getNonEmptyBlockCount.invokeExact(section);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setNonEmptyBlockCount(ChunkSection section, int count) {
+        try {
+            setNonEmptyBlockCount.invokeExact(section, count);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static int getTickingBlockCount(ChunkSection section) {
+        try {
+            return (int) getTickingBlockCount.invokeExact(section);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setTickingBlockCount(ChunkSection section, int count) {
+        try {
+            setTickingBlockCount.invokeExact(section, count);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static int getLiquidCount(ChunkSection section) {
+        try {
+            return (int) getLiquidCount.invokeExact(section);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setLiquidCount(ChunkSection section, int count) {
+        try {
+            setLiquidCount.invokeExact(section, count);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static RegistryID<IBlockData> getRegistry(DataPaletteHash palette) {
+        try {
+            return (RegistryID) getHashRegistry.invokeExact(palette);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static Object[] getLinearBlocks(DataPaletteLinear palette) {
+        try {
+            return (Object[]) getLinearBlocks.invokeExact(palette);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static int getLinearSize(DataPaletteLinear palette) {
+        try {
+            return (int) getLinearSize.invokeExact(palette);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setLinearSize(DataPaletteLinear palette, int size) {
+        try {
+            setLinearSize.invokeExact(palette, size);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Copy the contents of one registry to another of the same size
+     */
+    public static void copyRegistry(RegistryID from, RegistryID to, int length) {
+        try {
+            System.arraycopy((Object) getRegistryb.invokeExact(from), 0, (Object) getRegistryb.invokeExact(to), 0, length);
+            System.arraycopy((Object) getRegistryc.invokeExact(from), 0, (Object) getRegistryc.invokeExact(to), 0, length);
+            System.arraycopy((Object) getRegistryd.invokeExact(from), 0, (Object) getRegistryd.invokeExact(to), 0, length);
+            setRegistrye.invokeExact(to, (int) getRegistrye.invokeExact(from));
+            setRegistryf.invokeExact(to, (int) getRegistryf.invokeExact(from));
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
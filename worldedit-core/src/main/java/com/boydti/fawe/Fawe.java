@@ -5,6 +5,7 @@
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.FawePlayer;
 import com.boydti.fawe.object.brush.visualization.VisualQueue;
+import com.boydti.fawe.object.io.AsyncFileWriter;
 import com.boydti.fawe.regions.general.plot.PlotSquaredFeature;
 import com.boydti.fawe.util.*;
 import com.boydti.fawe.util.chat.ChatManager;
@@ -197,6 +198,7 @@ private Fawe(final IFawe implementation) {
     }
 
     public void onDisable() {
+        AsyncFileWriter.shutdown();
     }
 
     public CUI getCUI(Actor actor) {
@@ -355,9 +357,12 @@ public static void setupInjector() {
             try {
                 com.github.luben.zstd.util.Native.load();
             } catch (Throwable e) {
-                if (Settings.IMP.CLIPBOARD.COMPRESSION_LEVEL > 6 || Settings.IMP.HISTORY.COMPRESSION_LEVEL > 6) {
+                if (Settings.IMP.CLIPBOARD.COMPRESSION_LEVEL > 6 || Settings.IMP.HISTORY.COMPRESSION_LEVEL > 6
+                        || Settings.IMP.CLIPBOARD.ZSTD_LEVEL > 0 || Settings.IMP.HISTORY.ZSTD_LEVEL > 0) {
                     Settings.IMP.CLIPBOARD.COMPRESSION_LEVEL = Math.min(6, Settings.IMP.CLIPBOARD.COMPRESSION_LEVEL);
                     Settings.IMP.HISTORY.COMPRESSION_LEVEL = Math.min(6, Settings.IMP.HISTORY.COMPRESSION_LEVEL);
+                    Settings.IMP.CLIPBOARD.ZSTD_LEVEL = 0;
+                    Settings.IMP.HISTORY.ZSTD_LEVEL = 0;
                     debug("====== ZSTD COMPRESSION BINDING NOT FOUND ======");
                     debug(e);
                     debug("===============================================");
@@ -39,6 +39,21 @@ public int[] init() {
         }
     };
 
+    // The from, to, palette and palette indexes of a section's changes
+    public static final IterableThreadLocal<int[][]> SECTION_CHANGES = new IterableThreadLocal<int[][]>() {
+        @Override
+        public int[][] init() {
+            return new int[4][4096];
+        }
+    };
+
+    public static final IterableThreadLocal<long[]> SECTION_CHANGED = new IterableThreadLocal<long[]>() {
+        @Override
+        public long[] init() {
+            return new long[64];
+        }
+    };
+
     public static Map<String, Object> asMap(Object... pairs) {
         HashMap<String, Object> map = new HashMap<>(pairs.length >> 1);
         for (int i = 0; i < pairs.length; i += 2) {
@@ -201,7 +201,7 @@ public Boolean apply(File folder) {
                         generator.setPacketViewer(null);
                         generator.setImageViewer(null);
                         settings.remove();
-                        fp.sendMessage(BBC.getPrefix() + "Done!");
+                        fp.sendMessage(BBC.getPrefix() + "Done! (" + generator.getChunksWritten() + " chunks in " + generator.getRegionsWritten() + " regions, " + (int) generator.getChunksPerSecond() + " chunks/s)");
                         return true;
                     } catch (IOException e) {
                         throw new RuntimeException(e);
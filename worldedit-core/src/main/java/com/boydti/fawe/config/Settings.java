@@ -68,6 +68,8 @@ public class Settings extends Config {
     public REGION_RESTRICTIONS_OPTIONS REGION_RESTRICTIONS_OPTIONS;
     @Create
     public ENABLED_COMPONENTS ENABLED_COMPONENTS;
+    @Create
+    public TIMINGS TIMINGS;
 
     @Comment("Enable or disable core components")
     public static final class ENABLED_COMPONENTS {
@@ -91,6 +93,11 @@ public static final class PATHS {
         @Comment("Each player has their own sub directory for schematics")
         public boolean PER_PLAYER_SCHEMATICS = true;
         public String COMMANDS = "commands";
+        @Comment({
+                "Trained zstd dictionaries (see `zstd-dictionary` in the history and clipboard sections)",
+                " - Keep old dictionaries until the history and clipboards using them are deleted"
+        })
+        public String DICTIONARIES = "dictionaries";
     }
 
     @Comment("Region restriction settings")
@@ -205,12 +212,43 @@ public static class HISTORY {
                 "NOTE: If using disk, do some compression (3+) as smaller files save faster"
         })
         public int COMPRESSION_LEVEL = 3;
+        @Comment({
+                "Compress history with a single zstd pass instead of compression-level:",
+                " - 0 = Disabled (use compression-level)",
+                " - 1-22 = Faster to smaller (decompression speed is about the same at every level)",
+                " - History written with either codec can still be read after changing this",
+                " - Requires the zstd natives",
+        })
+        public int ZSTD_LEVEL = 0;
+        @Comment({
+                "Use the newest history dictionary in the dictionaries folder with zstd-level",
+                " - Train one from your existing history with `/fawe dictionary history`",
+                " - Mostly helps small edits and chunk indexed history",
+        })
+        public boolean ZSTD_DICTIONARY = true;
         @Comment({
                 "The buffer size for compression:",
                 " - Larger = better ratio but uses more upfront memory",
                 " - Must be in the range [64, 33554432]",
         })
         public int BUFFER_SIZE = 531441;
+        @Comment({
+                "Write history files on a separate thread, so edits don't wait for the disk:",
+                " - Writes are queued and written in groups (with one database insert per group)",
+                " - Undo and inspection wait for any queued writes to the files they read",
+        })
+        public boolean ASYNC_WRITE = true;
+        @Comment({
+                "The maximum size of queued history writes (in KB) with async-write",
+                " - Edits wait for the disk once this much is queued",
+        })
+        public int WRITE_QUEUE_KB = 65536;
+        @Comment({
+                "Sync history files to the disk when they are closed (with async-write):",
+                " - Keeps history after a crash or power loss",
+                " - The files closed in each group are synced together",
+        })
+        public boolean FSYNC = false;
 
 
         @Comment({
@@ -251,6 +289,19 @@ public static class HISTORY {
                 " - Reduces history size by ~10%",
         })
         public boolean SMALL_EDITS = false;
+        @Comment({
+                "Store block changes on disk in compressed blocks per chunk, with an index:",
+                " - Region restricted rollback, inspection and summaries only read the relevant chunks",
+                " - History is slightly larger, as each chunk is compressed separately",
+                " - Existing history is still readable",
+        })
+        public boolean CHUNK_INDEX = true;
+        @Comment({
+                "Record sections (16x16x16) where most blocks changed as one compact record, instead of a change per block:",
+                " - Faster to record and undo large edits, and usually smaller",
+                " - Existing history is still readable",
+        })
+        public boolean SECTION_RECORDS = true;
     }
 
     @Comment("This relates to how FAWE places chunks")
@@ -288,6 +339,44 @@ public static class QUEUE {
         })
         public int EXTRA_TIME_MS = 0;
 
+        @Comment({
+                "Place chunks from every player's edit each tick, rather than one edit at a time",
+                " - Each player gets an equal share of the chunks placed",
+                " - Chunks are placed on `parallel-threads` threads at once",
+        })
+        public boolean FAIR_SCHEDULING = false;
+
+        @Comment({
+                "The time (ms) allocated each tick for chunk placement when `fair-scheduling` is enabled",
+                " - `extra-time-ms` is added to this",
+                " - Any time the previous tick ran over 50ms is subtracted from this",
+        })
+        public int TICK_BUDGET_MS = 25;
+
+        @Comment({
+                "Prepare chunks on other threads, and only commit prepared chunks on the main thread",
+                " - The main thread will never wait for chunks to be prepared",
+                " - Requires `fair-scheduling`",
+        })
+        public boolean PIPELINE = false;
+
+        @Comment({
+                "The maximum time (ms) spent committing prepared chunks each tick when `pipeline` is enabled",
+                " - A single chunk cannot be interrupted, so a slow chunk can still exceed this",
+        })
+        public int COMMIT_BUDGET_MS = 10;
+
+        @Comment("The maximum number of chunks being prepared or waiting to be committed when `pipeline` is enabled")
+        public int PIPELINE_SIZE = 256;
+
+        @Comment({
+                "Swap in the complete sections (palette and block counts) of fully replaced layers, instead of setting each block",
+                " - The sections are built when a chunk is prepared (on other threads when `pipeline` is enabled)",
+                " - The main thread only checks the replaced blocks for light sources, then swaps the new section in",
+                " - Layers replaced with only air are removed",
+        })
+        public boolean PREPARE_SECTIONS = false;
+
         @Comment({
                 "Loading the right amount of chunks beforehand can speed up operations",
                 " - Low values may result in FAWE waiting on requests to the main thread",
@@ -295,6 +384,21 @@ public static class QUEUE {
         })
         public int PRELOAD_CHUNKS = 32;
 
+        @Comment({
+                "The maximum number of section arrays (16KB each) kept for reuse once queued chunks are placed",
+                " - Reduces memory churn for large edits",
+                " - 0 = disabled",
+        })
+        public int SECTION_POOL_SIZE = 1024;
+
+        @Comment({
+                "Pack the blocks of a queued chunk into a smaller format once an edit has moved on from it",
+                " - The value is the number of recently edited chunks which are kept unpacked",
+                " - Reduces the memory used by large edits",
+                " - 0 = disabled",
+        })
+        public int PACK_AFTER_CHUNKS = 32;
+
         @Comment({
                 "Discard edits which have been idle for a certain amount of time (ms)",
                 " - E.g. A plugin creates an EditSession but never does anything with it",
@@ -436,6 +540,18 @@ public static class CLIPBOARD {
                 " - 2-17 = Slower compression"
         })
         public int COMPRESSION_LEVEL = 1;
+        @Comment({
+                "Compress clipboards in memory with a single zstd pass instead of compression-level:",
+                " - 0 = Disabled (use compression-level)",
+                " - 1-22 = Faster to smaller",
+                " - Not used if compression-level is 0 or the clipboard is on disk",
+        })
+        public int ZSTD_LEVEL = 0;
+        @Comment({
+                "Use the newest clipboard dictionary in the dictionaries folder with zstd-level",
+                " - Train one from the clipboards on disk with `/fawe dictionary clipboard`",
+        })
+        public boolean ZSTD_DICTIONARY = true;
         @Comment("Number of days to keep history on disk before deleting it")
         public int DELETE_AFTER_DAYS = 1;
     }
@@ -457,6 +573,19 @@ public static class LIGHTING {
         public boolean REMOVE_FIRST = false;
     }
 
+    @Comment("Timings for each stage of an edit (view with `/fawe metrics`)")
+    public static class TIMINGS {
+        @Comment("If the timings should be recorded")
+        public boolean ENABLED = true;
+        @Comment({
+                "Per block stages (masks, patterns, history) only time 1 in this many operations",
+                " - Rounded down to a power of 2, lower is more accurate but slower",
+        })
+        public int SAMPLE_RATE = 64;
+        @Comment("The number of recent edits to list")
+        public int RECENT_EDITS = 20;
+    }
+
     public void reload(File file) {
         load(file);
         save(file);
@@ -20,12 +20,15 @@
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 public class RollbackDatabase extends AsyncNotifyQueue {
 
+    private static final int BATCH_SIZE = 1024;
+
     private final String prefix;
     private final File dbLocation;
     private final String worldName;
@@ -43,6 +46,20 @@ public class RollbackDatabase extends AsyncNotifyQueue {
     private String DELETE_EDIT_USER;
     private String PURGE;
 
+    private String CREATE_INDEX;
+    private String CREATE_INDEX_TIME;
+    private String CREATE_TRIGGER_INSERT;
+    private String CREATE_TRIGGER_DELETE;
+    private String POPULATE_INDEX;
+    private String GET_EDITS_INDEXED;
+    private String GET_EDITS_USER_INDEXED;
+    private String GET_EDITS_INDEXED_ASC;
+    private String GET_EDITS_USER_INDEXED_ASC;
+    /**
+     * If the R*Tree index is available (SQLite may be compiled without it)
+     */
+    private boolean spatial;
+
     private ConcurrentLinkedQueue<RollbackOptimizedHistory> historyChanges = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
 
@@ -60,12 +77,25 @@ public RollbackDatabase(final World world) throws SQLException, ClassNotFoundExc
         INSERT_EDIT = "INSERT OR REPLACE INTO `" + prefix + "edits` (`player`,`id`,`x1`,`y1`,`z1`,`x2`,`y2`,`z2`,`time`) VALUES(?,?,?,?,?,?,?,?,?)";
         PURGE = "DELETE FROM `" + prefix + "edits` WHERE `time`<?";
 //        GET_EDITS_POINT = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=?";
-        GET_EDITS = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? ORDER BY `time` DESC, `id` DESC";
-        GET_EDITS_USER = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? AND `player`=? ORDER BY `time` DESC, `id` DESC";
-        GET_EDITS_ASC = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? ORDER BY `time` ASC, `id` ASC";
-        GET_EDITS_USER_ASC = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? AND `player`=? ORDER BY `time` ASC, `id` ASC";
+        GET_EDITS = "SELECT `player`,`id`,`x1`,`z1`,`x2`,`z2` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? ORDER BY `time` DESC, `id` DESC";
+        GET_EDITS_USER = "SELECT `player`,`id`,`x1`,`z1`,`x2`,`z2` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? AND `player`=? ORDER BY `time` DESC, `id` DESC";
+        GET_EDITS_ASC = "SELECT `player`,`id`,`x1`,`z1`,`x2`,`z2` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? ORDER BY `time` ASC, `id` ASC";
+        GET_EDITS_USER_ASC = "SELECT `player`,`id`,`x1`,`z1`,`x2`,`z2` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? AND `player`=? ORDER BY `time` ASC, `id` ASC";
         DELETE_EDITS_USER = "DELETE FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? AND `player`=?";
         DELETE_EDIT_USER = "DELETE FROM `" + prefix + "edits` WHERE `player`=? AND `id`=?";
+
+        // R*Tree of the edit bounds, keyed by the rowid of the edit (kept in sync by triggers)
+        CREATE_INDEX = "CREATE VIRTUAL TABLE IF NOT EXISTS `" + prefix + "edits_index` USING rtree(`id`,`x1`,`x2`,`y1`,`y2`,`z1`,`z2`)";
+        CREATE_INDEX_TIME = "CREATE INDEX IF NOT EXISTS `" + prefix + "edits_time` ON `" + prefix + "edits` (`time`)";
+        CREATE_TRIGGER_INSERT = "CREATE TRIGGER IF NOT EXISTS `" + prefix + "edits_index_insert` AFTER INSERT ON `" + prefix + "edits` BEGIN INSERT OR REPLACE INTO `" + prefix + "edits_index` VALUES (new.rowid, new.x1, new.x2, new.y1, new.y2, new.z1, new.z2); END";
+        CREATE_TRIGGER_DELETE = "CREATE TRIGGER IF NOT EXISTS `" + prefix + "edits_index_delete` AFTER DELETE ON `" + prefix + "edits` BEGIN DELETE FROM `" + prefix + "edits_index` WHERE `id`=old.rowid; END";
+        POPULATE_INDEX = "INSERT OR REPLACE INTO `" + prefix + "edits_index` SELECT `rowid`,`x1`,`x2`,`y1`,`y2`,`z1`,`z2` FROM `" + prefix + "edits`";
+        // The R*Tree stores floats, so it may return false positives; the exact bounds are checked against the edits table
+        String indexed = "SELECT e.`player`,e.`id`,e.`x1`,e.`z1`,e.`x2`,e.`z2` FROM `" + prefix + "edits_index` i JOIN `" + prefix + "edits` e ON e.`rowid`=i.`id` WHERE i.`x2`>=? AND i.`x1`<=? AND i.`y2`>=? AND i.`y1`<=? AND i.`z2`>=? AND i.`z1`<=? AND e.`x2`>=? AND e.`x1`<=? AND e.`y2`>=? AND e.`y1`<=? AND e.`z2`>=? AND e.`z1`<=? AND e.`time`>?";
+        GET_EDITS_INDEXED = indexed + " ORDER BY e.`time` DESC, e.`id` DESC";
+        GET_EDITS_USER_INDEXED = indexed + " AND e.`player`=? ORDER BY e.`time` DESC, e.`id` DESC";
+        GET_EDITS_INDEXED_ASC = indexed + " ORDER BY e.`time` ASC, e.`id` ASC";
+        GET_EDITS_USER_INDEXED_ASC = indexed + " AND e.`player`=? ORDER BY e.`time` ASC, e.`id` ASC";
         init();
         purge((int) TimeUnit.DAYS.toMillis(Settings.IMP.HISTORY.DELETE_AFTER_DAYS));
     }
@@ -94,6 +124,44 @@ public void init() {
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(CREATE_INDEX_TIME);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        initSpatialIndex();
+    }
+
+    /**
+     * Create the R*Tree index of edit bounds, and populate it from existing edits if it's new
+     */
+    private void initSpatialIndex() {
+        try (Statement stmt = connection.createStatement()) {
+            boolean exists;
+            try (ResultSet result = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type='table' AND name='" + prefix + "edits_index'")) {
+                exists = result.next();
+            }
+            stmt.executeUpdate(CREATE_INDEX);
+            stmt.executeUpdate(CREATE_TRIGGER_INSERT);
+            stmt.executeUpdate(CREATE_TRIGGER_DELETE);
+            if (!exists) {
+                Fawe.debug("Indexing rollback database for " + worldName);
+                stmt.executeUpdate(POPULATE_INDEX);
+            }
+            spatial = true;
+        } catch (SQLException e) {
+            Fawe.debug("Spatial index unavailable for " + worldName + " (" + e.getMessage() + "), rollback lookups will scan the database");
+            spatial = false;
+        }
+    }
+
+    private void setBounds(PreparedStatement stmt, int offset, BlockVector3 pos1, BlockVector3 pos2) throws SQLException {
+        stmt.setInt(offset, pos1.getBlockX());
+        stmt.setInt(offset + 1, pos2.getBlockX());
+        stmt.setByte(offset + 2, (byte) (pos1.getBlockY() - 128));
+        stmt.setByte(offset + 3, (byte) (pos2.getBlockY() - 128));
+        stmt.setInt(offset + 4, pos1.getBlockZ());
+        stmt.setInt(offset + 5, pos2.getBlockZ());
     }
 
     public void delete(final UUID uuid, final int id) {
@@ -128,39 +196,60 @@ public void run() {
     }
 
     public void getPotentialEdits(final UUID uuid, final long minTime, final BlockVector3 pos1, final BlockVector3 pos2, final RunnableVal<DiskStorageHistory> onEach, final Runnable whenDone, final boolean delete, final boolean ascending) {
+        getPotentialEdits(uuid, minTime, pos1, pos2, onEach, whenDone, delete, ascending, false);
+    }
+
+    /**
+     * @param parallel if edits which don't share any chunks can be passed to onEach concurrently (see {@link RollbackReplay})
+     */
+    public void getPotentialEdits(final UUID uuid, final long minTime, final BlockVector3 pos1, final BlockVector3 pos2, final RunnableVal<DiskStorageHistory> onEach, final Runnable whenDone, final boolean delete, final boolean ascending, final boolean parallel) {
         final World world = FaweAPI.getWorld(this.worldName);
         addTask(new Runnable() {
             @Override
             public void run() {
-                String stmtStr = ascending ? (uuid == null ? GET_EDITS_ASC : GET_EDITS_USER_ASC) : (uuid == null ? GET_EDITS : GET_EDITS_USER);
+                String stmtStr;
+                if (spatial) {
+                    stmtStr = ascending ? (uuid == null ? GET_EDITS_INDEXED_ASC : GET_EDITS_USER_INDEXED_ASC) : (uuid == null ? GET_EDITS_INDEXED : GET_EDITS_USER_INDEXED);
+                } else {
+                    stmtStr = ascending ? (uuid == null ? GET_EDITS_ASC : GET_EDITS_USER_ASC) : (uuid == null ? GET_EDITS : GET_EDITS_USER);
+                }
                 try (PreparedStatement stmt = connection.prepareStatement(stmtStr)) {
-                    stmt.setInt(1, pos1.getBlockX());
-                    stmt.setInt(2, pos2.getBlockX());
-                    stmt.setByte(3, (byte) (pos1.getBlockY() - 128));
-                    stmt.setByte(4, (byte) (pos2.getBlockY() - 128));
-                    stmt.setInt(5, pos1.getBlockZ());
-                    stmt.setInt(6, pos2.getBlockZ());
-                    stmt.setInt(7, (int) (minTime / 1000));
+                    int index = 1;
+                    if (spatial) {
+                        setBounds(stmt, index, pos1, pos2);
+                        index += 6;
+                    }
+                    setBounds(stmt, index, pos1, pos2);
+                    index += 6;
+                    stmt.setInt(index++, (int) (minTime / 1000));
                     if (uuid != null) {
                         byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                        stmt.setBytes(8, uuidBytes);
+                        stmt.setBytes(index, uuidBytes);
                     }
                     ResultSet result = stmt.executeQuery();
                     if (!result.next()) {
                         TaskManager.IMP.taskNow(whenDone, false);
                         return;
                     }
+                    RollbackReplay<DiskStorageHistory> replay = parallel ? new RollbackReplay<>() : null;
                     do {
                         byte[] uuidBytes = result.getBytes(1);
-                        int index = result.getInt(2);
+                        int id = result.getInt(2);
                         ByteBuffer bb = ByteBuffer.wrap(uuidBytes);
                         long high = bb.getLong();
                         long low = bb.getLong();
-                        DiskStorageHistory history = new DiskStorageHistory(world, new UUID(high, low), index);
+                        DiskStorageHistory history = new DiskStorageHistory(world, new UUID(high, low), id);
                         if (history.getBDFile().exists()) {
-                            onEach.run(history);
+                            if (replay != null) {
+                                replay.add(history, result.getInt(3), result.getInt(4), result.getInt(5), result.getInt(6));
+                            } else {
+                                onEach.run(history);
+                            }
                         }
                     } while (result.next());
+                    if (replay != null) {
+                        replay.run(onEach);
+                    }
                     TaskManager.IMP.taskNow(whenDone, false);
                 } catch (SQLException e) {
                     e.printStackTrace();
@@ -222,6 +311,7 @@ private boolean sendBatch() {
             }
 
             try (PreparedStatement stmt = connection.prepareStatement(INSERT_EDIT)) {
+                int batched = 0;
                 for (RollbackOptimizedHistory change : copy) {
                     // `player`,`id`,`x1`,`y1`,`z1`,`x2`,`y2`,`z2`,`time`
                     UUID uuid = change.getUUID();
@@ -235,8 +325,14 @@ private boolean sendBatch() {
                     stmt.setByte(7, (byte) (change.getMaxY() - 128));
                     stmt.setInt(8, change.getMaxZ());
                     stmt.setInt(9, (int) (change.getTime() / 1000));
-                    stmt.executeUpdate();
-                    stmt.clearParameters();
+                    stmt.addBatch();
+                    if (++batched >= BATCH_SIZE) {
+                        stmt.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched != 0) {
+                    stmt.executeBatch();
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -281,12 +377,23 @@ public Connection openConnection() throws SQLException, ClassNotFoundException {
         }
         Class.forName("org.sqlite.JDBC");
         connection = DriverManager.getConnection("jdbc:sqlite:" + dbLocation);
+        configure(connection);
         return connection;
     }
 
+    private void configure(Connection connection) {
+        try (Statement stmt = connection.createStatement()) {
+            // Delete triggers only fire for rows removed by INSERT OR REPLACE if recursive triggers are on (keeps the spatial index in sync)
+            stmt.execute("PRAGMA recursive_triggers = ON");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     public Connection forceConnection() throws SQLException, ClassNotFoundException {
         Class.forName("org.sqlite.JDBC");
         connection = DriverManager.getConnection("jdbc:sqlite:" + dbLocation);
+        configure(connection);
         return connection;
     }
 
@@ -0,0 +1,157 @@
+package com.boydti.fawe.database;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.RunnableVal;
+import com.boydti.fawe.util.MainUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the edits matched by a rollback, running edits which don't share any chunks at the same time<br>
+ * - Edits which share a chunk are always replayed in the order they were added
+ * - An edit is replayed in the wave after the last overlapping edit added before it
+ * - Each wave is replayed on a dedicated executor with queue.parallel-threads threads<br>
+ * Replays block until the main thread has set their chunks, so they must never run on the SetQueue pool, which the main thread waits to become quiet.
+ *
+ * @param <T> the edit (e.g. a {@link com.boydti.fawe.object.changeset.DiskStorageHistory})
+ */
+public class RollbackReplay<T> {
+
+    private static ThreadPoolExecutor executor;
+
+    private final List<Entry<T>> entries = new ArrayList<>();
+    private int waves;
+
+    private static synchronized ThreadPoolExecutor getExecutor(int threads) {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FAWE rollback replay-%d").build());
+            executor.allowCoreThreadTimeOut(true);
+        } else if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else if (threads < executor.getMaximumPoolSize()) {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+        return executor;
+    }
+
+    /**
+     * Add an edit to replay
+     *
+     * @param edit    the edit
+     * @param minX    the minimum block x of the edit
+     * @param minZ    the minimum block z of the edit
+     * @param maxX    the maximum block x of the edit
+     * @param maxZ    the maximum block z of the edit
+     */
+    public void add(T edit, int minX, int minZ, int maxX, int maxZ) {
+        Entry<T> entry = new Entry<>(edit, minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4);
+        for (Entry<T> other : entries) {
+            if (other.wave >= entry.wave && entry.overlaps(other)) {
+                entry.wave = other.wave + 1;
+            }
+        }
+        waves = Math.max(waves, entry.wave + 1);
+        entries.add(entry);
+    }
+
+    /**
+     * @return the number of edits added
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Replay every edit, blocking until they have all completed
+     *
+     * @param onEach the task which replays an edit
+     */
+    public void run(RunnableVal<T> onEach) {
+        run(onEach, Settings.IMP.QUEUE.PARALLEL_THREADS);
+    }
+
+    /**
+     * Replay every edit, blocking until they have all completed
+     *
+     * @param onEach  the task which replays an edit
+     * @param threads the maximum number of edits to replay at once
+     */
+    public void run(RunnableVal<T> onEach, int threads) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (threads <= 1 || waves == entries.size()) {
+            for (Entry<T> entry : entries) {
+                replay(onEach, entry.edit);
+            }
+            return;
+        }
+        ThreadPoolExecutor executor = getExecutor(threads);
+        List<List<Entry<T>>> byWave = new ArrayList<>(waves);
+        for (int i = 0; i < waves; i++) {
+            byWave.add(new ArrayList<>());
+        }
+        for (Entry<T> entry : entries) {
+            byWave.get(entry.wave).add(entry);
+        }
+        ArrayDeque<Future<?>> running = new ArrayDeque<>();
+        for (List<Entry<T>> wave : byWave) {
+            for (Entry<T> entry : wave) {
+                if (running.size() >= threads) {
+                    await(running.poll());
+                }
+                running.add(executor.submit(() -> replay(onEach, entry.edit)));
+            }
+            // The next wave overlaps with this one
+            while (!running.isEmpty()) {
+                await(running.poll());
+            }
+        }
+    }
+
+    private void replay(RunnableVal<T> onEach, T edit) {
+        try {
+            onEach.run(edit);
+        } catch (Throwable e) {
+            MainUtil.handleError(e);
+        }
+    }
+
+    private void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            MainUtil.handleError(e);
+        } catch (ExecutionException e) {
+            MainUtil.handleError(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private static final class Entry<T> {
+        private final T edit;
+        private final int minX, minZ, maxX, maxZ;
+        private int wave;
+
+        private Entry(T edit, int minX, int minZ, int maxX, int maxZ) {
+            this.edit = edit;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+        }
+
+        private boolean overlaps(Entry<T> other) {
+            return minX <= other.maxX && maxX >= other.minX && minZ <= other.maxZ && maxZ >= other.minZ;
+        }
+    }
+}
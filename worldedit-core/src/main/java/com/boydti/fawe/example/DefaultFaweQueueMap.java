@@ -19,8 +19,12 @@ public class DefaultFaweQueueMap implements IFaweQueueMap {
 
     private final MappedFaweQueue parent;
 
+    private final QueuedChunkPacker packer;
+
     public DefaultFaweQueueMap(MappedFaweQueue parent) {
         this.parent = parent;
+        int recent = parent.getSettings().QUEUE.PACK_AFTER_CHUNKS;
+        this.packer = recent > 0 ? new QueuedChunkPacker(recent) : null;
     }
 
     public final Long2ObjectOpenHashMap<FaweChunk> blocks = new Long2ObjectOpenHashMap<FaweChunk>() {
@@ -65,6 +69,9 @@ public FaweChunk getFaweChunk(int cx, int cz) {
         if (cx == lastX && cz == lastZ) {
             return lastWrappedChunk;
         }
+        if (packer != null && packer.access(cx, cz)) {
+            pack(packer.getEvicted());
+        }
         long pair = MathMan.pairInt(cx, cz);
         FaweChunk chunk = this.blocks.get(pair);
         if (chunk == null) {
@@ -79,6 +86,20 @@ public FaweChunk getFaweChunk(int cx, int cz) {
         return chunk;
     }
 
+    /**
+     * Pack a chunk which the edit has moved on from, if it's still queued
+     *
+     * @param pair
+     */
+    private void pack(long pair) {
+        synchronized (blocks) {
+            FaweChunk chunk = blocks.get(pair);
+            if (chunk instanceof IntFaweChunk) {
+                ((IntFaweChunk) chunk).pack();
+            }
+        }
+    }
+
     @Override
     public FaweChunk getCachedFaweChunk(int cx, int cz) {
         if (cx == lastX && cz == lastZ) {
@@ -118,6 +139,23 @@ private FaweChunk getNewFaweChunk(int cx, int cz) {
     private int lastX = Integer.MIN_VALUE;
     private int lastZ = Integer.MIN_VALUE;
 
+    @Override
+    public FaweChunk poll() {
+        synchronized (blocks) {
+            boolean skip = parent.getStage() == SetQueue.QueueStage.INACTIVE;
+            Iterator<Map.Entry<Long, FaweChunk>> iter = blocks.entrySet().iterator();
+            while (iter.hasNext()) {
+                FaweChunk chunk = iter.next().getValue();
+                if (skip && chunk == lastWrappedChunk) {
+                    continue;
+                }
+                iter.remove();
+                return chunk;
+            }
+            return null;
+        }
+    }
+
     @Override
     public boolean next(int amount, long time) {
         synchronized (blocks) {
@@ -135,8 +173,9 @@ public boolean next(int amount, long time) {
                             }
                             iter.remove();
                             parent.start(chunk);
-                            chunk.call();
+                            chunk.dispatch();
                             parent.end(chunk);
+                            parent.recycle(chunk);
                         } else {
                             break;
                         }
@@ -155,7 +194,7 @@ public boolean next(int amount, long time) {
                         }
                         iter.remove();
                         parent.start(chunk);
-                        service.submit(chunk);
+                        service.submit(chunk::dispatch);
                         added++;
                     }
                     // if result, then submitted = amount
@@ -170,11 +209,12 @@ public boolean next(int amount, long time) {
                                 }
                                 iter.remove();
                                 parent.start(chunk);
-                                service.submit(chunk);
+                                service.submit(chunk::dispatch);
                                 Future future = service.poll(50, TimeUnit.MILLISECONDS);
                                 if (future != null) {
                                     FaweChunk fc = (FaweChunk) future.get();
                                     parent.end(fc);
+                                    parent.recycle(fc);
                                 }
                             }
                         }
@@ -184,6 +224,7 @@ public boolean next(int amount, long time) {
                     while ((future = service.poll()) != null) {
                         FaweChunk fc = (FaweChunk) future.get();
                         parent.end(fc);
+                        parent.recycle(fc);
                     }
                 }
             } catch (Throwable e) {
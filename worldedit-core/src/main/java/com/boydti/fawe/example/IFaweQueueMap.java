@@ -21,4 +21,11 @@ public interface IFaweQueueMap {
     int size();
 
     boolean next(int size, long time);
+
+    /**
+     * Remove the next chunk that can be dispatched
+     *
+     * @return the chunk, or null if there are none
+     */
+    FaweChunk poll();
 }
@@ -2,12 +2,15 @@
 
 import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.collection.PaletteSection;
+import com.boydti.fawe.object.collection.SectionPool;
 import com.boydti.fawe.util.MathMan;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.world.biome.BiomeType;
 import com.sk89q.worldedit.world.block.BlockID;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class IntFaweChunk<T, V extends FaweQueue> extends FaweChunk<T> {
 
@@ -22,6 +25,16 @@
 
     public T chunk;
 
+    /**
+     * Bitmask of sections which are shared with other chunks, and must be copied before being modified
+     */
+    protected int sharedMask;
+    /**
+     * Sections which have been packed to save memory while the chunk waits in the queue
+     */
+    private PaletteSection[] packed;
+    private final AtomicInteger references = new AtomicInteger(1);
+
     public IntFaweChunk(FaweQueue parent, int x, int z, int[][] setBlocks, short[] count, short[] air) {
         super(parent, x, z);
         this.setBlocks = setBlocks;
@@ -101,8 +114,9 @@ public int getTotalAir() {
     @Override
     public int getBitMask() {
         int bitMask = 0;
+        PaletteSection[] packed = this.packed;
         for (int section = 0; section < setBlocks.length; section++) {
-            if (setBlocks[section] != null) {
+            if (setBlocks[section] != null || (packed != null && packed[section] != null)) {
                 bitMask += 1 << section;
             }
         }
@@ -117,14 +131,83 @@ public int getBitMask() {
      */
     @Override
     public int[] getIdArray(final int i) {
-        return this.setBlocks[i];
+        int[] array = this.setBlocks[i];
+        if (array == null && packed != null) {
+            return unpack(i);
+        }
+        return array;
     }
 
     @Override
     public int[][] getCombinedIdArrays() {
+        unpack();
         return this.setBlocks;
     }
 
+    /**
+     * Pack the sections of this chunk into a palette format<br>
+     * - Should only be called by the thread writing to the chunk, while it isn't being dispatched
+     * - Sections are unpacked again when they are next accessed
+     *
+     * @return the number of bytes saved
+     */
+    public int pack() {
+        int saved = 0;
+        for (int i = 0; i < setBlocks.length; i++) {
+            int[] array = setBlocks[i];
+            if (array == null || (sharedMask & (1 << i)) != 0) {
+                continue;
+            }
+            PaletteSection section = PaletteSection.pack(array);
+            if (section == null) {
+                continue;
+            }
+            if (packed == null) {
+                packed = new PaletteSection[setBlocks.length];
+            }
+            packed[i] = section;
+            // Not returned to the pool, in case another thread still has a reference to it
+            setBlocks[i] = null;
+            saved += 16384 - section.getMemoryUsage();
+        }
+        return saved;
+    }
+
+    /**
+     * Unpack all packed sections
+     */
+    protected void unpack() {
+        if (packed != null) {
+            for (int i = 0; i < packed.length; i++) {
+                if (packed[i] != null) {
+                    unpack(i);
+                }
+            }
+            packed = null;
+        }
+    }
+
+    /**
+     * Unpack a section
+     *
+     * @param layer
+     * @return the raw section, or null if the section wasn't packed
+     */
+    protected int[] unpack(int layer) {
+        PaletteSection[] packed = this.packed;
+        if (packed == null) {
+            return null;
+        }
+        PaletteSection section = packed[layer];
+        if (section == null) {
+            return null;
+        }
+        int[] array = section.unpack(SectionPool.IMP.take());
+        setBlocks[layer] = array;
+        packed[layer] = null;
+        return array;
+    }
+
     @Override
     public BiomeType[] getBiomeArray() {
         return this.biomes;
@@ -132,9 +215,17 @@ public BiomeType[] getBiomeArray() {
 
     @Override
     public int getBlockCombinedId(int x, int y, int z) {
-        int[] array = getIdArray(y >> 4);
+        int layer = y >> 4;
+        int[] array = this.setBlocks[layer];
         if (array == null) {
-            return 0;
+            PaletteSection[] packed = this.packed;
+            if (packed != null && packed[layer] != null) {
+                return packed[layer].get(((y & 0xF) << 8) | (z << 4) | x);
+            }
+            array = getIdArray(layer);
+            if (array == null) {
+                return 0;
+            }
         }
         return array[(((y & 0xF) << 8) | (z << 4) | x)];
     }
@@ -193,7 +284,13 @@ public void setBlock(int x, int y, int z, int combinedId) {
         final int i = y >> 4;
         int[] vs = this.setBlocks[i];
         if (vs == null) {
-            vs = this.setBlocks[i] = new int[4096];
+            vs = unpack(i);
+            if (vs == null) {
+                vs = this.setBlocks[i] = SectionPool.IMP.take();
+            }
+        } else if ((sharedMask & (1 << i)) != 0) {
+            vs = this.setBlocks[i] = SectionPool.IMP.copy(vs);
+            sharedMask &= ~(1 << i);
         }
         int index = (((y & 15) << 8) | (z << 4) | x);
         int existing = vs[index];
@@ -226,6 +323,110 @@ public void setBlock(int x, int y, int z, int combinedId) {
         return;
     }
 
+    @Override
+    public void fillCuboid(int x1, int x2, int y1, int y2, int z1, int z2, int combinedId) {
+        if (x1 != 0 || x2 != 15 || z1 != 0 || z2 != 15 || combinedId == 0) {
+            super.fillCuboid(x1, x2, y1, y2, z1, z2, combinedId);
+            return;
+        }
+        for (int layer = y1 >> 4; layer <= y2 >> 4; layer++) {
+            int minY = Math.max(y1, layer << 4);
+            int maxY = Math.min(y2, (layer << 4) + 15);
+            if (minY == layer << 4 && maxY == (layer << 4) + 15 && fillSection(layer, combinedId)) {
+                continue;
+            }
+            super.fillCuboid(0, 15, minY, maxY, 0, 15, combinedId);
+        }
+    }
+
+    /**
+     * Replace an entire section with a shared array of a single block (copy on write)
+     *
+     * @param layer
+     * @param combinedId
+     * @return false if no shared array is available
+     */
+    private boolean fillSection(int layer, int combinedId) {
+        int[] filled = SectionPool.IMP.getFilled(combinedId);
+        if (filled == null) {
+            return false;
+        }
+        int bit = 1 << layer;
+        if (packed != null) {
+            packed[layer] = null;
+        }
+        int[] previous = this.setBlocks[layer];
+        if (previous != null && (sharedMask & bit) == 0) {
+            SectionPool.IMP.release(previous);
+        }
+        this.setBlocks[layer] = filled;
+        this.sharedMask |= bit;
+        this.count[layer] = 4096;
+        switch (combinedId) {
+            case BlockID.AIR:
+            case BlockID.CAVE_AIR:
+            case BlockID.VOID_AIR:
+                this.air[layer] = 4096;
+                break;
+            default:
+                this.air[layer] = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Get the sections to use for a shallow copy of this chunk<br>
+     * - The sections become shared, so neither chunk will see changes made to the other
+     * - The copy should set its {@link #sharedMask} to this chunk's
+     *
+     * @return a new array referencing the same sections
+     */
+    protected int[][] shareSections() {
+        unpack();
+        this.sharedMask |= getBitMask();
+        return this.setBlocks.clone();
+    }
+
+    /**
+     * Get the sections to use for a deep copy of this chunk
+     *
+     * @return a new array with copies of each section
+     */
+    protected int[][] copySections() {
+        unpack();
+        int[][] copy = new int[setBlocks.length][];
+        for (int i = 0; i < setBlocks.length; i++) {
+            int[] array = setBlocks[i];
+            if (array != null) {
+                copy[i] = SectionPool.IMP.copy(array);
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public void retain() {
+        references.incrementAndGet();
+    }
+
+    @Override
+    public void recycle() {
+        if (references.decrementAndGet() != 0) {
+            return;
+        }
+        for (int i = 0; i < setBlocks.length; i++) {
+            int[] array = setBlocks[i];
+            if (array != null) {
+                if ((sharedMask & (1 << i)) == 0) {
+                    SectionPool.IMP.release(array);
+                }
+                setBlocks[i] = null;
+            }
+        }
+        sharedMask = 0;
+        packed = null;
+    }
+
     @Deprecated
     public void setBitMask(int ignore) {
         // Remove
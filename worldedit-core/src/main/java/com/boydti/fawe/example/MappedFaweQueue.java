@@ -200,10 +200,17 @@ public boolean next(int amount, long time) {
         return map.next(amount, time);
     }
 
+    @Override
+    public FaweChunk pollChunk() {
+        return map.poll();
+    }
+
+    @Override
     public void start(FaweChunk chunk) {
         chunk.start();
     }
 
+    @Override
     public void end(FaweChunk chunk) {
         if (getProgressTask() != null) {
             getProgressTask().run(ProgressType.DISPATCH, size() + 1);
@@ -211,6 +218,16 @@ public void end(FaweChunk chunk) {
         chunk.end();
     }
 
+    /**
+     * Chunks dispatched while the edit is still running aren't recycled, as the edit may still be writing to them
+     */
+    @Override
+    public void recycle(FaweChunk chunk) {
+        if (getStage() != SetQueue.QueueStage.INACTIVE) {
+            chunk.recycle();
+        }
+    }
+
     @Override
     public void runTasks() {
         synchronized (this) {
@@ -4,44 +4,49 @@
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
-import com.boydti.fawe.object.IntegerTrio;
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.collection.BlockVectorSet;
+import com.boydti.fawe.object.collection.LongQueue;
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.boydti.fawe.util.MathMan;
 import com.boydti.fawe.util.TaskManager;
-import com.google.common.io.LineReader;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
-import java.io.*;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Relights the chunks changed by a queue<br>
+ * - Sky light is propagated down a layer at a time, with the chunks of each layer lit in parallel
+ * - Block light is split into tiles of 4x4 chunks, which are lit in parallel. Light crossing the edge of a tile is handed
+ *   to the neighbouring tile for the next round, until no light is left to spread
+ * - Positions are packed into longs and queued in a {@link LongQueue}, so propagation doesn't allocate per block
+ * - Chunks are only loaded by the thread calling the relighter, the workers only use chunks it has already loaded
+ */
 public class NMSRelighter implements Relighter {
+    private static final int TILE_BITS = 2;
+    private static final int SKY_BATCH = 16;
+    // Marks a chunk which couldn't be loaded
+    private static final Object NONE = new Object();
+
     private final NMSMappedFaweQueue queue;
 
     private final Map<Long, RelightSkyEntry> skyToRelight;
-    private final Object present = new Object();
     private final Map<Long, Integer> chunksToSend;
     private final ConcurrentLinkedQueue<RelightSkyEntry> queuedSkyToRelight = new ConcurrentLinkedQueue<>();
 
-    private final Map<Long, long[][][] /* z y x */ > lightQueue;
-    private final AtomicBoolean lightLock = new AtomicBoolean(false);
-    private final ConcurrentHashMap<Long, long[][][]> concurrentLightQueue;
+    private final ConcurrentHashMap<Long, long[][][] /* z x y */ > lightQueue;
+    private final Object blockLock = new Object();
 
     private final int maxY;
-    private volatile boolean relighting = false;
-
-    public final IntegerTrio mutableBlockPos = new IntegerTrio();
 
     private static final int DISPATCH_SIZE = 64;
     private boolean removeFirst;
@@ -49,15 +54,14 @@ public class NMSRelighter implements Relighter {
     public NMSRelighter(NMSMappedFaweQueue queue) {
         this.queue = queue;
         this.skyToRelight = new Long2ObjectOpenHashMap<>();
-        this.lightQueue = new Long2ObjectOpenHashMap<>();
+        this.lightQueue = new ConcurrentHashMap<>();
         this.chunksToSend = new Long2ObjectOpenHashMap<>();
-        this.concurrentLightQueue = new ConcurrentHashMap<>();
         this.maxY = queue.getMaxY();
     }
 
     @Override
     public boolean isEmpty() {
-        return skyToRelight.isEmpty() && lightQueue.isEmpty() && queuedSkyToRelight.isEmpty() && concurrentLightQueue.isEmpty();
+        return skyToRelight.isEmpty() && lightQueue.isEmpty() && queuedSkyToRelight.isEmpty();
     }
 
     @Override
@@ -81,26 +85,15 @@ private void set(int x, int y, int z, long[][][] map) {
 
     public void addLightUpdate(int x, int y, int z) {
         long index = MathMan.pairInt(x >> 4, z >> 4);
-        if (lightLock.compareAndSet(false, true)) {
-            synchronized (lightQueue) {
-                try {
-                    long[][][] currentMap = lightQueue.get(index);
-                    if (currentMap == null) {
-                        currentMap = new long[16][][];
-                        this.lightQueue.put(index, currentMap);
-                    }
+        while (true) {
+            long[][][] currentMap = lightQueue.computeIfAbsent(index, k -> new long[16][][]);
+            synchronized (currentMap) {
+                // The chunk may have been taken by fixBlockLighting in the meantime
+                if (lightQueue.get(index) == currentMap) {
                     set(x & 15, y, z & 15, currentMap);
-                } finally {
-                    lightLock.set(false);
+                    return;
                 }
             }
-        } else {
-            long[][][] currentMap = concurrentLightQueue.get(index);
-            if (currentMap == null) {
-                currentMap = new long[16][][];
-                this.concurrentLightQueue.put(index, currentMap);
-            }
-            set(x & 15, y, z & 15, currentMap);
         }
     }
 
@@ -109,7 +102,6 @@ public synchronized void clear() {
         skyToRelight.clear();
         chunksToSend.clear();
         lightQueue.clear();
-        concurrentLightQueue.clear();
     }
 
     public boolean addChunk(int cx, int cz, byte[] fix, int bitmask) {
@@ -151,50 +143,243 @@ public synchronized void removeLighting() {
     }
 
     public void updateBlockLight(Map<Long, long[][][]> map) {
-        int size = map.size();
-        if (size == 0) {
+        if (map.isEmpty()) {
             return;
         }
-        Queue<IntegerTrio> lightPropagationQueue = new ArrayDeque<>();
-        Queue<Object[]> lightRemovalQueue = new ArrayDeque<>();
-        Map<IntegerTrio, Object> visited = new HashMap<>();
-        Map<IntegerTrio, Object> removalVisited = new HashMap<>();
-
+        Long2ObjectOpenHashMap<Object> resolved = new Long2ObjectOpenHashMap<>();
+        Long2ObjectOpenHashMap<LightTile> tiles = new Long2ObjectOpenHashMap<>();
+        List<LightTile> active = new ArrayList<>();
         Iterator<Map.Entry<Long, long[][][]>> iter = map.entrySet().iterator();
-        while (iter.hasNext() && size-- > 0) {
+        while (iter.hasNext()) {
             Map.Entry<Long, long[][][]> entry = iter.next();
             long index = entry.getKey();
-            long[][][] blocks = entry.getValue();
             int chunkX = MathMan.unpairIntX(index);
             int chunkZ = MathMan.unpairIntY(index);
-            int bx = chunkX << 4;
-            int bz = chunkZ << 4;
-            for (int lz = 0; lz < blocks.length; lz++) {
-                long[][] m1 = blocks[lz];
-                if (m1 == null) continue;
-                for (int lx = 0; lx < m1.length; lx++) {
-                    long[] m2 = m1[lx];
-                    if (m2 == null) continue;
-                    for (int i = 0; i < m2.length; i++) {
-                        int yStart = i << 6;
-                        long value = m2[i];
-                        if (value != 0) {
-                            for (int j = 0; j < 64; j++) {
-                                if (((value >> j) & 1) == 1) {
-                                    int x = lx + bx;
-                                    int y = yStart + j;
-                                    int z = lz + bz;
-                                    int oldLevel = queue.getEmmittedLight(x, y, z);
-                                    int newLevel = queue.getBrightness(x, y, z);
-                                    if (oldLevel != newLevel) {
-                                        queue.setBlockLight(x, y, z, newLevel);
-                                        IntegerTrio node = new IntegerTrio(x, y, z);
-                                        if (newLevel < oldLevel) {
-                                            removalVisited.put(node, present);
-                                            lightRemovalQueue.add(new Object[]{node, oldLevel});
-                                        } else {
-                                            visited.put(node, present);
-                                            lightPropagationQueue.add(node);
+            if (resolve(resolved, chunkX, chunkZ) != NONE) {
+                getTile(tiles, resolved, chunkX, chunkZ, active).seeds.put(index, entry.getValue());
+            }
+            iter.remove();
+        }
+        // Remove the old light everywhere first, then spread the new light
+        propagateBlockLight(tiles, resolved, active, false);
+        active = new ArrayList<>();
+        for (LightTile tile : tiles.values()) {
+            if (!tile.spread.isEmpty()) {
+                tile.scheduled = true;
+                active.add(tile);
+            }
+        }
+        propagateBlockLight(tiles, resolved, active, true);
+    }
+
+    private void propagateBlockLight(Long2ObjectOpenHashMap<LightTile> tiles, Long2ObjectOpenHashMap<Object> resolved, List<LightTile> active, boolean spreading) {
+        while (!active.isEmpty()) {
+            for (LightTile tile : active) {
+                tile.spreading = spreading;
+                tile.scheduled = false;
+            }
+            parallel(active);
+            // Hand the light which crossed a tile edge to the neighbouring tile
+            List<LightTile> next = new ArrayList<>();
+            for (LightTile tile : active) {
+                LongQueue outgoing = tile.outgoing;
+                while (!outgoing.isEmpty()) {
+                    long node = outgoing.poll();
+                    int chunkX = unpackX(node) >> 4;
+                    int chunkZ = unpackZ(node) >> 4;
+                    if (resolve(resolved, chunkX, chunkZ) != NONE) {
+                        getTile(tiles, resolved, chunkX, chunkZ, next).incoming.add(node);
+                    }
+                }
+            }
+            active = next;
+        }
+    }
+
+    private LightTile getTile(Long2ObjectOpenHashMap<LightTile> tiles, Long2ObjectOpenHashMap<Object> resolved, int chunkX, int chunkZ, List<LightTile> schedule) {
+        int tileX = chunkX >> TILE_BITS;
+        int tileZ = chunkZ >> TILE_BITS;
+        long key = MathMan.pairInt(tileX, tileZ);
+        LightTile tile = tiles.get(key);
+        if (tile == null) {
+            tiles.put(key, tile = new LightTile(tileX, tileZ, resolved));
+        }
+        if (!tile.scheduled) {
+            tile.scheduled = true;
+            schedule.add(tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Load a chunk's sections (only called by the thread calling the relighter)
+     *
+     * @return the sections, or NONE if the chunk couldn't be loaded
+     */
+    private Object resolve(Long2ObjectOpenHashMap<Object> resolved, int chunkX, int chunkZ) {
+        long key = MathMan.pairInt(chunkX, chunkZ);
+        Object sections = resolved.get(key);
+        if (sections == null) {
+            Object chunk = queue.ensureChunkLoaded(chunkX, chunkZ);
+            sections = chunk == null ? null : queue.getSections(chunk);
+            if (sections == null) {
+                sections = NONE;
+            }
+            resolved.put(key, sections);
+        }
+        return sections;
+    }
+
+    private void parallel(List<? extends Runnable> tasks) {
+        if (tasks.size() <= 1 || Settings.IMP.QUEUE.PARALLEL_THREADS <= 1 || TaskManager.IMP == null) {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            return;
+        }
+        ForkJoinPool pool = TaskManager.IMP.getPublicForkJoinPool();
+        ForkJoinTask[] futures = new ForkJoinTask[tasks.size() - 1];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = pool.submit(tasks.get(i + 1));
+        }
+        try {
+            tasks.get(0).run();
+        } finally {
+            for (ForkJoinTask future : futures) {
+                future.join();
+            }
+        }
+    }
+
+    // x: 26 bits, z: 26 bits, y: 8 bits, light: 4 bits
+    private static long pack(int x, int y, int z, int light) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | ((y & 0xFF) << 4) | light;
+    }
+
+    private static int unpackX(long node) {
+        return (int) (node >> 38);
+    }
+
+    private static int unpackZ(long node) {
+        return (int) (node << 26 >> 38);
+    }
+
+    private static int unpackY(long node) {
+        return (int) (node >> 4) & 0xFF;
+    }
+
+    private static int unpackLight(long node) {
+        return (int) node & 15;
+    }
+
+    /**
+     * The block light of a 4x4 chunk area<br>
+     * - Only reads and writes blocks in its own chunks, so tiles can be lit in parallel
+     * - Light leaving the tile (or entering a chunk which isn't loaded yet) is added to {@link #outgoing}
+     */
+    private final class LightTile implements Runnable {
+        private final int tileX;
+        private final int tileZ;
+        private final Long2ObjectOpenHashMap<Object> resolved;
+        private final Long2ObjectOpenHashMap<long[][][]> seeds = new Long2ObjectOpenHashMap<>();
+        private final LongQueue removal = new LongQueue();
+        private final LongQueue spread = new LongQueue();
+        private final LongQueue incoming = new LongQueue();
+        private final LongQueue outgoing = new LongQueue();
+        private boolean spreading;
+        private boolean scheduled;
+
+        private int lastX = Integer.MIN_VALUE;
+        private int lastZ = Integer.MIN_VALUE;
+        private int lastY = -1;
+        private Object lastSections;
+        private Object lastSection;
+
+        private LightTile(int tileX, int tileZ, Long2ObjectOpenHashMap<Object> resolved) {
+            this.tileX = tileX;
+            this.tileZ = tileZ;
+            this.resolved = resolved;
+        }
+
+        @Override
+        public void run() {
+            if (!seeds.isEmpty()) {
+                seed();
+            }
+            if (spreading) {
+                while (!incoming.isEmpty()) {
+                    long node = incoming.poll();
+                    int x = unpackX(node);
+                    int z = unpackZ(node);
+                    if (owns(x, z)) {
+                        spreadTo(x, unpackY(node), z, unpackLight(node));
+                    }
+                }
+                while (!spread.isEmpty()) {
+                    long node = spread.poll();
+                    int x = unpackX(node);
+                    int y = unpackY(node);
+                    int z = unpackZ(node);
+                    if (!owns(x, z)) continue;
+                    Object section = getSection(y);
+                    if (section == null) continue;
+                    int lightLevel = queue.getEmmittedLight(section, x, y, z);
+                    if (lightLevel > 1) {
+                        visitAround(x, y, z, lightLevel);
+                    }
+                }
+            } else {
+                while (!incoming.isEmpty()) {
+                    long node = incoming.poll();
+                    int x = unpackX(node);
+                    int z = unpackZ(node);
+                    if (owns(x, z)) {
+                        removeAt(x, unpackY(node), z, unpackLight(node));
+                    }
+                }
+                while (!removal.isEmpty()) {
+                    long node = removal.poll();
+                    visitAround(unpackX(node), unpackY(node), unpackZ(node), unpackLight(node));
+                }
+            }
+        }
+
+        private void seed() {
+            for (Map.Entry<Long, long[][][]> entry : seeds.entrySet()) {
+                long index = entry.getKey();
+                long[][][] blocks = entry.getValue();
+                int bx = MathMan.unpairIntX(index) << 4;
+                int bz = MathMan.unpairIntY(index) << 4;
+                for (int lz = 0; lz < blocks.length; lz++) {
+                    long[][] m1 = blocks[lz];
+                    if (m1 == null) continue;
+                    for (int lx = 0; lx < m1.length; lx++) {
+                        long[] m2 = m1[lx];
+                        if (m2 == null) continue;
+                        int x = lx + bx;
+                        int z = lz + bz;
+                        if (!owns(x, z)) continue;
+                        for (int i = 0; i < m2.length; i++) {
+                            int yStart = i << 6;
+                            long value = m2[i];
+                            if (value != 0) {
+                                for (int j = 0; j < 64; j++) {
+                                    if (((value >> j) & 1) == 1) {
+                                        int y = yStart + j;
+                                        Object section = getSection(y);
+                                        if (section == null) continue;
+                                        int oldLevel = queue.getEmmittedLight(section, x, y, z);
+                                        int newLevel = queue.getBrightness(section, x, y, z);
+                                        if (oldLevel != newLevel) {
+                                            queue.setBlockLight(section, x, y, z, newLevel);
+                                            if (newLevel < oldLevel) {
+                                                removal.add(pack(x, y, z, oldLevel));
+                                                if (newLevel > 1) {
+                                                    spread.add(pack(x, y, z, 0));
+                                                }
+                                            } else {
+                                                spread.add(pack(x, y, z, 0));
+                                            }
                                         }
                                     }
                                 }
@@ -203,85 +388,101 @@ public void updateBlockLight(Map<Long, long[][][]> map) {
                     }
                 }
             }
-            iter.remove();
+            seeds.clear();
         }
 
-        while (!lightRemovalQueue.isEmpty()) {
-            Object[] val = lightRemovalQueue.poll();
-            IntegerTrio node = (IntegerTrio) val[0];
-            int lightLevel = (int) val[1];
-
-            this.computeRemoveBlockLight(node.x - 1, node.y, node.z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(node.x + 1, node.y, node.z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            if (node.y > 0) {
-                this.computeRemoveBlockLight(node.x, node.y - 1, node.z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
+        private void visitAround(int x, int y, int z, int lightLevel) {
+            visit(x - 1, y, z, lightLevel);
+            visit(x + 1, y, z, lightLevel);
+            if (y > 0) {
+                visit(x, y - 1, z, lightLevel);
             }
-            if (node.y < 255) {
-                this.computeRemoveBlockLight(node.x, node.y + 1, node.z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
+            if (y < maxY) {
+                visit(x, y + 1, z, lightLevel);
             }
-            this.computeRemoveBlockLight(node.x, node.y, node.z - 1, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(node.x, node.y, node.z + 1, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
+            visit(x, y, z - 1, lightLevel);
+            visit(x, y, z + 1, lightLevel);
         }
 
-        while (!lightPropagationQueue.isEmpty()) {
-            IntegerTrio node = lightPropagationQueue.poll();
-            int lightLevel = queue.getEmmittedLight(node.x, node.y, node.z);
-            if (lightLevel > 1) {
-                this.computeSpreadBlockLight(node.x - 1, node.y, node.z, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(node.x + 1, node.y, node.z, lightLevel, lightPropagationQueue, visited);
-                if (node.y > 0) {
-                    this.computeSpreadBlockLight(node.x, node.y - 1, node.z, lightLevel, lightPropagationQueue, visited);
-                }
-                if (node.y < 255) {
-                    this.computeSpreadBlockLight(node.x, node.y + 1, node.z, lightLevel, lightPropagationQueue, visited);
-                }
-                this.computeSpreadBlockLight(node.x, node.y, node.z - 1, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(node.x, node.y, node.z + 1, lightLevel, lightPropagationQueue, visited);
+        private void visit(int x, int y, int z, int lightLevel) {
+            if (!owns(x, z)) {
+                outgoing.add(pack(x, y, z, lightLevel));
+            } else if (spreading) {
+                spreadTo(x, y, z, lightLevel);
+            } else {
+                removeAt(x, y, z, lightLevel);
             }
         }
-    }
 
-    private void computeRemoveBlockLight(int x, int y, int z, int currentLight, Queue<Object[]> queue, Queue<IntegerTrio> spreadQueue, Map<IntegerTrio, Object> visited,
-                                         Map<IntegerTrio, Object> spreadVisited) {
-        int current = this.queue.getEmmittedLight(x, y, z);
-        if (current != 0 && current < currentLight) {
-            this.queue.setBlockLight(x, y, z, 0);
-            if (current > 1) {
-                if (!visited.containsKey(mutableBlockPos)) {
-                    IntegerTrio index = new IntegerTrio(x, y, z);
-                    visited.put(index, present);
-                    queue.add(new Object[]{index, current});
+        private void removeAt(int x, int y, int z, int currentLight) {
+            Object section = getSection(y);
+            if (section == null) return;
+            int current = queue.getEmmittedLight(section, x, y, z);
+            if (current != 0 && current < currentLight) {
+                // Keep the light the block emits itself
+                int brightness = queue.getBrightness(section, x, y, z);
+                queue.setBlockLight(section, x, y, z, brightness);
+                // Even at 1, as the neighbours may need to spread light back into it
+                removal.add(pack(x, y, z, current));
+                if (brightness > 1) {
+                    spread.add(pack(x, y, z, 0));
                 }
+            } else if (current >= currentLight) {
+                // Lit by another source, which needs to spread back into the removed area
+                spread.add(pack(x, y, z, 0));
             }
-        } else if (current >= currentLight) {
-            mutableBlockPos.set(x, y, z);
-            if (!spreadVisited.containsKey(mutableBlockPos)) {
-                IntegerTrio index = new IntegerTrio(x, y, z);
-                spreadVisited.put(index, present);
-                spreadQueue.add(index);
+        }
+
+        private void spreadTo(int x, int y, int z, int currentLight) {
+            Object section = getSection(y);
+            if (section == null) return;
+            currentLight = currentLight - Math.max(1, queue.getOpacity(section, x, y, z));
+            if (currentLight > 0 && queue.getEmmittedLight(section, x, y, z) < currentLight) {
+                queue.setBlockLight(section, x, y, z, currentLight);
+                if (currentLight > 1) {
+                    spread.add(pack(x, y, z, 0));
+                }
             }
         }
-    }
 
-    private void computeSpreadBlockLight(int x, int y, int z, int currentLight, Queue<IntegerTrio> queue, Map<IntegerTrio, Object> visited) {
-        currentLight = currentLight - Math.max(1, this.queue.getOpacity(x, y, z));
-        if (currentLight > 0) {
-            int current = this.queue.getEmmittedLight(x, y, z);
-            if (current < currentLight) {
-                this.queue.setBlockLight(x, y, z, currentLight);
-                mutableBlockPos.set(x, y, z);
-                if (!visited.containsKey(mutableBlockPos)) {
-                    visited.put(new IntegerTrio(x, y, z), present);
-                    if (currentLight > 1) {
-                        queue.add(new IntegerTrio(x, y, z));
-                    }
+        /**
+         * @return if the block is in a loaded chunk of this tile (and select the chunk for {@link #getSection(int)})
+         */
+        private boolean owns(int x, int z) {
+            int cx = x >> 4;
+            int cz = z >> 4;
+            if (cx != lastX || cz != lastZ) {
+                if ((cx >> TILE_BITS) != tileX || (cz >> TILE_BITS) != tileZ) {
+                    return false;
+                }
+                Object sections = resolved.get(MathMan.pairInt(cx, cz));
+                if (sections == null) {
+                    return false;
                 }
+                lastX = cx;
+                lastZ = cz;
+                lastY = -1;
+                lastSections = sections;
             }
+            return true;
+        }
+
+        private Object getSection(int y) {
+            if (lastSections == NONE) {
+                return null;
+            }
+            int cy = y >> 4;
+            if (cy != lastY) {
+                lastY = cy;
+                lastSection = queue.getCachedSection(lastSections, cy);
+            }
+            return lastSection;
         }
     }
 
     public void fixLightingSafe(boolean sky) {
         if (isEmpty()) return;
+        long start = FaweMetrics.RELIGHT.start();
         try {
             if (sky) {
                 fixSkyLighting();
@@ -300,17 +501,25 @@ public void fixLightingSafe(boolean sky) {
             sendChunks();
         } catch (Throwable e) {
             e.printStackTrace();
+        } finally {
+            FaweMetrics.RELIGHT.stop(start);
         }
     }
 
     public void fixBlockLighting() {
-        synchronized (lightQueue) {
-            while (!lightLock.compareAndSet(false, true));
-            try {
-                updateBlockLight(this.lightQueue);
-            } finally {
-                lightLock.set(false);
+        synchronized (blockLock) {
+            Long2ObjectOpenHashMap<long[][][]> map = new Long2ObjectOpenHashMap<>();
+            for (Long index : lightQueue.keySet()) {
+                long[][][] blocks = lightQueue.get(index);
+                if (blocks == null) {
+                    continue;
+                }
+                synchronized (blocks) {
+                    lightQueue.remove(index, blocks);
+                }
+                map.put(index, blocks);
             }
+            updateBlockLight(map);
         }
     }
 
@@ -367,7 +576,8 @@ public synchronized void fixSkyLighting() {
         }
     }
 
-    public void fill(byte[] mask, int chunkX, int y, int chunkZ, byte reason) {
+    private void fill(RelightSkyEntry chunk, int y, byte reason) {
+        byte[] mask = chunk.mask;
         if (y >= FaweChunk.HEIGHT) {
             Arrays.fill(mask, (byte) 15);
             return;
@@ -378,24 +588,33 @@ public void fill(byte[] mask, int chunkX, int y, int chunkZ, byte reason) {
                 return;
             }
             case SkipReason.AIR: {
-                int bx = chunkX << 4;
-                int bz = chunkZ << 4;
                 int index = 0;
                 for (int z = 0; z < 16; z++) {
                     for (int x = 0; x < 16; x++) {
-                        mask[index++] = (byte) queue.getSkyLight(bx + x, y, bz + z);
+                        mask[index++] = (byte) getSkyLight(chunk, x, y, z);
                     }
                 }
             }
         }
     }
 
+    private int getSkyLight(RelightSkyEntry chunk, int x, int y, int z) {
+        if (chunk.sections == null) {
+            return 0;
+        }
+        int max = FaweChunk.HEIGHT >> 4;
+        for (int cy = y >> 4; cy < max; cy++) {
+            Object section = queue.getCachedSection(chunk.sections, cy);
+            if (section != null) {
+                return queue.getSkyLight(section, x, y, z);
+            }
+        }
+        return 15;
+    }
+
     private void fixSkyLighting(List<RelightSkyEntry> sorted) {
         RelightSkyEntry[] chunks = sorted.toArray(new RelightSkyEntry[sorted.size()]);
-        boolean remove = this.removeFirst;
-        BlockVectorSet chunkSet = null;
-        if (remove) {
-            chunkSet = new BlockVectorSet();
+        if (this.removeFirst) {
             BlockVectorSet tmpSet = new BlockVectorSet();
             for (RelightSkyEntry chunk : chunks) {
                 tmpSet.add(chunk.x, 0, chunk.z);
@@ -403,92 +622,32 @@ private void fixSkyLighting(List<RelightSkyEntry> sorted) {
             for (RelightSkyEntry chunk : chunks) {
                 int x = chunk.x;
                 int z = chunk.z;
-                if (tmpSet.contains(x + 1, 0, z) && tmpSet.contains(x - 1, 0, z) && tmpSet.contains(x, 0, z + 1) && tmpSet.contains(x, 0, z - 1)) {
-                    chunkSet.add(x, 0, z);
-                }
+                chunk.remove = tmpSet.contains(x + 1, 0, z) && tmpSet.contains(x - 1, 0, z) && tmpSet.contains(x, 0, z + 1) && tmpSet.contains(x, 0, z - 1);
             }
         }
+        // Load the chunks here, as the layers are lit on other threads
+        for (RelightSkyEntry chunk : chunks) {
+            chunk.chunk = queue.ensureChunkLoaded(chunk.x, chunk.z);
+            chunk.sections = chunk.chunk == null ? null : queue.getCachedSections(queue.getWorld(), chunk.x, chunk.z);
+        }
+        int[] layer = new int[1];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks.length; i += SKY_BATCH) {
+            int start = i;
+            int end = Math.min(chunks.length, i + SKY_BATCH);
+            tasks.add(() -> {
+                for (int j = start; j < end; j++) {
+                    propagateSkyLight(chunks[j], layer[0]);
+                }
+            });
+        }
 
 //        byte[] cacheX = FaweCache.CACHE_X[0];
 //        byte[] cacheZ = FaweCache.CACHE_Z[0];
         for (int y = FaweChunk.HEIGHT - 1; y > 0; y--) {
-            for (RelightSkyEntry chunk : chunks) { // Propogate skylight
-                int layer = y >> 4;
-                byte[] mask = chunk.mask;
-                if (chunk.fix[layer] != SkipReason.NONE) {
-                    if ((y & 15) == 0 && layer != 0 && chunk.fix[layer - 1] == SkipReason.NONE) {
-                        fill(mask, chunk.x, y, chunk.z, chunk.fix[layer]);
-                    }
-                    continue;
-                }
-                int bx = chunk.x << 4;
-                int bz = chunk.z << 4;
-                Object chunkObj = queue.ensureChunkLoaded(chunk.x, chunk.z);
-                Object sections = queue.getCachedSections(queue.getWorld(), chunk.x, chunk.z);
-                if (sections == null) continue;
-                Object section = queue.getCachedSection(sections, layer);
-                if (section == null) continue;
-                chunk.smooth = false;
-
-                if (remove && (y & 15) == 15 && chunkSet.contains(chunk.x, 0, chunk.z)) {
-                    queue.removeSectionLighting(section, y >> 4, true);
-                }
-
-                for (int z = 0, j = 0; z < 16; z++) {
-                    for (int x = 0; x < 16; x++, j++) {
-                        byte value = mask[j];
-                        byte pair = (byte) queue.getOpacityBrightnessPair(section, x, y, z);
-                        int opacity = MathMan.unpair16x(pair);
-                        int brightness = MathMan.unpair16y(pair);
-                        if (brightness > 1 && (brightness != 15 || opacity != 15)) {
-                            addLightUpdate(bx + x, y, bz + z);
-                        }
-                        switch (value) {
-                            case 0:
-                                if (opacity > 1) {
-                                    queue.setSkyLight(section, x, y, z, 0);
-                                    continue;
-                                }
-                                break;
-                            case 1:
-                            case 2:
-                            case 3:
-                            case 4:
-                            case 5:
-                            case 6:
-                            case 7:
-                            case 8:
-                            case 9:
-                            case 10:
-                            case 11:
-                            case 12:
-                            case 13:
-                            case 14:
-                                if (opacity >= value) {
-                                    mask[j] = 0;
-                                    queue.setSkyLight(section, x, y, z, 0);
-                                    continue;
-                                }
-                                if (opacity <= 1) {
-                                    mask[j] = --value;
-                                } else {
-                                    mask[j] = value = (byte) Math.max(0, value - opacity);
-                                }
-                                break;
-                            case 15:
-                                if (opacity > 1) {
-                                    value -= opacity;
-                                    mask[j] = value;
-                                }
-                                queue.setSkyLight(section, x, y, z, value);
-                                continue;
-                        }
-                        chunk.smooth = true;
-                        queue.setSkyLight(section, x, y, z, value);
-                    }
-                }
-                queue.saveChunk(chunkObj);
-            }
+            layer[0] = y;
+            parallel(tasks);
+            // Smoothing reads the neighbouring chunks, so is done in order
             for (RelightSkyEntry chunk : chunks) { // Smooth forwards
                 if (chunk.smooth) {
                     smoothSkyLight(chunk, y, true);
@@ -501,14 +660,97 @@ private void fixSkyLighting(List<RelightSkyEntry> sorted) {
                 }
             }
         }
+        for (RelightSkyEntry chunk : chunks) {
+            if (chunk.dirty) {
+                queue.saveChunk(chunk.chunk);
+            }
+        }
+    }
+
+    /**
+     * Propagate the sky light of a chunk down to a layer (only touches the chunk's own sections)
+     */
+    private void propagateSkyLight(RelightSkyEntry chunk, int y) {
+        int layer = y >> 4;
+        byte[] mask = chunk.mask;
+        if (chunk.fix[layer] != SkipReason.NONE) {
+            if ((y & 15) == 0 && layer != 0 && chunk.fix[layer - 1] == SkipReason.NONE) {
+                fill(chunk, y, chunk.fix[layer]);
+            }
+            return;
+        }
+        int bx = chunk.x << 4;
+        int bz = chunk.z << 4;
+        if (chunk.sections == null) return;
+        Object section = queue.getCachedSection(chunk.sections, layer);
+        if (section == null) return;
+        chunk.smooth = false;
+        chunk.dirty = true;
+
+        if (chunk.remove && (y & 15) == 15) {
+            queue.removeSectionLighting(section, y >> 4, true);
+        }
+
+        for (int z = 0, j = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++, j++) {
+                byte value = mask[j];
+                byte pair = (byte) queue.getOpacityBrightnessPair(section, x, y, z);
+                int opacity = MathMan.unpair16x(pair);
+                int brightness = MathMan.unpair16y(pair);
+                if (brightness > 1 && (brightness != 15 || opacity != 15)) {
+                    addLightUpdate(bx + x, y, bz + z);
+                }
+                switch (value) {
+                    case 0:
+                        if (opacity > 1) {
+                            queue.setSkyLight(section, x, y, z, 0);
+                            continue;
+                        }
+                        break;
+                    case 1:
+                    case 2:
+                    case 3:
+                    case 4:
+                    case 5:
+                    case 6:
+                    case 7:
+                    case 8:
+                    case 9:
+                    case 10:
+                    case 11:
+                    case 12:
+                    case 13:
+                    case 14:
+                        if (opacity >= value) {
+                            mask[j] = 0;
+                            queue.setSkyLight(section, x, y, z, 0);
+                            continue;
+                        }
+                        if (opacity <= 1) {
+                            mask[j] = --value;
+                        } else {
+                            mask[j] = value = (byte) Math.max(0, value - opacity);
+                        }
+                        break;
+                    case 15:
+                        if (opacity > 1) {
+                            value -= opacity;
+                            mask[j] = value;
+                        }
+                        queue.setSkyLight(section, x, y, z, value);
+                        continue;
+                }
+                chunk.smooth = true;
+                queue.setSkyLight(section, x, y, z, value);
+            }
+        }
     }
 
     public void smoothSkyLight(RelightSkyEntry chunk, int y, boolean direction) {
         byte[] mask = chunk.mask;
         int bx = chunk.x << 4;
         int bz = chunk.z << 4;
-        queue.ensureChunkLoaded(chunk.x, chunk.z);
-        Object sections = queue.getCachedSections(queue.getWorld(), chunk.x, chunk.z);
+        Object sections = chunk.sections;
         if (sections == null) return;
         Object section = queue.getCachedSection(sections, y >> 4);
         if (section == null) return;
@@ -555,6 +797,11 @@ private class RelightSkyEntry implements Comparable {
         public final byte[] fix;
         public int bitmask;
         public boolean smooth;
+        // Set by the thread calling the relighter, before the layers are lit
+        private Object chunk;
+        private Object sections;
+        private boolean remove;
+        private boolean dirty;
 
         public RelightSkyEntry(int x, int z, byte[] fix, int bitmask) {
             this.x = x;
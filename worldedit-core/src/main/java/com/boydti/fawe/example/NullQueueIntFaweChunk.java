@@ -1,7 +1,6 @@
 package com.boydti.fawe.example;
 
 import com.boydti.fawe.object.FaweChunk;
-import com.boydti.fawe.util.MainUtil;
 
 public class NullQueueIntFaweChunk extends IntFaweChunk {
 
@@ -21,9 +20,11 @@ public Object getNewChunk() {
     @Override
     public IntFaweChunk copy(boolean shallow) {
         if (shallow) {
-            return new NullQueueIntFaweChunk(getX(), getZ(), setBlocks, count, air);
+            NullQueueIntFaweChunk copy = new NullQueueIntFaweChunk(getX(), getZ(), shareSections(), count.clone(), air.clone());
+            copy.sharedMask = sharedMask;
+            return copy;
         } else {
-            return new NullQueueIntFaweChunk(getX(), getZ(), (int[][]) MainUtil.copyNd(setBlocks), count.clone(), air.clone());
+            return new NullQueueIntFaweChunk(getX(), getZ(), copySections(), count.clone(), air.clone());
         }
     }
 
@@ -0,0 +1,61 @@
+package com.boydti.fawe.example;
+
+import com.boydti.fawe.util.MathMan;
+
+/**
+ * Tracks the chunks an edit has most recently written to, so that chunks it has moved on from can be packed<br>
+ * - Chunks which are still being written to stay unpacked, so packing doesn't slow down the edit
+ * - Not thread safe, it should only be used by the thread writing to the queue
+ */
+public class QueuedChunkPacker {
+
+    private final long[] recent;
+    private int size;
+    private int index;
+    private int lastX = Integer.MIN_VALUE;
+    private int lastZ = Integer.MIN_VALUE;
+    private long evicted;
+
+    /**
+     * @param size the number of recently written chunks to keep unpacked
+     */
+    public QueuedChunkPacker(int size) {
+        this.recent = new long[Math.max(1, size)];
+    }
+
+    /**
+     * Record that a chunk is being written to
+     *
+     * @param cx
+     * @param cz
+     * @return true if a chunk is no longer recent (see {@link #getEvicted()})
+     */
+    public boolean access(int cx, int cz) {
+        if (cx == lastX && cz == lastZ) {
+            return false;
+        }
+        lastX = cx;
+        lastZ = cz;
+        long pair = MathMan.pairInt(cx, cz);
+        for (int i = 0; i < size; i++) {
+            if (recent[i] == pair) {
+                return false;
+            }
+        }
+        boolean full = size == recent.length;
+        evicted = recent[index];
+        recent[index] = pair;
+        index = (index + 1) % recent.length;
+        if (!full) {
+            size++;
+        }
+        return full;
+    }
+
+    /**
+     * @return the pair (see {@link MathMan#pairInt(int, int)}) of the chunk which is no longer recent
+     */
+    public long getEvicted() {
+        return evicted;
+    }
+}
@@ -2,7 +2,6 @@
 
 import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
-import com.boydti.fawe.util.MainUtil;
 
 public class SimpleIntFaweChunk extends IntFaweChunk {
 
@@ -23,10 +22,11 @@ public Object getNewChunk() {
     public IntFaweChunk copy(boolean shallow) {
         SimpleIntFaweChunk copy;
         if (shallow) {
-            copy = new SimpleIntFaweChunk(getParent(), getX(), getZ(), setBlocks, count, air);
+            copy = new SimpleIntFaweChunk(getParent(), getX(), getZ(), shareSections(), count.clone(), air.clone());
+            copy.sharedMask = sharedMask;
             copy.biomes = biomes;
         } else {
-            copy = new SimpleIntFaweChunk(getParent(), getX(), getZ(), (int[][]) MainUtil.copyNd(setBlocks), count.clone(), air.clone());
+            copy = new SimpleIntFaweChunk(getParent(), getX(), getZ(), copySections(), count.clone(), air.clone());
             copy.biomes = biomes != null ? biomes.clone() : null;
         }
         return copy;
@@ -22,8 +22,12 @@ public class WeakFaweQueueMap implements IFaweQueueMap {
 
     private final MappedFaweQueue parent;
 
+    private final QueuedChunkPacker packer;
+
     public WeakFaweQueueMap(MappedFaweQueue parent) {
         this.parent = parent;
+        int recent = parent.getSettings().QUEUE.PACK_AFTER_CHUNKS;
+        this.packer = recent > 0 ? new QueuedChunkPacker(recent) : null;
     }
 
     public final Long2ObjectOpenHashMap<Reference<FaweChunk>> blocks = new Long2ObjectOpenHashMap<Reference<FaweChunk>>() {
@@ -88,6 +92,9 @@ public FaweChunk getFaweChunk(int cx, int cz) {
         if (cx == lastX && cz == lastZ) {
             return lastWrappedChunk;
         }
+        if (packer != null && packer.access(cx, cz)) {
+            pack(packer.getEvicted());
+        }
         long pair = MathMan.pairInt(cx, cz);
         Reference<FaweChunk> chunkReference = this.blocks.get(pair);
         FaweChunk chunk;
@@ -106,6 +113,21 @@ public FaweChunk getFaweChunk(int cx, int cz) {
         return chunk;
     }
 
+    /**
+     * Pack a chunk which the edit has moved on from, if it's still queued
+     *
+     * @param pair
+     */
+    private void pack(long pair) {
+        synchronized (blocks) {
+            Reference<FaweChunk> reference = blocks.get(pair);
+            FaweChunk chunk = reference != null ? reference.get() : null;
+            if (chunk instanceof IntFaweChunk) {
+                ((IntFaweChunk) chunk).pack();
+            }
+        }
+    }
+
     @Override
     public FaweChunk getCachedFaweChunk(int cx, int cz) {
         if (cx == lastX && cz == lastZ) {
@@ -151,6 +173,26 @@ private FaweChunk getNewFaweChunk(int cx, int cz) {
     private int lastX = Integer.MIN_VALUE;
     private int lastZ = Integer.MIN_VALUE;
 
+    @Override
+    public FaweChunk poll() {
+        synchronized (blocks) {
+            boolean skip = parent.getStage() == SetQueue.QueueStage.INACTIVE;
+            Iterator<Map.Entry<Long, Reference<FaweChunk>>> iter = blocks.entrySet().iterator();
+            while (iter.hasNext()) {
+                FaweChunk chunk = iter.next().getValue().get();
+                if (skip && chunk == lastWrappedChunk) {
+                    continue;
+                }
+                iter.remove();
+                if (chunk != null) {
+                    return chunk;
+                }
+                Fawe.debug("Skipped modifying chunk due to low memory (5)");
+            }
+            return null;
+        }
+    }
+
     @Override
     public boolean next(int amount, long time) {
         synchronized (blocks) {
@@ -171,8 +213,9 @@ public boolean next(int amount, long time) {
                             iter.remove();
                             if (chunk != null) {
                                 parent.start(chunk);
-                                chunk.call();
+                                chunk.dispatch();
                                 parent.end(chunk);
+                                parent.recycle(chunk);
                             } else {
                                 Fawe.debug("Skipped modifying chunk due to low memory (3)");
                             }
@@ -196,7 +239,7 @@ public boolean next(int amount, long time) {
                     iter.remove();
                     if (chunk != null) {
                         parent.start(chunk);
-                        service.submit(chunk);
+                        service.submit(chunk::dispatch);
                         added++;
                         i++;
                     } else {
@@ -217,11 +260,12 @@ public boolean next(int amount, long time) {
                             iter.remove();
                             if (chunk != null) {
                                 parent.start(chunk);
-                                service.submit(chunk);
+                                service.submit(chunk::dispatch);
                                 Future future = service.poll(50, TimeUnit.MILLISECONDS);
                                 if (future != null) {
                                     FaweChunk fc = (FaweChunk) future.get();
                                     parent.end(fc);
+                                    parent.recycle(fc);
                                 }
                             }
                         }
@@ -232,6 +276,7 @@ public boolean next(int amount, long time) {
                 while ((future = service.poll()) != null) {
                     FaweChunk fc = (FaweChunk) future.get();
                     parent.end(fc);
+                    parent.recycle(fc);
                 }
             } catch (Throwable e) {
                 e.printStackTrace();
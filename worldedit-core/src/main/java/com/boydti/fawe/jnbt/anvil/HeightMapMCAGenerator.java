@@ -923,6 +923,13 @@ public void close(boolean update) {
         }
         player = null;
         chunkOffset = null;
+        heights.releaseSnapshot();
+        biomes.releaseSnapshot();
+        floor.releaseSnapshot();
+        main.releaseSnapshot();
+        if (overlay != null) {
+            overlay.releaseSnapshot();
+        }
     }
 
     @Override
@@ -0,0 +1,474 @@
+package com.boydti.fawe.jnbt.anvil;
+
+import com.sk89q.jnbt.NBTConstants;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A lazy read only view of a chunk's NBT, read directly from the decompressed bytes<br>
+ * - No tags are created, fields are only located and read when they are requested
+ * - Keys are compared against the raw names, so they must be ASCII (as all chunk keys are)
+ * - Arrays are read into a buffer which can be reused (e.g. {@link #getBlocks(int)})
+ * - Not thread safe, a view should be reused by a single thread (see {@link MCAQueue#filterWorld(MCAFilter)})
+ * <p>
+ * Chunk format: http://minecraft.gamepedia.com/Chunk_format
+ */
+public final class MCAChunkView {
+
+    private final Inflater inflater = new Inflater();
+    private byte[] data = new byte[65536];
+    private int length;
+
+    // The children of the Level compound (offset of the name, tag type, offset of the payload)
+    private int[] levelNames = new int[32];
+    private byte[] levelTypes = new byte[32];
+    private int[] levelPayloads = new int[32];
+    private int levelSize;
+    private boolean indexed;
+
+    // The offset of each section compound's children by layer, or -1
+    private final int[] sections = new int[16];
+    private boolean sectionsIndexed;
+
+    private final int[] blocks = new int[4096];
+
+    /**
+     * Read a chunk from a file, replacing the chunk currently viewed
+     *
+     * @param file
+     * @param offset the offset of the chunk in the file (see {@link MCAFile#getOffset(int, int)})
+     * @return false if the chunk doesn't exist
+     * @throws IOException
+     */
+    public boolean read(MCAFile file, int offset) throws IOException {
+        return read(file.getChunkCompressedBytes(offset));
+    }
+
+    /**
+     * Read a chunk from its compressed bytes, replacing the chunk currently viewed
+     *
+     * @param compressed the zlib compressed chunk
+     * @return false if the chunk doesn't exist
+     * @throws IOException if the chunk is corrupt or truncated
+     */
+    public boolean read(byte[] compressed) throws IOException {
+        length = 0;
+        levelSize = 0;
+        indexed = false;
+        sectionsIndexed = false;
+        if (compressed == null) {
+            return false;
+        }
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            while (!inflater.finished()) {
+                if (length == data.length) {
+                    data = Arrays.copyOf(data, data.length << 1);
+                }
+                int read = inflater.inflate(data, length, data.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // Reading a partial chunk could make fields look missing
+                    length = 0;
+                    throw new IOException("Truncated chunk (" + compressed.length + " compressed bytes)");
+                }
+                length += read;
+            }
+        } catch (DataFormatException e) {
+            length = 0;
+            throw new IOException(e);
+        }
+        return length != 0;
+    }
+
+    /**
+     * @return the number of decompressed bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getX() {
+        return getInt("xPos", 0);
+    }
+
+    public int getZ() {
+        return getInt("zPos", 0);
+    }
+
+    /**
+     * @return the InhabitedTime, or empty if the chunk doesn't have one (or couldn't be indexed)
+     */
+    public OptionalLong getInhabitedTime() {
+        return getLong("InhabitedTime");
+    }
+
+    /**
+     * @return the LastUpdate, or empty if the chunk doesn't have one (or couldn't be indexed)
+     */
+    public OptionalLong getLastUpdate() {
+        return getLong("LastUpdate");
+    }
+
+    /**
+     * @param buffer the array to read into, if it's large enough
+     * @return the height map, or null
+     */
+    public int[] getHeightMap(int[] buffer) {
+        return getIntArray("HeightMap", buffer);
+    }
+
+    /**
+     * @param buffer the array to read into, if it's large enough
+     * @return the biomes, or null
+     */
+    public byte[] getBiomes(byte[] buffer) {
+        return getByteArray("Biomes", buffer);
+    }
+
+    public boolean hasSection(int layer) {
+        indexSections();
+        return layer >= 0 && layer < 16 && sections[layer] != -1;
+    }
+
+    /**
+     * The combined ids of a section<br>
+     * - The returned array is reused by the next call
+     *
+     * @param layer
+     * @return the ids, or null if the section doesn't exist
+     */
+    public int[] getBlocks(int layer) {
+        return getSectionIntArray(layer, "Blocks", blocks);
+    }
+
+    public byte[] getSkyLight(int layer, byte[] buffer) {
+        return getSectionByteArray(layer, "SkyLight", buffer);
+    }
+
+    public byte[] getBlockLight(int layer, byte[] buffer) {
+        return getSectionByteArray(layer, "BlockLight", buffer);
+    }
+
+    /**
+     * e.g. the packed palette indexes of a paletted section
+     *
+     * @return the long array, or null if the section or key doesn't exist
+     */
+    public long[] getSectionLongArray(int layer, String key, long[] buffer) {
+        int payload = findSectionPayload(layer, key, NBTConstants.TYPE_LONG_ARRAY);
+        return payload == -1 ? null : readLongArray(payload, buffer);
+    }
+
+    public int[] getSectionIntArray(int layer, String key, int[] buffer) {
+        int payload = findSectionPayload(layer, key, NBTConstants.TYPE_INT_ARRAY);
+        return payload == -1 ? null : readIntArray(payload, buffer);
+    }
+
+    public byte[] getSectionByteArray(int layer, String key, byte[] buffer) {
+        int payload = findSectionPayload(layer, key, NBTConstants.TYPE_BYTE_ARRAY);
+        return payload == -1 ? null : readByteArray(payload, buffer);
+    }
+
+    /**
+     * @return the number of entries in a list of the section (e.g. a Palette), or 0
+     */
+    public int getSectionListSize(int layer, String key) {
+        int payload = findSectionPayload(layer, key, NBTConstants.TYPE_LIST);
+        return payload == -1 ? 0 : readInt(payload + 1);
+    }
+
+    /**
+     * @return the number of entries in a list of the Level compound (e.g. Entities, TileEntities), or 0
+     */
+    public int getListSize(String key) {
+        int payload = findPayload(key, NBTConstants.TYPE_LIST);
+        return payload == -1 ? 0 : readInt(payload + 1);
+    }
+
+    public boolean hasKey(String key) {
+        index();
+        for (int i = 0; i < levelSize; i++) {
+            if (nameEquals(levelNames[i], key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getLong(String key, long def) {
+        int payload = findPayload(key, NBTConstants.TYPE_LONG);
+        return payload == -1 ? def : readLong(payload);
+    }
+
+    /**
+     * @return the long, or empty if the Level compound has no long with this key
+     */
+    public OptionalLong getLong(String key) {
+        int payload = findPayload(key, NBTConstants.TYPE_LONG);
+        return payload == -1 ? OptionalLong.empty() : OptionalLong.of(readLong(payload));
+    }
+
+    public int getInt(String key, int def) {
+        int payload = findPayload(key, NBTConstants.TYPE_INT);
+        return payload == -1 ? def : readInt(payload);
+    }
+
+    public int[] getIntArray(String key, int[] buffer) {
+        int payload = findPayload(key, NBTConstants.TYPE_INT_ARRAY);
+        return payload == -1 ? null : readIntArray(payload, buffer);
+    }
+
+    public byte[] getByteArray(String key, byte[] buffer) {
+        int payload = findPayload(key, NBTConstants.TYPE_BYTE_ARRAY);
+        return payload == -1 ? null : readByteArray(payload, buffer);
+    }
+
+    public long[] getLongArray(String key, long[] buffer) {
+        int payload = findPayload(key, NBTConstants.TYPE_LONG_ARRAY);
+        return payload == -1 ? null : readLongArray(payload, buffer);
+    }
+
+    private int findPayload(String key, int type) {
+        index();
+        for (int i = 0; i < levelSize; i++) {
+            if (levelTypes[i] == type && nameEquals(levelNames[i], key)) {
+                return levelPayloads[i];
+            }
+        }
+        return -1;
+    }
+
+    private int findSectionPayload(int layer, String key, int type) {
+        if (!hasSection(layer)) {
+            return -1;
+        }
+        int pos = sections[layer];
+        while (pos < length) {
+            int tagType = data[pos];
+            if (tagType == NBTConstants.TYPE_END) {
+                break;
+            }
+            int name = pos + 1;
+            int payload = name + 2 + readUnsignedShort(name);
+            if (tagType == type && nameEquals(name, key)) {
+                return payload;
+            }
+            pos = skip(tagType, payload);
+        }
+        return -1;
+    }
+
+    /**
+     * Find the children of the Level compound
+     */
+    private void index() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+        if (length < 3 || data[0] != NBTConstants.TYPE_COMPOUND) {
+            return;
+        }
+        int pos = 3 + readUnsignedShort(1);
+        int level = -1;
+        // Root compound
+        while (pos < length) {
+            int tagType = data[pos];
+            if (tagType == NBTConstants.TYPE_END) {
+                break;
+            }
+            int name = pos + 1;
+            int payload = name + 2 + readUnsignedShort(name);
+            if (tagType == NBTConstants.TYPE_COMPOUND && nameEquals(name, "Level")) {
+                level = payload;
+                break;
+            }
+            pos = skip(tagType, payload);
+        }
+        if (level == -1) {
+            return;
+        }
+        pos = level;
+        while (pos < length) {
+            int tagType = data[pos];
+            if (tagType == NBTConstants.TYPE_END) {
+                break;
+            }
+            int name = pos + 1;
+            int payload = name + 2 + readUnsignedShort(name);
+            if (levelSize == levelNames.length) {
+                levelNames = Arrays.copyOf(levelNames, levelSize << 1);
+                levelTypes = Arrays.copyOf(levelTypes, levelSize << 1);
+                levelPayloads = Arrays.copyOf(levelPayloads, levelSize << 1);
+            }
+            levelNames[levelSize] = name;
+            levelTypes[levelSize] = (byte) tagType;
+            levelPayloads[levelSize] = payload;
+            levelSize++;
+            pos = skip(tagType, payload);
+        }
+    }
+
+    /**
+     * Find the start of each section compound by its Y
+     */
+    private void indexSections() {
+        if (sectionsIndexed) {
+            return;
+        }
+        sectionsIndexed = true;
+        Arrays.fill(sections, -1);
+        int list = findPayload("Sections", NBTConstants.TYPE_LIST);
+        if (list == -1 || data[list] != NBTConstants.TYPE_COMPOUND) {
+            return;
+        }
+        int size = readInt(list + 1);
+        int pos = list + 5;
+        for (int i = 0; i < size && pos < length; i++) {
+            int start = pos;
+            int layer = -1;
+            while (pos < length) {
+                int tagType = data[pos];
+                if (tagType == NBTConstants.TYPE_END) {
+                    pos++;
+                    break;
+                }
+                int name = pos + 1;
+                int payload = name + 2 + readUnsignedShort(name);
+                if (tagType == NBTConstants.TYPE_BYTE && nameEquals(name, "Y")) {
+                    layer = data[payload];
+                }
+                pos = skip(tagType, payload);
+            }
+            if (layer >= 0 && layer < 16) {
+                sections[layer] = start;
+            }
+        }
+    }
+
+    /**
+     * @param type    the tag type
+     * @param payload the offset of the payload
+     * @return the offset after the payload
+     */
+    private int skip(int type, int payload) {
+        switch (type) {
+            case NBTConstants.TYPE_END:
+                return payload;
+            case NBTConstants.TYPE_BYTE:
+                return payload + 1;
+            case NBTConstants.TYPE_SHORT:
+                return payload + 2;
+            case NBTConstants.TYPE_INT:
+            case NBTConstants.TYPE_FLOAT:
+                return payload + 4;
+            case NBTConstants.TYPE_LONG:
+            case NBTConstants.TYPE_DOUBLE:
+                return payload + 8;
+            case NBTConstants.TYPE_BYTE_ARRAY:
+                return payload + 4 + readInt(payload);
+            case NBTConstants.TYPE_STRING:
+                return payload + 2 + readUnsignedShort(payload);
+            case NBTConstants.TYPE_INT_ARRAY:
+                return payload + 4 + (readInt(payload) << 2);
+            case NBTConstants.TYPE_LONG_ARRAY:
+                return payload + 4 + (readInt(payload) << 3);
+            case NBTConstants.TYPE_LIST: {
+                int elementType = data[payload];
+                int size = readInt(payload + 1);
+                int pos = payload + 5;
+                switch (elementType) {
+                    case NBTConstants.TYPE_END:
+                        return pos;
+                    case NBTConstants.TYPE_BYTE:
+                        return pos + size;
+                    case NBTConstants.TYPE_SHORT:
+                        return pos + (size << 1);
+                    case NBTConstants.TYPE_INT:
+                    case NBTConstants.TYPE_FLOAT:
+                        return pos + (size << 2);
+                    case NBTConstants.TYPE_LONG:
+                    case NBTConstants.TYPE_DOUBLE:
+                        return pos + (size << 3);
+                    default:
+                        for (int i = 0; i < size && pos < length; i++) {
+                            pos = skip(elementType, pos);
+                        }
+                        return pos;
+                }
+            }
+            case NBTConstants.TYPE_COMPOUND: {
+                int pos = payload;
+                while (pos < length) {
+                    int tagType = data[pos];
+                    if (tagType == NBTConstants.TYPE_END) {
+                        return pos + 1;
+                    }
+                    int name = pos + 1;
+                    pos = skip(tagType, name + 2 + readUnsignedShort(name));
+                }
+                return pos;
+            }
+            default:
+                // Unknown tag, the rest of the chunk can't be read
+                return length;
+        }
+    }
+
+    private boolean nameEquals(int name, String key) {
+        int len = readUnsignedShort(name);
+        if (len != key.length()) {
+            return false;
+        }
+        int pos = name + 2;
+        for (int i = 0; i < len; i++) {
+            if (data[pos + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] readIntArray(int payload, int[] buffer) {
+        int size = readInt(payload);
+        int[] array = buffer != null && buffer.length == size ? buffer : new int[size];
+        int pos = payload + 4;
+        for (int i = 0; i < size; i++, pos += 4) {
+            array[i] = readInt(pos);
+        }
+        return array;
+    }
+
+    private long[] readLongArray(int payload, long[] buffer) {
+        int size = readInt(payload);
+        long[] array = buffer != null && buffer.length == size ? buffer : new long[size];
+        int pos = payload + 4;
+        for (int i = 0; i < size; i++, pos += 8) {
+            array[i] = readLong(pos);
+        }
+        return array;
+    }
+
+    private byte[] readByteArray(int payload, byte[] buffer) {
+        int size = readInt(payload);
+        byte[] array = buffer != null && buffer.length == size ? buffer : new byte[size];
+        System.arraycopy(data, payload + 4, array, 0, size);
+        return array;
+    }
+
+    private int readUnsignedShort(int pos) {
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    private int readInt(int pos) {
+        return ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+    }
+
+    private long readLong(int pos) {
+        return ((long) readInt(pos) << 32) | (readInt(pos + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -7,23 +7,31 @@
 import com.boydti.fawe.object.RunnableVal4;
 import com.boydti.fawe.object.collection.IterableThreadLocal;
 import com.boydti.fawe.object.exception.FaweException;
-import com.boydti.fawe.object.io.BufferedRandomAccessFile;
 import com.boydti.fawe.object.io.FastByteArrayInputStream;
 import com.boydti.fawe.util.MainUtil;
 import com.boydti.fawe.util.MathMan;
 import com.sk89q.jnbt.NBTInputStream;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
@@ -409,17 +417,37 @@ private byte[] getChunkBytes(int cx, int cz) throws Exception {
     }
 
 
-    private void writeSafe(RandomAccessFile raf, int offset, byte[] data) throws IOException {
-        int len = data.length + 5;
-        raf.seek(offset);
-        if (raf.length() - offset < len) {
-            raf.setLength(((offset + len + 4095) / 4096) * 4096);
+    /**
+     * Find and mark the first run of free sectors
+     *
+     * @param used   the sectors in use
+     * @param length the number of sectors
+     * @return the first sector
+     */
+    private int allocate(BitSet used, int length) {
+        int sector = used.nextClearBit(2);
+        while (true) {
+            int next = used.nextSetBit(sector);
+            if (next == -1 || next - sector >= length) {
+                used.set(sector, sector + length);
+                return sector;
+            }
+            sector = used.nextClearBit(next);
         }
+    }
+
+    void writeSafe(FileChannel channel, int offset, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(data.length + 5);
         // Length of remaining data
-        raf.writeInt(data.length + 1);
+        buffer.putInt(data.length + 1);
         // Compression type
-        raf.write(2);
-        raf.write(data);
+        buffer.put((byte) 2);
+        buffer.put(data);
+        buffer.flip();
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
     }
 
     private void writeHeader(RandomAccessFile raf, int cx, int cz, int offsetMedium, int sizeByte, boolean writeTime) throws IOException {
@@ -473,7 +501,11 @@ public boolean isModified() {
     }
 
     /**
-     * Write the chunk to the file
+     * Write the chunk to the file<br>
+     * - Modified chunks are compressed and written concurrently in the pool, using positional writes
+     * - Chunks are written to the first free run of sectors (tracked by a sector bitmap), never over their old data
+     * - The old sectors of a chunk are freed once its new data is written, and reused by later flushes
+     * - A chunk whose write fails keeps its previous location and data
      * @param pool
      */
     public void flush(ForkJoinPool pool) {
@@ -491,176 +523,135 @@ public void flush(ForkJoinPool pool) {
                 pool = new ForkJoinPool();
             } else wait = false;
 
-            // Chunks that need to be relocated
-            Int2ObjectOpenHashMap<byte[]> relocate = new Int2ObjectOpenHashMap<>();
-            // The position of each chunk
-            final Int2ObjectOpenHashMap<Integer> offsetMap = new Int2ObjectOpenHashMap<>(); // Offset -> <byte cx, byte cz, short size>
             // The data of each modified chunk
             final Int2ObjectOpenHashMap<byte[]> compressedMap = new Int2ObjectOpenHashMap<>();
-            // The data of each chunk that needs to be moved
-            final Int2ObjectOpenHashMap<byte[]> append = new Int2ObjectOpenHashMap<>();
-            boolean modified = false;
+            // Chunks which have been deleted
+            final List<MCAChunk> deleted = new ArrayList<>();
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>();
             // Get the current time for the chunk timestamp
             long now = System.currentTimeMillis();
 
-            // Load the chunks into the append or compressed map
+            // Compress the modified chunks
             for (MCAChunk chunk : getCachedChunks()) {
                 if (chunk.isModified() || chunk.isDeleted()) {
-                    modified = true;
                     chunk.setLastUpdate(now);
-                    if (!chunk.isDeleted()) {
-                        pool.submit(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    byte[] compressed = toBytes(chunk);
-                                    int pair = MathMan.pair((short) (chunk.getX() & 31), (short) (chunk.getZ() & 31));
-                                    Int2ObjectOpenHashMap map;
-                                    if (getOffset(chunk.getX(), chunk.getZ()) == 0) {
-                                        map = append;
-                                    } else {
-                                        map = compressedMap;
-                                    }
-                                    synchronized (map) {
-                                        map.put(pair, compressed);
-                                    }
-                                } catch (Throwable e) {
-                                    e.printStackTrace();
+                    if (chunk.isDeleted()) {
+                        deleted.add(chunk);
+                        continue;
+                    }
+                    tasks.add(pool.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                byte[] compressed = toBytes(chunk);
+                                int pair = MathMan.pair((short) (chunk.getX() & 31), (short) (chunk.getZ() & 31));
+                                synchronized (compressedMap) {
+                                    compressedMap.put(pair, compressed);
                                 }
+                            } catch (Throwable e) {
+                                e.printStackTrace();
                             }
-                        });
-                    }
+                        }
+                    }));
                 }
             }
 
             // If any changes were detected
-            if (modified) {
+            if (!tasks.isEmpty() || !deleted.isEmpty()) {
                 file.setLastModified(now);
-
-                // Load the offset data into the offset map
-                forEachChunk(new RunnableVal4<Integer, Integer, Integer, Integer>() {
-                    @Override
-                    public void run(Integer cx, Integer cz, Integer offset, Integer size) {
-                        short pair1 = MathMan.pairByte((byte) (cx & 31), (byte) (cz & 31));
-                        short pair2 = (short) (size >> 12);
-                        offsetMap.put((int) offset, (Integer) MathMan.pair(pair1, pair2));
-                    }
-                });
-                // Wait for previous tasks
-                pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-
-
-                int start = 8192;
-                int written = start;
-                int end = 8192;
-                int nextOffset = 8192;
                 try {
-                    for (int count = 0; count < offsetMap.size(); count++) {
-                        // Get the previous position of the next chunk
-                        Integer loc = offsetMap.get(nextOffset);
-                        while (loc == null) {
-                            nextOffset += 4096;
-                            loc = offsetMap.get(nextOffset);
+                    // The sectors in use by the current chunks (including the 2 header sectors)
+                    BitSet used = new BitSet();
+                    used.set(0, 2);
+                    forEachChunk(new RunnableVal4<Integer, Integer, Integer, Integer>() {
+                        @Override
+                        public void run(Integer cx, Integer cz, Integer offset, Integer size) {
+                            used.set(offset >> 12, (offset + size) >> 12);
                         }
-                        int offset = nextOffset;
-
-                        // Get the x/z from the paired location
-                        short cxz = MathMan.unpairX(loc);
-                        int cx = MathMan.unpairShortX(cxz);
-                        int cz = MathMan.unpairShortY(cxz);
-
-                        // Get the size from the pair
-                        int size = MathMan.unpairY(loc) << 12;
-
-                        nextOffset += size;
-                        end = Math.min(start + size, end);
-                        int pair = MathMan.pair((short) (cx & 31), (short) (cz & 31));
-                        byte[] newBytes = relocate.get(pair);
-
-                        // newBytes is null if the chunk isn't modified or marked for moving
-                        if (newBytes == null) {
-                            MCAChunk cached = getCachedChunk(cx, cz);
-                            // If the previous offset marks the current write position (start) then we only write the header
-                            if (offset == start) {
-                                if (cached == null || !cached.isModified()) {
-                                    writeHeader(raf, cx, cz, start >> 12, size >> 12, true);
-                                    start += size;
-                                    written = start + size;
-                                    continue;
-                                } else {
-                                    newBytes = compressedMap.get(pair);
-                                }
-                            } else {
-                                // The chunk needs to be moved, fetch the data if necessary
-                                newBytes = compressedMap.get(pair);
-                                if (newBytes == null) {
-                                    if (cached == null || !cached.isDeleted()) {
-                                        newBytes = getChunkCompressedBytes(getOffset(cx, cz));
-                                    }
-                                }
-                            }
+                    });
+
+                    // Deleted chunks free their sectors
+                    for (MCAChunk chunk : deleted) {
+                        int offset = getOffset(chunk.getX(), chunk.getZ());
+                        if (offset != 0) {
+                            used.clear(offset >> 12, (offset + getSize(chunk.getX(), chunk.getZ())) >> 12);
+                            writeHeader(raf, chunk.getX(), chunk.getZ(), 0, 0, false);
                         }
+                    }
 
-                        if (newBytes == null) {
-                            writeHeader(raf, cx, cz, 0, 0, false);
+                    for (ForkJoinTask<?> task : tasks) {
+                        task.join();
+                    }
+                    tasks.clear();
+
+                    // Every chunk is written to newly allocated sectors (its current sectors are still marked as used)
+                    // The old sectors are only freed once the new data is written, so a failed write never touches the
+                    // data the header points to
+                    Int2IntOpenHashMap positions = new Int2IntOpenHashMap();
+                    Int2ObjectOpenHashMap<int[]> release = new Int2ObjectOpenHashMap<>();
+                    for (Int2ObjectMap.Entry<byte[]> entry : compressedMap.int2ObjectEntrySet()) {
+                        int pair = entry.getIntKey();
+                        short cx = MathMan.unpairX(pair);
+                        short cz = MathMan.unpairY(pair);
+                        byte[] bytes = entry.getValue();
+                        if (bytes == null) {
+                            continue;
+                        }
+                        int newSize = (bytes.length + 5 + 4095) >> 12;
+                        if (newSize > 255) {
+                            Fawe.debug("Skipping chunk " + cx + "," + cz + " in " + file.getName() + " (" + bytes.length + " bytes is too large)");
                             continue;
                         }
+                        int offset = getOffset(cx, cz);
+                        if (offset != 0) {
+                            release.put(pair, new int[]{offset >> 12, (offset + getSize(cx, cz)) >> 12});
+                        }
+                        positions.put(pair, allocate(used, newSize) << 12);
+                    }
 
-                        // The length to be written (compressed data + 5 byte chunk header)
-                        int len = newBytes.length + 5;
-                        int oldSize = (size + 4095) >> 12;
-                        int newSize = (len + 4095) >> 12;
-                        int nextOffset2 = end;
-
-                        // If the current write position (start) + length of data to write (len) are longer than the position of the next chunk, we need to move the next chunks
-                        while (start + len > end) {
-                            Integer nextLoc = offsetMap.get(nextOffset2);
-                            if (nextLoc != null) {
-                                short nextCXZ = MathMan.unpairX(nextLoc);
-                                int nextCX = MathMan.unpairShortX(nextCXZ);
-                                int nextCZ = MathMan.unpairShortY(nextCXZ);
-                                MCAChunk cached = getCachedChunk(nextCX, nextCZ);
-                                if (cached == null || !cached.isModified()) {
-                                    byte[] nextBytes = getChunkCompressedBytes(nextOffset2);
-                                    relocate.put(MathMan.pair((short) (nextCX & 31), (short) (nextCZ & 31)), nextBytes);
+                    // Write the chunks concurrently
+                    final FileChannel channel = raf.getChannel();
+                    final IntSet failed = IntSets.synchronize(new IntOpenHashSet());
+                    for (Int2IntMap.Entry entry : positions.int2IntEntrySet()) {
+                        final int pair = entry.getIntKey();
+                        final byte[] bytes = compressedMap.get(pair);
+                        final int offset = entry.getIntValue();
+                        tasks.add(pool.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    writeSafe(channel, offset, bytes);
+                                } catch (Throwable e) {
+                                    failed.add(pair);
+                                    e.printStackTrace();
                                 }
-                                int nextSize = MathMan.unpairY(nextLoc) << 12;
-                                end += nextSize;
-                                nextOffset2 += nextSize;
-                            } else {
-                                end += 4096;
-                                nextOffset2 += 4096;
                             }
-                        }
-                        // Write the chunk + chunk header
-                        writeSafe(raf, start, newBytes);
-                        // Write the location data (beginning of file)
-                        writeHeader(raf, cx, cz, start >> 12, newSize, true);
-
-                        written = start + newBytes.length + 5;
-                        start += newSize << 12;
+                        }));
                     }
-
-                    // Write all the chunks which need to be appended
-                    if (!append.isEmpty()) {
-                        for (Int2ObjectMap.Entry<byte[]> entry : append.int2ObjectEntrySet()) {
-                            int pair = entry.getIntKey();
-                            short cx = MathMan.unpairX(pair);
-                            short cz = MathMan.unpairY(pair);
-                            byte[] bytes = entry.getValue();
-                            int len = bytes.length + 5;
-                            int newSize = (len + 4095) >> 12;
-                            writeSafe(raf, start, bytes);
-                            writeHeader(raf, cx, cz, start >> 12, newSize, true);
-                            written = start + bytes.length + 5;
-                            start += newSize << 12;
+                    for (ForkJoinTask<?> task : tasks) {
+                        task.join();
+                    }
+                    // Write the location data (beginning of file) for the chunks which were written
+                    for (Int2IntMap.Entry entry : positions.int2IntEntrySet()) {
+                        int pair = entry.getIntKey();
+                        short cx = MathMan.unpairX(pair);
+                        short cz = MathMan.unpairY(pair);
+                        int newSize = (compressedMap.get(pair).length + 5 + 4095) >> 12;
+                        int sector = entry.getIntValue() >> 12;
+                        if (failed.contains(pair)) {
+                            Fawe.debug("Could not write chunk " + cx + "," + cz + " in " + file.getName() + ", keeping its previous location");
+                            used.clear(sector, sector + newSize);
+                            continue;
+                        }
+                        int[] range = release.get(pair);
+                        if (range != null) {
+                            used.clear(range[0], range[1]);
                         }
+                        writeHeader(raf, cx, cz, sector, newSize, true);
                     }
+
                     // Round the file length, since the vanilla server doesn't like it for some reason
-                    raf.setLength(4096 * ((written + 4095) / 4096));
-                    if (raf instanceof BufferedRandomAccessFile) {
-                        ((BufferedRandomAccessFile) raf).flush();
-                    }
+                    raf.setLength(4096L * Math.max(2, used.length()));
                     raf.close();
                 } catch (Throwable e) {
                     e.printStackTrace();
@@ -61,6 +61,27 @@ public boolean appliesChunk(int cx, int cz) {
         return true;
     }
 
+    /**
+     * Check whether chunks should be read as a {@link MCAChunkView} instead of a MCAChunk<br>
+     * - Only the fields accessed from the view are read, no tags are created<br>
+     * - applyChunkView is called instead of applyChunk, applyBlock and finishChunk<br>
+     *
+     * @return true if this filter only needs to read chunks
+     */
+    public boolean usesChunkView() {
+        return false;
+    }
+
+    /**
+     * Read the chunk (see {@link #usesChunkView()})<br>
+     * - The view is reused by the next chunk read on this thread<br>
+     *
+     * @param view
+     * @param cache
+     */
+    public void applyChunkView(MCAChunkView view, T cache) {
+    }
+
     /**
      * Do something with the MCAChunk<br>
      * - Return null if you don't want to filter blocks<br>
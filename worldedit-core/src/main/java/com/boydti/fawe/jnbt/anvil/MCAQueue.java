@@ -45,10 +45,17 @@ protected MutableMCABackedBaseBlock initialValue() {
             return new MutableMCABackedBaseBlock();
         }
     };
+    private final ThreadLocal<MCAChunkView> viewStore = new ThreadLocal<MCAChunkView>() {
+        @Override
+        protected MCAChunkView initialValue() {
+            return new MCAChunkView();
+        }
+    };
 
     @Override
     protected void finalize() throws Throwable {
         IterableThreadLocal.clean(blockStore);
+        IterableThreadLocal.clean(viewStore);
         super.finalize();
     }
 
@@ -521,6 +528,13 @@ public void run() {
                                                 int cx = cbx + rcx;
                                                 int cz = cbz + rcz;
                                                 if (filter.appliesChunk(cx, cz)) {
+                                                    if (filter.usesChunkView()) {
+                                                        MCAChunkView view = viewStore.get();
+                                                        if (view.read(finalFile, offset)) {
+                                                            filter.applyChunkView(view, filter.get());
+                                                        }
+                                                        return;
+                                                    }
                                                     MCAChunk chunk = finalFile.getChunk(cx, cz);
                                                     try {
                                                         final G value = filter.get();
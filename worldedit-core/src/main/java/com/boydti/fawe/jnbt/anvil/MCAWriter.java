@@ -1,15 +1,23 @@
 package com.boydti.fawe.jnbt.anvil;
 
+import com.boydti.fawe.Fawe;
 import com.boydti.fawe.object.collection.IterableThreadLocal;
-import com.boydti.fawe.object.io.BufferedRandomAccessFile;
 import com.boydti.fawe.util.MainUtil;
 import com.sk89q.worldedit.world.block.BlockID;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Deflater;
 
 public abstract class MCAWriter {
@@ -72,13 +80,76 @@ public final int getArea() {
 
     public abstract WritableMCAChunk write(WritableMCAChunk input, int startX, int endX, int startZ, int endZ);
 
+    private final AtomicInteger regionsWritten = new AtomicInteger();
+    private final AtomicInteger chunksWritten = new AtomicInteger();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile int regionCount;
+    private volatile long startTime;
+    private volatile long endTime;
+
+    /**
+     * @return the number of regions being generated
+     */
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * @return the number of regions which have been generated and written
+     */
+    public int getRegionsWritten() {
+        return regionsWritten.get();
+    }
+
+    public int getChunksWritten() {
+        return chunksWritten.get();
+    }
+
+    /**
+     * @return the number of compressed chunk bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the number of chunks written per second, for the current or last generation
+     */
+    public double getChunksPerSecond() {
+        long start = startTime;
+        if (start == 0) {
+            return 0;
+        }
+        long end = endTime != 0 ? endTime : System.currentTimeMillis();
+        return chunksWritten.get() * 1000d / Math.max(1, end - start);
+    }
+
+    /**
+     * The maximum number of regions being generated or written at once<br>
+     * - Each region in flight holds its file open, and its chunks queued on the pool
+     *
+     * @param parallelism the pool parallelism
+     * @return
+     */
+    protected int getMaxRegionsInFlight(int parallelism) {
+        return Math.max(2, parallelism);
+    }
+
+    /**
+     * Generate and write every region<br>
+     * - Chunks of several regions are generated at once, with back-pressure on the number of regions in flight
+     * - Each chunk is compressed and written to its region (positional writes) as soon as it's generated
+     * - The region's header is written once its last chunk is
+     *
+     * @throws IOException
+     */
     public void generate() throws IOException {
         if (!folder.exists()) {
             folder.mkdirs();
         }
         final ForkJoinPool pool = new ForkJoinPool();
-        int tcx = (width - 1) >> 4;
-        int tcz = (length - 1) >> 4;
+        final int tcx = (width - 1) >> 4;
+        final int tcz = (length - 1) >> 4;
         final ThreadLocal<WritableMCAChunk> chunkStore = new ThreadLocal<WritableMCAChunk>() {
             @Override
             protected WritableMCAChunk initialValue() {
@@ -107,110 +178,184 @@ protected Deflater initialValue() {
                 return deflater;
             }
         };
-        byte[] fileBuf = new byte[1 << 16];
         int mcaXMin = 0;
         int mcaZMin = 0;
         int mcaXMax = mcaXMin + ((width - 1) >> 9);
         int mcaZMax = mcaZMin + ((length - 1) >> 9);
 
-        final byte[] header = new byte[4096];
+        final int maxInFlight = getMaxRegionsInFlight(pool.getParallelism());
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        regionsWritten.set(0);
+        chunksWritten.set(0);
+        bytesWritten.set(0);
+        regionCount = (mcaXMax - mcaXMin + 1) * (mcaZMax - mcaZMin + 1);
+        endTime = 0;
+        startTime = System.currentTimeMillis();
 
-        for (int mcaZ = mcaXMin; mcaZ <= mcaZMax; mcaZ++) {
-            for (int mcaX = mcaXMin; mcaX <= mcaXMax; mcaX++) {
-                File file = new File(folder, "r." + (mcaX + (getOffsetX() >> 9)) + "." + (mcaZ + (getOffsetZ() >> 9)) + ".mca");
-                if (!file.exists()) {
-                    file.createNewFile();
-                }
-                final BufferedRandomAccessFile raf = new BufferedRandomAccessFile(file, "rw", fileBuf);
-                final byte[][] compressed = new byte[1024][];
-                int bx = mcaX << 9;
-                int bz = mcaZ << 9;
-                int scx = bx >> 4;
-                int ecx = Math.min(scx + 31, tcx);
-                int scz = bz >> 4;
-                int ecz = Math.min(scz + 31, tcz);
-                for (int cz = scz; cz <= ecz; cz++) {
-                    final int csz = cz << 4;
-                    final int cez = Math.min(csz + 15, length - 1);
-                    for (int cx = scx; cx <= ecx; cx++) {
-                        final int csx = cx << 4;
-                        final int cex = Math.min(csx + 15, width - 1);
-                        final int fcx = cx;
-                        final int fcz = cz;
-                        if (shouldWrite(cx, cz)) {
-                            pool.submit(() -> {
-                                try {
-                                    WritableMCAChunk chunk = chunkStore.get();
-                                    chunk.clear(fcx, fcz);
-                                    chunk = write(chunk, csx, cex, csz, cez);
-                                    if (chunk != null) {
-                                        // Generation offset
-                                        chunk.setLoc( fcx + (getOffsetX() >> 4), fcz + (getOffsetZ() >> 4));
-
-                                        // Compress
-                                        byte[] bytes = chunk.toBytes(byteStore1.get());
-                                        byte[] compressedBytes = MainUtil.compress(bytes, byteStore2.get(), deflateStore.get());
-
-                                        // TODO optimize (avoid cloning) by add a synchronized block and write to the RAF here instead of below
-                                        compressed[((fcx & 31)) + ((fcz & 31) << 5)] = compressedBytes.clone();
-                                    }
-                                } catch (Throwable e) {
-                                    e.printStackTrace();
-                                }
-                            });
-                        }
+        try {
+            for (int mcaZ = mcaXMin; mcaZ <= mcaZMax; mcaZ++) {
+                for (int mcaX = mcaXMin; mcaX <= mcaXMax; mcaX++) {
+                    File file = new File(folder, "r." + (mcaX + (getOffsetX() >> 9)) + "." + (mcaZ + (getOffsetZ() >> 9)) + ".mca");
+                    if (!file.exists()) {
+                        file.createNewFile();
                     }
-                }
-                pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-                pool.submit(() -> {
-                    try {
-                        int totalLength = 8192;
-                        for (int i = 0; i < compressed.length; i++) {
-                            byte[] compressedBytes = compressed[i];
-                            if (compressedBytes != null) {
-                                int blocks = ((4095 + compressedBytes.length + 5) / 4096) * 4096;
-                                totalLength += blocks;
-                            }
-                        }
-                        raf.setLength(totalLength);
-                        int offset = 8192;
-                        for (int i = 0; i < compressed.length; i++) {
-                            byte[] compressedBytes = compressed[i];
-                            if (compressedBytes != null) {
-                                // Set header
-                                int index = i << 2;
-                                int offsetMedium = offset >> 12;
-                                int blocks = ((4095 + compressedBytes.length + 5) / 4096);
-                                header[index] = (byte) (offsetMedium >> 16);
-                                header[index + 1] = (byte) ((offsetMedium >> 8));
-                                header[index + 2] = (byte) ((offsetMedium >> 0));
-                                header[index + 3] = (byte) (blocks);
-                                // Write bytes
-                                raf.seek(offset);
-                                raf.writeInt(compressedBytes.length + 1);
-                                raf.write(2);
-                                raf.write(compressedBytes);
-                                offset += blocks * 4096;
+                    int bx = mcaX << 9;
+                    int bz = mcaZ << 9;
+                    int scx = bx >> 4;
+                    int ecx = Math.min(scx + 31, tcx);
+                    int scz = bz >> 4;
+                    int ecz = Math.min(scz + 31, tcz);
+                    List<int[]> chunks = new ArrayList<>();
+                    for (int cz = scz; cz <= ecz; cz++) {
+                        for (int cx = scx; cx <= ecx; cx++) {
+                            if (shouldWrite(cx, cz)) {
+                                chunks.add(new int[]{cx, cz});
                             }
                         }
-                        raf.seek(0);
-                        raf.write(header);
+                    }
+                    inFlight.acquire();
+                    final Region region;
+                    try {
+                        region = new Region(file, chunks.size(), inFlight);
                     } catch (IOException e) {
-                        e.printStackTrace();
-                    } finally {
-                        try {
-                            raf.close();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
+                        inFlight.release();
+                        throw e;
+                    }
+                    if (chunks.isEmpty()) {
+                        pool.submit(region::finish);
+                        continue;
+                    }
+                    for (int[] pos : chunks) {
+                        final int fcx = pos[0];
+                        final int fcz = pos[1];
+                        final int csx = fcx << 4;
+                        final int cex = Math.min(csx + 15, width - 1);
+                        final int csz = fcz << 4;
+                        final int cez = Math.min(csz + 15, length - 1);
+                        pool.submit(() -> {
+                            try {
+                                WritableMCAChunk chunk = chunkStore.get();
+                                chunk.clear(fcx, fcz);
+                                chunk = write(chunk, csx, cex, csz, cez);
+                                if (chunk != null) {
+                                    // Generation offset
+                                    chunk.setLoc( fcx + (getOffsetX() >> 4), fcz + (getOffsetZ() >> 4));
+
+                                    // Compress
+                                    byte[] bytes = chunk.toBytes(byteStore1.get());
+                                    byte[] compressedBytes = MainUtil.compress(bytes, byteStore2.get(), deflateStore.get());
+                                    region.write(fcx, fcz, compressedBytes);
+                                }
+                            } catch (Throwable e) {
+                                e.printStackTrace();
+                            } finally {
+                                region.chunkDone();
+                            }
+                        });
                     }
-                });
+                }
+            }
+            // Wait for the remaining regions
+            inFlight.acquire(maxInFlight);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            endTime = System.currentTimeMillis();
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            IterableThreadLocal.clean(byteStore1);
+            IterableThreadLocal.clean(byteStore2);
+            IterableThreadLocal.clean(deflateStore);
+        }
+    }
+
+    /**
+     * A region file being written to
+     */
+    private final class Region {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final byte[] header = new byte[4096];
+        private final AtomicInteger remaining;
+        // The next free sector (after the location and timestamp tables)
+        private final AtomicInteger nextSector = new AtomicInteger(2);
+        private final Semaphore inFlight;
+
+        private Region(File file, int chunks, Semaphore inFlight) throws IOException {
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            this.remaining = new AtomicInteger(chunks);
+            this.inFlight = inFlight;
+            raf.setLength(0);
+        }
+
+        /**
+         * Write a chunk to the next free sectors of the file
+         *
+         * @param cx
+         * @param cz
+         * @param data the compressed chunk (the buffer may be reused after this returns)
+         * @throws IOException
+         */
+        private void write(int cx, int cz, byte[] data) throws IOException {
+            int sectors = (4095 + data.length + 5) / 4096;
+            if (sectors > 255) {
+                Fawe.debug("Skipping chunk " + cx + "," + cz + " as it's too large to store in a region file (" + data.length + " bytes)");
+                return;
+            }
+            int sector = nextSector.getAndAdd(sectors);
+            ByteBuffer buffer = ByteBuffer.allocate(data.length + 5);
+            buffer.putInt(data.length + 1);
+            // Compression type
+            buffer.put((byte) 2);
+            buffer.put(data);
+            buffer.flip();
+            long position = (long) sector << 12;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            // Each chunk sets its own entry
+            int index = ((cx & 31) + ((cz & 31) << 5)) << 2;
+            header[index] = (byte) (sector >> 16);
+            header[index + 1] = (byte) (sector >> 8);
+            header[index + 2] = (byte) (sector);
+            header[index + 3] = (byte) (sectors);
+            chunksWritten.incrementAndGet();
+            bytesWritten.addAndGet(data.length);
+        }
+
+        private void chunkDone() {
+            if (remaining.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+
+        /**
+         * Write the header once every chunk has been written
+         */
+        private void finish() {
+            try {
+                raf.setLength((long) nextSector.get() << 12);
+                ByteBuffer buffer = ByteBuffer.wrap(header);
+                long position = 0;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                regionsWritten.incrementAndGet();
+                inFlight.release();
             }
         }
-        pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-        pool.shutdown();
-        IterableThreadLocal.clean(byteStore1);
-        IterableThreadLocal.clean(byteStore2);
-        IterableThreadLocal.clean(deflateStore);
     }
 }
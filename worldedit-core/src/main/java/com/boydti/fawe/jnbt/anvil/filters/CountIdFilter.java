@@ -2,6 +2,7 @@
 
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
+import com.boydti.fawe.jnbt.anvil.MCAChunkView;
 import com.boydti.fawe.jnbt.anvil.MCAFilterCounter;
 import com.boydti.fawe.object.number.MutableLong;
 import com.sk89q.worldedit.world.block.BlockState;
@@ -25,6 +26,25 @@ public CountIdFilter addBlock(BlockStateHolder block) {
         return this;
     }
 
+    @Override
+    public boolean usesChunkView() {
+        return true;
+    }
+
+    @Override
+    public void applyChunkView(MCAChunkView view, MutableLong count) {
+        for (int layer = 0; layer < 16; layer++) {
+            int[] ids = view.getBlocks(layer);
+            if (ids != null) {
+                for (int i : ids) {
+                    if (allowedId[BlockTypes.getFromStateId(i).getInternalId()]) {
+                        count.increment();
+                    }
+                }
+            }
+        }
+    }
+
     @Override
     public MCAChunk applyChunk(MCAChunk chunk, MutableLong count) {
         // TODO FIXME
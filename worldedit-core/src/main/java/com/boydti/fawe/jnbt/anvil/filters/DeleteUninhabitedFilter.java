@@ -3,9 +3,9 @@
 import com.boydti.fawe.Fawe;
 import com.boydti.fawe.jnbt.NBTStreamer;
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
+import com.boydti.fawe.jnbt.anvil.MCAChunkView;
 import com.boydti.fawe.jnbt.anvil.MCAFile;
 import com.boydti.fawe.jnbt.anvil.MCAFilterCounter;
-import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.RunnableVal2;
 import com.boydti.fawe.object.RunnableVal4;
 import com.boydti.fawe.object.exception.FaweException;
@@ -14,6 +14,7 @@
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
+import java.util.OptionalLong;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
@@ -27,6 +28,12 @@ public class DeleteUninhabitedFilter extends MCAFilterCounter {
     private final long fileDurationMillis;
     private final long cutoffChunkAgeEpoch;
     private boolean debug = false;
+    private final ThreadLocal<MCAChunkView> viewStore = new ThreadLocal<MCAChunkView>() {
+        @Override
+        protected MCAChunkView initialValue() {
+            return new MCAChunkView();
+        }
+    };
 
     public DeleteUninhabitedFilter(long fileDurationMillis, long inhabitedTicks, long chunkInactivityMillis) {
         this.fileDurationMillis = fileDurationMillis;
@@ -121,12 +128,14 @@ public void run(Integer x, Integer z, Integer offset, Integer size) {
                         @Override
                         public void run() {
                             try {
-                                mca.streamChunk(offset, new RunnableVal<NBTStreamer>() {
-                                    @Override
-                                    public void run(NBTStreamer value) {
-                                        addReaders(mca, x, z, value);
+                                MCAChunkView view = viewStore.get();
+                                if (view.read(mca, offset)) {
+                                    // Only chunks which have an InhabitedTime can be deleted (as with the streamed reader)
+                                    OptionalLong inhabited = view.getInhabitedTime();
+                                    if (inhabited.isPresent()) {
+                                        checkInhabited(mca, x, z, inhabited.getAsLong());
                                     }
-                                });
+                                }
                             } catch (FaweException ignore) {
                             } catch (IOException e) {
                                 e.printStackTrace();
@@ -143,20 +152,24 @@ public void addReaders(MCAFile mca, int x, int z, NBTStreamer streamer) {
         streamer.addReader(".Level.InhabitedTime", new BiConsumer<Integer, Long>() {
             @Override
             public void accept(Integer index, Long value) {
-                if (value <= inhabitedTicks) {
-                    MCAChunk chunk = new MCAChunk(null, x, z);
-                    if (debug) {
-                        int cx = (mca.getX() << 5) + (x & 31);
-                        int cz = (mca.getZ() << 5) + (z & 31);
-                        Fawe.debug("Deleting chunk " + cx + "," + cz + " as it was only inhabited for " + value + " and passed all other checks");
-                    }
-                    chunk.setDeleted(true);
-                    synchronized (mca) {
-                        mca.setChunk(chunk);
-                    }
-                    get().add(16 * 16 * 256);
-                }
+                checkInhabited(mca, x, z, value);
             }
         });
     }
+
+    public void checkInhabited(MCAFile mca, int x, int z, long value) {
+        if (value <= inhabitedTicks) {
+            MCAChunk chunk = new MCAChunk(null, x, z);
+            if (debug) {
+                int cx = (mca.getX() << 5) + (x & 31);
+                int cz = (mca.getZ() << 5) + (z & 31);
+                Fawe.debug("Deleting chunk " + cx + "," + cz + " as it was only inhabited for " + value + " and passed all other checks");
+            }
+            chunk.setDeleted(true);
+            synchronized (mca) {
+                mca.setChunk(chunk);
+            }
+            get().add(16 * 16 * 256);
+        }
+    }
 }
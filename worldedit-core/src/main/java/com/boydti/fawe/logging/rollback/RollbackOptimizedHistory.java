@@ -4,6 +4,7 @@
 import com.boydti.fawe.database.DBHandler;
 import com.boydti.fawe.database.RollbackDatabase;
 import com.boydti.fawe.object.changeset.DiskStorageHistory;
+import com.boydti.fawe.object.io.AsyncFileWriter;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.world.World;
 import java.io.IOException;
@@ -84,10 +85,10 @@ public void setTime(long time) {
     @Override
     public boolean close() {
         if (super.close()) {
-            // Save to DB
+            // Save to DB, once the files have been written (edits finishing together are inserted as one batch)
             RollbackDatabase db = DBHandler.IMP.getDatabase(getWorld());
             if (db != null) {
-                db.logEdit(this);
+                AsyncFileWriter.afterWrites(() -> db.logEdit(this));
             }
             return true;
         }
@@ -97,6 +98,20 @@ public boolean close() {
     @Override
     public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
         super.add(x, y, z, combinedFrom, combinedTo);
+        expand(x, y, z);
+    }
+
+    @Override
+    public boolean addSection(int cx, int cy, int cz, int[] previous, int[] current) {
+        if (!super.addSection(cx, cy, cz, previous, current)) {
+            return false;
+        }
+        expand(cx << 4, cy << 4, cz << 4);
+        expand((cx << 4) + 15, (cy << 4) + 15, (cz << 4) + 15);
+        return true;
+    }
+
+    private void expand(int x, int y, int z) {
         if (x < minX) {
             minX = x;
         } else if (x > maxX) {
@@ -1,5 +1,6 @@
 package com.boydti.fawe.object;
 
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.boydti.fawe.object.visitor.FaweChunkVisitor;
 import com.boydti.fawe.util.MainUtil;
 import com.sk89q.jnbt.CompoundTag;
@@ -286,6 +287,30 @@ public void setBiome(final BiomeType biome) {
     public void optimize() {
     }
 
+    /**
+     * Prepare this chunk to be set, called off the main thread before {@link #call()}<br>
+     * - Work which doesn't need access to the world (e.g. building section palettes) should be done here
+     * - By default this calls {@link #optimize()}, which does nothing unless the chunk type implements it
+     */
+    public void prepare() {
+        optimize();
+    }
+
+    /**
+     * Register another user of this chunk's data (e.g. an async history task)<br>
+     * - Each user must call {@link #recycle()} once it is finished with the chunk
+     */
+    public void retain() {
+    }
+
+    /**
+     * Called once a user has finished with this chunk<br>
+     * - When the last user is finished, the chunk's buffers are returned to their pool
+     * - The chunk must not be used after this
+     */
+    public void recycle() {
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if ((obj == null) || obj.hashCode() != hashCode() || !(obj instanceof FaweChunk)) {
@@ -308,4 +333,16 @@ public void end() {
 
     @Override
     public abstract FaweChunk call();
+
+    /**
+     * {@link #call()}, timed by {@link FaweMetrics#CHUNK_CALL}
+     */
+    public final FaweChunk dispatch() {
+        long start = FaweMetrics.CHUNK_CALL.start();
+        try {
+            return call();
+        } finally {
+            FaweMetrics.CHUNK_CALL.stop(start);
+        }
+    }
 }
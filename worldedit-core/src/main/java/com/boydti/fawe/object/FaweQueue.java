@@ -5,6 +5,7 @@
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.example.NullRelighter;
 import com.boydti.fawe.example.Relighter;
+import com.boydti.fawe.object.collection.SectionPool;
 import com.boydti.fawe.object.exception.FaweException;
 import com.boydti.fawe.util.MainUtil;
 import com.boydti.fawe.util.MathMan;
@@ -372,12 +373,51 @@ default boolean next() {
      */
     boolean next(int amount, long time);
 
+    /**
+     * Remove the next chunk which is ready to be dispatched<br>
+     * - Used to interleave the chunks of multiple queues in the same tick
+     * - Queues which don't support this return null and are dispatched with {@link #next(int, long)}
+     *
+     * @return the chunk, or null
+     */
+    default FaweChunk pollChunk() {
+        return null;
+    }
+
+    /**
+     * Called before a chunk from {@link #pollChunk()} is set
+     *
+     * @param chunk
+     */
+    default void start(FaweChunk chunk) {
+        chunk.start();
+    }
+
+    /**
+     * Called after a chunk from {@link #pollChunk()} has been set
+     *
+     * @param chunk
+     */
+    default void end(FaweChunk chunk) {
+        chunk.end();
+    }
+
+    /**
+     * Called once a chunk from this queue has been set and sent<br>
+     * - Allows the chunk's buffers to be reused
+     *
+     * @param chunk
+     */
+    default void recycle(FaweChunk chunk) {
+    }
+
     default void saveMemory() {
         MainUtil.sendAdmin(BBC.OOM.s());
         // Set memory limited
         MemUtil.memoryLimitedTask();
         // Clear block placement
         clear();
+        SectionPool.IMP.clear();
         Fawe.get().getWorldEdit().getSessionManager().clear();
         // GC
         System.gc();
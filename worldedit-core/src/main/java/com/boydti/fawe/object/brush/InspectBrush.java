@@ -6,6 +6,7 @@
 import com.boydti.fawe.database.DBHandler;
 import com.boydti.fawe.database.RollbackDatabase;
 import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.object.RegionWrapper;
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.change.MutableFullBlockChange;
 import com.boydti.fawe.object.changeset.DiskStorageHistory;
@@ -81,7 +82,7 @@ public boolean perform(final Player player, LocalSession session, boolean rightC
             @Override
             public void run(DiskStorageHistory value) {
                 try {
-                    Iterator<MutableFullBlockChange> iter = value.getFullBlockIterator(null, 0, false);
+                    Iterator<MutableFullBlockChange> iter = value.getFullBlockIterator(null, 0, false, new RegionWrapper[]{new RegionWrapper(x, x, z, z)});
                     while (iter.hasNext()) {
                         MutableFullBlockChange change = iter.next();
                         if (change.x != x || change.y != y || change.z != z) {
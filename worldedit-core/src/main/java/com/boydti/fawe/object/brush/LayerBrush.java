@@ -1,7 +1,7 @@
 package com.boydti.fawe.object.brush;
 
 import com.boydti.fawe.object.FaweQueue;
-import com.boydti.fawe.object.collection.BlockVectorSet;
+import com.boydti.fawe.object.collection.ChunkBitmapSet;
 import com.boydti.fawe.object.mask.AdjacentAnyMask;
 import com.boydti.fawe.object.mask.RadiusMask;
 import com.sk89q.worldedit.EditSession;
@@ -41,7 +41,7 @@ public void build(EditSession editSession, BlockVector3 position, Pattern ignore
         visitor.visit(position);
         visitor.setDirections(Arrays.asList(BreadthFirstSearch.DIAGONAL_DIRECTIONS));
         Operations.completeBlindly(visitor);
-        BlockVectorSet visited = visitor.getVisited();
+        ChunkBitmapSet visited = visitor.getVisitedBitmap();
         BlockStateHolder firstPattern = layers[0];
         visitor = new RecursiveVisitor((Mask) pos -> {
             int depth = visitor.getDepth() + 1;
@@ -1,6 +1,6 @@
 package com.boydti.fawe.object.brush;
 
-import com.boydti.fawe.object.collection.BlockVectorSet;
+import com.boydti.fawe.object.collection.ChunkBitmapSet;
 import com.boydti.fawe.object.collection.LocalBlockVectorSet;
 import com.boydti.fawe.object.mask.AdjacentAnyMask;
 import com.boydti.fawe.object.mask.RadiusMask;
@@ -54,7 +54,7 @@ public void build(EditSession editSession, BlockVector3 position, Pattern patter
         visitor.visit(position);
         visitor.setDirections(Arrays.asList(BreadthFirstSearch.DIAGONAL_DIRECTIONS));
         Operations.completeBlindly(visitor);
-        BlockVectorSet visited = visitor.getVisited();
+        ChunkBitmapSet visited = visitor.getVisitedBitmap();
         int length = visited.size();
         if (size == 0) {
             length = 1;
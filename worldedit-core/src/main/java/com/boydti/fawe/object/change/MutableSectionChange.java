@@ -0,0 +1,100 @@
+package com.boydti.fawe.object.change;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.HasFaweQueue;
+import com.boydti.fawe.object.RegionWrapper;
+import com.boydti.fawe.util.ExtentTraverser;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.history.UndoContext;
+import com.sk89q.worldedit.history.change.Change;
+import com.sk89q.worldedit.world.block.BlockID;
+
+/**
+ * The changes to a 16x16x16 section, recorded as one change<br>
+ * - Undo/redo sets the changed blocks of the section straight to the queue
+ * - {@link #from} and {@link #to} are indexed by (y << 8) | (z << 4) | x, and only valid where {@link #isChanged(int)}
+ */
+public class MutableSectionChange implements Change {
+
+    public int cx;
+    public int cy;
+    public int cz;
+    // null if every block changed
+    public long[] changed;
+    public final int[] from = new int[4096];
+    // null if the history doesn't store redo
+    public int[] to;
+    // Only set the blocks in these regions, or null for all
+    public RegionWrapper[] filter;
+
+    private FaweQueue queue;
+    private boolean checkedQueue;
+
+    public boolean isChanged(int index) {
+        return changed == null || (changed[index >> 6] & (1L << index)) != 0;
+    }
+
+    public int getFrom(int index) {
+        return from[index];
+    }
+
+    public int getTo(int index) {
+        return to == null ? BlockID.AIR : to[index];
+    }
+
+    public boolean isFiltered(int x, int y, int z) {
+        if (filter == null) {
+            return false;
+        }
+        for (RegionWrapper region : filter) {
+            if (region.isIn(x, y, z)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void undo(UndoContext context) throws WorldEditException {
+        create(context, true);
+    }
+
+    @Override
+    public void redo(UndoContext context) throws WorldEditException {
+        create(context, false);
+    }
+
+    public void create(UndoContext context, boolean undo) {
+        if (queue != null) {
+            perform(queue, undo);
+        }
+        if (!checkedQueue) {
+            checkedQueue = true;
+            Extent extent = context.getExtent();
+            ExtentTraverser found = new ExtentTraverser(extent).find(HasFaweQueue.class);
+            if (found != null) {
+                perform(queue = ((HasFaweQueue) found.get()).getQueue(), undo);
+            } else {
+                Fawe.debug("FAWE does not support: " + extent + " for " + getClass() + " (bug Empire92)");
+            }
+        }
+    }
+
+    public void perform(FaweQueue queue, boolean undo) {
+        int bx = cx << 4;
+        int by = cy << 4;
+        int bz = cz << 4;
+        for (int y = 0, index = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++, index++) {
+                    if (!isChanged(index) || isFiltered(bx + x, by + y, bz + z)) {
+                        continue;
+                    }
+                    queue.setBlock(bx + x, by + y, bz + z, undo ? getFrom(index) : getTo(index));
+                }
+            }
+        }
+    }
+}
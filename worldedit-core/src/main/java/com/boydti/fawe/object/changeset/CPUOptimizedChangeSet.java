@@ -48,6 +48,8 @@ public void run(final FaweChunk previous, final FaweChunk next) {
                         }
                     }
                 }
+                // The change holds onto the chunk, so its buffers can't be reused
+                next.retain();
                 changes.add(new MutableChunkChange(previous, next, checkEmpty));
             }
         });
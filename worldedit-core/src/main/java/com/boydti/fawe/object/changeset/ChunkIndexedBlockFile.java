@@ -0,0 +1,401 @@
+package com.boydti.fawe.object.changeset;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FaweInputStream;
+import com.boydti.fawe.object.FaweOutputStream;
+import com.boydti.fawe.object.RegionWrapper;
+import com.boydti.fawe.object.io.AsyncFileWriter;
+import com.boydti.fawe.object.io.CompressionStore;
+import com.boydti.fawe.util.MainUtil;
+import com.boydti.fawe.util.MathMan;
+import com.google.common.io.ByteStreams;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Block changes stored as separately compressed blocks per chunk, with an index of chunk to file offset<br>
+ * - Lookups restricted to a region only read and decompress the chunks which intersect it
+ * - Changes to the same chunk are always read back in the order they were written
+ * - Files without the magic byte are in the original single stream format (see {@link FaweStreamChangeSet})
+ * <p>
+ * [header] { byte magic, byte version, byte mode, int origin x, int origin z }<br>
+ * [blocks]... { int chunk x, int chunk z, int length, byte[length] compressed changes }<br>
+ * [footer] { int count, count * { int chunk x, int chunk z, long offset }, long footer offset, int footer magic }<br>
+ * Each change is { byte (x & 15) << 4 | (z & 15), unsigned byte y, varint combinedFrom, [varint combinedTo] }<br>
+ * The footer is written on close, files without one (e.g. still being written) are indexed by skipping through the blocks.
+ */
+public final class ChunkIndexedBlockFile {
+
+    /**
+     * Never a valid compression mode (see {@link MainUtil#getCompressedOS(java.io.OutputStream, int, int)})
+     */
+    public static final int MAGIC = 0x40;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 11;
+    private static final int BLOCK_HEADER_SIZE = 12;
+    private static final int FOOTER_MAGIC = 0x46415745;
+    private static final int FOOTER_TAIL_SIZE = 12;
+
+    /**
+     * The uncompressed size at which a chunk's changes are written out as a block
+     */
+    private static final int BLOCK_SIZE = 16384;
+    /**
+     * The maximum number of chunks with unwritten changes
+     */
+    private static final int MAX_PENDING = 256;
+
+    private ChunkIndexedBlockFile() {
+    }
+
+    /**
+     * @param file
+     * @return if the file is in the chunk indexed format
+     */
+    public static boolean isChunkIndexed(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        try (FileInputStream fis = new FileInputStream(file)) {
+            return fis.read() == MAGIC;
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+            return false;
+        }
+    }
+
+    /**
+     * @param file
+     * @return { mode, origin x, origin z }
+     * @throws IOException
+     */
+    public static int[] readHeader(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return readHeader(raf);
+        }
+    }
+
+    private static int[] readHeader(RandomAccessFile raf) throws IOException {
+        raf.seek(0);
+        if (raf.read() != MAGIC) {
+            throw new IOException("Not a chunk indexed history file");
+        }
+        int version = raf.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported history version: " + version);
+        }
+        int mode = raf.read();
+        int x = raf.readInt();
+        int z = raf.readInt();
+        return new int[]{mode, x, z};
+    }
+
+    private static boolean isStoreRedo(int mode) {
+        return mode == 3 || mode == 4;
+    }
+
+    private static final class Block {
+        private final int cx;
+        private final int cz;
+        private final long offset;
+
+        private Block(int cx, int cz, long offset) {
+            this.cx = cx;
+            this.cz = cz;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Pending {
+        private final int cx;
+        private final int cz;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final FaweOutputStream out = new FaweOutputStream(bytes);
+
+        private Pending(int cx, int cz) {
+            this.cx = cx;
+            this.cz = cz;
+        }
+    }
+
+    /**
+     * Writes changes to a new chunk indexed file
+     * - Not thread safe
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final int compression;
+        private final boolean storeRedo;
+        private final Long2ObjectLinkedOpenHashMap<Pending> pending = new Long2ObjectLinkedOpenHashMap<>();
+        private final List<Block> blocks = new ArrayList<>();
+        private long position;
+
+        /**
+         * @param file        the file to create
+         * @param mode        the stream mode (see {@link FaweStreamChangeSet})
+         * @param compression the compression level for each block
+         * @param originX
+         * @param originZ
+         * @throws IOException
+         */
+        public Writer(File file, int mode, int compression, int originX, int originZ) throws IOException {
+            this.compression = compression;
+            this.storeRedo = isStoreRedo(mode);
+            this.out = new DataOutputStream(new BufferedOutputStream(AsyncFileWriter.openFile(file), 8192));
+            out.write(MAGIC);
+            out.write(VERSION);
+            out.write(mode);
+            out.writeInt(originX);
+            out.writeInt(originZ);
+            position = HEADER_SIZE;
+        }
+
+        public void add(int x, int y, int z, int combinedFrom, int combinedTo) throws IOException {
+            int cx = x >> 4;
+            int cz = z >> 4;
+            long pair = MathMan.pairInt(cx, cz);
+            Pending chunk = pending.get(pair);
+            if (chunk == null) {
+                if (pending.size() >= MAX_PENDING) {
+                    write(pending.removeFirst());
+                }
+                chunk = new Pending(cx, cz);
+                pending.put(pair, chunk);
+            }
+            FaweOutputStream chunkOut = chunk.out;
+            chunkOut.write(((x & 15) << 4) | (z & 15));
+            chunkOut.write(y);
+            chunkOut.writeVarInt(combinedFrom);
+            if (storeRedo) {
+                chunkOut.writeVarInt(combinedTo);
+            }
+            if (chunk.bytes.size() >= BLOCK_SIZE) {
+                pending.remove(pair);
+                write(chunk);
+            }
+        }
+
+        private void write(Pending chunk) throws IOException {
+            if (chunk.bytes.size() == 0) {
+                return;
+            }
+            byte[] raw = chunk.bytes.toByteArray();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, raw.length >> 1));
+            int buffer = Math.max(64, Math.min(Settings.IMP.HISTORY.BUFFER_SIZE, raw.length));
+            try (FaweOutputStream cos = MainUtil.getCompressedOS(compressed, compression, buffer, CompressionStore.HISTORY)) {
+                cos.write(raw);
+            }
+            blocks.add(new Block(chunk.cx, chunk.cz, position));
+            out.writeInt(chunk.cx);
+            out.writeInt(chunk.cz);
+            out.writeInt(compressed.size());
+            compressed.writeTo(out);
+            position += BLOCK_HEADER_SIZE + compressed.size();
+        }
+
+        /**
+         * Write out all pending changes, so they can be read before the file is closed
+         *
+         * @throws IOException
+         */
+        public void flush() throws IOException {
+            for (Pending chunk : pending.values()) {
+                write(chunk);
+            }
+            pending.clear();
+            out.flush();
+        }
+
+        /**
+         * Write out all pending changes and the index
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+            long footer = position;
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                out.writeInt(block.cx);
+                out.writeInt(block.cz);
+                out.writeLong(block.offset);
+            }
+            out.writeLong(footer);
+            out.writeInt(FOOTER_MAGIC);
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the changes from a chunk indexed file, optionally restricted to the chunks intersecting some regions
+     */
+    public static final class Reader implements Closeable {
+        private final RandomAccessFile raf;
+        private final boolean storeRedo;
+        private final int originX;
+        private final int originZ;
+        private final List<Block> blocks;
+        private int blockIndex;
+        private FaweInputStream in;
+        private int bx;
+        private int bz;
+
+        public int x;
+        public int y;
+        public int z;
+        public int from;
+        public int to;
+
+        /**
+         * @param file
+         * @param regions the regions to read changes for, or null to read everything
+         * @throws IOException
+         */
+        public Reader(File file, RegionWrapper[] regions) throws IOException {
+            this.raf = new RandomAccessFile(file, "r");
+            try {
+                int[] header = readHeader(raf);
+                this.storeRedo = isStoreRedo(header[0]);
+                this.originX = header[1];
+                this.originZ = header[2];
+                this.blocks = filter(readIndex(raf), regions);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        public int getOriginX() {
+            return originX;
+        }
+
+        public int getOriginZ() {
+            return originZ;
+        }
+
+        /**
+         * Advance to the next change
+         *
+         * @return false if there are no more changes
+         * @throws IOException
+         */
+        public boolean next() throws IOException {
+            while (true) {
+                if (in != null) {
+                    int pos = in.read();
+                    if (pos != -1) {
+                        x = bx + (pos >> 4);
+                        z = bz + (pos & 15);
+                        y = in.readUnsignedByte();
+                        from = in.readVarInt();
+                        to = storeRedo ? in.readVarInt() : BlockTypes.AIR.getInternalId();
+                        return true;
+                    }
+                    in.close();
+                    in = null;
+                }
+                if (blockIndex >= blocks.size()) {
+                    return false;
+                }
+                Block block = blocks.get(blockIndex++);
+                raf.seek(block.offset + 8);
+                byte[] compressed = new byte[raf.readInt()];
+                raf.readFully(compressed);
+                bx = block.cx << 4;
+                bz = block.cz << 4;
+                in = MainUtil.getCompressedIS(new ByteArrayInputStream(compressed), Math.max(64, compressed.length));
+            }
+        }
+
+        /**
+         * Read the next block without parsing its changes (e.g. as a sample to train a dictionary with)
+         *
+         * @return the uncompressed block, or null if there are no more blocks
+         * @throws IOException
+         */
+        public byte[] nextBlock() throws IOException {
+            if (blockIndex >= blocks.size()) {
+                return null;
+            }
+            Block block = blocks.get(blockIndex++);
+            raf.seek(block.offset + 8);
+            byte[] compressed = new byte[raf.readInt()];
+            raf.readFully(compressed);
+            try (FaweInputStream is = MainUtil.getCompressedIS(new ByteArrayInputStream(compressed), Math.max(64, compressed.length))) {
+                return ByteStreams.toByteArray(is);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+            raf.close();
+        }
+
+        private static List<Block> filter(List<Block> blocks, RegionWrapper[] regions) {
+            if (regions == null) {
+                return blocks;
+            }
+            List<Block> filtered = new ArrayList<>();
+            for (Block block : blocks) {
+                for (RegionWrapper region : regions) {
+                    if (region.isInChunk(block.cx, block.cz)) {
+                        filtered.add(block);
+                        break;
+                    }
+                }
+            }
+            return filtered;
+        }
+
+        private static List<Block> readIndex(RandomAccessFile raf) throws IOException {
+            long length = raf.length();
+            if (length >= HEADER_SIZE + FOOTER_TAIL_SIZE + 4) {
+                raf.seek(length - FOOTER_TAIL_SIZE);
+                long footer = raf.readLong();
+                if (raf.readInt() == FOOTER_MAGIC && footer >= HEADER_SIZE && footer < length) {
+                    raf.seek(footer);
+                    int count = raf.readInt();
+                    List<Block> blocks = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        blocks.add(new Block(raf.readInt(), raf.readInt(), raf.readLong()));
+                    }
+                    return blocks;
+                }
+            }
+            // No footer, skip through the blocks instead
+            List<Block> blocks = new ArrayList<>();
+            long position = HEADER_SIZE;
+            while (position + BLOCK_HEADER_SIZE <= length) {
+                raf.seek(position);
+                int cx = raf.readInt();
+                int cz = raf.readInt();
+                int size = raf.readInt();
+                long next = position + BLOCK_HEADER_SIZE + size;
+                if (size < 0 || next > length) {
+                    // Partially written
+                    break;
+                }
+                blocks.add(new Block(cx, cz, position));
+                position = next;
+            }
+            return blocks;
+        }
+    }
+}
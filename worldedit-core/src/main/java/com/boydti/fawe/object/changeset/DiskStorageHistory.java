@@ -5,10 +5,17 @@
 import com.boydti.fawe.database.DBHandler;
 import com.boydti.fawe.database.RollbackDatabase;
 import com.boydti.fawe.object.*;
+import com.boydti.fawe.object.change.MutableBlockChange;
+import com.boydti.fawe.object.change.MutableFullBlockChange;
+import com.boydti.fawe.object.change.MutableSectionChange;
+import com.boydti.fawe.object.io.AsyncFileWriter;
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.boydti.fawe.util.MainUtil;
+import com.google.common.collect.Iterators;
 import com.sk89q.jnbt.NBTInputStream;
 import com.sk89q.jnbt.NBTOutputStream;
 import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.extent.inventory.BlockBag;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.block.BlockState;
@@ -17,11 +24,13 @@
 import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
 /**
@@ -36,6 +45,7 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
     private UUID uuid;
     private File bdFile;
     private File bioFile;
+    private File secFile;
     private File nbtfFile;
     private File nbttFile;
     private File entfFile;
@@ -51,6 +61,8 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
      * { short rel x, short rel z, unsigned byte y, short combinedFrom, short combinedTo }
      */
     private FaweOutputStream osBD;
+    // Section records
+    private FaweOutputStream osSEC;
     // biome
     private FaweOutputStream osBIO;
     // NBT From
@@ -61,6 +73,10 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
     private NBTOutputStream osENTCF;
     // Entity Create To
     private NBTOutputStream osENTCT;
+    // Block data in per chunk blocks (see ChunkIndexedBlockFile)
+    private ChunkIndexedBlockFile.Writer chunkedBD;
+    // Only read block changes in these regions (chunk indexed files only)
+    private RegionWrapper[] filter;
 
     private int index;
 
@@ -111,6 +127,7 @@ private void initFiles(File folder) {
         enttFile = new File(folder, index + ".entt");
         bdFile = new File(folder, index + ".bd");
         bioFile = new File(folder, index + ".bio");
+        secFile = new File(folder, index + ".sec");
     }
 
     private void init(UUID uuid, int i) {
@@ -130,7 +147,9 @@ public void delete() {
     }
 
     public void deleteFiles() {
+        awaitWrites();
         bdFile.delete();
+        secFile.delete();
         nbtfFile.delete();
         nbttFile.delete();
         entfFile.delete();
@@ -139,7 +158,12 @@ public void deleteFiles() {
 
     public void undo(FawePlayer fp, Region[] regions) {
         EditSession session = toEditSession(fp, regions);
-        session.undo(session);
+        filter = toFilter(regions);
+        try {
+            session.undo(session);
+        } finally {
+            filter = null;
+        }
         deleteFiles();
     }
 
@@ -149,13 +173,44 @@ public void undo(FawePlayer fp) {
 
     public void redo(FawePlayer fp, Region[] regions) {
         EditSession session = toEditSession(fp, regions);
-        session.redo(session);
+        filter = toFilter(regions);
+        try {
+            session.redo(session);
+        } finally {
+            filter = null;
+        }
+    }
+
+    private RegionWrapper[] toFilter(Region[] regions) {
+        if (regions == null) {
+            return null;
+        }
+        RegionWrapper[] filter = new RegionWrapper[regions.length];
+        for (int i = 0; i < regions.length; i++) {
+            Region region = regions[i];
+            if (region.isGlobal()) {
+                return null;
+            }
+            filter[i] = new RegionWrapper(region.getMinimumPoint(), region.getMaximumPoint());
+        }
+        return filter;
     }
 
     public void redo(FawePlayer fp) {
         undo(fp, null);
     }
 
+    /**
+     * Wait for the queued writes to this history's files (see {@link AsyncFileWriter})
+     */
+    private void awaitWrites() {
+        try {
+            AsyncFileWriter.awaitWrites(bdFile, secFile, bioFile, nbtfFile, nbttFile, entfFile, enttFile);
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public UUID getUUID() {
         return uuid;
     }
@@ -172,9 +227,11 @@ public int getIndex() {
     public boolean flush() {
         super.flush();
         synchronized (this) {
-            boolean flushed = osBD != null || osBIO != null || osNBTF != null || osNBTT != null && osENTCF != null || osENTCT != null;
+            boolean flushed = osBD != null || chunkedBD != null || osSEC != null || osBIO != null || osNBTF != null || osNBTT != null && osENTCF != null || osENTCT != null;
             try {
                 if (osBD != null) osBD.flush();
+                if (chunkedBD != null) chunkedBD.flush();
+                if (osSEC != null) osSEC.flush();
                 if (osBIO != null) osBIO.flush();
                 if (osNBTF != null) osNBTF.flush();
                 if (osNBTT != null) osNBTT.flush();
@@ -191,12 +248,20 @@ public boolean flush() {
     public boolean close() {
         super.close();
         synchronized (this) {
-            boolean flushed = osBD != null || osBIO != null || osNBTF != null || osNBTT != null && osENTCF != null || osENTCT != null;
+            boolean flushed = osBD != null || chunkedBD != null || osSEC != null || osBIO != null || osNBTF != null || osNBTT != null && osENTCF != null || osENTCT != null;
             try {
                 if (osBD != null) {
                     osBD.close();
                     osBD = null;
                 }
+                if (chunkedBD != null) {
+                    chunkedBD.close();
+                    chunkedBD = null;
+                }
+                if (osSEC != null) {
+                    osSEC.close();
+                    osSEC = null;
+                }
                 if (osBIO != null) {
                     osBIO.close();
                     osBIO = null;
@@ -226,7 +291,7 @@ public boolean close() {
 
     @Override
     public int getCompressedSize() {
-        return bdFile.exists() ? (int) bdFile.length() : 0;
+        return (bdFile.exists() ? (int) bdFile.length() : 0) + (secFile.exists() ? (int) secFile.length() : 0);
     }
 
     @Override
@@ -243,6 +308,9 @@ public long getSizeOnDisk() {
         if (bioFile.exists()) {
             total += bioFile.length();
         }
+        if (secFile.exists()) {
+            total += secFile.length();
+        }
         if (nbtfFile.exists()) {
             total += entfFile.length();
         }
@@ -266,12 +334,184 @@ public FaweOutputStream getBlockOS(int x, int y, int z) throws IOException {
         synchronized (this) {
             bdFile.getParentFile().mkdirs();
             bdFile.createNewFile();
-            osBD = getCompressedOS(new FileOutputStream(bdFile));
+            osBD = getCompressedOS(AsyncFileWriter.openFile(bdFile));
             writeHeader(osBD, x, y, z);
             return osBD;
         }
     }
 
+    @Override
+    public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
+        if (!Settings.IMP.HISTORY.CHUNK_INDEX) {
+            super.add(x, y, z, combinedFrom, combinedTo);
+            return;
+        }
+        blockSize++;
+        long start = FaweMetrics.HISTORY_WRITE.startSampled();
+        try {
+            getChunkedBlockOS(x, z).add(x, y, z, combinedFrom, combinedTo);
+        } catch (Throwable e) {
+            MainUtil.handleError(e);
+        }
+        FaweMetrics.HISTORY_WRITE.stopSampled(start);
+    }
+
+    @Override
+    protected void initOrigin(int x, int y, int z) throws IOException {
+        if (Settings.IMP.HISTORY.CHUNK_INDEX) {
+            getChunkedBlockOS(x, z);
+        } else {
+            getBlockOS(x, y, z);
+        }
+    }
+
+    @Override
+    protected RegionWrapper[] getFilter() {
+        return filter;
+    }
+
+    @Override
+    public FaweOutputStream getSectionOS() throws IOException {
+        if (osSEC != null) {
+            return osSEC;
+        }
+        synchronized (this) {
+            secFile.getParentFile().mkdirs();
+            secFile.createNewFile();
+            osSEC = getCompressedOS(AsyncFileWriter.openFile(secFile));
+            return osSEC;
+        }
+    }
+
+    @Override
+    public FaweInputStream getSectionIS() throws IOException {
+        awaitWrites();
+        if (!secFile.exists()) {
+            return null;
+        }
+        return MainUtil.getCompressedIS(new FileInputStream(secFile));
+    }
+
+    private ChunkIndexedBlockFile.Writer getChunkedBlockOS(int x, int z) throws IOException {
+        if (chunkedBD != null) {
+            return chunkedBD;
+        }
+        synchronized (this) {
+            if (chunkedBD == null) {
+                bdFile.getParentFile().mkdirs();
+                bdFile.createNewFile();
+                setOrigin(x, z);
+                chunkedBD = new ChunkIndexedBlockFile.Writer(bdFile, getMode(), getCompression(), x, z);
+            }
+            return chunkedBD;
+        }
+    }
+
+    @Override
+    public Iterator<MutableBlockChange> getBlockIterator(boolean dir) throws IOException {
+        awaitWrites();
+        if (!ChunkIndexedBlockFile.isChunkIndexed(bdFile)) {
+            return super.getBlockIterator(dir);
+        }
+        ChunkIndexedBlockFile.Reader reader = new ChunkIndexedBlockFile.Reader(bdFile, filter);
+        MutableBlockChange change = new MutableBlockChange(0, 0, 0, BlockTypes.AIR.getInternalId());
+        return new ChunkedIterator<MutableBlockChange>(reader) {
+            @Override
+            protected MutableBlockChange read(ChunkIndexedBlockFile.Reader reader) {
+                change.x = reader.x;
+                change.y = reader.y;
+                change.z = reader.z;
+                change.combinedId = dir ? reader.to : reader.from;
+                return change;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<MutableFullBlockChange> getFullBlockIterator(BlockBag blockBag, int inventory, boolean dir) throws IOException {
+        return getFullBlockIterator(blockBag, inventory, dir, filter);
+    }
+
+    /**
+     * Get the block changes within some regions<br>
+     * - Only the chunks intersecting the regions are read if the history is chunk indexed, otherwise every change is
+     *
+     * @param regions the regions, or null for every change
+     */
+    public Iterator<MutableFullBlockChange> getFullBlockIterator(BlockBag blockBag, int inventory, boolean dir, RegionWrapper[] regions) throws IOException {
+        return Iterators.concat(readFullBlockIterator(blockBag, inventory, dir, regions), getFullSectionIterator(blockBag, inventory, dir, regions));
+    }
+
+    private Iterator<MutableFullBlockChange> readFullBlockIterator(BlockBag blockBag, int inventory, boolean dir, RegionWrapper[] regions) throws IOException {
+        awaitWrites();
+        if (!ChunkIndexedBlockFile.isChunkIndexed(bdFile)) {
+            return super.readFullBlockIterator(blockBag, inventory, dir);
+        }
+        ChunkIndexedBlockFile.Reader reader = new ChunkIndexedBlockFile.Reader(bdFile, regions);
+        MutableFullBlockChange change = new MutableFullBlockChange(blockBag, inventory, dir);
+        return new ChunkedIterator<MutableFullBlockChange>(reader) {
+            @Override
+            protected MutableFullBlockChange read(ChunkIndexedBlockFile.Reader reader) {
+                change.x = reader.x;
+                change.y = reader.y;
+                change.z = reader.z;
+                change.from = reader.from;
+                change.to = reader.to;
+                return change;
+            }
+        };
+    }
+
+    private static abstract class ChunkedIterator<T> implements Iterator<T> {
+        private final ChunkIndexedBlockFile.Reader reader;
+        private T last;
+        private boolean done;
+
+        private ChunkedIterator(ChunkIndexedBlockFile.Reader reader) {
+            this.reader = reader;
+        }
+
+        protected abstract T read(ChunkIndexedBlockFile.Reader reader);
+
+        private T advance() {
+            if (done) {
+                return null;
+            }
+            try {
+                if (reader.next()) {
+                    return read(reader);
+                }
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+            done = true;
+            try {
+                reader.close();
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return last != null || ((last = advance()) != null);
+        }
+
+        @Override
+        public T next() {
+            T tmp = last;
+            if (tmp == null) {
+                tmp = advance();
+                if (tmp == null) {
+                    throw new NoSuchElementException("End of iterator");
+                }
+            }
+            last = null;
+            return tmp;
+        }
+    }
+
     @Override
     public FaweOutputStream getBiomeOS() throws IOException {
         if (osBIO != null) {
@@ -280,7 +520,7 @@ public FaweOutputStream getBiomeOS() throws IOException {
         synchronized (this) {
             bioFile.getParentFile().mkdirs();
             bioFile.createNewFile();
-            osBIO = getCompressedOS(new FileOutputStream(bioFile));
+            osBIO = getCompressedOS(AsyncFileWriter.openFile(bioFile));
             return osBIO;
         }
     }
@@ -292,7 +532,7 @@ public NBTOutputStream getEntityCreateOS() throws IOException {
         }
         enttFile.getParentFile().mkdirs();
         enttFile.createNewFile();
-        osENTCT = new NBTOutputStream((DataOutput) getCompressedOS(new FileOutputStream(enttFile)));
+        osENTCT = new NBTOutputStream((DataOutput) getCompressedOS(AsyncFileWriter.openFile(enttFile)));
         return osENTCT;
     }
 
@@ -303,7 +543,7 @@ public NBTOutputStream getEntityRemoveOS() throws IOException {
         }
         entfFile.getParentFile().mkdirs();
         entfFile.createNewFile();
-        osENTCF = new NBTOutputStream((DataOutput) getCompressedOS(new FileOutputStream(entfFile)));
+        osENTCF = new NBTOutputStream((DataOutput) getCompressedOS(AsyncFileWriter.openFile(entfFile)));
         return osENTCF;
     }
 
@@ -314,7 +554,7 @@ public NBTOutputStream getTileCreateOS() throws IOException {
         }
         nbttFile.getParentFile().mkdirs();
         nbttFile.createNewFile();
-        osNBTT = new NBTOutputStream((DataOutput) getCompressedOS(new FileOutputStream(nbttFile)));
+        osNBTT = new NBTOutputStream((DataOutput) getCompressedOS(AsyncFileWriter.openFile(nbttFile)));
         return osNBTT;
     }
 
@@ -325,12 +565,13 @@ public NBTOutputStream getTileRemoveOS() throws IOException {
         }
         nbtfFile.getParentFile().mkdirs();
         nbtfFile.createNewFile();
-        osNBTF = new NBTOutputStream((DataOutput) getCompressedOS(new FileOutputStream(nbtfFile)));
+        osNBTF = new NBTOutputStream((DataOutput) getCompressedOS(AsyncFileWriter.openFile(nbtfFile)));
         return osNBTF;
     }
 
     @Override
     public FaweInputStream getBlockIS() throws IOException {
+        awaitWrites();
         if (!bdFile.exists()) {
             return null;
         }
@@ -341,6 +582,7 @@ public FaweInputStream getBlockIS() throws IOException {
 
     @Override
     public FaweInputStream getBiomeIS() throws IOException {
+        awaitWrites();
         if (!bioFile.exists()) {
             return null;
         }
@@ -350,6 +592,7 @@ public FaweInputStream getBiomeIS() throws IOException {
 
     @Override
     public NBTInputStream getEntityCreateIS() throws IOException {
+        awaitWrites();
         if (!enttFile.exists()) {
             return null;
         }
@@ -358,6 +601,7 @@ public NBTInputStream getEntityCreateIS() throws IOException {
 
     @Override
     public NBTInputStream getEntityRemoveIS() throws IOException {
+        awaitWrites();
         if (!entfFile.exists()) {
             return null;
         }
@@ -366,6 +610,7 @@ public NBTInputStream getEntityRemoveIS() throws IOException {
 
     @Override
     public NBTInputStream getTileCreateIS() throws IOException {
+        awaitWrites();
         if (!nbttFile.exists()) {
             return null;
         }
@@ -374,6 +619,7 @@ public NBTInputStream getTileCreateIS() throws IOException {
 
     @Override
     public NBTInputStream getTileRemoveIS() throws IOException {
+        awaitWrites();
         if (!nbtfFile.exists()) {
             return null;
         }
@@ -381,6 +627,38 @@ public NBTInputStream getTileRemoveIS() throws IOException {
     }
 
     public DiskStorageSummary summarize(RegionWrapper requiredRegion, boolean shallow) {
+        awaitWrites();
+        DiskStorageSummary summary = summarizeBlocks(requiredRegion, shallow);
+        if (summary != null && !shallow && secFile.exists() && requiredRegion.isIn(getOriginX(), getOriginZ())) {
+            summarizeSections(summary);
+        }
+        return summary;
+    }
+
+    private void summarizeSections(DiskStorageSummary summary) {
+        int amount = (Settings.IMP.HISTORY.BUFFER_SIZE - HEADER_SIZE) / 9;
+        try {
+            Iterator<MutableSectionChange> iter = getSectionIterator();
+            while (iter.hasNext()) {
+                MutableSectionChange section = iter.next();
+                for (int index = 0; index < 4096; index++) {
+                    if (section.isChanged(index)) {
+                        if (--amount < 0) {
+                            return;
+                        }
+                        summary.add((section.cx << 4) + (index & 15), (section.cz << 4) + ((index >> 4) & 15), section.getTo(index));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+        }
+    }
+
+    private DiskStorageSummary summarizeBlocks(RegionWrapper requiredRegion, boolean shallow) {
+        if (ChunkIndexedBlockFile.isChunkIndexed(bdFile)) {
+            return summarizeChunked(requiredRegion, shallow);
+        }
         if (bdFile.exists()) {
             int ox = getOriginX();
             int oz = getOriginZ();
@@ -424,10 +702,45 @@ public DiskStorageSummary summarize(RegionWrapper requiredRegion, boolean shallo
         return null;
     }
 
+    /**
+     * Summarize a chunk indexed history, only reading the chunks which intersect the region
+     */
+    private DiskStorageSummary summarizeChunked(RegionWrapper requiredRegion, boolean shallow) {
+        RegionWrapper[] regions = requiredRegion.isGlobal() ? null : new RegionWrapper[]{requiredRegion};
+        try (ChunkIndexedBlockFile.Reader reader = new ChunkIndexedBlockFile.Reader(bdFile, regions)) {
+            int ox = reader.getOriginX();
+            int oz = reader.getOriginZ();
+            setOrigin(ox, oz);
+            DiskStorageSummary summary = new DiskStorageSummary(ox, oz);
+            if (!requiredRegion.isIn(ox, oz)) {
+                return summary;
+            }
+            int i = 0;
+            int amount = (Settings.IMP.HISTORY.BUFFER_SIZE - HEADER_SIZE) / 9;
+            while (!shallow && ++i < amount && reader.next()) {
+                summary.add(reader.x, reader.z, reader.to);
+            }
+            return summary;
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+        }
+        return null;
+    }
+
     public IntegerPair readHeader() {
+        awaitWrites();
         int ox = getOriginX();
         int oz = getOriginZ();
-        if (ox == 0 && oz == 0 && bdFile.exists()) {
+        if (ox == 0 && oz == 0 && ChunkIndexedBlockFile.isChunkIndexed(bdFile)) {
+            try {
+                int[] header = ChunkIndexedBlockFile.readHeader(bdFile);
+                ox = header[1];
+                oz = header[2];
+                setOrigin(ox, oz);
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+        } else if (ox == 0 && oz == 0 && bdFile.exists()) {
             try (FileInputStream fis = new FileInputStream(bdFile)) {
                 final FaweInputStream gis = MainUtil.getCompressedIS(fis);
                 // skip mode
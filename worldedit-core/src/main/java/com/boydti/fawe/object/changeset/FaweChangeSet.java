@@ -124,6 +124,17 @@ public boolean close() {
 
     public abstract void add(int x, int y, int z, int combinedFrom, int combinedTo);
 
+    /**
+     * Record the changes to a 16x16x16 section at once (instead of calling {@link #add(int, int, int, int, int)} per block)
+     *
+     * @param previous the previous ids of the section (0 = air), or null if it was empty
+     * @param current  the new ids of the section (0 = unchanged)
+     * @return false if the changes weren't recorded, and should be added per block
+     */
+    public boolean addSection(int cx, int cy, int cz, int[] previous, int[] current) {
+        return false;
+    }
+
     @Override
     public Iterator<Change> backwardIterator() {
         return getIterator(false);
@@ -258,6 +269,8 @@ public void addChangeTask(FaweQueue queue) {
             @Override
             public void run(final FaweChunk previous, final FaweChunk next) {
                 FaweChangeSet.this.waitingCombined.incrementAndGet();
+                // Keep the chunk's buffers until the changes are recorded
+                next.retain();
                 Runnable run = new Runnable() {
                     @Override
                     public void run() {
@@ -287,7 +300,7 @@ public void run() {
                                 for (int layer = 0; layer < layers; layer++) {
                                     int[] currentLayer = next.getIdArray(layer);
                                     int[] previousLayer = previous.getIdArray(layer);
-                                    if (currentLayer == null) {
+                                    if (currentLayer == null || addSection(cx, layer, cz, previousLayer, currentLayer)) {
                                         continue;
                                     }
                                     int startY = layer << 4;
@@ -358,6 +371,7 @@ public void run() {
                         } catch (Throwable e) {
                             MainUtil.handleError(e);
                         } finally {
+                            next.recycle();
                             if (FaweChangeSet.this.waitingCombined.decrementAndGet() <= 0) {
                                 synchronized (FaweChangeSet.this.waitingAsync) {
                                     FaweChangeSet.this.waitingAsync.notifyAll();
@@ -1,15 +1,21 @@
 package com.boydti.fawe.object.changeset;
 
+import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.FaweInputStream;
 import com.boydti.fawe.object.FaweOutputStream;
+import com.boydti.fawe.object.RegionWrapper;
 import com.boydti.fawe.object.change.MutableBiomeChange;
 import com.boydti.fawe.object.change.MutableBlockChange;
 import com.boydti.fawe.object.change.MutableEntityChange;
 import com.boydti.fawe.object.change.MutableFullBlockChange;
+import com.boydti.fawe.object.change.MutableSectionChange;
 import com.boydti.fawe.object.change.MutableTileChange;
+import com.boydti.fawe.object.io.CompressionStore;
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.boydti.fawe.util.MainUtil;
 import com.boydti.fawe.util.MathMan;
+import com.google.common.collect.Iterators;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.jnbt.NBTInputStream;
 import com.sk89q.jnbt.NBTOutputStream;
@@ -17,19 +23,25 @@
 import com.sk89q.worldedit.history.change.Change;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.block.BlockID;
 import com.sk89q.worldedit.world.block.BlockTypes;
 
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 public abstract class FaweStreamChangeSet extends FaweChangeSet {
 
     public static final int HEADER_SIZE = 9;
+    // Sections with fewer changes are recorded per block
+    private static final int SECTION_MIN_CHANGES = 512;
     private int mode;
     private final int compression;
 
@@ -235,8 +247,19 @@ public void readHeader(InputStream is) throws IOException {
         setupStreamDelegates(mode);
     }
 
+    /**
+     * @return the stream mode (1-4) used for new changes
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    public int getCompression() {
+        return compression;
+    }
+
     public FaweOutputStream getCompressedOS(OutputStream os) throws IOException {
-        return MainUtil.getCompressedOS(os, compression);
+        return MainUtil.getCompressedOS(os, compression, Settings.IMP.HISTORY.BUFFER_SIZE, CompressionStore.HISTORY);
     }
 
     @Override
@@ -290,7 +313,7 @@ public long getSizeOnDisk() {
 
     public abstract NBTInputStream getTileRemoveIS() throws IOException;
 
-    private int blockSize;
+    protected int blockSize;
     public int entityCreateSize;
     public int entityRemoveSize;
     public int tileCreateSize;
@@ -312,8 +335,166 @@ public int getOriginZ() {
         return originZ;
     }
 
+    /**
+     * The stream for section records, or null if this history doesn't support them
+     *
+     * @see #addSection(int, int, int, int[], int[])
+     */
+    public FaweOutputStream getSectionOS() throws IOException {
+        return null;
+    }
+
+    public FaweInputStream getSectionIS() throws IOException {
+        return null;
+    }
+
+    /**
+     * Make sure the history has an origin (section records are stored without one)
+     */
+    protected void initOrigin(int x, int y, int z) throws IOException {
+        getBlockOS(x, y, z);
+    }
+
+    /**
+     * @return only read changes in these regions, or null for all
+     */
+    protected RegionWrapper[] getFilter() {
+        return null;
+    }
+
+    /*
+     * Section records
+     *
+     * {int chunk x, int chunk z, byte section y, byte flags (1 = every block changed, 2 = has redo)}
+     * [long[64] changed bitmask (if not every block changed)]
+     * {varint palette size, varint[] palette, packed palette indexes of the changed blocks} for from, then for to (if has redo)
+     */
+    @Override
+    public boolean addSection(int cx, int cy, int cz, int[] previous, int[] current) {
+        if (!Settings.IMP.HISTORY.SECTION_RECORDS) {
+            return false;
+        }
+        long start = FaweMetrics.HISTORY_WRITE.start();
+        int[][] buffers = FaweCache.SECTION_CHANGES.get();
+        int[] from = buffers[0];
+        int[] to = buffers[1];
+        long[] changed = FaweCache.SECTION_CHANGED.get();
+        Arrays.fill(changed, 0);
+        int size = 0;
+        for (int i = 0; i < 4096; i++) {
+            int combinedTo = current[i];
+            if (combinedTo == 0) {
+                continue;
+            }
+            int combinedFrom = previous == null || previous[i] == 0 ? BlockID.AIR : previous[i];
+            if (combinedFrom != combinedTo) {
+                changed[i >> 6] |= 1L << i;
+                from[size] = combinedFrom;
+                to[size] = combinedTo;
+                size++;
+            }
+        }
+        if (size < SECTION_MIN_CHANGES) {
+            return false;
+        }
+        try {
+            FaweOutputStream out = getSectionOS();
+            if (out == null) {
+                return false;
+            }
+            if (getOriginX() == 0 && getOriginZ() == 0) {
+                initOrigin(cx << 4, cy << 4, cz << 4);
+            }
+            boolean redo = mode == 3 || mode == 4;
+            out.writeInt(cx);
+            out.writeInt(cz);
+            out.writeByte(cy);
+            out.writeByte((size == 4096 ? 1 : 0) | (redo ? 2 : 0));
+            if (size != 4096) {
+                for (long value : changed) {
+                    out.writeLong(value);
+                }
+            }
+            writePalette(out, from, size, buffers[2], buffers[3]);
+            if (redo) {
+                writePalette(out, to, size, buffers[2], buffers[3]);
+            }
+            blockSize += size;
+        } catch (Throwable e) {
+            MainUtil.handleError(e);
+        }
+        FaweMetrics.HISTORY_WRITE.stop(start, size);
+        return true;
+    }
+
+    private static void writePalette(FaweOutputStream out, int[] ids, int size, int[] palette, int[] indexes) throws IOException {
+        Int2IntOpenHashMap paletteMap = new Int2IntOpenHashMap();
+        paletteMap.defaultReturnValue(-1);
+        int paletteSize = 0;
+        for (int i = 0; i < size; i++) {
+            int id = ids[i];
+            int index = paletteMap.get(id);
+            if (index == -1) {
+                paletteMap.put(id, index = paletteSize);
+                palette[paletteSize++] = id;
+            }
+            indexes[i] = index;
+        }
+        out.writeVarInt(paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            out.writeVarInt(palette[i]);
+        }
+        int bits = MathMan.log2nlz(paletteSize - 1);
+        if (bits == 0) {
+            return;
+        }
+        long buffer = 0;
+        int buffered = 0;
+        for (int i = 0; i < size; i++) {
+            buffer |= (long) indexes[i] << buffered;
+            buffered += bits;
+            while (buffered >= 8) {
+                out.write((int) buffer);
+                buffer >>>= 8;
+                buffered -= 8;
+            }
+        }
+        if (buffered > 0) {
+            out.write((int) buffer);
+        }
+    }
+
+    private static void readPalette(FaweInputStream in, int[] ids, long[] changed) throws IOException {
+        int paletteSize = in.readVarInt();
+        int[] palette = FaweCache.SECTION_CHANGES.get()[2];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = in.readVarInt();
+        }
+        int bits = MathMan.log2nlz(paletteSize - 1);
+        int mask = (1 << bits) - 1;
+        long buffer = 0;
+        int buffered = 0;
+        for (int i = 0; i < 4096; i++) {
+            if (changed != null && (changed[i >> 6] & (1L << i)) == 0) {
+                continue;
+            }
+            if (bits == 0) {
+                ids[i] = palette[0];
+                continue;
+            }
+            while (buffered < bits) {
+                buffer |= (long) in.readUnsignedByte() << buffered;
+                buffered += 8;
+            }
+            ids[i] = palette[(int) buffer & mask];
+            buffer >>>= bits;
+            buffered -= bits;
+        }
+    }
+
     public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
         blockSize++;
+        long start = FaweMetrics.HISTORY_WRITE.startSampled();
         try {
             FaweOutputStream stream = getBlockOS(x, y, z);
             //x
@@ -322,6 +503,7 @@ public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
         } catch (Throwable e) {
             MainUtil.handleError(e);
         }
+        FaweMetrics.HISTORY_WRITE.stopSampled(start);
     }
 
     @Override
@@ -447,6 +629,131 @@ public void remove() {
         };
     }
 
+    public Iterator<MutableSectionChange> getSectionIterator() throws IOException {
+        return getSectionIterator(getFilter());
+    }
+
+    /**
+     * @param regions only change the blocks in these regions, or null for all
+     */
+    public Iterator<MutableSectionChange> getSectionIterator(RegionWrapper[] regions) throws IOException {
+        final FaweInputStream is = getSectionIS();
+        if (is == null) {
+            return new ArrayList<MutableSectionChange>().iterator();
+        }
+        final MutableSectionChange change = new MutableSectionChange();
+        change.filter = regions;
+        final long[] changed = new long[64];
+        final int[] to = new int[4096];
+        return new Iterator<MutableSectionChange>() {
+            private MutableSectionChange last = read();
+
+            public MutableSectionChange read() {
+                try {
+                    change.cx = is.readInt();
+                    change.cz = is.readInt();
+                    change.cy = is.readUnsignedByte();
+                    int flags = is.readUnsignedByte();
+                    if ((flags & 1) != 0) {
+                        change.changed = null;
+                    } else {
+                        for (int i = 0; i < changed.length; i++) {
+                            changed[i] = is.readLong();
+                        }
+                        change.changed = changed;
+                    }
+                    readPalette(is, change.from, change.changed);
+                    if ((flags & 2) != 0) {
+                        readPalette(is, to, change.changed);
+                        change.to = to;
+                    } else {
+                        change.to = null;
+                    }
+                    return change;
+                } catch (EOFException ignoreOEF) {
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    MainUtil.handleError(e);
+                }
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    MainUtil.handleError(e);
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return last != null || ((last = read()) != null);
+            }
+
+            @Override
+            public MutableSectionChange next() {
+                MutableSectionChange tmp = last;
+                if (tmp == null) {
+                    tmp = read();
+                }
+                last = null;
+                return tmp;
+            }
+
+            @Override
+            public void remove() {
+                throw new IllegalArgumentException("CANNOT REMOVE");
+            }
+        };
+    }
+
+    /**
+     * The section records as a change per block (e.g. for block bags)
+     *
+     * @param regions only the blocks in these regions, or null for all
+     */
+    public Iterator<MutableFullBlockChange> getFullSectionIterator(BlockBag blockBag, int inventory, final boolean dir, RegionWrapper[] regions) throws IOException {
+        final Iterator<MutableSectionChange> sections = getSectionIterator(regions);
+        final MutableFullBlockChange change = new MutableFullBlockChange(blockBag, inventory, dir);
+        return new Iterator<MutableFullBlockChange>() {
+            private MutableSectionChange section;
+            private int index = 4096;
+
+            @Override
+            public boolean hasNext() {
+                while (true) {
+                    for (; index < 4096; index++) {
+                        if (section.isChanged(index)) {
+                            int x = (section.cx << 4) + (index & 15);
+                            int y = (section.cy << 4) + (index >> 8);
+                            int z = (section.cz << 4) + ((index >> 4) & 15);
+                            if (!section.isFiltered(x, y, z)) {
+                                return true;
+                            }
+                        }
+                    }
+                    if (!sections.hasNext()) {
+                        return false;
+                    }
+                    section = sections.next();
+                    index = 0;
+                }
+            }
+
+            @Override
+            public MutableFullBlockChange next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("End of iterator");
+                }
+                change.x = (section.cx << 4) + (index & 15);
+                change.y = (section.cy << 4) + (index >> 8);
+                change.z = (section.cz << 4) + ((index >> 4) & 15);
+                change.from = section.getFrom(index);
+                change.to = section.getTo(index);
+                index++;
+                return change;
+            }
+        };
+    }
+
     public Iterator<MutableBiomeChange> getBiomeIterator(final boolean dir) throws IOException {
         final InputStream is = getBiomeIS();
         if (is == null) {
@@ -514,7 +821,14 @@ public Iterator<Change> getIterator(BlockBag blockBag, int mode, boolean redo) {
         return getIterator(redo);
     }
 
+    /**
+     * Get the block changes (including the section records) as a change per block
+     */
     public Iterator<MutableFullBlockChange> getFullBlockIterator(BlockBag blockBag, int inventory, final boolean dir) throws IOException {
+        return Iterators.concat(readFullBlockIterator(blockBag, inventory, dir), getFullSectionIterator(blockBag, inventory, dir, getFilter()));
+    }
+
+    protected Iterator<MutableFullBlockChange> readFullBlockIterator(BlockBag blockBag, int inventory, final boolean dir) throws IOException {
         final FaweInputStream is = new FaweInputStream(getBlockIS());
         if (is == null) {
             return new ArrayList<MutableFullBlockChange>().iterator();
@@ -674,12 +988,14 @@ public Iterator<Change> getIterator(final boolean dir) {
             final Iterator<MutableEntityChange> entityCreate = getEntityIterator(getEntityCreateIS(), true, dir);
             final Iterator<MutableEntityChange> entityRemove = getEntityIterator(getEntityRemoveIS(), false, dir);
 
+            final Iterator<MutableSectionChange> sectionChange = getSectionIterator();
+
             final Iterator<MutableBlockChange> blockChange = getBlockIterator(dir);
 
             final Iterator<MutableBiomeChange> biomeChange = getBiomeIterator(dir);
 
             return new Iterator<Change>() {
-                Iterator<Change>[] iterators = new Iterator[]{tileCreate, tileRemove, entityCreate, entityRemove, blockChange, biomeChange};
+                Iterator<Change>[] iterators = new Iterator[]{tileCreate, tileRemove, entityCreate, entityRemove, sectionChange, blockChange, biomeChange};
                 int i = 0;
                 Iterator<Change> current = iterators[0];
 
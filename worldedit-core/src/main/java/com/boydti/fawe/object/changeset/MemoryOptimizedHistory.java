@@ -25,6 +25,10 @@ public class MemoryOptimizedHistory extends FaweStreamChangeSet {
     private FastByteArrayOutputStream idsStream;
     private FaweOutputStream idsStreamZip;
 
+    private byte[][] sections;
+    private FastByteArrayOutputStream sectionStream;
+    private FaweOutputStream sectionStreamZip;
+
     private byte[][] biomes;
     private FastByteArrayOutputStream biomeStream;
     private FaweOutputStream biomeStreamZip;
@@ -59,6 +63,7 @@ public boolean flush() {
         synchronized (this) {
             try {
                 if (idsStream != null) idsStreamZip.flush();
+                if (sectionStream != null) sectionStreamZip.flush();
                 if (biomeStream != null) biomeStreamZip.flush();
                 if (entCStream != null) entCStreamZip.flush();
                 if (entRStream != null) entRStreamZip.flush();
@@ -83,6 +88,12 @@ public boolean close() {
                     idsStream = null;
                     idsStreamZip = null;
                 }
+                if (sectionStream != null) {
+                    sectionStreamZip.close();
+                    sections = sectionStream.toByteArrays();
+                    sectionStream = null;
+                    sectionStreamZip = null;
+                }
                 if (biomeStream != null) {
                     biomeStreamZip.close();
                     biomes = biomeStream.toByteArrays();
@@ -123,12 +134,16 @@ public boolean close() {
 
     @Override
     public int getCompressedSize() {
-        if (ids == null) {
-            return 0;
-        }
         int count = 0;
-        for (byte[] array : ids) {
-            count += 4 + array.length;
+        if (ids != null) {
+            for (byte[] array : ids) {
+                count += 4 + array.length;
+            }
+        }
+        if (sections != null) {
+            for (byte[] array : sections) {
+                count += 4 + array.length;
+            }
         }
         return count;
     }
@@ -152,6 +167,26 @@ public FaweOutputStream getBlockOS(int x, int y, int z) throws IOException {
         }
     }
 
+    @Override
+    public FaweOutputStream getSectionOS() throws IOException {
+        if (sectionStreamZip != null) {
+            return sectionStreamZip;
+        }
+        synchronized (this) {
+            sectionStream = new FastByteArrayOutputStream(Settings.IMP.HISTORY.BUFFER_SIZE);
+            sectionStreamZip = getCompressedOS(sectionStream);
+            return sectionStreamZip;
+        }
+    }
+
+    @Override
+    public FaweInputStream getSectionIS() throws IOException {
+        if (sections == null) {
+            return null;
+        }
+        return MainUtil.getCompressedIS(new FastByteArraysInputStream(sections));
+    }
+
     @Override
     public FaweInputStream getBiomeIS() throws IOException {
         if (biomes == null) {
@@ -29,21 +29,22 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A clipboard with disk backed storage. (lower memory + loads on crash)
  * - Uses an auto closable RandomAccessFile for getting / setting id / data
+ * - The file is mapped in 1GB segments, so clipboards can be larger than 2GB
+ * - Blocks can be read and set concurrently (e.g. from fork join workers) without locking, as long as no two threads set the same index
  * - I don't know how to reduce nbt / entities to O(2) complexity, so it is stored in memory.
  */
 public class DiskOptimizedClipboard extends FaweClipboard implements Closeable {
@@ -52,18 +53,25 @@ public class DiskOptimizedClipboard extends FaweClipboard implements Closeable {
     public static int MODE = 0;
     public static int HEADER_SIZE = 14;
 
+    // Segments are a multiple of 4 bytes, so an id never spans two segments
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
     protected int length;
     protected int height;
     protected int width;
     protected int area;
     protected int volume;
 
-    private final HashMap<IntegerTrio, CompoundTag> nbtMap;
-    private final HashSet<ClipboardEntity> entities;
+    private final Map<IntegerTrio, CompoundTag> nbtMap;
+    private final Set<ClipboardEntity> entities;
     private final File file;
 
     private RandomAccessFile braf;
-    private MappedByteBuffer mbb;
+    private MappedByteBuffer header;
+    // The block and biome data, after the header
+    private MappedByteBuffer[] segments;
 
     private FileChannel fc;
     private boolean hasBiomes;
@@ -74,19 +82,19 @@ public DiskOptimizedClipboard(int width, int height, int length, UUID uuid) {
 
     public DiskOptimizedClipboard(File file) {
         try {
-            nbtMap = new HashMap<>();
-            entities = new HashSet<>();
+            nbtMap = new ConcurrentHashMap<>();
+            entities = Collections.newSetFromMap(new ConcurrentHashMap<>());
             this.file = file;
             this.braf = new RandomAccessFile(file, "rw");
             braf.setLength(file.length());
             init();
-            width = (int) mbb.getChar(2);
-            height = (int) mbb.getChar(4);
-            length = (int) mbb.getChar(6);
+            width = (int) header.getChar(2);
+            height = (int) header.getChar(4);
+            length = (int) header.getChar(6);
             area = width * length;
             this.volume = length * width * height;
 
-            if ((braf.length() - HEADER_SIZE) == (volume << 2) + area) {
+            if ((braf.length() - HEADER_SIZE) == ((long) volume << 2) + area) {
                 hasBiomes = true;
             }
             autoCloseTask();
@@ -102,17 +110,42 @@ public File getFile() {
     private void init() throws IOException {
         if (this.fc == null) {
             this.fc = braf.getChannel();
-            this.mbb = fc.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            long size = braf.length();
+            this.header = fc.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(HEADER_SIZE, size));
+            long data = Math.max(0, size - HEADER_SIZE);
+            int count = (int) ((data + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = fc.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + start, Math.min(SEGMENT_SIZE, data - start));
+            }
+            this.segments = segments;
         }
     }
 
+    private int getInt(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getInt((int) (offset & SEGMENT_MASK));
+    }
+
+    private void putInt(long offset, int value) {
+        segments[(int) (offset >>> SEGMENT_SHIFT)].putInt((int) (offset & SEGMENT_MASK), value);
+    }
+
+    private byte getByte(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].get((int) (offset & SEGMENT_MASK));
+    }
+
+    private void putByte(long offset, byte value) {
+        segments[(int) (offset >>> SEGMENT_SHIFT)].put((int) (offset & SEGMENT_MASK), value);
+    }
+
     private boolean initBiome() {
         if (!hasBiomes) {
             try {
                 hasBiomes = true;
                 close();
                 this.braf = new RandomAccessFile(file, "rw");
-                this.braf.setLength(HEADER_SIZE + (volume << 2) + area);
+                this.braf.setLength(HEADER_SIZE + ((long) volume << 2) + area);
                 init();
             } catch (IOException e) {
                 e.printStackTrace();
@@ -136,7 +169,7 @@ public boolean setBiome(int x, int z, BiomeType biome) {
     @Override
     public void setBiome(int index, BiomeType biome) {
         if (initBiome()) {
-            mbb.put(HEADER_SIZE + (volume << 2) + index, (byte) biome.getInternalId());
+            putByte(((long) volume << 2) + index, (byte) biome.getInternalId());
         }
     }
 
@@ -145,7 +178,7 @@ public BiomeType getBiome(int index) {
         if (!hasBiomes()) {
             return null;
         }
-        int biomeId = mbb.get(HEADER_SIZE + (volume << 2) + index) & 0xFF;
+        int biomeId = getByte(((long) volume << 2) + index) & 0xFF;
         return BiomeTypes.get(biomeId);
     }
 
@@ -153,10 +186,10 @@ public BiomeType getBiome(int index) {
     public void streamBiomes(NBTStreamer.ByteReader task) {
         if (!hasBiomes()) return;
         int index = 0;
-        int mbbIndex = HEADER_SIZE + (volume << 2);
+        long mbbIndex = (long) volume << 2;
         for (int z = 0; z < length; z++) {
             for (int x = 0; x < width; x++, index++, mbbIndex++) {
-                int biome = mbb.get(mbbIndex) & 0xFF;
+                int biome = getByte(mbbIndex) & 0xFF;
                 task.run(index, biome);
             }
         }
@@ -175,9 +208,9 @@ public BlockVector3 getDimensions() {
     public BlockArrayClipboard toClipboard() {
         try {
             CuboidRegion region = new CuboidRegion(BlockVector3.at(0, 0, 0), BlockVector3.at(width - 1, height - 1, length - 1));
-            int ox = mbb.getShort(8);
-            int oy = mbb.getShort(10);
-            int oz = mbb.getShort(12);
+            int ox = header.getShort(8);
+            int oy = header.getShort(10);
+            int oz = header.getShort(12);
             BlockArrayClipboard clipboard = new BlockArrayClipboard(region, this);
             clipboard.setOrigin(BlockVector3.at(ox, oy, oz));
             return clipboard;
@@ -189,8 +222,8 @@ public BlockArrayClipboard toClipboard() {
 
     public DiskOptimizedClipboard(int width, int height, int length, File file) {
         try {
-            nbtMap = new HashMap<>();
-            entities = new HashSet<>();
+            nbtMap = new ConcurrentHashMap<>();
+            entities = Collections.newSetFromMap(new ConcurrentHashMap<>());
             this.file = file;
             this.width = width;
             this.height = height;
@@ -212,12 +245,12 @@ public DiskOptimizedClipboard(int width, int height, int length, File file) {
             long volume = (long) width * (long) height * (long) length * 4l + (long) HEADER_SIZE;
             braf.setLength(0);
             braf.setLength(volume);
-            if (width * height * length != 0) {
+            if (volume != 0) {
                 init();
                 // write length etc
-                mbb.putChar(2, (char) width);
-                mbb.putChar(4, (char) height);
-                mbb.putChar(6, (char) length);
+                header.putChar(2, (char) width);
+                header.putChar(4, (char) height);
+                header.putChar(6, (char) length);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -227,9 +260,9 @@ public DiskOptimizedClipboard(int width, int height, int length, File file) {
     @Override
     public void setOrigin(BlockVector3 offset) {
         try {
-            mbb.putShort(8, (short) offset.getBlockX());
-            mbb.putShort(10, (short) offset.getBlockY());
-            mbb.putShort(12, (short) offset.getBlockZ());
+            header.putShort(8, (short) offset.getBlockX());
+            header.putShort(10, (short) offset.getBlockY());
+            header.putShort(12, (short) offset.getBlockZ());
         } catch (Throwable e) {
             MainUtil.handleError(e);
         }
@@ -250,9 +283,9 @@ public void setDimensions(BlockVector3 dimensions) {
                 braf.setLength(size);
                 init();
             }
-            mbb.putChar(2, (char) width);
-            mbb.putChar(4, (char) height);
-            mbb.putChar(6, (char) length);
+            header.putChar(2, (char) width);
+            header.putChar(4, (char) height);
+            header.putChar(6, (char) length);
         } catch (IOException e) {
             MainUtil.handleError(e);
         }
@@ -260,7 +293,10 @@ public void setDimensions(BlockVector3 dimensions) {
 
     @Override
     public void flush() {
-        mbb.force();
+        header.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
     }
 
     public DiskOptimizedClipboard(int width, int height, int length) {
@@ -268,30 +304,7 @@ public DiskOptimizedClipboard(int width, int height, int length) {
     }
 
     private void closeDirectBuffer(ByteBuffer cb) {
-        if (cb == null || !cb.isDirect()) return;
-
-        // we could use this type cast and call functions without reflection code,
-        // but static import from sun.* package is risky for non-SUN virtual machine.
-        //try { ((sun.nio.ch.DirectBuffer)cb).cleaner().clean(); } catch (Exception ex) { }
-        try {
-            Method cleaner = cb.getClass().getMethod("cleaner");
-            cleaner.setAccessible(true);
-            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
-            clean.setAccessible(true);
-            clean.invoke(cleaner.invoke(cb));
-        } catch (Exception ex) {
-            try {
-                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
-                final Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
-                theUnsafeField.setAccessible(true);
-                final Object theUnsafe = theUnsafeField.get(null);
-                final Method invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
-                invokeCleanerMethod.invoke(theUnsafe, cb);
-            } catch (Exception e) {
-                System.gc();
-            }
-        }
-        cb = null;
+        MainUtil.closeDirectBuffer(cb);
     }
 
     @Override
@@ -302,13 +315,17 @@ protected void finalize() throws Throwable {
     @Override
     public void close() {
         try {
-            if (mbb != null) {
-                mbb.force();
+            if (header != null) {
+                flush();
                 fc.close();
                 braf.close();
                 file.setWritable(true);
-                closeDirectBuffer(mbb);
-                mbb = null;
+                closeDirectBuffer(header);
+                for (MappedByteBuffer segment : segments) {
+                    closeDirectBuffer(segment);
+                }
+                header = null;
+                segments = null;
                 fc = null;
                 braf = null;
             }
@@ -332,21 +349,15 @@ private void autoCloseTask() {
 //        }, 200);
     }
 
-    private int ylast;
-    private int ylasti;
-    private int zlast;
-    private int zlasti;
-
     @Override
     public void streamCombinedIds(NBTStreamer.ByteReader task) {
         try {
-            mbb.force();
-            int pos = HEADER_SIZE;
+            long pos = 0;
             int index = 0;
             for (int y = 0; y < height; y++) {
                 for (int z = 0; z < length; z++) {
                     for (int x = 0; x < width; x++, pos += 4) {
-                        int combinedId = mbb.getInt(pos);
+                        int combinedId = getInt(pos);
                         task.run(index++, combinedId);
                     }
                 }
@@ -363,8 +374,7 @@ public List<CompoundTag> getTileEntities() {
 
     @Override
     public void forEach(final BlockReader task, boolean air) {
-        mbb.force();
-        int pos = HEADER_SIZE;
+        long pos = 0;
         IntegerTrio trio = new IntegerTrio();
         final boolean hasTile = !nbtMap.isEmpty();
         if (air) {
@@ -372,7 +382,7 @@ public void forEach(final BlockReader task, boolean air) {
                 for (int y = 0; y < height; y++) {
                     for (int z = 0; z < length; z++) {
                         for (int x = 0; x < width; x++, pos += 4) {
-                            int combinedId = mbb.getInt(pos);
+                            int combinedId = getInt(pos);
                             BlockType type = BlockTypes.getFromStateId(combinedId);
                             BlockState state = type.withStateId(combinedId);
                             if (type.getMaterial().hasContainer()) {
@@ -391,7 +401,7 @@ public void forEach(final BlockReader task, boolean air) {
                 for (int y = 0; y < height; y++) {
                     for (int z = 0; z < length; z++) {
                         for (int x = 0; x < width; x++, pos += 4) {
-                            int combinedId = mbb.getInt(pos);
+                            int combinedId = getInt(pos);
                             BlockState state = BlockState.getFromInternalId(combinedId);
                             task.run(x, y, z, state);
                         }
@@ -402,7 +412,7 @@ public void forEach(final BlockReader task, boolean air) {
             for (int y = 0; y < height; y++) {
                 for (int z = 0; z < length; z++) {
                     for (int x = 0; x < width; x++, pos += 4) {
-                        int combinedId = mbb.getInt(pos);
+                        int combinedId = getInt(pos);
                         BlockType type = BlockTypes.getFromStateId(combinedId);
                         if (!type.getMaterial().isAir()) {
                             BlockState state = type.withStateId(combinedId);
@@ -423,14 +433,14 @@ public void forEach(final BlockReader task, boolean air) {
     }
 
     public int getIndex(int x, int y, int z) {
-        return x + ((ylast == y) ? ylasti : (ylasti = (ylast = y) * area)) + ((zlast == z) ? zlasti : (zlasti = (zlast = z) * width));
+        return x + y * area + z * width;
     }
 
     @Override
     public BaseBlock getBlock(int x, int y, int z) {
         try {
-            int index = HEADER_SIZE + (getIndex(x, y, z) << 2);
-            int combinedId = mbb.getInt(index);
+            long index = (long) getIndex(x, y, z) << 2;
+            int combinedId = getInt(index);
             BlockType type = BlockTypes.getFromStateId(combinedId);
             BaseBlock base = type.withStateId(combinedId).toBaseBlock();
             if (type.getMaterial().hasContainer() && !nbtMap.isEmpty()) {
@@ -451,8 +461,8 @@ public BaseBlock getBlock(int x, int y, int z) {
     @Override
     public BaseBlock getBlock(int i) {
         try {
-            int diskIndex = (HEADER_SIZE) + (i << 2);
-            int combinedId = mbb.getInt(diskIndex);
+            long diskIndex = (long) i << 2;
+            int combinedId = getInt(diskIndex);
             BlockType type = BlockTypes.getFromStateId(combinedId);
             BaseBlock base = type.withStateId(combinedId).toBaseBlock();
             if (type.getMaterial().hasContainer() && !nbtMap.isEmpty()) {
@@ -500,9 +510,9 @@ public boolean setTile(int x, int y, int z, CompoundTag tag) {
     @Override
     public <B extends BlockStateHolder<B>> boolean setBlock(int x, int y, int z, B block) {
         try {
-            int index = (HEADER_SIZE) + ((getIndex(x, y, z) << 2));
+            long index = (long) getIndex(x, y, z) << 2;
             int combined = block.getInternalId();
-            mbb.putInt(index, combined);
+            putInt(index, combined);
             boolean hasNbt = block instanceof BaseBlock && ((BaseBlock)block).hasNbtData();
             if (hasNbt) {
                 setTile(x, y, z, ((BaseBlock)block).getNbtData());
@@ -518,8 +528,8 @@ public <B extends BlockStateHolder<B>> boolean setBlock(int x, int y, int z, B b
     public <B extends BlockStateHolder<B>> boolean setBlock(int i, B block) {
         try {
             int combined = block.getInternalId();
-            int index = (HEADER_SIZE) + (i << 2);
-            mbb.putInt(index, combined);
+            long index = (long) i << 2;
+            putInt(index, combined);
             boolean hasNbt = block instanceof BaseBlock && ((BaseBlock)block).hasNbtData();
             if (hasNbt) {
                 int y = i / area;
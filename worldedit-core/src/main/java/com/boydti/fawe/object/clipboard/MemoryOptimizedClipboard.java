@@ -4,6 +4,7 @@
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.jnbt.NBTStreamer;
 import com.boydti.fawe.object.IntegerTrio;
+import com.boydti.fawe.object.io.CompressionStore;
 import com.boydti.fawe.util.MainUtil;
 import com.boydti.fawe.util.ReflectionUtils;
 import com.sk89q.jnbt.CompoundTag;
@@ -58,6 +59,9 @@ public class MemoryOptimizedClipboard extends FaweClipboard {
     private boolean saveCombinedIds = false;
 
     private int compressionLevel;
+    // A single zstd pass (see CompressionStore.CLIPBOARD) instead of LZ4, or 0
+    private final int zstdLevel;
+    private final byte[] dictionary;
 
     public MemoryOptimizedClipboard(int width, int height, int length) {
         this(width, height, length, Settings.IMP.CLIPBOARD.COMPRESSION_LEVEL);
@@ -74,6 +78,23 @@ public MemoryOptimizedClipboard(int width, int height, int length, int compressi
         nbtMapIndex = new HashMap<>();
         entities = new HashSet<>();
         this.compressionLevel = compressionLevel;
+        this.zstdLevel = compressionLevel == 0 ? 0 : CompressionStore.CLIPBOARD.getZstdLevel();
+        int dictionaryId = zstdLevel <= 0 ? 0 : CompressionStore.CLIPBOARD.getDictionaryId();
+        this.dictionary = dictionaryId == 0 ? null : CompressionStore.CLIPBOARD.getDictionary(dictionaryId);
+    }
+
+    private byte[] compress(byte[] bytes) {
+        if (zstdLevel > 0) {
+            return MainUtil.compressZstd(bytes, buffer, zstdLevel, dictionary);
+        }
+        return MainUtil.compress(bytes, buffer, compressionLevel);
+    }
+
+    private byte[] decompress(byte[] compressed, byte[] bytes) {
+        if (zstdLevel > 0) {
+            return MainUtil.decompressZstd(compressed, bytes, BLOCK_SIZE, dictionary);
+        }
+        return MainUtil.decompress(compressed, bytes, BLOCK_SIZE, compressionLevel);
     }
 
     public void convertTilesToIndex() {
@@ -149,13 +170,13 @@ public int getCombinedId(int index) {
             lastCombinedIds = null;
             return BlockTypes.AIR.getInternalId();
         }
-        lastCombinedIds = MainUtil.decompress(compressed, lastCombinedIds, BLOCK_SIZE, compressionLevel);
+        lastCombinedIds = decompress(compressed, lastCombinedIds);
         return SafeUtils.readIntBE(lastCombinedIds, index & BLOCK_MASK);
     }
 
     private void saveCombinedIds() {
         if (saveCombinedIds && lastCombinedIds != null) {
-            states[lastCombinedIdsI] = MainUtil.compress(lastCombinedIds, buffer, compressionLevel);
+            states[lastCombinedIdsI] = compress(lastCombinedIds);
         }
         saveCombinedIds = false;
     }
@@ -199,7 +220,7 @@ public void setCombinedId(int index, int v) {
             saveCombinedIds();
             byte[] compressed = states[lastCombinedIdsI = i];
             if (compressed != null) {
-                lastCombinedIds = MainUtil.decompress(compressed, lastCombinedIds, BLOCK_SIZE, compressionLevel);
+                lastCombinedIds = decompress(compressed, lastCombinedIds);
             } else {
                 lastCombinedIds = null;
             }
@@ -59,6 +59,12 @@ public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
         }
     }
 
+    @Override
+    public boolean addSection(int cx, int cy, int cz, int[] previous, int[] current) {
+        // The clipboard is built from the changes per block
+        return false;
+    }
+
     public Clipboard build() {
     	BlockVector3 pos1 = BlockVector3.at(minX, minY, minZ);
     	BlockVector3 pos2 = BlockVector3.at(maxX, maxY, maxZ);
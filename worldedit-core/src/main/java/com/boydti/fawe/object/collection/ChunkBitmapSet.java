@@ -0,0 +1,349 @@
+package com.boydti.fawe.object.collection;
+
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.MutableBlockVector3;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A set of block positions stored as a bitmap per chunk, e.g. for the blocks visited by a search<br>
+ * - Each chunk has 16 sections of 4096 bits (65,536 bits per chunk), which are only allocated once a block is added
+ * - Lookups are a single map lookup and a bit test, {@link #forEach(BlockVisitor)} doesn't create any vectors
+ * - All positions must be a valid world coordinate: y=[0,255]
+ * - Uses 512 bytes per section with a block in it (see {@link #getMemoryUsage()})
+ * - Reads are safe from multiple threads, as long as the set isn't being modified
+ */
+public class ChunkBitmapSet extends AbstractCollection<BlockVector3> implements Set<BlockVector3> {
+
+    private static final int SECTION_WORDS = 64;
+    // Approximate size of a map entry and section array
+    private static final int CHUNK_OVERHEAD = 32 + 16 + (16 << 3);
+    private static final int SECTION_BYTES = 16 + (SECTION_WORDS << 3);
+
+    private final Long2ObjectOpenHashMap<long[][]> chunks = new Long2ObjectOpenHashMap<>();
+    private int size;
+    private int sections;
+
+    public interface BlockVisitor {
+        void run(int x, int y, int z);
+    }
+
+    private static int index(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the approximate number of bytes used
+     */
+    public long getMemoryUsage() {
+        return (long) chunks.size() * CHUNK_OVERHEAD + (long) sections * SECTION_BYTES;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    public boolean contains(int x, int y, int z) {
+        if (y < 0 || y > 255) {
+            return false;
+        }
+        long[][] chunk = chunks.get(MathMan.pairInt(x >> 4, z >> 4));
+        if (chunk == null) {
+            return false;
+        }
+        long[] section = chunk[y >> 4];
+        if (section == null) {
+            return false;
+        }
+        int index = index(x, y, z);
+        return (section[index >> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof BlockVector3) {
+            BlockVector3 v = (BlockVector3) o;
+            return contains(v.getBlockX(), v.getBlockY(), v.getBlockZ());
+        }
+        return false;
+    }
+
+    public boolean add(int x, int y, int z) {
+        if (y < 0 || y > 255) {
+            throw new UnsupportedOperationException("ChunkBitmapSet can only contain vectors from y elem:[0,255]");
+        }
+        long pair = MathMan.pairInt(x >> 4, z >> 4);
+        long[][] chunk = chunks.get(pair);
+        if (chunk == null) {
+            chunk = new long[16][];
+            chunks.put(pair, chunk);
+        }
+        long[] section = chunk[y >> 4];
+        if (section == null) {
+            section = chunk[y >> 4] = new long[SECTION_WORDS];
+            sections++;
+        }
+        int index = index(x, y, z);
+        long word = section[index >> 6];
+        long bit = 1L << index;
+        if ((word & bit) != 0) {
+            return false;
+        }
+        section[index >> 6] = word | bit;
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean add(BlockVector3 vector) {
+        return add(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ());
+    }
+
+    public boolean remove(int x, int y, int z) {
+        if (y < 0 || y > 255) {
+            return false;
+        }
+        long pair = MathMan.pairInt(x >> 4, z >> 4);
+        long[][] chunk = chunks.get(pair);
+        if (chunk == null) {
+            return false;
+        }
+        return remove(pair, chunk, y >> 4, index(x, y, z));
+    }
+
+    /**
+     * Clear a bit, and free its section (and chunk) once they are empty
+     */
+    private boolean remove(long pair, long[][] chunk, int layer, int index) {
+        long[] section = chunk[layer];
+        if (section == null) {
+            return false;
+        }
+        long word = section[index >> 6];
+        long bit = 1L << index;
+        if ((word & bit) == 0) {
+            return false;
+        }
+        section[index >> 6] = word & ~bit;
+        size--;
+        for (long other : section) {
+            if (other != 0) {
+                return true;
+            }
+        }
+        chunk[layer] = null;
+        sections--;
+        for (long[] other : chunk) {
+            if (other != null) {
+                return true;
+            }
+        }
+        chunks.remove(pair);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o instanceof BlockVector3) {
+            BlockVector3 v = (BlockVector3) o;
+            return remove(v.getBlockX(), v.getBlockY(), v.getBlockZ());
+        }
+        return false;
+    }
+
+    /**
+     * Visit every position, without creating any vectors
+     *
+     * @param visitor
+     */
+    public void forEach(BlockVisitor visitor) {
+        for (Long2ObjectMap.Entry<long[][]> entry : chunks.long2ObjectEntrySet()) {
+            long pair = entry.getLongKey();
+            int bx = MathMan.unpairIntX(pair) << 4;
+            int bz = MathMan.unpairIntY(pair) << 4;
+            long[][] chunk = entry.getValue();
+            for (int layer = 0; layer < 16; layer++) {
+                long[] section = chunk[layer];
+                if (section == null) {
+                    continue;
+                }
+                int by = layer << 4;
+                for (int i = 0; i < SECTION_WORDS; i++) {
+                    long word = section[i];
+                    while (word != 0) {
+                        int index = (i << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        visitor.run(bx + (index & 15), by + (index >> 8), bz + ((index >> 4) & 15));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param index
+     * @return the position at an index of the iteration order, or null
+     */
+    public BlockVector3 get(int index) {
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        int count = 0;
+        for (Long2ObjectMap.Entry<long[][]> entry : chunks.long2ObjectEntrySet()) {
+            long[][] chunk = entry.getValue();
+            for (int layer = 0; layer < 16; layer++) {
+                long[] section = chunk[layer];
+                if (section == null) {
+                    continue;
+                }
+                for (int i = 0; i < SECTION_WORDS; i++) {
+                    long word = section[i];
+                    int bits = Long.bitCount(word);
+                    if (count + bits > index) {
+                        for (int skip = index - count; skip > 0; skip--) {
+                            word &= word - 1;
+                        }
+                        int bit = (i << 6) + Long.numberOfTrailingZeros(word);
+                        long pair = entry.getLongKey();
+                        return BlockVector3.at((MathMan.unpairIntX(pair) << 4) + (bit & 15), (layer << 4) + (bit >> 8), (MathMan.unpairIntY(pair) << 4) + ((bit >> 4) & 15));
+                    }
+                    count += bits;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Iterator<BlockVector3> iterator() {
+        final long[] keys = chunks.keySet().toLongArray();
+        return new Iterator<BlockVector3>() {
+            private final MutableBlockVector3 mutable = new MutableBlockVector3();
+            private int chunkIndex = -1;
+            private long pair;
+            private long[][] chunk;
+            private int bx, bz;
+            // The next bit to check in the current chunk (layer << 12 | index)
+            private int next = 1 << 16;
+            private long[][] lastChunk;
+            private long lastPair;
+            private int last = -1;
+            private boolean hasNext = advance();
+
+            private boolean advance() {
+                while (true) {
+                    if (chunk != null) {
+                        while (next < (1 << 16)) {
+                            long[] section = chunk[next >> 12];
+                            if (section == null) {
+                                next = ((next >> 12) + 1) << 12;
+                                continue;
+                            }
+                            int local = next & 4095;
+                            int word = local >> 6;
+                            long bits = section[word] & (-1L << local);
+                            while (bits == 0 && ++word < SECTION_WORDS) {
+                                bits = section[word];
+                            }
+                            if (bits != 0) {
+                                next = (next & ~4095) | (word << 6) + Long.numberOfTrailingZeros(bits);
+                                return true;
+                            }
+                            next = ((next >> 12) + 1) << 12;
+                        }
+                    }
+                    if (++chunkIndex >= keys.length) {
+                        chunk = null;
+                        return false;
+                    }
+                    pair = keys[chunkIndex];
+                    chunk = chunks.get(pair);
+                    bx = MathMan.unpairIntX(pair) << 4;
+                    bz = MathMan.unpairIntY(pair) << 4;
+                    next = 0;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public BlockVector3 next() {
+                if (!hasNext) {
+                    throw new NoSuchElementException("End of iterator");
+                }
+                int layer = next >> 12;
+                int index = next & 4095;
+                lastChunk = chunk;
+                lastPair = pair;
+                last = next;
+                mutable.setComponents(bx + (index & 15), (layer << 4) + (index >> 8), bz + ((index >> 4) & 15));
+                next++;
+                hasNext = advance();
+                return mutable;
+            }
+
+            @Override
+            public void remove() {
+                if (lastChunk == null) {
+                    throw new IllegalStateException();
+                }
+                ChunkBitmapSet.this.remove(lastPair, lastChunk, last >> 12, last & 4095);
+                lastChunk = null;
+            }
+        };
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends BlockVector3> c) {
+        boolean result = false;
+        for (BlockVector3 v : c) {
+            result |= add(v);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean result = false;
+        for (Object o : c) {
+            result |= remove(o);
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        chunks.clear();
+        size = 0;
+        sections = 0;
+    }
+}
@@ -5,34 +5,48 @@
 import com.boydti.fawe.object.io.serialize.Serialize;
 import com.boydti.fawe.util.MainUtil;
 import java.io.IOException;
-import java.lang.reflect.Array;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * Records changes made through the {@link #setByte(int, byte)} or {@link #setChar(int, char)} method<br/>
- * If you are editing the raw data, use {@link #record(Runnable)}
+ * Records changes made through the {@link #setByte(int, byte)} or {@link #setInt(int, int)} method<br/>
+ * If you are editing the raw data, use {@link #record(Runnable)}<br/>
+ * - The data itself is a heap array, only the undo changes are stored sparsely
+ * - Changes are stored in tiles of 4096 entries, which are only allocated once an entry in them changes
+ * - {@link #record(Runnable)} snapshots the data off-heap while the edit runs, then diffs it tile by tile
+ * - The snapshot is allocated once and reused by each record, until {@link #releaseSnapshot()} is called
  * @param <T>
  */
 public final class DifferentialArray<T> implements DifferentialCollection<T> {
+    private static final int TILE_SHIFT = 12;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    /**
+     * Tiles per off-heap snapshot segment
+     */
+    private static final int SEGMENT_TILES = 4096;
+
     private final byte[] dataBytes;
-    private byte[] changesBytes;
+    private byte[][] changesBytes;
 
     private final int[] dataInts;
-    private int[] changesInts;
+    private int[][] changesInts;
 
     private final char[] dataChars;
-    private char[] changesChars;
+    private char[][] changesChars;
 
     @Serialize private final T data;
 
-    private T changes;
-
     private boolean changed;
     private int length;
+    private final int tiles;
+    private final int elementSize;
+
+    private ByteBuffer[] snapshot;
 
     public DifferentialArray(T array) {
         checkNotNull(array);
@@ -59,25 +73,64 @@ public DifferentialArray(T array) {
         } else {
             dataChars = null;
         }
+        checkArgument(dataBytes != null || dataInts != null || dataChars != null, "Unsupported array type: " + clazz);
+        this.elementSize = dataInts != null ? 4 : dataChars != null ? 2 : 1;
+        this.tiles = (length + TILE_MASK) >> TILE_SHIFT;
+        if (dataBytes != null) {
+            changesBytes = new byte[tiles][];
+        } else if (dataInts != null) {
+            changesInts = new int[tiles][];
+        } else {
+            changesChars = new char[tiles][];
+        }
     }
 
-    public void record(Runnable task) {
-        if (changes == null) {
-            if (data instanceof byte[]) {
-                changes = (T) (changesBytes = new byte[length]);
-            } else if (data instanceof int[]) {
-                changes = (T) (changesInts = new int[length]);
-            } else if (data instanceof char[]) {
-                changes = (T) (changesChars = new char[length]);
+    private int tileLength(int tile) {
+        return Math.min(TILE_SIZE, length - (tile << TILE_SHIFT));
+    }
+
+    private ByteBuffer getSnapshotTile(int tile) {
+        if (snapshot == null) {
+            snapshot = new ByteBuffer[(tiles + SEGMENT_TILES - 1) / SEGMENT_TILES];
+        }
+        int segmentIndex = tile / SEGMENT_TILES;
+        ByteBuffer segment = snapshot[segmentIndex];
+        if (segment == null) {
+            int segmentTiles = Math.min(SEGMENT_TILES, tiles - segmentIndex * SEGMENT_TILES);
+            segment = snapshot[segmentIndex] = ByteBuffer.allocateDirect(segmentTiles * TILE_SIZE * elementSize).order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer view = segment.duplicate().order(ByteOrder.nativeOrder());
+        int start = (tile % SEGMENT_TILES) * TILE_SIZE * elementSize;
+        view.position(start);
+        view.limit(start + tileLength(tile) * elementSize);
+        return view;
+    }
+
+    /**
+     * Free the off-heap snapshot used by {@link #record(Runnable)}<br>
+     * - Call this once no more edits will be recorded (e.g. the generator is closed)
+     */
+    public void releaseSnapshot() {
+        if (snapshot != null) {
+            for (ByteBuffer segment : snapshot) {
+                MainUtil.closeDirectBuffer(segment);
             }
+            snapshot = null;
         }
-        T tmp;
-        boolean changed = this.changed;
-        if (changed) {
-            tmp = (T) MainUtil.copyNd(data);
-        } else {
-            tmp = changes;
-            System.arraycopy(data, 0, tmp, 0, Array.getLength(data));
+    }
+
+    public void record(Runnable task) {
+        for (int tile = 0; tile < tiles; tile++) {
+            ByteBuffer buffer = getSnapshotTile(tile);
+            int offset = tile << TILE_SHIFT;
+            int len = tileLength(tile);
+            if (dataInts != null) {
+                buffer.asIntBuffer().put(dataInts, offset, len);
+            } else if (dataChars != null) {
+                buffer.asCharBuffer().put(dataChars, offset, len);
+            } else {
+                buffer.put(dataBytes, offset, len);
+            }
         }
         Throwable caught = null;
         try {
@@ -86,55 +139,59 @@ public void record(Runnable task) {
             caught = e;
             task.run();
         }
-        if (tmp instanceof int[]) {
-            int[] tmpInts = (int[]) tmp;
-            for (int i = 0; i < tmpInts.length; i++) {
-                int tmpInt = tmpInts[i];
-                int dataInt = dataInts[i];
-                if (tmpInt != dataInt) {
-                    this.changed = true;
-                    tmpInts[i] -= dataInt;
-                } else {
-                    tmpInts[i] = 0;
-                }
-            }
-            if (changed) {
-                for (int i = 0; i < tmpInts.length; i++) {
-                    changesInts[i] += tmpInts[i];
-                }
-            }
-        } else if (tmp instanceof char[]) {
-            char[] tmpChars = (char[]) tmp;
-            for (int i = 0; i < tmpChars.length; i++) {
-                char tmpChar = tmpChars[i];
-                char dataChar = dataChars[i];
-                if (tmpChar != dataChar) {
-                    this.changed = true;
-                    tmpChars[i] -= dataChar;
-                } else {
-                    tmpChars[i] = 0;
-                }
-            }
-            if (changed) {
-                for (int i = 0; i < tmpChars.length; i++) {
-                    changesChars[i] += tmpChars[i];
+        // Compare each tile against the snapshot, only allocating change tiles where something changed
+        if (dataInts != null) {
+            int[] before = new int[TILE_SIZE];
+            for (int tile = 0; tile < tiles; tile++) {
+                int offset = tile << TILE_SHIFT;
+                int len = tileLength(tile);
+                getSnapshotTile(tile).asIntBuffer().get(before, 0, len);
+                int[] changes = changesInts[tile];
+                for (int i = 0; i < len; i++) {
+                    int diff = before[i] - dataInts[offset + i];
+                    if (diff != 0) {
+                        if (changes == null) {
+                            changes = changesInts[tile] = new int[len];
+                        }
+                        changes[i] += diff;
+                        this.changed = true;
+                    }
                 }
             }
-        } else if (tmp instanceof byte[]) {
-            byte[] tmpBytes = (byte[]) tmp;
-            for (int i = 0; i < tmpBytes.length; i++) {
-                byte tmpByte = tmpBytes[i];
-                byte dataByte = dataBytes[i];
-                if (tmpByte != dataByte) {
-                    this.changed = true;
-                    tmpBytes[i] -= dataByte;
-                } else {
-                    tmpBytes[i] = 0;
+        } else if (dataChars != null) {
+            char[] before = new char[TILE_SIZE];
+            for (int tile = 0; tile < tiles; tile++) {
+                int offset = tile << TILE_SHIFT;
+                int len = tileLength(tile);
+                getSnapshotTile(tile).asCharBuffer().get(before, 0, len);
+                char[] changes = changesChars[tile];
+                for (int i = 0; i < len; i++) {
+                    char diff = (char) (before[i] - dataChars[offset + i]);
+                    if (diff != 0) {
+                        if (changes == null) {
+                            changes = changesChars[tile] = new char[len];
+                        }
+                        changes[i] += diff;
+                        this.changed = true;
+                    }
                 }
             }
-            if (changed) {
-                for (int i = 0; i < tmpBytes.length; i++) {
-                    changesBytes[i] += tmpBytes[i];
+        } else {
+            byte[] before = new byte[TILE_SIZE];
+            for (int tile = 0; tile < tiles; tile++) {
+                int offset = tile << TILE_SHIFT;
+                int len = tileLength(tile);
+                getSnapshotTile(tile).get(before, 0, len);
+                byte[] changes = changesBytes[tile];
+                for (int i = 0; i < len; i++) {
+                    byte diff = (byte) (before[i] - dataBytes[offset + i]);
+                    if (diff != 0) {
+                        if (changes == null) {
+                            changes = changesBytes[tile] = new byte[len];
+                        }
+                        changes[i] += diff;
+                        this.changed = true;
+                    }
                 }
             }
         }
@@ -149,50 +206,83 @@ public void flushChanges(FaweOutputStream out) throws IOException {
         boolean modified = isModified();
         out.writeBoolean(modified);
         if (modified) {
+            // Same format as a single array, unchanged tiles are written as 0s
+            for (int tile = 0; tile < tiles; tile++) {
+                int len = tileLength(tile);
+                if (dataBytes != null) {
+                    byte[] changes = changesBytes[tile];
+                    if (changes != null) {
+                        out.write(changes);
+                    } else {
+                        for (int i = 0; i < len; i++) {
+                            out.write(0);
+                        }
+                    }
+                } else if (dataInts != null) {
+                    int[] changes = changesInts[tile];
+                    for (int i = 0; i < len; i++) {
+                        out.writeVarInt(changes != null ? changes[i] : 0);
+                    }
+                } else {
+                    char[] changes = changesChars[tile];
+                    for (int i = 0; i < len; i++) {
+                        out.writeChar(changes != null ? changes[i] : 0);
+                    }
+                }
+            }
+        }
+        clearChanges();
+    }
+
+    /**
+     * Revert any changes which haven't been flushed
+     */
+    private void revertChanges() {
+        if (!changed) {
+            return;
+        }
+        for (int tile = 0; tile < tiles; tile++) {
+            int offset = tile << TILE_SHIFT;
             if (dataBytes != null) {
-                out.write(changesBytes);
+                byte[] changes = changesBytes[tile];
+                if (changes != null) {
+                    for (int i = 0; i < changes.length; i++) {
+                        dataBytes[offset + i] += changes[i];
+                    }
+                }
             } else if (dataInts != null) {
-                for (int c : changesInts) {
-                    out.writeVarInt(c);
+                int[] changes = changesInts[tile];
+                if (changes != null) {
+                    for (int i = 0; i < changes.length; i++) {
+                        dataInts[offset + i] += changes[i];
+                    }
                 }
-            } else if (dataChars != null) {
-                for (char c : changesChars) {
-                    out.writeChar(c);
+            } else {
+                char[] changes = changesChars[tile];
+                if (changes != null) {
+                    for (int i = 0; i < changes.length; i++) {
+                        dataChars[offset + i] += changes[i];
+                    }
                 }
             }
         }
-        clearChanges();
     }
 
     @Override
     public void undoChanges(FaweInputStream in) throws IOException {
         boolean modified = in.readBoolean();
         if (modified) {
+            revertChanges();
             if (dataBytes != null) {
-                if (changesBytes != null) {
-                    for (int i = 0; i < dataBytes.length; i++) {
-                        dataBytes[i] += changesBytes[i];
-                    }
-                }
                 for (int i = 0; i < dataBytes.length; i++) {
                     int read = in.read();
                     dataBytes[i] += read;
                 }
             } else if (dataInts != null) {
-                if (changesInts != null) {
-                    for (int i = 0; i < dataInts.length; i++) {
-                        dataInts[i] += changesInts[i];
-                    }
-                }
-                for (int i = 0; i < changesInts.length; i++) {
+                for (int i = 0; i < dataInts.length; i++) {
                     dataInts[i] += in.readVarInt();
                 }
             } else if (dataChars != null) {
-                if (changesChars != null) {
-                    for (int i = 0; i < dataChars.length; i++) {
-                        dataChars[i] += changesChars[i];
-                    }
-                }
                 for (int i = 0; i < dataChars.length; i++) {
                     dataChars[i] += in.readChar();
                 }
@@ -211,7 +301,7 @@ public void redoChanges(FaweInputStream in) throws IOException {
                     dataBytes[i] -= read;
                 }
             } else if (dataInts != null) {
-                for (int i = 0; i < dataChars.length; i++) {
+                for (int i = 0; i < dataInts.length; i++) {
                     dataInts[i] -= in.readVarInt();
                 }
             } else if (dataChars != null) {
@@ -226,16 +316,15 @@ public void redoChanges(FaweInputStream in) throws IOException {
     public void clearChanges() {
         if (changed) {
             changed = false;
-            if (changes != null) {
-                if (changesBytes != null) {
-                    Arrays.fill(changesBytes, (byte) 0);
-                }
-                if (changesChars != null) {
-                    Arrays.fill(changesChars, (char) 0);
-                }
-                if (changesInts != null) {
-                    Arrays.fill(changesInts, 0);
-                }
+            // Drop the tiles, so the memory used is proportional to the changes of the current edit
+            if (changesBytes != null) {
+                changesBytes = new byte[tiles][];
+            }
+            if (changesChars != null) {
+                changesChars = new char[tiles][];
+            }
+            if (changesInts != null) {
+                changesInts = new int[tiles][];
             }
         }
     }
@@ -275,34 +364,34 @@ public int getInt(int index) {
 
     public void setByte(int index, byte value) {
         changed = true;
-        try {
-            changesBytes[index] += (dataBytes[index] - value);
-        } catch (NullPointerException ignore) {
-            changes = (T) (changesBytes = new byte[dataBytes.length]);
-            changesBytes[index] += (dataBytes[index] - value);
+        int tile = index >> TILE_SHIFT;
+        byte[] changes = changesBytes[tile];
+        if (changes == null) {
+            changes = changesBytes[tile] = new byte[tileLength(tile)];
         }
+        changes[index & TILE_MASK] += (dataBytes[index] - value);
         dataBytes[index] = value;
     }
 
     public void setInt(int index, int value) {
         changed = true;
-        try {
-            changesInts[index] += dataInts[index] - value;
-        } catch (NullPointerException ignore) {
-            changes = (T) (changesInts = new int[dataInts.length]);
-            changesInts[index] += dataInts[index] - value;
+        int tile = index >> TILE_SHIFT;
+        int[] changes = changesInts[tile];
+        if (changes == null) {
+            changes = changesInts[tile] = new int[tileLength(tile)];
         }
+        changes[index & TILE_MASK] += dataInts[index] - value;
         dataInts[index] = value;
     }
 
 //    public void setChar(int index, char value) {
 //        changed = true;
-//        try {
-//            changesChars[index] += dataChars[index] - value;
-//        } catch (NullPointerException ignore) {
-//            changes = (T) (changesChars = new char[dataChars.length]);
-//            changesChars[index] += dataChars[index] - value;
+//        int tile = index >> TILE_SHIFT;
+//        char[] changes = changesChars[tile];
+//        if (changes == null) {
+//            changes = changesChars[tile] = new char[tileLength(tile)];
 //        }
+//        changes[index & TILE_MASK] += dataChars[index] - value;
 //        dataChars[index] = value;
 //    }
 }
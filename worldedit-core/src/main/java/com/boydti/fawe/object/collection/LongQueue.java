@@ -0,0 +1,62 @@
+package com.boydti.fawe.object.collection;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A FIFO queue of primitive longs (e.g. packed block positions)<br>
+ * - A growable ring buffer, so adding and polling don't allocate or box
+ * - Not thread safe
+ */
+public final class LongQueue {
+
+    private long[] values;
+    private int head;
+    private int size;
+
+    public LongQueue() {
+        this(64);
+    }
+
+    public LongQueue(int capacity) {
+        this.values = new long[Integer.highestOneBit(Math.max(16, capacity - 1) << 1)];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            grow();
+        }
+        values[(head + size++) & (values.length - 1)] = value;
+    }
+
+    public long poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        long value = values[head];
+        head = (head + 1) & (values.length - 1);
+        size--;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        long[] grown = new long[values.length << 1];
+        int first = Math.min(size, values.length - head);
+        System.arraycopy(values, head, grown, 0, first);
+        System.arraycopy(values, 0, grown, first, size - first);
+        values = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,160 @@
+package com.boydti.fawe.object.collection;
+
+import java.util.Arrays;
+
+/**
+ * A 4096 entry section stored as a palette of ids and bit packed indexes into that palette<br>
+ * - Sections with a single id use no index data
+ * - Indexes use 1, 2, 4 or 8 bits, so an entry never spans two longs
+ * - Sections with more than 256 distinct ids can't be packed, and should stay as a raw int[]
+ */
+public final class PaletteSection {
+
+    private static final int MAX_PALETTE = 256;
+
+    private final int[] palette;
+    private final long[] data;
+    private final int bitsPerEntry;
+    private final int indexShift;
+    private final int indexMask;
+    private final int entryMask;
+
+    private PaletteSection(int[] palette, long[] data, int bitsPerEntry) {
+        this.palette = palette;
+        this.data = data;
+        this.bitsPerEntry = bitsPerEntry;
+        if (bitsPerEntry == 0) {
+            this.indexShift = 0;
+            this.indexMask = 0;
+            this.entryMask = 0;
+        } else {
+            // Number of entries per long is 64 / bitsPerEntry
+            this.indexShift = 6 - Integer.numberOfTrailingZeros(bitsPerEntry);
+            this.indexMask = (1 << indexShift) - 1;
+            this.entryMask = (1 << bitsPerEntry) - 1;
+        }
+    }
+
+    /**
+     * Pack a raw section
+     *
+     * @param raw int[4096]
+     * @return the packed section, or null if there are too many distinct ids
+     */
+    public static PaletteSection pack(int[] raw) {
+        // Open addressing table of id -> palette index + 1
+        int[] keys = new int[MAX_PALETTE << 2];
+        int[] values = new int[MAX_PALETTE << 2];
+        int tableMask = keys.length - 1;
+
+        int[] palette = new int[MAX_PALETTE];
+        byte[] indexes = new byte[4096];
+        int size = 0;
+
+        int lastId = raw[0];
+        int lastIndex = -1;
+        for (int i = 0; i < 4096; i++) {
+            int id = raw[i];
+            if (id != lastId || lastIndex == -1) {
+                int slot = (id * 0x9E3779B9) >>> 22 & tableMask;
+                int index;
+                while (true) {
+                    int value = values[slot];
+                    if (value == 0) {
+                        if (size == MAX_PALETTE) {
+                            return null;
+                        }
+                        keys[slot] = id;
+                        values[slot] = size + 1;
+                        palette[size] = id;
+                        index = size++;
+                        break;
+                    }
+                    if (keys[slot] == id) {
+                        index = value - 1;
+                        break;
+                    }
+                    slot = (slot + 1) & tableMask;
+                }
+                lastId = id;
+                lastIndex = index;
+            }
+            indexes[i] = (byte) lastIndex;
+        }
+
+        int bitsPerEntry;
+        if (size <= 1) {
+            bitsPerEntry = 0;
+        } else if (size <= 2) {
+            bitsPerEntry = 1;
+        } else if (size <= 4) {
+            bitsPerEntry = 2;
+        } else if (size <= 16) {
+            bitsPerEntry = 4;
+        } else {
+            bitsPerEntry = 8;
+        }
+        int[] trimmed = new int[size];
+        System.arraycopy(palette, 0, trimmed, 0, size);
+        long[] data = new long[(bitsPerEntry * 4096) >> 6];
+        if (bitsPerEntry != 0) {
+            int perLong = 64 / bitsPerEntry;
+            for (int i = 0; i < 4096; i++) {
+                data[i / perLong] |= (long) (indexes[i] & 0xFF) << ((i % perLong) * bitsPerEntry);
+            }
+        }
+        return new PaletteSection(trimmed, data, bitsPerEntry);
+    }
+
+    /**
+     * Get the id at an index
+     *
+     * @param index (y << 8) | (z << 4) | x
+     * @return
+     */
+    public int get(int index) {
+        if (bitsPerEntry == 0) {
+            return palette[0];
+        }
+        long value = data[index >> indexShift] >>> ((index & indexMask) * bitsPerEntry);
+        return palette[(int) value & entryMask];
+    }
+
+    /**
+     * Unpack this section into a raw array
+     *
+     * @param buffer int[4096]
+     * @return the buffer
+     */
+    public int[] unpack(int[] buffer) {
+        if (bitsPerEntry == 0) {
+            Arrays.fill(buffer, palette[0]);
+            return buffer;
+        }
+        final int[] palette = this.palette;
+        final int bitsPerEntry = this.bitsPerEntry;
+        final int entryMask = this.entryMask;
+        final int perLong = 64 / bitsPerEntry;
+        int arrI = 0;
+        for (long l : data) {
+            for (int j = 0; j < perLong; j++, l >>>= bitsPerEntry) {
+                buffer[arrI++] = palette[(int) l & entryMask];
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the number of distinct ids in this section
+     */
+    public int getPaletteSize() {
+        return palette.length;
+    }
+
+    /**
+     * @return the approximate number of bytes used by this section
+     */
+    public int getMemoryUsage() {
+        return 64 + (palette.length << 2) + (data.length << 3);
+    }
+}
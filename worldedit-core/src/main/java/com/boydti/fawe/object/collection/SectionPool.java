@@ -0,0 +1,110 @@
+package com.boydti.fawe.object.collection;
+
+import com.boydti.fawe.config.Settings;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of 4096 entry section arrays, so that queued chunks don't allocate a new array for every section they modify<br>
+ * - Arrays taken from the pool are zeroed
+ * - Arrays filled with a single id are shared between chunks, and must be copied before being modified (see {@link #copy(int[])})
+ */
+public final class SectionPool {
+
+    public static final SectionPool IMP = new SectionPool();
+
+    private static final int MAX_FILLED = 256;
+
+    private final ConcurrentLinkedQueue<int[]> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, int[]> filled = new ConcurrentHashMap<>();
+
+    private SectionPool() {
+    }
+
+    /**
+     * Take a zeroed array from the pool, or allocate one if the pool is empty
+     *
+     * @return int[4096]
+     */
+    public int[] take() {
+        int[] array = free.poll();
+        if (array == null) {
+            return new int[4096];
+        }
+        size.decrementAndGet();
+        return array;
+    }
+
+    /**
+     * Take an array from the pool and copy the contents of another array into it
+     *
+     * @param other
+     * @return int[4096]
+     */
+    public int[] copy(int[] other) {
+        int[] array = free.poll();
+        if (array == null) {
+            return other.clone();
+        }
+        size.decrementAndGet();
+        System.arraycopy(other, 0, array, 0, 4096);
+        return array;
+    }
+
+    /**
+     * Return an array to the pool<br>
+     * - The array must not be used after this
+     * - Shared arrays from {@link #getFilled(int)} are never returned to the pool
+     *
+     * @param array
+     */
+    public void release(int[] array) {
+        if (array == null || array.length != 4096 || size.get() >= Settings.IMP.QUEUE.SECTION_POOL_SIZE) {
+            return;
+        }
+        Arrays.fill(array, 0);
+        size.incrementAndGet();
+        free.add(array);
+    }
+
+    /**
+     * Get a shared array where every entry is the provided id<br>
+     * - The array must never be modified
+     *
+     * @param combinedId
+     * @return the array, or null if too many distinct ids are cached
+     */
+    public int[] getFilled(int combinedId) {
+        int[] array = filled.get(combinedId);
+        if (array == null) {
+            if (filled.size() >= MAX_FILLED) {
+                return null;
+            }
+            array = new int[4096];
+            Arrays.fill(array, combinedId);
+            int[] previous = filled.putIfAbsent(combinedId, array);
+            if (previous != null) {
+                array = previous;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * @return the number of arrays available for reuse
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Discard all pooled arrays (e.g. when low on memory)
+     */
+    public void clear() {
+        free.clear();
+        size.set(0);
+    }
+}
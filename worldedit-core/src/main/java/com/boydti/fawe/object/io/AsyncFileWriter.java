@@ -0,0 +1,352 @@
+package com.boydti.fawe.object.io;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.util.MainUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes files on a single dedicated thread, so the threads producing the data don't wait for the disk<br>
+ * - Writes from all streams go through one queue, bounded by size (writers block while it's full)
+ * - The thread takes everything queued at once (a group commit): writes it, fsyncs and closes the files closed in the group, then runs the queued tasks
+ * - {@link #awaitWrites(File...)} waits for the queued writes to a file, so it can be read
+ */
+public final class AsyncFileWriter implements Runnable {
+    private static AsyncFileWriter instance;
+    // Set by shutdown, so a writer is never started again (nothing would drain it at exit)
+    private static boolean shutdown;
+
+    /**
+     * The size of each stream's buffer, and so of most writes in the queue
+     */
+    private static final int BUFFER_SIZE = 16384;
+
+    private final ArrayDeque<Op> queue = new ArrayDeque<>();
+    // The number of queued (or being written) operations per file
+    private final Map<File, int[]> pending = new HashMap<>();
+    private final long capacity;
+    private final boolean sync;
+    private final Thread thread;
+    private long queuedBytes;
+    private boolean closed;
+
+    private AsyncFileWriter(long capacity, boolean sync) {
+        this.capacity = capacity;
+        this.sync = sync;
+        this.thread = new Thread(this, "FAWE history writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the writer, or null if history is written synchronously (async-write is off, or after {@link #shutdown()})
+     */
+    private static synchronized AsyncFileWriter get() {
+        if (instance == null && !shutdown && Settings.IMP.HISTORY.ASYNC_WRITE) {
+            instance = new AsyncFileWriter(Math.max(BUFFER_SIZE, Settings.IMP.HISTORY.WRITE_QUEUE_KB * 1024L), Settings.IMP.HISTORY.FSYNC);
+        }
+        return instance;
+    }
+
+    /**
+     * Write everything queued and stop the thread (anything written after is written synchronously)
+     */
+    public static void shutdown() {
+        AsyncFileWriter writer;
+        synchronized (AsyncFileWriter.class) {
+            shutdown = true;
+            writer = instance;
+            instance = null;
+        }
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Open a file for writing<br>
+     * - The file is created immediately, writes are buffered then queued (unless async-write is off)
+     * - Errors from the writer thread are thrown by the next write or close
+     */
+    public static OutputStream openFile(File file) throws IOException {
+        AsyncFileWriter writer = get();
+        if (writer == null) {
+            return new FileOutputStream(file);
+        }
+        return writer.new Output(file, new FileOutputStream(file));
+    }
+
+    /**
+     * Run a task once everything queued before it has been written (and synced)<br>
+     * - Runs on the writer thread, or immediately if nothing is written asynchronously
+     */
+    public static void afterWrites(Runnable task) {
+        AsyncFileWriter writer = get();
+        if (writer == null) {
+            task.run();
+            return;
+        }
+        try {
+            writer.add(new Op(null, null, task));
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+        }
+    }
+
+    /**
+     * Wait until the queued writes to some files are done, so they can be read
+     */
+    public static void awaitWrites(File... files) throws InterruptedIOException {
+        AsyncFileWriter writer;
+        synchronized (AsyncFileWriter.class) {
+            writer = instance;
+        }
+        if (writer != null) {
+            for (File file : files) {
+                writer.await(file);
+            }
+        }
+    }
+
+    private void await(File file) throws InterruptedIOException {
+        synchronized (queue) {
+            try {
+                while (pending.containsKey(file)) {
+                    queue.wait();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted waiting for " + file);
+            }
+        }
+    }
+
+    private void close() {
+        synchronized (queue) {
+            closed = true;
+            queue.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void add(Op op) throws IOException {
+        synchronized (queue) {
+            try {
+                // Tasks run on the writer thread can't wait for it
+                while (queuedBytes > 0 && queuedBytes + op.size() > capacity && !closed && Thread.currentThread() != thread) {
+                    queue.wait();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted waiting for the history writer");
+            }
+            if (!closed) {
+                queue.add(op);
+                queuedBytes += op.size();
+                if (op.output != null) {
+                    pending.computeIfAbsent(op.output.file, f -> new int[1])[0]++;
+                }
+                queue.notifyAll();
+                return;
+            }
+        }
+        // Shut down, so do it here
+        op.write();
+        op.close(sync);
+        if (op.task != null) {
+            op.task.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Op> batch = new ArrayList<>();
+        while (true) {
+            synchronized (queue) {
+                try {
+                    while (queue.isEmpty() && !closed) {
+                        queue.wait();
+                    }
+                } catch (InterruptedException e) {
+                    // Only stops once everything is written
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch.addAll(queue);
+                queue.clear();
+            }
+            long size = 0;
+            for (Op op : batch) {
+                op.write();
+                size += op.size();
+            }
+            // The files closed in this group are synced together, after all the writes
+            for (Op op : batch) {
+                op.close(sync);
+            }
+            synchronized (queue) {
+                queuedBytes -= size;
+                for (Op op : batch) {
+                    if (op.output != null) {
+                        int[] count = pending.get(op.output.file);
+                        if (--count[0] == 0) {
+                            pending.remove(op.output.file);
+                        }
+                    }
+                }
+                queue.notifyAll();
+            }
+            for (Op op : batch) {
+                if (op.task != null) {
+                    try {
+                        op.task.run();
+                    } catch (Throwable e) {
+                        MainUtil.handleError(e);
+                    }
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * A write (data), close (no data) or task
+     */
+    private static final class Op {
+        private final Output output;
+        private final byte[] data;
+        private final Runnable task;
+
+        private Op(Output output, byte[] data, Runnable task) {
+            this.output = output;
+            this.data = data;
+            this.task = task;
+        }
+
+        private int size() {
+            return data == null ? 0 : data.length;
+        }
+
+        private void write() {
+            if (data != null && output.error == null) {
+                try {
+                    output.out.write(data);
+                } catch (IOException e) {
+                    output.error = e;
+                    MainUtil.handleError(e);
+                }
+            }
+        }
+
+        private void close(boolean sync) {
+            if (output == null || data != null) {
+                return;
+            }
+            try {
+                if (sync && output.error == null) {
+                    output.out.getFD().sync();
+                }
+                output.out.close();
+            } catch (IOException e) {
+                output.error = e;
+                MainUtil.handleError(e);
+            }
+        }
+    }
+
+    private final class Output extends OutputStream {
+        private final File file;
+        private final FileOutputStream out;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int count;
+        private boolean closed;
+        private volatile IOException error;
+
+        private Output(File file, FileOutputStream out) {
+            this.file = file;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                queueBuffer();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len >= buffer.length) {
+                queueBuffer();
+                checkError();
+                add(new Op(this, Arrays.copyOfRange(b, off, off + len), null));
+                return;
+            }
+            if (len > buffer.length - count) {
+                queueBuffer();
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        /**
+         * Queue the buffered data (without waiting for it to be written)
+         */
+        @Override
+        public void flush() throws IOException {
+            queueBuffer();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            try {
+                queueBuffer();
+            } finally {
+                closed = true;
+                add(new Op(this, null, null));
+            }
+        }
+
+        private void queueBuffer() throws IOException {
+            checkError();
+            if (count == 0) {
+                return;
+            }
+            byte[] data;
+            if (count == buffer.length) {
+                data = buffer;
+                buffer = new byte[BUFFER_SIZE];
+            } else {
+                data = Arrays.copyOf(buffer, count);
+            }
+            count = 0;
+            add(new Op(this, data, null));
+        }
+
+        private void checkError() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed: " + file);
+            }
+            IOException e = error;
+            if (e != null) {
+                throw new IOException("Could not write " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.boydti.fawe.object.io;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FaweInputStream;
+import com.boydti.fawe.object.changeset.ChunkIndexedBlockFile;
+import com.boydti.fawe.object.clipboard.DiskOptimizedClipboard;
+import com.boydti.fawe.util.MainUtil;
+import com.github.luben.zstd.ZstdDictTrainer;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * Data which can be compressed with a single zstd pass (see {@link MainUtil#getZstdOS}), using its own trained dictionary<br>
+ * - Dictionaries are saved as [store]-[id].zdict in the dictionaries folder, and loaded on first use
+ * - The newest dictionary of a store is used to compress, and the id written with the data picks the one to decompress with
+ * - Dictionaries are trained from the store's existing data on disk, see {@link #train()}
+ * - The ordinal is written with the data, so new stores need to be added at the end
+ */
+public enum CompressionStore {
+    HISTORY {
+        @Override
+        public int getZstdLevel() {
+            return Settings.IMP.HISTORY.ZSTD_LEVEL;
+        }
+
+        @Override
+        public boolean useDictionary() {
+            return Settings.IMP.HISTORY.ZSTD_DICTIONARY;
+        }
+
+        @Override
+        protected File getFolder(File directory) {
+            return MainUtil.getFile(directory, Settings.IMP.PATHS.HISTORY);
+        }
+
+        @Override
+        protected boolean addSamples(ZstdDictTrainer trainer, File file) throws IOException {
+            String name = file.getName();
+            if (name.endsWith(".bd") && ChunkIndexedBlockFile.isChunkIndexed(file)) {
+                try (ChunkIndexedBlockFile.Reader reader = new ChunkIndexedBlockFile.Reader(file, null)) {
+                    byte[] block;
+                    while ((block = reader.nextBlock()) != null) {
+                        if (!trainer.addSample(block)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            switch (name.substring(name.lastIndexOf('.') + 1)) {
+                case "bd":
+                case "sec":
+                case "bio":
+                case "nbtf":
+                case "nbtt":
+                case "entf":
+                case "entt":
+                    try (FaweInputStream in = MainUtil.getCompressedIS(new FileInputStream(file))) {
+                        return addSamples(trainer, in);
+                    }
+                default:
+                    return true;
+            }
+        }
+    },
+    CLIPBOARD {
+        @Override
+        public int getZstdLevel() {
+            return Settings.IMP.CLIPBOARD.ZSTD_LEVEL;
+        }
+
+        @Override
+        public boolean useDictionary() {
+            return Settings.IMP.CLIPBOARD.ZSTD_DICTIONARY;
+        }
+
+        @Override
+        protected File getFolder(File directory) {
+            return MainUtil.getFile(directory, Settings.IMP.PATHS.CLIPBOARD);
+        }
+
+        @Override
+        protected boolean addSamples(ZstdDictTrainer trainer, File file) throws IOException {
+            if (!file.getName().endsWith(".bd") || file.length() <= DiskOptimizedClipboard.HEADER_SIZE) {
+                return true;
+            }
+            try (InputStream in = new FileInputStream(file)) {
+                new DataInputStream(in).skipBytes(DiskOptimizedClipboard.HEADER_SIZE);
+                return addSamples(trainer, in);
+            }
+        }
+    };
+
+    /**
+     * The size of each sample (the same as a chunk indexed history block)
+     */
+    public static final int SAMPLE_SIZE = 16384;
+    public static final int DICTIONARY_SIZE = 112640;
+    /**
+     * The maximum total size of the samples a dictionary is trained from
+     */
+    private static final int MAX_SAMPLES_SIZE = 32 << 20;
+
+    private final Map<Integer, byte[]> dictionaries = new HashMap<>();
+    private int current;
+    private boolean loaded;
+
+    /**
+     * @return the zstd level, or 0 to use the stacked LZ4 compression levels
+     */
+    public abstract int getZstdLevel();
+
+    public abstract boolean useDictionary();
+
+    protected abstract File getFolder(File directory);
+
+    /**
+     * Add the samples from one of the store's files
+     *
+     * @return false if the trainer is full
+     */
+    protected abstract boolean addSamples(ZstdDictTrainer trainer, File file) throws IOException;
+
+    protected static boolean addSamples(ZstdDictTrainer trainer, InputStream in) throws IOException {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        while (true) {
+            int read = 0;
+            int len;
+            while (read < SAMPLE_SIZE && (len = in.read(sample, read, SAMPLE_SIZE - read)) != -1) {
+                read += len;
+            }
+            if (read == 0) {
+                return true;
+            }
+            if (!trainer.addSample(read == SAMPLE_SIZE ? sample.clone() : Arrays.copyOf(sample, read))) {
+                return false;
+            }
+            if (read < SAMPLE_SIZE) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the id of the dictionary to compress with, or 0 for none
+     */
+    public synchronized int getDictionaryId() {
+        if (!useDictionary()) {
+            return 0;
+        }
+        load();
+        return current;
+    }
+
+    /**
+     * @param id the id written with the compressed data
+     * @return the dictionary, or null if it has been deleted
+     */
+    @Nullable
+    public synchronized byte[] getDictionary(int id) {
+        load();
+        return dictionaries.get(id);
+    }
+
+    /**
+     * Train a new dictionary from the store's files and use it to compress from now on
+     *
+     * @return the id of the new dictionary, or 0 if there wasn't enough data
+     * @throws IOException
+     */
+    public int train() throws IOException {
+        File directory = getDirectory();
+        if (directory == null) {
+            return 0;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer(MAX_SAMPLES_SIZE, DICTIONARY_SIZE);
+        addFolderSamples(trainer, getFolder(directory));
+        byte[] dictionary;
+        try {
+            dictionary = trainer.trainSamples();
+        } catch (RuntimeException e) {
+            // Not enough (or too similar) samples
+            Fawe.debug("Could not train a " + name().toLowerCase() + " dictionary: " + e.getMessage());
+            return 0;
+        }
+        int id = getId(dictionary);
+        File folder = MainUtil.getFile(directory, Settings.IMP.PATHS.DICTIONARIES);
+        folder.mkdirs();
+        Files.write(new File(folder, getPrefix() + Integer.toHexString(id) + ".zdict").toPath(), dictionary);
+        synchronized (this) {
+            load();
+            dictionaries.put(id, dictionary);
+            current = id;
+        }
+        return id;
+    }
+
+    private boolean addFolderSamples(ZstdDictTrainer trainer, File folder) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return true;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (!addFolderSamples(trainer, file)) {
+                    return false;
+                }
+                continue;
+            }
+            try {
+                if (!addSamples(trainer, file)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                // Partially written or from an older version
+                Fawe.debug("Skipping " + file + " for the " + name().toLowerCase() + " dictionary: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File directory = getDirectory();
+        if (directory == null) {
+            return;
+        }
+        String prefix = getPrefix();
+        File[] files = MainUtil.getFile(directory, Settings.IMP.PATHS.DICTIONARIES).listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".zdict"));
+        if (files == null) {
+            return;
+        }
+        long newest = Long.MIN_VALUE;
+        for (File file : files) {
+            try {
+                byte[] dictionary = Files.readAllBytes(file.toPath());
+                int id = getId(dictionary);
+                dictionaries.put(id, dictionary);
+                if (file.lastModified() > newest) {
+                    newest = file.lastModified();
+                    current = id;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private String getPrefix() {
+        return name().toLowerCase() + "-";
+    }
+
+    private static File getDirectory() {
+        return Fawe.imp() == null ? null : Fawe.imp().getDirectory();
+    }
+
+    private static int getId(byte[] dictionary) {
+        CRC32 crc = new CRC32();
+        crc.update(dictionary);
+        int id = (int) crc.getValue();
+        return id == 0 ? 1 : id;
+    }
+}
@@ -0,0 +1,183 @@
+package com.boydti.fawe.object.metrics;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FawePlayer;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Where the time of edits goes<br>
+ * - A {@link MetricTimer} for each stage of the pipeline (expression parsing through to the main thread commit)
+ * - Named counters, the totals for each player, and the most recent edits
+ * - Cheap enough to leave on: per block stages are sampled, everything else is timed per call/chunk/tick
+ * - View with `/fawe metrics`, or export a JSON snapshot with `/fawe metrics export`
+ */
+public final class FaweMetrics {
+    public static final MetricTimer EXPRESSION_PARSE = new MetricTimer("expression-parse");
+    public static final MetricTimer MASK = new MetricTimer("mask");
+    public static final MetricTimer PATTERN = new MetricTimer("pattern");
+    public static final MetricTimer HISTORY_WRITE = new MetricTimer("history-write");
+    public static final MetricTimer CHUNK_PREPARE = new MetricTimer("chunk-prepare");
+    public static final MetricTimer CHUNK_CALL = new MetricTimer("chunk-call");
+    public static final MetricTimer RELIGHT = new MetricTimer("relight");
+    public static final MetricTimer QUEUE_TICK = new MetricTimer("queue-tick");
+    public static final MetricTimer EDIT = new MetricTimer("edit");
+
+    private static final MetricTimer[] TIMERS = {EXPRESSION_PARSE, MASK, PATTERN, HISTORY_WRITE, CHUNK_PREPARE, CHUNK_CALL, RELIGHT, QUEUE_TICK, EDIT};
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<UUID, PlayerMetrics> players = new ConcurrentHashMap<>();
+    private static final ArrayDeque<Map<String, Object>> recentEdits = new ArrayDeque<>();
+    private static volatile long since = System.currentTimeMillis();
+
+    private FaweMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return Settings.IMP.TIMINGS.ENABLED;
+    }
+
+    /**
+     * @return 1 in how many per block operations are timed (a power of 2)
+     */
+    public static int getSampleRate() {
+        return Integer.highestOneBit(Math.max(1, Settings.IMP.TIMINGS.SAMPLE_RATE));
+    }
+
+    public static MetricTimer[] getTimers() {
+        return TIMERS.clone();
+    }
+
+    public static LongAdder getCounter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    public static void increment(String counter, long amount) {
+        if (isEnabled()) {
+            getCounter(counter).add(amount);
+        }
+    }
+
+    public static Collection<PlayerMetrics> getPlayers() {
+        return players.values();
+    }
+
+    /**
+     * Record a finished edit
+     *
+     * @param player  the player, or null for the console
+     * @param world   the world name
+     * @param changed the number of blocks changed
+     * @param elapsed the time taken (ns)
+     */
+    public static void recordEdit(@Nullable FawePlayer player, String world, long changed, long elapsed) {
+        if (!isEnabled()) {
+            return;
+        }
+        EDIT.stop(System.nanoTime() - elapsed);
+        getCounter("blocks-changed").add(changed);
+        UUID uuid = player == null ? new UUID(0, 0) : player.getUUID();
+        String name = player == null ? "console" : player.getName();
+        players.computeIfAbsent(uuid, k -> new PlayerMetrics(uuid, name)).addEdit(changed, elapsed);
+
+        Map<String, Object> edit = new LinkedHashMap<>();
+        edit.put("time", System.currentTimeMillis());
+        edit.put("player", name);
+        edit.put("world", world);
+        edit.put("blocks", changed);
+        edit.put("ms", elapsed / 1_000_000d);
+        synchronized (recentEdits) {
+            recentEdits.addFirst(edit);
+            while (recentEdits.size() > Math.max(0, Settings.IMP.TIMINGS.RECENT_EDITS)) {
+                recentEdits.removeLast();
+            }
+        }
+    }
+
+    public static List<Map<String, Object>> getRecentEdits() {
+        synchronized (recentEdits) {
+            return new ArrayList<>(recentEdits);
+        }
+    }
+
+    /**
+     * @return the time (ms) the metrics have been recorded since
+     */
+    public static long getSince() {
+        return since;
+    }
+
+    public static void reset() {
+        for (MetricTimer timer : TIMERS) {
+            timer.reset();
+        }
+        counters.clear();
+        players.clear();
+        synchronized (recentEdits) {
+            recentEdits.clear();
+        }
+        since = System.currentTimeMillis();
+    }
+
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("since", since);
+        map.put("time", System.currentTimeMillis());
+        map.put("sampleRate", getSampleRate());
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (MetricTimer timer : TIMERS) {
+            stages.put(timer.getName(), timer.snapshot());
+        }
+        map.put("stages", stages);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        map.put("counters", counts);
+        List<Map<String, Object>> playerList = new ArrayList<>();
+        for (PlayerMetrics player : players.values()) {
+            playerList.add(player.snapshot());
+        }
+        map.put("players", playerList);
+        map.put("recentEdits", getRecentEdits());
+        return map;
+    }
+
+    public static String toJson() {
+        return gson.toJson(snapshot());
+    }
+
+    /**
+     * Write a JSON snapshot to a new file
+     *
+     * @param directory the folder to write to
+     * @return the file
+     * @throws IOException
+     */
+    public static File export(File directory) throws IOException {
+        directory.mkdirs();
+        File file = new File(directory, "metrics-" + new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date()) + ".json");
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+        return file;
+    }
+}
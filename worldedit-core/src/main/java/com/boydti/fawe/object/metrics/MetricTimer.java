@@ -0,0 +1,154 @@
+package com.boydti.fawe.object.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The time spent in a stage of an edit<br>
+ * - Counts the operations, the total time, and a histogram of the time of each call (power of 2 buckets)
+ * - Per block stages use {@link #startSampled()}, which only times 1 in {@link FaweMetrics#getSampleRate()} calls
+ *   (the count and total are scaled up, so they are estimates)
+ * - Everything is a LongAdder or atomic, so recording from many threads doesn't contend
+ */
+public final class MetricTimer {
+    private static final int BUCKETS = 40;
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    public MetricTimer(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the start time, or 0 if metrics are disabled
+     */
+    public long start() {
+        return FaweMetrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @return the start time, or 0 if this call isn't sampled
+     */
+    public long startSampled() {
+        if (!FaweMetrics.isEnabled() || (ThreadLocalRandom.current().nextInt() & (FaweMetrics.getSampleRate() - 1)) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Record a single operation started with {@link #start()}
+     */
+    public void stop(long start) {
+        if (start != 0) {
+            record(1, System.nanoTime() - start, 1);
+        }
+    }
+
+    /**
+     * Record a number of operations (e.g. a batch of blocks) started with {@link #start()}
+     */
+    public void stop(long start, int operations) {
+        if (start != 0) {
+            record(operations, System.nanoTime() - start, 1);
+        }
+    }
+
+    /**
+     * Record an operation started with {@link #startSampled()}
+     */
+    public void stopSampled(long start) {
+        if (start != 0) {
+            record(1, System.nanoTime() - start, FaweMetrics.getSampleRate());
+        }
+    }
+
+    private void record(int operations, long elapsed, int weight) {
+        count.add((long) operations * weight);
+        calls.add(weight);
+        nanos.add(elapsed * weight);
+        max.accumulate(elapsed);
+        int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, elapsed)));
+        histogram.incrementAndGet(bucket);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile 0-1
+     * @return the upper bound (ns) of the histogram bucket containing the percentile
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = 0;
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets[i] = histogram.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return 2L << i;
+            }
+        }
+        return 2L << (BUCKETS - 1);
+    }
+
+    public void reset() {
+        count.reset();
+        calls.reset();
+        nanos.reset();
+        max.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", getCount());
+        map.put("calls", getCalls());
+        map.put("totalMs", getNanos() / 1_000_000d);
+        map.put("maxMs", getMaxNanos() / 1_000_000d);
+        map.put("p50Ms", getPercentileNanos(0.5) / 1_000_000d);
+        map.put("p90Ms", getPercentileNanos(0.9) / 1_000_000d);
+        map.put("p99Ms", getPercentileNanos(0.99) / 1_000_000d);
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = histogram.get(i);
+        }
+        map.put("histogram", buckets);
+        return map;
+    }
+}
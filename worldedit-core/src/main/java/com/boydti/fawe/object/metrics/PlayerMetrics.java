@@ -0,0 +1,66 @@
+package com.boydti.fawe.object.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The edits made by a player (or the console) since the metrics were last reset
+ */
+public final class PlayerMetrics {
+    private final UUID uuid;
+    private final String name;
+    private final LongAdder edits = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public PlayerMetrics(UUID uuid, String name) {
+        this.uuid = uuid;
+        this.name = name;
+    }
+
+    public UUID getUUID() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void addEdit(long changed, long elapsed) {
+        edits.increment();
+        blocks.add(changed);
+        nanos.add(elapsed);
+        max.accumulate(elapsed);
+    }
+
+    public long getEdits() {
+        return edits.sum();
+    }
+
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("uuid", uuid.toString());
+        map.put("name", name);
+        map.put("edits", getEdits());
+        map.put("blocks", getBlocks());
+        map.put("totalMs", getNanos() / 1_000_000d);
+        map.put("maxMs", getMaxNanos() / 1_000_000d);
+        return map;
+    }
+}
@@ -4,6 +4,7 @@
 import com.sk89q.worldedit.world.block.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.function.pattern.AbstractPattern;
+import com.sk89q.worldedit.function.pattern.BatchPattern;
 import com.sk89q.worldedit.internal.expression.Expression;
 import com.sk89q.worldedit.internal.expression.ExpressionException;
 import com.sk89q.worldedit.internal.expression.runtime.EvaluationException;
@@ -12,6 +13,7 @@
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 
 import java.io.IOException;
+import java.util.function.IntConsumer;
 
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -22,10 +24,11 @@
  * <p>Expressions are evaluated as {@code true} if they return a value
  * greater than {@code 0}.</p>
  */
-public class ExpressionPattern extends AbstractPattern {
+public class ExpressionPattern extends AbstractPattern implements BatchPattern {
 
     public String input;
     private transient Expression expression;
+    private transient double[] batchX, batchY, batchZ, results;
 
     /**
      * Create a new instance.
@@ -37,6 +40,7 @@ public ExpressionPattern(String input) throws ExpressionException {
         checkNotNull(input);
         this.input = input;
         this.expression = Expression.compile(input, "x", "y", "z");
+        this.expression.optimize();
     }
 
     /**
@@ -66,10 +70,37 @@ public BaseBlock apply(BlockVector3 vector) {
         }
     }
 
+    @Override
+    public void apply(int[] x, int[] y, int[] z, int length, BaseBlock[] result) {
+        if (results == null || results.length < length) {
+            batchX = new double[length];
+            batchY = new double[length];
+            batchZ = new double[length];
+            results = new double[length];
+        }
+        for (int i = 0; i < length; i++) {
+            batchX[i] = x[i];
+            batchY[i] = y[i];
+            batchZ[i] = z[i];
+        }
+        IntConsumer before = null;
+        if (expression.getEnvironment() instanceof WorldEditExpressionEnvironment) {
+            WorldEditExpressionEnvironment environment = (WorldEditExpressionEnvironment) expression.getEnvironment();
+            before = i -> environment.setCurrentBlock(x[i], y[i], z[i]);
+        }
+        expression.evaluateBatch(new double[][] {batchX, batchY, batchZ}, length, results, before);
+        for (int i = 0; i < length; i++) {
+            double combined = results[i];
+            // NaN if the evaluation failed
+            result[i] = combined != combined ? EditSession.nullBlock.toBaseBlock() : BlockState.getFromInternalId((int) combined).toBaseBlock();
+        }
+    }
+
     private void readObject(java.io.ObjectInputStream stream) throws IOException, ClassNotFoundException {
         stream.defaultReadObject();
         try {
             this.expression = Expression.compile(input, "x", "y", "z");
+            this.expression.optimize();
         } catch (ExpressionException e) {
             e.printStackTrace();
         }
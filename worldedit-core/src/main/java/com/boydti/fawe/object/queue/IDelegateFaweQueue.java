@@ -312,6 +312,26 @@ default boolean next(int amount, long time) {
         return getQueue().next(amount, time);
     }
 
+    @Override
+    default FaweChunk pollChunk() {
+        return getQueue().pollChunk();
+    }
+
+    @Override
+    default void start(FaweChunk chunk) {
+        getQueue().start(chunk);
+    }
+
+    @Override
+    default void end(FaweChunk chunk) {
+        getQueue().end(chunk);
+    }
+
+    @Override
+    default void recycle(FaweChunk chunk) {
+        getQueue().recycle(chunk);
+    }
+
     @Override
     default void saveMemory() {
         getQueue().saveMemory();
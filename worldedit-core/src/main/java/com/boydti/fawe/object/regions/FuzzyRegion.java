@@ -1,7 +1,7 @@
 package com.boydti.fawe.object.regions;
 
 import com.boydti.fawe.object.HasFaweQueue;
-import com.boydti.fawe.object.collection.BlockVectorSet;
+import com.boydti.fawe.object.collection.ChunkBitmapSet;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.extent.Extent;
@@ -18,7 +18,7 @@
 public class FuzzyRegion extends AbstractRegion {
 
     private final Mask mask;
-    private BlockVectorSet set = new BlockVectorSet();
+    private ChunkBitmapSet set = new ChunkBitmapSet();
     private boolean populated;
     private int minX, minY, minZ, maxX, maxY, maxZ;
     private Extent extent;
@@ -52,7 +52,7 @@ public boolean apply(BlockVector3 p) throws WorldEditException {
                 return true;
             }
         }, 256, extent instanceof HasFaweQueue ? (HasFaweQueue) extent : null);
-        search.setVisited(set);
+        search.setVisitedBitmap(set);
         search.visit(BlockVector3.at(x, y, z));
         Operations.completeBlindly(search);
     }
@@ -9,6 +9,11 @@
 import java.io.FileNotFoundException;
 
 public class CachedTextureUtil extends DelegateTextureUtil {
+    /**
+     * The maximum number of colors cached for each lookup, the parent's {@link ColorIndex} handles the rest
+     */
+    private static final int CACHE_SIZE = 65536;
+
     private final TextureUtil parent;
     private transient Int2ObjectOpenHashMap<BlockType> colorBlockMap;
     private transient Int2ObjectOpenHashMap<Integer> colorBiomeMap;
@@ -30,6 +35,7 @@ public BlockType[] getNearestLayer(int color) {
         }
         closest = parent.getNearestLayer(color);
         if (closest != null) {
+            if (colorLayerMap.size() >= CACHE_SIZE) colorLayerMap.clear();
             colorLayerMap.put(color, closest.clone());
         }
         return closest;
@@ -43,6 +49,7 @@ public BiomeColor getNearestBiome(int color) {
         }
         BiomeColor result = parent.getNearestBiome(color);
         if (result != null) {
+            if (colorBiomeMap.size() >= CACHE_SIZE) colorBiomeMap.clear();
             colorBiomeMap.put((int) color, (Integer) result.id);
         }
         return result;
@@ -56,6 +63,7 @@ public BlockType getNearestBlock(int color) {
         }
         BlockType result = parent.getNearestBlock(color);
         if (result != null) {
+            if (colorBlockMap.size() >= CACHE_SIZE) colorBlockMap.clear();
             colorBlockMap.put((int) color, result);
         }
         return result;
@@ -0,0 +1,163 @@
+package com.boydti.fawe.util;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+/**
+ * Answers nearest color queries for {@link TextureUtil} without checking every color<br>
+ * - Colors are bucketed into a 16x16x16 RGB grid (per alpha value), which is searched outwards from the queried color
+ * - The search stops once no unsearched cell can be closer (see {@link #lowerBound(int)}), so results are exact
+ * - Ties are resolved to the lowest index, the same as a linear scan
+ * - Immutable once built, so a single index is shared by every thread/player using the same colors
+ */
+public final class ColorIndex {
+
+    private static final int SHIFT = 4;
+    private static final int SIZE = 1 << (8 - SHIFT);
+    private static final int CELLS = SIZE * SIZE * SIZE;
+    /**
+     * Below this size a linear scan is faster than searching the grid
+     */
+    private static final int MIN_INDEXED = 64;
+
+    private final TextureUtil util;
+    private final int[] colors;
+    private final Int2ObjectOpenHashMap<Grid> grids = new Int2ObjectOpenHashMap<>();
+
+    private static final class Grid {
+        // The entries of cell i are entries[start[i]] to entries[start[i + 1] - 1], in ascending order
+        private final int[] start = new int[CELLS + 1];
+        private int[] entries;
+    }
+
+    /**
+     * @param util   the texture util to use the distance function of
+     * @param colors the colors to index (the array must not be modified)
+     */
+    public ColorIndex(TextureUtil util, int[] colors) {
+        this.util = util;
+        this.colors = colors;
+        if (colors.length < MIN_INDEXED) {
+            return;
+        }
+        for (int color : colors) {
+            int alpha = (color >> 24) & 0xFF;
+            Grid grid = grids.get(alpha);
+            if (grid == null) {
+                grids.put(alpha, grid = new Grid());
+            }
+            grid.start[cell(color) + 1]++;
+        }
+        for (Grid grid : grids.values()) {
+            for (int i = 0; i < CELLS; i++) {
+                grid.start[i + 1] += grid.start[i];
+            }
+            grid.entries = new int[grid.start[CELLS]];
+        }
+        Int2ObjectOpenHashMap<int[]> filled = new Int2ObjectOpenHashMap<>();
+        for (Int2ObjectMap.Entry<Grid> entry : grids.int2ObjectEntrySet()) {
+            filled.put(entry.getIntKey(), new int[CELLS]);
+        }
+        for (int i = 0; i < colors.length; i++) {
+            int color = colors[i];
+            int alpha = (color >> 24) & 0xFF;
+            Grid grid = grids.get(alpha);
+            int cell = cell(color);
+            grid.entries[grid.start[cell] + filled.get(alpha)[cell]++] = i;
+        }
+    }
+
+    private static int cell(int color) {
+        return cell((color >> (16 + SHIFT)) & (SIZE - 1), (color >> (8 + SHIFT)) & (SIZE - 1), (color >> SHIFT) & (SIZE - 1));
+    }
+
+    private static int cell(int r, int g, int b) {
+        return (((r << (8 - SHIFT)) + g) << (8 - SHIFT)) + b;
+    }
+
+    /**
+     * The minimum distance to any color at least k cells away (on one axis)<br>
+     * - The color distance is at least 2r^2 + 4g^2 + 2b^2 (see {@link TextureUtil#colorDistance(int, int, int, int)})
+     */
+    private static long lowerBound(int k) {
+        long gap = ((k - 1) << SHIFT) + 1;
+        return 2 * gap * gap;
+    }
+
+    /**
+     * @param color       the color to search for
+     * @param excludeSame whether to skip colors which are exactly the same
+     * @return the index of the nearest color with the same alpha, or -1
+     */
+    public int getNearest(int color, boolean excludeSame) {
+        int red = (color >> 16) & 0xFF;
+        int green = (color >> 8) & 0xFF;
+        int blue = color & 0xFF;
+        int alpha = (color >> 24) & 0xFF;
+        if (colors.length < MIN_INDEXED) {
+            long min = Long.MAX_VALUE;
+            int closest = -1;
+            for (int i = 0; i < colors.length; i++) {
+                int other = colors[i];
+                if (((other >> 24) & 0xFF) == alpha && (!excludeSame || other != color)) {
+                    long distance = util.colorDistance(red, green, blue, other);
+                    if (distance < min) {
+                        min = distance;
+                        closest = i;
+                    }
+                }
+            }
+            return closest;
+        }
+        Grid grid = grids.get(alpha);
+        if (grid == null) {
+            return -1;
+        }
+        int cr = red >> SHIFT;
+        int cg = green >> SHIFT;
+        int cb = blue >> SHIFT;
+        long min = Long.MAX_VALUE;
+        int closest = -1;
+        for (int k = 0; k < SIZE; k++) {
+            if (closest != -1 && k > 0 && min < lowerBound(k)) {
+                break;
+            }
+            // Every cell with a chebyshev distance of k
+            for (int dr = -k; dr <= k; dr++) {
+                int r = cr + dr;
+                if (r < 0 || r >= SIZE) {
+                    continue;
+                }
+                boolean rEdge = dr == -k || dr == k;
+                for (int dg = -k; dg <= k; dg++) {
+                    int g = cg + dg;
+                    if (g < 0 || g >= SIZE) {
+                        continue;
+                    }
+                    boolean edge = rEdge || dg == -k || dg == k;
+                    int step = edge || k == 0 ? 1 : k << 1;
+                    for (int db = -k; db <= k; db += step) {
+                        int b = cb + db;
+                        if (b < 0 || b >= SIZE) {
+                            continue;
+                        }
+                        int cell = cell(r, g, b);
+                        for (int j = grid.start[cell], end = grid.start[cell + 1]; j < end; j++) {
+                            int i = grid.entries[j];
+                            int other = colors[i];
+                            if (excludeSame && other == color) {
+                                continue;
+                            }
+                            long distance = util.colorDistance(red, green, blue, other);
+                            if (distance < min || (distance == min && i < closest)) {
+                                min = distance;
+                                closest = i;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+}
@@ -7,6 +7,8 @@
 import com.boydti.fawe.object.changeset.CPUOptimizedChangeSet;
 import com.boydti.fawe.object.changeset.FaweStreamChangeSet;
 import com.boydti.fawe.object.io.AbstractDelegateOutputStream;
+import com.boydti.fawe.object.io.CompressionStore;
+import com.github.luben.zstd.Zstd;
 import com.github.luben.zstd.ZstdInputStream;
 import com.github.luben.zstd.ZstdOutputStream;
 import com.sk89q.jnbt.*;
@@ -19,9 +21,11 @@
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
@@ -342,6 +346,75 @@ public static byte[] decompress(byte[] bytes, byte[] buffer, int length, int lev
         return buffer;
     }
 
+    /**
+     * Compress with a single zstd pass
+     *
+     * @param dictionary the dictionary to compress with, or null
+     */
+    public static byte[] compressZstd(byte[] bytes, byte[] buffer, int level, @Nullable byte[] dictionary) {
+        int maxCompressedLength = (int) Zstd.compressBound(bytes.length);
+        if (buffer == null || buffer.length < maxCompressedLength) {
+            buffer = new byte[maxCompressedLength];
+        }
+        long compressLen = dictionary == null ? Zstd.compress(buffer, bytes, level) : Zstd.compressUsingDict(buffer, bytes, dictionary, level);
+        if (Zstd.isError(compressLen)) {
+            throw new IllegalStateException(Zstd.getErrorName(compressLen));
+        }
+        return Arrays.copyOf(buffer, (int) compressLen);
+    }
+
+    /**
+     * Decompress bytes from {@link #compressZstd(byte[], byte[], int, byte[])}
+     *
+     * @param dictionary the dictionary they were compressed with, or null
+     */
+    public static byte[] decompressZstd(byte[] bytes, byte[] buffer, int length, @Nullable byte[] dictionary) {
+        if (buffer == null) {
+            buffer = new byte[length];
+        }
+        long result = dictionary == null ? Zstd.decompress(buffer, bytes) : Zstd.decompressUsingDict(buffer, bytes, dictionary);
+        if (Zstd.isError(result)) {
+            throw new IllegalStateException(Zstd.getErrorName(result));
+        }
+        return buffer;
+    }
+
+    /**
+     * The stream mode of a single zstd pass (see {@link #getZstdOS(OutputStream, int, CompressionStore, int)})<br>
+     * - The stacked modes are 0-9 (legacy) and 10-19
+     */
+    public static final int MODE_ZSTD = 30;
+
+    /**
+     * Compress with the codec configured for a store
+     * - A single zstd pass if the store has a zstd level (and the amount isn't 0), otherwise {@link #getCompressedOS(OutputStream, int, int)}
+     */
+    public static FaweOutputStream getCompressedOS(OutputStream os, int amount, int buffer, CompressionStore store) throws IOException {
+        int level = store.getZstdLevel();
+        if (amount == 0 || level <= 0) {
+            return getCompressedOS(os, amount, buffer);
+        }
+        return getZstdOS(os, level, store, buffer);
+    }
+
+    /**
+     * One zstd stream, using the store's current dictionary (if any)<br>
+     * { byte mode, byte store, int dictionary id (0 = none), zstd frames... }
+     */
+    public static FaweOutputStream getZstdOS(OutputStream os, int level, CompressionStore store, int buffer) throws IOException {
+        int dictionaryId = store.getDictionaryId();
+        byte[] dictionary = dictionaryId == 0 ? null : store.getDictionary(dictionaryId);
+        if (dictionary == null) {
+            dictionaryId = 0;
+        }
+        os.write(new byte[]{MODE_ZSTD, (byte) store.ordinal(), (byte) (dictionaryId >>> 24), (byte) (dictionaryId >>> 16), (byte) (dictionaryId >>> 8), (byte) dictionaryId});
+        ZstdOutputStream zos = new ZstdOutputStream(os, level);
+        if (dictionary != null) {
+            zos.setDict(dictionary);
+        }
+        return new FaweOutputStream(new BufferedOutputStream(zos, buffer));
+    }
+
     public static FaweOutputStream getCompressedOS(OutputStream os, int amount, int buffer) throws IOException {
         os.write((byte) 10 + amount);
         os = new BufferedOutputStream(os, buffer);
@@ -379,6 +452,9 @@ public static FaweInputStream getCompressedIS(InputStream is, int buffer) throws
         if (mode == 0) {
             return new FaweInputStream(is);
         }
+        if (mode == MODE_ZSTD) {
+            return getZstdIS(is, buffer);
+        }
         boolean legacy;
         if (mode >= 10) {
             legacy = false;
@@ -408,6 +484,26 @@ public static FaweInputStream getCompressedIS(InputStream is, int buffer) throws
         return new FaweInputStream(is);
     }
 
+    private static FaweInputStream getZstdIS(InputStream is, int buffer) throws IOException {
+        DataInputStream header = new DataInputStream(is);
+        int storeId = header.readUnsignedByte();
+        int dictionaryId = header.readInt();
+        CompressionStore[] stores = CompressionStore.values();
+        if (storeId >= stores.length) {
+            throw new IOException("Unknown compression store: " + storeId);
+        }
+        ZstdInputStream zis = new ZstdInputStream(is);
+        if (dictionaryId != 0) {
+            byte[] dictionary = stores[storeId].getDictionary(dictionaryId);
+            if (dictionary == null) {
+                zis.close();
+                throw new IOException("Missing " + stores[storeId].name().toLowerCase() + " dictionary " + Integer.toHexString(dictionaryId) + " (was it deleted from " + Settings.IMP.PATHS.DICTIONARIES + "?)");
+            }
+            zis.setDict(dictionary);
+        }
+        return new FaweInputStream(new BufferedInputStream(zis, buffer));
+    }
+
     public static URL upload(UUID uuid, String file, String extension, final RunnableVal<OutputStream> writeTask) {
         return upload(Settings.IMP.WEB.URL, uuid != null, uuid != null ? uuid.toString() : (String) null, file, extension, writeTask);
     }
@@ -731,6 +827,36 @@ public static File copyFile(File jar, String resource, File output, String fileN
         return null;
     }
 
+    /**
+     * Free the memory of a direct buffer now, instead of when it's garbage collected<br>
+     * - The buffer must not be used after
+     */
+    public static void closeDirectBuffer(ByteBuffer cb) {
+        if (cb == null || !cb.isDirect()) return;
+
+        // we could use this type cast and call functions without reflection code,
+        // but static import from sun.* package is risky for non-SUN virtual machine.
+        //try { ((sun.nio.ch.DirectBuffer)cb).cleaner().clean(); } catch (Exception ex) { }
+        try {
+            Method cleaner = cb.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            clean.setAccessible(true);
+            clean.invoke(cleaner.invoke(cb));
+        } catch (Exception ex) {
+            try {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafeField.setAccessible(true);
+                final Object theUnsafe = theUnsafeField.get(null);
+                final Method invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                invokeCleanerMethod.invoke(theUnsafe, cb);
+            } catch (Exception e) {
+                System.gc();
+            }
+        }
+    }
+
     public static void handleError(Throwable e) {
         handleError(e, true);
     }
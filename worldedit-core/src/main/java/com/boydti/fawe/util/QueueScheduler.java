@@ -0,0 +1,323 @@
+package com.boydti.fawe.util;
+
+import com.boydti.fawe.object.FaweChunk;
+import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.metrics.FaweMetrics;
+import com.sk89q.worldedit.EditSession;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches the chunks of every ready queue in the same tick<br>
+ * - Queues are grouped by the player who owns them, and players take turns to dispatch a chunk
+ * - Chunks from all players are set concurrently on the fork join pool
+ * - No new chunks are started once the tick budget has been used
+ * <p>
+ * In pipeline mode, chunks are prepared on the fork join pool and the main thread only commits chunks which are already
+ * prepared, so it never waits on the pool.<br>
+ * - A chunk may be committed in a later tick than it was taken, so the caller must start every queue returned by
+ * {@link #getPendingQueues()} as well as the ready queues
+ * - Only chunks which implement {@link FaweChunk#optimize()} (1.13 Bukkit chunks, which build their sections) do any
+ * work while being prepared. For other chunks the pipeline only limits how many chunks are committed per tick
+ */
+public class QueueScheduler {
+
+    private final ForkJoinPool pool;
+    private int rotation;
+    private FaweQueue polled;
+
+    private final ArrayDeque<PreparedChunk> pipeline = new ArrayDeque<>();
+    private volatile int backlog;
+    private volatile int lastCommitted;
+    private volatile long lastCommitNanos;
+
+    public QueueScheduler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Dispatch chunks from the provided queues
+     *
+     * @param queues  the queues with chunks ready to be set
+     * @param threads the maximum number of chunks to set at once
+     * @param budget  the time (ms) available
+     * @return the number of chunks dispatched
+     */
+    public int dispatch(Collection<FaweQueue> queues, int threads, long budget) {
+        long deadline = System.currentTimeMillis() + Math.max(1, budget);
+        ArrayList<ArrayDeque<FaweQueue>> owners = groupByOwner(queues);
+        if (owners.isEmpty()) {
+            return 0;
+        }
+        // Don't always serve the same player first
+        Collections.rotate(owners, -(rotation++ % owners.size()));
+        if (threads <= 1) {
+            return dispatchSerial(owners, deadline);
+        }
+        return dispatchParallel(owners, threads, deadline);
+    }
+
+    /**
+     * Commit chunks which have finished preparing, then top up the pipeline with chunks to prepare<br>
+     * - Chunks are committed in the order they were taken from their queues
+     * - Committing stops at the first chunk which isn't prepared yet, or once the budget has been used
+     *
+     * @param queues   the queues with chunks ready to be set
+     * @param capacity the maximum number of chunks being prepared or waiting to be committed
+     * @param budget   the time (ms) available to commit chunks
+     * @return the number of chunks committed
+     */
+    public int pipeline(Collection<FaweQueue> queues, int capacity, long budget) {
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + Math.max(1, budget);
+        int committed = 0;
+        while (!pipeline.isEmpty() && System.currentTimeMillis() < deadline) {
+            PreparedChunk next = pipeline.peek();
+            if (!next.future.isDone()) {
+                break;
+            }
+            pipeline.poll();
+            commit(next);
+            committed++;
+        }
+        lastCommitted = committed;
+        lastCommitNanos = System.nanoTime() - start;
+
+        ArrayList<ArrayDeque<FaweQueue>> owners = groupByOwner(queues);
+        if (!owners.isEmpty()) {
+            Collections.rotate(owners, -(rotation++ % owners.size()));
+            int index = 0;
+            while (pipeline.size() < capacity && !owners.isEmpty()) {
+                if (index >= owners.size()) {
+                    index = 0;
+                }
+                // Don't block the main thread on the pool for queues which can't provide single chunks
+                FaweChunk chunk = poll(owners.get(index), 1, deadline);
+                if (chunk == null) {
+                    owners.remove(index);
+                    continue;
+                }
+                index++;
+                pipeline.add(new PreparedChunk(polled, chunk, pool.submit(() -> {
+                    long prepareStart = FaweMetrics.CHUNK_PREPARE.start();
+                    chunk.prepare();
+                    FaweMetrics.CHUNK_PREPARE.stop(prepareStart);
+                })));
+            }
+        }
+        backlog = pipeline.size();
+        return committed;
+    }
+
+    /**
+     * Wait for and commit every chunk in the pipeline
+     */
+    public void commitAll() {
+        PreparedChunk next;
+        while ((next = pipeline.poll()) != null) {
+            commit(next);
+        }
+        backlog = 0;
+    }
+
+    private void commit(PreparedChunk prepared) {
+        try {
+            prepared.future.get();
+            prepared.queue.start(prepared.chunk);
+            prepared.chunk.dispatch();
+            prepared.queue.end(prepared.chunk);
+            prepared.queue.recycle(prepared.chunk);
+        } catch (ExecutionException e) {
+            MainUtil.handleError(e.getCause() != null ? e.getCause() : e);
+        } catch (Throwable e) {
+            MainUtil.handleError(e);
+        }
+    }
+
+    /**
+     * @param queue
+     * @return if the queue has chunks in the pipeline which haven't been committed
+     */
+    public boolean isPending(FaweQueue queue) {
+        for (PreparedChunk prepared : pipeline) {
+            if (prepared.queue == queue) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the queues with chunks in the pipeline which haven't been committed
+     */
+    public Collection<FaweQueue> getPendingQueues() {
+        Set<FaweQueue> queues = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PreparedChunk prepared : pipeline) {
+            queues.add(prepared.queue);
+        }
+        return queues;
+    }
+
+    /**
+     * @return the number of chunks being prepared or waiting to be committed
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return the number of chunks committed in the last tick
+     */
+    public int getLastCommitted() {
+        return lastCommitted;
+    }
+
+    /**
+     * @return the time (ns) spent committing chunks in the last tick
+     */
+    public long getLastCommitNanos() {
+        return lastCommitNanos;
+    }
+
+    private int dispatchSerial(ArrayList<ArrayDeque<FaweQueue>> owners, long deadline) {
+        int dispatched = 0;
+        int index = 0;
+        while (!owners.isEmpty() && System.currentTimeMillis() < deadline) {
+            if (index >= owners.size()) {
+                index = 0;
+            }
+            FaweChunk chunk = poll(owners.get(index), 1, deadline);
+            if (chunk == null) {
+                owners.remove(index);
+                continue;
+            }
+            index++;
+            FaweQueue queue = polled;
+            try {
+                queue.start(chunk);
+                chunk.dispatch();
+                queue.end(chunk);
+                queue.recycle(chunk);
+            } catch (Throwable e) {
+                MainUtil.handleError(e);
+            }
+            dispatched++;
+        }
+        return dispatched;
+    }
+
+    private int dispatchParallel(ArrayList<ArrayDeque<FaweQueue>> owners, int threads, long deadline) {
+        ExecutorCompletionService<FaweChunk> service = new ExecutorCompletionService<>(pool);
+        IdentityHashMap<Future<FaweChunk>, FaweQueue> running = new IdentityHashMap<>();
+        int dispatched = 0;
+        int index = 0;
+        try {
+            while (!owners.isEmpty() && System.currentTimeMillis() < deadline) {
+                if (running.size() >= threads) {
+                    Future<FaweChunk> future = service.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (future != null) {
+                        complete(future, running.remove(future));
+                    }
+                    continue;
+                }
+                if (index >= owners.size()) {
+                    index = 0;
+                }
+                FaweChunk chunk = poll(owners.get(index), threads, deadline);
+                if (chunk == null) {
+                    owners.remove(index);
+                    continue;
+                }
+                index++;
+                FaweQueue queue = polled;
+                queue.start(chunk);
+                running.put(service.submit(chunk::dispatch), queue);
+                dispatched++;
+            }
+            while (!running.isEmpty()) {
+                Future<FaweChunk> future = service.take();
+                complete(future, running.remove(future));
+            }
+        } catch (InterruptedException e) {
+            MainUtil.handleError(e);
+        }
+        return dispatched;
+    }
+
+    private void complete(Future<FaweChunk> future, FaweQueue queue) throws InterruptedException {
+        try {
+            FaweChunk chunk = future.get();
+            if (chunk != null && queue != null) {
+                queue.end(chunk);
+                queue.recycle(chunk);
+            }
+        } catch (ExecutionException e) {
+            MainUtil.handleError(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Poll the next chunk from a player's queues<br>
+     * - Queues which can't provide single chunks are dispatched the legacy way with the remaining time
+     */
+    private FaweChunk poll(ArrayDeque<FaweQueue> owned, int threads, long deadline) {
+        while (!owned.isEmpty()) {
+            FaweQueue queue = owned.poll();
+            FaweChunk chunk = queue.pollChunk();
+            if (chunk != null) {
+                // Rotate between the queues of the same player
+                owned.add(queue);
+                polled = queue;
+                return chunk;
+            }
+            if (queue.size() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining > 0) {
+                    queue.next(threads, remaining);
+                }
+            }
+        }
+        return null;
+    }
+
+    private ArrayList<ArrayDeque<FaweQueue>> groupByOwner(Collection<FaweQueue> queues) {
+        LinkedHashMap<Object, ArrayDeque<FaweQueue>> map = new LinkedHashMap<>();
+        for (FaweQueue queue : queues) {
+            map.computeIfAbsent(getOwner(queue), k -> new ArrayDeque<>()).add(queue);
+        }
+        return new ArrayList<>(map.values());
+    }
+
+    private static final class PreparedChunk {
+        private final FaweQueue queue;
+        private final FaweChunk chunk;
+        private final Future<?> future;
+
+        private PreparedChunk(FaweQueue queue, FaweChunk chunk, Future<?> future) {
+            this.queue = queue;
+            this.chunk = chunk;
+            this.future = future;
+        }
+    }
+
+    private Object getOwner(FaweQueue queue) {
+        for (EditSession session : queue.getEditSessions()) {
+            FawePlayer player = session.getPlayer();
+            if (player != null) {
+                return player.getUUID();
+            }
+        }
+        return queue;
+    }
+}
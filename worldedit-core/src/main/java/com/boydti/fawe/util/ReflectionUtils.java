@@ -1,5 +1,8 @@
 package com.boydti.fawe.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
@@ -350,6 +353,40 @@ public static <T extends AccessibleObject> T setAccessible(final T ao) {
         return ao;
     }
 
+    /**
+     * Get a getter for a field<br>
+     * - Stored in a static final field, the JIT can inline it (unlike {@link Field#get(Object)})
+     *
+     * @param field the field
+     * @param owner the class the getter takes
+     * @param type  the type the getter returns
+     * @return a MethodHandle of type (owner)type
+     */
+    public static MethodHandle getter(final Field field, final Class<?> owner, final Class<?> type) {
+        try {
+            return MethodHandles.lookup().unreflectGetter(setAccessible(field)).asType(MethodType.methodType(type, owner));
+        } catch (final IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Get a setter for a (non static) field
+     *
+     * @param field the field
+     * @param owner the class the setter takes
+     * @param type  the type of the value the setter takes
+     * @return a MethodHandle of type (owner, type)void
+     * @see #getter(Field, Class, Class)
+     */
+    public static MethodHandle setter(final Field field, final Class<?> owner, final Class<?> type) {
+        try {
+            return MethodHandles.lookup().unreflectSetter(setAccessible(field)).asType(MethodType.methodType(void.class, owner, type));
+        } catch (final IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public static <T> T getField(final Field field, final Object instance) {
         if (field == null) {
@@ -3,13 +3,16 @@
 import com.boydti.fawe.Fawe;
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.boydti.fawe.wrappers.WorldWrapper;
 import com.sk89q.worldedit.world.World;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ForkJoinPool;
@@ -45,6 +48,7 @@ public enum QueueStage {
 
     private ForkJoinPool pool = new ForkJoinPool();
     private ExecutorCompletionService completer = new ExecutorCompletionService(pool);
+    private final QueueScheduler scheduler = new QueueScheduler(pool);
 
     /**
      * @return ForkJoinPool
@@ -77,15 +81,18 @@ public SetQueue() {
         inactiveQueues = new ConcurrentLinkedDeque<>();
         if (TaskManager.IMP == null) return;
         TaskManager.IMP.repeat(() -> {
+            // Idle ticks aren't timed
+            long tickStart = 0;
             try {
                 long now = System.currentTimeMillis();
-                boolean empty = (inactiveQueues.isEmpty() && activeQueues.isEmpty());
+                boolean empty = (inactiveQueues.isEmpty() && activeQueues.isEmpty() && scheduler.getBacklog() == 0);
                 boolean emptyTasks = tasks.isEmpty();
                 if (emptyTasks && empty) {
                     last = now;
                     runEmptyTasks();
                     return;
                 }
+                tickStart = FaweMetrics.QUEUE_TICK.start();
 
                 targetTPS = 18 - Math.max(Settings.IMP.QUEUE.EXTRA_TIME_MS * 0.05, 0);
 
@@ -150,6 +157,12 @@ public SetQueue() {
                     }
                 }
 
+                if (Settings.IMP.QUEUE.FAIR_SCHEDULING) {
+                    long budget = Settings.IMP.QUEUE.TICK_BUDGET_MS + Settings.IMP.QUEUE.EXTRA_TIME_MS - Math.max(0, -diff) - (System.currentTimeMillis() - now);
+                    dispatchAll(now, budget);
+                    return;
+                }
+
                 FaweQueue queue = getNextQueue();
                 if (queue == null) {
                     return;
@@ -184,6 +197,8 @@ public SetQueue() {
                 queue.endSet(parallel);
             } catch (Throwable e) {
                 e.printStackTrace();
+            } finally {
+                FaweMetrics.QUEUE_TICK.stop(tickStart);
             }
         }, 1);
     }
@@ -268,6 +283,20 @@ public void flush(FaweQueue queue) {
             parallelThreads = 0;
         }
         try {
+            if (Fawe.isMainThread()) {
+                // Chunks taken from the queue earlier must be set first
+                Collection<FaweQueue> pending = scheduler.getPendingQueues();
+                for (FaweQueue other : pending) {
+                    other.startSet(false);
+                }
+                try {
+                    scheduler.commitAll();
+                } finally {
+                    for (FaweQueue other : pending) {
+                        other.endSet(false);
+                    }
+                }
+            }
             queue.startSet(Settings.IMP.QUEUE.PARALLEL_THREADS > 1);
             queue.next(Settings.IMP.QUEUE.PARALLEL_THREADS, Long.MAX_VALUE);
         } catch (Throwable e) {
@@ -284,6 +313,85 @@ public void flush(FaweQueue queue) {
         }
     }
 
+    /**
+     * Dispatch chunks from every queue which is ready, sharing the budget between players
+     *
+     * @param now    the start of the tick
+     * @param budget the time (ms) available for placing chunks
+     */
+    private void dispatchAll(long now, long budget) {
+        Collection<FaweQueue> queues = getReadyQueues(now);
+        boolean pipeline = Settings.IMP.QUEUE.PIPELINE;
+        if (queues.isEmpty() && (!pipeline || scheduler.getBacklog() == 0)) {
+            return;
+        }
+        // Pipelined chunks are only committed on the main thread
+        boolean parallel = !pipeline && Settings.IMP.QUEUE.PARALLEL_THREADS > 1;
+        // Chunks taken in an earlier tick may be committed from queues which aren't ready this tick
+        Set<FaweQueue> started = Collections.newSetFromMap(new IdentityHashMap<>());
+        started.addAll(queues);
+        if (pipeline) {
+            started.addAll(scheduler.getPendingQueues());
+        }
+        for (FaweQueue queue : started) {
+            queue.startSet(parallel);
+        }
+        try {
+            if (pipeline) {
+                scheduler.pipeline(queues, Settings.IMP.QUEUE.PIPELINE_SIZE, Math.min(budget, Settings.IMP.QUEUE.COMMIT_BUDGET_MS));
+            } else {
+                scheduler.dispatch(queues, Settings.IMP.QUEUE.PARALLEL_THREADS, budget);
+            }
+        } catch (Throwable e) {
+            pool.awaitQuiescence(Settings.IMP.QUEUE.DISCARD_AFTER_MS, TimeUnit.MILLISECONDS);
+            e.printStackTrace();
+        } finally {
+            for (FaweQueue queue : started) {
+                queue.endSet(parallel);
+            }
+        }
+        for (FaweQueue queue : queues) {
+            if (queue.size() == 0 && queue.getStage() == QueueStage.ACTIVE && !scheduler.isPending(queue)) {
+                activeQueues.remove(queue);
+                queue.setStage(QueueStage.NONE);
+                queue.runTasks();
+            }
+        }
+    }
+
+    /**
+     * Get all the queues which should have chunks placed this tick<br>
+     * - All active queues with chunks remaining
+     * - Inactive queues promoted by {@link #getNextInactiveQueue(long, Set)}, until none are left to promote
+     *
+     * @param now
+     * @return
+     */
+    public Collection<FaweQueue> getReadyQueues(long now) {
+        ArrayList<FaweQueue> ready = new ArrayList<>();
+        Iterator<FaweQueue> activeIter = activeQueues.iterator();
+        while (activeIter.hasNext()) {
+            FaweQueue queue = activeIter.next();
+            if (queue.size() > 0) {
+                queue.setModified(now);
+                ready.add(queue);
+            } else if (!scheduler.isPending(queue)) {
+                queue.setStage(QueueStage.NONE);
+                queue.runTasks();
+                activeIter.remove();
+            }
+        }
+        if (!inactiveQueues.isEmpty()) {
+            Set<FaweQueue> promoted = Collections.newSetFromMap(new IdentityHashMap<>());
+            FaweQueue queue;
+            while ((queue = getNextInactiveQueue(now, promoted)) != null) {
+                promoted.add(queue);
+                ready.add(queue);
+            }
+        }
+        return ready;
+    }
+
     public FaweQueue getNextQueue() {
         long now = System.currentTimeMillis();
         while (!activeQueues.isEmpty()) {
@@ -297,6 +405,19 @@ public FaweQueue getNextQueue() {
                 activeQueues.poll();
             }
         }
+        return getNextInactiveQueue(now, Collections.emptySet());
+    }
+
+    /**
+     * Get the next inactive queue which should have chunks placed, and discard empty queues which have expired<br>
+     * - Once the chunks queued in total exceed `target-size`, the first queue with chunks is promoted
+     * - Otherwise, a queue which has waited longer than `max-wait-ms` is promoted
+     *
+     * @param now
+     * @param skip queues which have already been promoted (and don't count towards the total)
+     * @return the promoted queue, or null
+     */
+    private FaweQueue getNextInactiveQueue(long now, Set<FaweQueue> skip) {
         int size = inactiveQueues.size();
         if (size > 0) {
             Iterator<FaweQueue> iter = inactiveQueues.iterator();
@@ -305,6 +426,9 @@ public FaweQueue getNextQueue() {
                 FaweQueue firstNonEmpty = null;
                 while (iter.hasNext()) {
                     FaweQueue queue = iter.next();
+                    if (skip.contains(queue)) {
+                        continue;
+                    }
                     long age = now - queue.getModified();
                     total += queue.size();
                     if (queue.size() == 0) {
@@ -396,13 +520,34 @@ public boolean forceChunkSet() {
         return next();
     }
 
+    /**
+     * Get the number of chunks waiting to be placed<br>
+     * - Includes chunks which are being prepared or waiting to be committed in pipeline mode
+     *
+     * @return
+     */
+    public int getBacklog() {
+        int total = scheduler.getBacklog();
+        for (FaweQueue queue : activeQueues) {
+            total += queue.size();
+        }
+        for (FaweQueue queue : inactiveQueues) {
+            total += queue.size();
+        }
+        return total;
+    }
+
+    public QueueScheduler getScheduler() {
+        return scheduler;
+    }
+
     /**
      * Is the this empty
      *
      * @return
      */
     public boolean isEmpty() {
-        return activeQueues.size() == 0 && inactiveQueues.size() == 0;
+        return activeQueues.size() == 0 && inactiveQueues.size() == 0 && scheduler.getBacklog() == 0;
     }
 
     public void addTask(Runnable whenFree) {
@@ -97,6 +97,9 @@ public static TextureUtil fromMask(Mask mask) throws FileNotFoundException {
     protected int[] validLayerColors;
     protected int[][] validLayerBlocks;
 
+    private volatile ColorIndex colorIndex;
+    private volatile ColorIndex layerIndex;
+
     protected int[] validMixBiomeColors;
     protected long[] validMixBiomeIds;
 
@@ -381,27 +384,44 @@ public TextureUtil(File folder) throws FileNotFoundException {
         }
     }
 
-    public BlockType getNearestBlock(int color) {
-        long min = Long.MAX_VALUE;
-        int closest = 0;
-        int red1 = (color >> 16) & 0xFF;
-        int green1 = (color >> 8) & 0xFF;
-        int blue1 = (color >> 0) & 0xFF;
-        int alpha = (color >> 24) & 0xFF;
-        for (int i = 0; i < validColors.length; i++) {
-            int other = validColors[i];
-            if (((other >> 24) & 0xFF) == alpha) {
-                long distance = colorDistance(red1, green1, blue1, other);
-                if (distance < min) {
-                    min = distance;
-                    closest = validBlockIds[i];
+    /**
+     * @return the index of validColors, created when first used
+     */
+    protected ColorIndex getColorIndex() {
+        ColorIndex index = colorIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = colorIndex;
+                if (index == null) {
+                    colorIndex = index = new ColorIndex(this, validColors);
                 }
             }
         }
-        if (min == Long.MAX_VALUE) {
+        return index;
+    }
+
+    /**
+     * @return the index of validLayerColors, created when first used
+     */
+    protected ColorIndex getLayerIndex() {
+        ColorIndex index = layerIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = layerIndex;
+                if (index == null) {
+                    layerIndex = index = new ColorIndex(this, validLayerColors);
+                }
+            }
+        }
+        return index;
+    }
+
+    public BlockType getNearestBlock(int color) {
+        int closest = getColorIndex().getNearest(color, false);
+        if (closest == -1) {
             return null;
         }
-        return BlockTypes.get(closest);
+        return BlockTypes.get(validBlockIds[closest]);
     }
 
     public BlockType getNearestBlock(BlockType block) {
@@ -413,26 +433,11 @@ public BlockType getNearestBlock(BlockType block) {
     }
 
     public BlockType getNextNearestBlock(int color) {
-        long min = Long.MAX_VALUE;
-        int closest = 0;
-        int red1 = (color >> 16) & 0xFF;
-        int green1 = (color >> 8) & 0xFF;
-        int blue1 = (color >> 0) & 0xFF;
-        int alpha = (color >> 24) & 0xFF;
-        for (int i = 0; i < validColors.length; i++) {
-            int other = validColors[i];
-            if (other != color && ((other >> 24) & 0xFF) == alpha) {
-                long distance = colorDistance(red1, green1, blue1, other);
-                if (distance < min) {
-                    min = distance;
-                    closest = validBlockIds[i];
-                }
-            }
-        }
-        if (min == Long.MAX_VALUE) {
+        int closest = getColorIndex().getNearest(color, true);
+        if (closest == -1) {
             return null;
         }
-        return BlockTypes.get(closest);
+        return BlockTypes.get(validBlockIds[closest]);
     }
 
     private BlockType[] layerBuffer = new BlockType[2];
@@ -444,22 +449,11 @@ public BlockType getNextNearestBlock(int color) {
      * @return
      */
     public BlockType[] getNearestLayer(int color) {
-        int[] closest = null;
-        long min = Long.MAX_VALUE;
-        int red1 = (color >> 16) & 0xFF;
-        int green1 = (color >> 8) & 0xFF;
-        int blue1 = (color >> 0) & 0xFF;
-        int alpha = (color >> 24) & 0xFF;
-        for (int i = 0; i < validLayerColors.length; i++) {
-            int other = validLayerColors[i];
-            if (((other >> 24) & 0xFF) == alpha) {
-                long distance = colorDistance(red1, green1, blue1, other);
-                if (distance < min) {
-                    min = distance;
-                    closest = validLayerBlocks[i];
-                }
-            }
+        int index = getLayerIndex().getNearest(color, false);
+        if (index == -1) {
+            return null;
         }
+        int[] closest = validLayerBlocks[index];
         layerBuffer[0] = BlockTypes.get(closest[0]);
         layerBuffer[1] = BlockTypes.get(closest[1]);
         return layerBuffer;
@@ -797,6 +791,7 @@ public void loadModTextures() throws IOException {
             validColors[index] = color;
             index++;
         }
+        colorIndex = null;
         ArrayList<Long> distances = new ArrayList<>(distanceMap.values());
         Collections.sort(distances);
         this.distances = new long[distances.size()];
@@ -901,6 +896,7 @@ protected void calculateLayerArrays() {
             validLayerColors[index] = entry.getIntKey();
             validLayerBlocks[index++] = entry.getValue();
         }
+        layerIndex = null;
     }
 
     protected BlockType getNearestBlock(BlockType block, boolean darker) {
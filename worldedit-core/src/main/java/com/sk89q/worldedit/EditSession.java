@@ -58,6 +58,7 @@
 import com.boydti.fawe.object.extent.StripNBTExtent;
 import com.boydti.fawe.object.function.SurfaceRegionFunction;
 import com.boydti.fawe.object.mask.ResettableMask;
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.boydti.fawe.object.pattern.ExistingPattern;
 import com.boydti.fawe.object.progress.ChatProgressTracker;
 import com.boydti.fawe.object.progress.DefaultProgressTracker;
@@ -222,6 +223,7 @@ public enum Stage {
 
     private int changes = 0;
     private BlockBag blockBag;
+    private final long created = System.nanoTime();
 
     private final int maxY;
 
@@ -1421,6 +1423,7 @@ public void flushQueue() {
         }
         // Reset limit
         limit.set(originalLimit);
+        FaweMetrics.recordEdit(player, worldName, getBlockChangeCount(), System.nanoTime() - created);
         // Enqueue it
         if (queue == null || queue.isEmpty()) {
             queue.dequeue();
@@ -201,7 +201,7 @@ public void run(DiskStorageHistory edit) {
             public void run() {
                 BBC.TOOL_INSPECT_INFO_FOOTER.send(player, count);
             }
-        }, true, restore);
+        }, true, restore, true);
     }
 
     @Command(
@@ -430,6 +430,7 @@ public Pattern expression(Actor actor, LocalSession session, Extent extent, Stri
         Expression exp = Expression.compile(input, "x", "y", "z");
         WorldEditExpressionEnvironment env = new WorldEditExpressionEnvironment(extent, Vector3.ONE, Vector3.ZERO);
         exp.setEnvironment(env);
+        exp.optimize();
         return new ExpressionPattern(exp);
     }
 }
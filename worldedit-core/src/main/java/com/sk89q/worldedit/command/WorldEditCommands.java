@@ -23,6 +23,10 @@
 import com.boydti.fawe.FaweVersion;
 import com.boydti.fawe.config.BBC;
 import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.io.CompressionStore;
+import com.boydti.fawe.object.metrics.FaweMetrics;
+import com.boydti.fawe.object.metrics.MetricTimer;
+import com.boydti.fawe.object.metrics.PlayerMetrics;
 import com.boydti.fawe.util.*;
 import com.sk89q.minecraft.util.commands.Command;
 import com.sk89q.minecraft.util.commands.CommandContext;
@@ -38,6 +42,7 @@
 import com.sk89q.worldedit.extension.platform.Platform;
 import com.sk89q.worldedit.extension.platform.PlatformManager;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -138,6 +143,98 @@ public void threads(Actor actor) throws WorldEditException {
         }
     }
 
+    @Command(
+            aliases = {"metrics"},
+            usage = "[reset|export]",
+            desc = "Show where the time of edits is spent",
+            help = "Show the time spent in each stage of an edit, the players using the most time and the slowest recent edits\n" +
+                    " - reset: clear the metrics\n" +
+                    " - export: write a JSON snapshot to the FAWE folder",
+            min = 0,
+            max = 1,
+            queued = false
+    )
+    @CommandPermissions("worldedit.metrics")
+    public void metrics(Actor actor, CommandContext args) throws WorldEditException, IOException {
+        String arg = args.argsLength() == 0 ? "" : args.getString(0).toLowerCase();
+        switch (arg) {
+            case "reset":
+                FaweMetrics.reset();
+                actor.print(BBC.getPrefix() + "Metrics reset");
+                return;
+            case "export":
+                File file = FaweMetrics.export(new File(Fawe.imp().getDirectory(), "metrics"));
+                actor.print(BBC.getPrefix() + "Metrics written to " + file.getPath());
+                return;
+            case "":
+                break;
+            default:
+                actor.printError("Usage: /fawe metrics [reset|export]");
+                return;
+        }
+        if (!FaweMetrics.isEnabled()) {
+            actor.printError("Metrics are disabled (timings.enabled in config.yml)");
+        }
+        long seconds = (System.currentTimeMillis() - FaweMetrics.getSince()) / 1000;
+        actor.print(BBC.getPrefix() + "Metrics for the last " + seconds + "s (1/" + FaweMetrics.getSampleRate() + " per block operations sampled)");
+        actor.printDebug(String.format("%-18s %12s %10s %9s %9s %9s", "stage", "count", "total ms", "p50 ms", "p99 ms", "max ms"));
+        for (MetricTimer timer : FaweMetrics.getTimers()) {
+            if (timer.getCalls() == 0) {
+                continue;
+            }
+            actor.printDebug(String.format("%-18s %12d %10.1f %9.3f %9.3f %9.3f", timer.getName(), timer.getCount(), timer.getNanos() / 1e6,
+                    timer.getPercentileNanos(0.5) / 1e6, timer.getPercentileNanos(0.99) / 1e6, timer.getMaxNanos() / 1e6));
+        }
+        List<PlayerMetrics> players = new ArrayList<>(FaweMetrics.getPlayers());
+        if (!players.isEmpty()) {
+            players.sort(Comparator.comparingLong(PlayerMetrics::getNanos).reversed());
+            actor.print(BBC.getPrefix() + "Players:");
+            for (PlayerMetrics player : players.subList(0, Math.min(5, players.size()))) {
+                actor.printDebug(String.format(" - %s: %d edits, %d blocks, %.1f ms (max %.1f ms)", player.getName(), player.getEdits(), player.getBlocks(),
+                        player.getNanos() / 1e6, player.getMaxNanos() / 1e6));
+            }
+        }
+        List<Map<String, Object>> edits = FaweMetrics.getRecentEdits();
+        if (!edits.isEmpty()) {
+            edits.sort(Comparator.comparingDouble(edit -> -((Number) edit.get("ms")).doubleValue()));
+            actor.print(BBC.getPrefix() + "Slowest recent edits:");
+            for (Map<String, Object> edit : edits.subList(0, Math.min(5, edits.size()))) {
+                actor.printDebug(String.format(" - %s in %s: %s blocks, %.1f ms", edit.get("player"), edit.get("world"), edit.get("blocks"), ((Number) edit.get("ms")).doubleValue()));
+            }
+        }
+    }
+
+    @Command(
+            aliases = {"dictionary"},
+            usage = "<history|clipboard>",
+            desc = "Train a zstd dictionary from the existing data of a store",
+            help = "Train a zstd dictionary from the history or clipboards on disk, and use it for new data\n" +
+                    " - Only used when the store has a zstd-level in config.yml\n" +
+                    " - The dictionary is saved in the dictionaries folder, keep it until the data using it is deleted",
+            min = 1,
+            max = 1
+    )
+    @CommandPermissions("worldedit.dictionary")
+    public void dictionary(Actor actor, CommandContext args) throws WorldEditException, IOException {
+        CompressionStore store;
+        try {
+            store = CompressionStore.valueOf(args.getString(0).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            actor.printError("Usage: /fawe dictionary <history|clipboard>");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int id = store.train();
+        if (id == 0) {
+            actor.printError("Not enough " + store.name().toLowerCase() + " data to train a dictionary");
+            return;
+        }
+        actor.print(BBC.getPrefix() + "Trained " + store.name().toLowerCase() + " dictionary " + Integer.toHexString(id) + " in " + (System.currentTimeMillis() - start) + "ms");
+        if (store.getZstdLevel() <= 0) {
+            actor.printDebug("It won't be used until zstd-level is set in config.yml");
+        }
+    }
+
     @Command(
             aliases = {"cui"},
             usage = "",
@@ -52,6 +52,7 @@ public Mask parseFromInput(String input, ParserContext context) throws InputPars
             WorldEditExpressionEnvironment env = new WorldEditExpressionEnvironment(
                     new RequestExtent(), Vector3.ONE, Vector3.ZERO);
             exp.setEnvironment(env);
+            exp.optimize();
             if (context.getActor() instanceof SessionOwner) {
                 SessionOwner owner = (SessionOwner) context.getActor();
                 IntSupplier timeout = () -> WorldEdit.getInstance().getSessionManager().get(owner).getTimeout();
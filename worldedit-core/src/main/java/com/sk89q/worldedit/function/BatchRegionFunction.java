@@ -0,0 +1,48 @@
+/*
+ * WorldEdit, a Minecraft world manipulation toolkit
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) WorldEdit team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.sk89q.worldedit.function;
+
+import com.sk89q.worldedit.WorldEditException;
+
+/**
+ * A {@link RegionFunction} which can be applied to many positions at once<br>
+ * - {@link com.sk89q.worldedit.function.visitor.RegionVisitor} collects positions into batches when {@link #isBatched()} is true
+ */
+public interface BatchRegionFunction extends RegionFunction {
+
+    /**
+     * @return true if applying batches is faster than applying each position
+     */
+    boolean isBatched();
+
+    /**
+     * Apply the function to the positions (x[i], y[i], z[i]) for i in [0, length)
+     *
+     * @param x the x coordinates
+     * @param y the y coordinates
+     * @param z the z coordinates
+     * @param length the number of positions
+     * @return the number of positions which were changed
+     * @throws WorldEditException thrown on an error
+     */
+    int apply(int[] x, int[] y, int[] z, int length) throws WorldEditException;
+
+}
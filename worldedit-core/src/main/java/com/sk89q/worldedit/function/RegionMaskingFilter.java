@@ -21,20 +21,30 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.function.mask.BatchMask;
 import com.sk89q.worldedit.function.mask.Mask;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.MutableBlockVector3;
 
 /**
  * Passes calls to {@link #apply(BlockVector3)} to the
  * delegate {@link com.sk89q.worldedit.function.RegionFunction} if they
  * match the given mask.
+ * <p>
+ * <p>Batches are tested at once if the mask is a {@link BatchMask}, and the
+ * matching positions passed on as a batch if the function supports it.</p>
  */
-public class RegionMaskingFilter implements RegionFunction {
+public class RegionMaskingFilter implements BatchRegionFunction {
 
     private final RegionFunction function;
     private Mask mask;
 
+    private final MutableBlockVector3 mutable = new MutableBlockVector3();
+    private boolean[] tested;
+    private int[] passX, passY, passZ;
+
     /**
      * Create a new masking filter.
      *
@@ -50,7 +60,53 @@ public RegionMaskingFilter(Mask mask, RegionFunction function) {
 
     @Override
     public boolean apply(BlockVector3 position) throws WorldEditException {
-        return mask.test(position) && function.apply(position);
+        long start = FaweMetrics.MASK.startSampled();
+        boolean result = mask.test(position);
+        FaweMetrics.MASK.stopSampled(start);
+        return result && function.apply(position);
+    }
+
+    @Override
+    public boolean isBatched() {
+        return mask instanceof BatchMask || (function instanceof BatchRegionFunction && ((BatchRegionFunction) function).isBatched());
+    }
+
+    @Override
+    public int apply(int[] x, int[] y, int[] z, int length) throws WorldEditException {
+        if (tested == null || tested.length < length) {
+            tested = new boolean[length];
+            passX = new int[length];
+            passY = new int[length];
+            passZ = new int[length];
+        }
+        long start = FaweMetrics.MASK.start();
+        if (mask instanceof BatchMask) {
+            ((BatchMask) mask).test(x, y, z, length, tested);
+        } else {
+            for (int i = 0; i < length; i++) {
+                tested[i] = mask.test(mutable.setComponents(x[i], y[i], z[i]));
+            }
+        }
+        FaweMetrics.MASK.stop(start, length);
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (tested[i]) {
+                passX[count] = x[i];
+                passY[count] = y[i];
+                passZ[count] = z[i];
+                count++;
+            }
+        }
+        if (function instanceof BatchRegionFunction && ((BatchRegionFunction) function).isBatched()) {
+            return ((BatchRegionFunction) function).apply(passX, passY, passZ, count);
+        }
+        int affected = 0;
+        for (int i = 0; i < count; i++) {
+            if (function.apply(mutable.setComponents(passX[i], passY[i], passZ[i]))) {
+                affected++;
+            }
+        }
+        return affected;
     }
 
 }
@@ -21,19 +21,23 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.extent.Extent;
-import com.sk89q.worldedit.function.RegionFunction;
+import com.sk89q.worldedit.function.BatchRegionFunction;
+import com.sk89q.worldedit.function.pattern.BatchPattern;
 import com.sk89q.worldedit.function.pattern.Pattern;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BaseBlock;
 
 /**
  * Replaces blocks with a given pattern.
  */
-public class BlockReplace implements RegionFunction {
+public class BlockReplace implements BatchRegionFunction {
 
     private final Extent extent;
     private Pattern pattern;
+    private BaseBlock[] blocks;
 
     /**
      * Create a new instance.
@@ -50,9 +54,34 @@ public BlockReplace(Extent extent, Pattern pattern) {
 
     @Override
     public boolean apply(BlockVector3 position) throws WorldEditException {
-    	return pattern.apply(extent, position, position);
+        long start = FaweMetrics.PATTERN.startSampled();
+        boolean result = pattern.apply(extent, position, position);
+        FaweMetrics.PATTERN.stopSampled(start);
+        return result;
     }
 
+    @Override
+    public boolean isBatched() {
+        return pattern instanceof BatchPattern;
+    }
+
+    @Override
+    public int apply(int[] x, int[] y, int[] z, int length) throws WorldEditException {
+        if (blocks == null || blocks.length < length) {
+            blocks = new BaseBlock[length];
+        }
+        long start = FaweMetrics.PATTERN.start();
+        ((BatchPattern) pattern).apply(x, y, z, length, blocks);
+        FaweMetrics.PATTERN.stop(start, length);
+        int affected = 0;
+        for (int i = 0; i < length; i++) {
+            if (extent.setBlock(x[i], y[i], z[i], blocks[i])) {
+                affected++;
+            }
+            blocks[i] = null;
+        }
+        return affected;
+    }
 
 
 }
\ No newline at end of file
@@ -29,6 +29,8 @@
 import com.sk89q.worldedit.regions.shape.WorldEditExpressionEnvironment;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
 import java.util.function.IntSupplier;
 
 /**
@@ -36,12 +38,18 @@
  *
  * <p>Expressions are evaluated as {@code true} if they return a value
  * greater than {@code 0}.</p>
+ * <p>
+ * <p>Implements {@link BatchMask}, so a region visitor evaluates the expression
+ * for a whole batch of blocks at once.</p>
  */
-public class ExpressionMask extends AbstractMask {
+public class ExpressionMask extends AbstractMask implements BatchMask {
 
     private final Expression expression;
     private final IntSupplier timeout;
 
+    private double[] batchX, batchY, batchZ, results;
+    private int[] sectionX, sectionY, sectionZ;
+
     /**
      * Create a new instance.
      *
@@ -50,6 +58,7 @@ public class ExpressionMask extends AbstractMask {
      */
     public ExpressionMask(String expression) throws ExpressionException {
         this(Expression.compile(checkNotNull(expression), "x", "y", "z"));
+        this.expression.optimize();
     }
 
     /**
@@ -79,6 +88,68 @@ public boolean test(BlockVector3 vector) {
         }
     }
 
+    @Override
+    public void test(int[] x, int[] y, int[] z, int length, boolean[] result) {
+        double[] values = evaluate(x, y, z, length);
+        for (int i = 0; i < length; i++) {
+            result[i] = values[i] > 0;
+        }
+    }
+
+    /**
+     * Test every block of a chunk section
+     *
+     * @param chunkX the chunk x
+     * @param layer the section (y / 16)
+     * @param chunkZ the chunk z
+     * @param bits 64 longs, the bit (y &lt;&lt; 8 | z &lt;&lt; 4 | x) is set if the block matches
+     * @return bits
+     */
+    public long[] testSection(int chunkX, int layer, int chunkZ, long[] bits) {
+        if (sectionX == null) {
+            sectionX = new int[4096];
+            sectionY = new int[4096];
+            sectionZ = new int[4096];
+        }
+        int bx = chunkX << 4;
+        int by = layer << 4;
+        int bz = chunkZ << 4;
+        for (int i = 0; i < 4096; i++) {
+            sectionX[i] = bx + (i & 15);
+            sectionY[i] = by + (i >> 8);
+            sectionZ[i] = bz + ((i >> 4) & 15);
+        }
+        double[] values = evaluate(sectionX, sectionY, sectionZ, 4096);
+        Arrays.fill(bits, 0, 64, 0L);
+        for (int i = 0; i < 4096; i++) {
+            if (values[i] > 0) {
+                bits[i >> 6] |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    private double[] evaluate(int[] x, int[] y, int[] z, int length) {
+        if (results == null || results.length < length) {
+            batchX = new double[length];
+            batchY = new double[length];
+            batchZ = new double[length];
+            results = new double[length];
+        }
+        for (int i = 0; i < length; i++) {
+            batchX[i] = x[i];
+            batchY[i] = y[i];
+            batchZ[i] = z[i];
+        }
+        IntConsumer before = null;
+        if (expression.getEnvironment() instanceof WorldEditExpressionEnvironment) {
+            WorldEditExpressionEnvironment environment = (WorldEditExpressionEnvironment) expression.getEnvironment();
+            before = i -> environment.setCurrentBlock(x[i], y[i], z[i]);
+        }
+        expression.evaluateBatch(new double[][] {batchX, batchY, batchZ}, length, results, before);
+        return results;
+    }
+
     @Nullable
     @Override
     public Mask2D toMask2D() {
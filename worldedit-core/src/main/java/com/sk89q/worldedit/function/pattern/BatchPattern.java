@@ -0,0 +1,42 @@
+/*
+ * WorldEdit, a Minecraft world manipulation toolkit
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) WorldEdit team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.sk89q.worldedit.function.pattern;
+
+import com.sk89q.worldedit.world.block.BaseBlock;
+
+/**
+ * A pattern which can be applied to many positions at once, e.g. every block of a chunk section<br>
+ * - Used automatically by {@link com.sk89q.worldedit.function.block.BlockReplace} in a region visitor
+ */
+public interface BatchPattern extends Pattern {
+
+    /**
+     * Get the blocks for the positions (x[i], y[i], z[i]) for i in [0, length)
+     *
+     * @param x the x coordinates
+     * @param y the y coordinates
+     * @param z the z coordinates
+     * @param length the number of positions
+     * @param result the array to store the block for each position
+     */
+    void apply(int[] x, int[] y, int[] z, int length, BaseBlock[] result);
+
+}
@@ -7,6 +7,7 @@
 import com.boydti.fawe.object.HasFaweQueue;
 import com.boydti.fawe.object.IntegerTrio;
 import com.boydti.fawe.object.collection.BlockVectorSet;
+import com.boydti.fawe.object.collection.ChunkBitmapSet;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.sk89q.worldedit.WorldEditException;
@@ -74,7 +75,9 @@ public int compare(BlockVector3 o1, BlockVector3 o2) {
 
     private final RegionFunction function;
     private List<BlockVector3> directions = new ArrayList<>();
-    private BlockVectorSet visited;
+    private ChunkBitmapSet visited;
+    // Set with setVisited(BlockVectorSet) instead of the bitmap
+    private BlockVectorSet visitedSet;
     private final MappedFaweQueue mFaweQueue;
     private BlockVectorSet queue;
     private int currentDepth = 0;
@@ -94,7 +97,7 @@ public BreadthFirstSearch(final RegionFunction function, int maxDepth, HasFaweQu
         FaweQueue fq = faweQueue != null ? faweQueue.getQueue() : null;
         this.mFaweQueue = fq instanceof MappedFaweQueue ? (MappedFaweQueue) fq : null;
         this.queue = new BlockVectorSet();
-        this.visited = new BlockVectorSet();
+        this.visited = new ChunkBitmapSet();
         this.function = function;
         this.directions.addAll(Arrays.asList(DEFAULT_DIRECTIONS));
         this.maxDepth = maxDepth;
@@ -155,26 +158,70 @@ public void visit(final BlockVector3 pos) {
         if (!isVisited(pos)) {
             isVisitable(pos, pos); // Ignore this, just to initialize mask on this point
             queue.add(pos);
-            visited.add(pos);
+            addVisited(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
         }
     }
 
     public void resetVisited() {
         queue.clear();
-        visited.clear();
+        if (visitedSet != null) {
+            visitedSet.clear();
+        } else {
+            visited.clear();
+        }
         affected = 0;
     }
 
+    /**
+     * Record the visited blocks in a BlockVectorSet instead of the bitmap
+     *
+     * @see #setVisitedBitmap(ChunkBitmapSet)
+     */
     public void setVisited(BlockVectorSet set) {
-        this.visited = set;
+        this.visitedSet = set;
     }
 
+    /**
+     * Get the visited blocks<br>
+     * - This is a copy, unless the set was provided with {@link #setVisited(BlockVectorSet)}
+     *
+     * @see #getVisitedBitmap()
+     */
     public BlockVectorSet getVisited() {
-        return visited;
+        if (visitedSet != null) {
+            return visitedSet;
+        }
+        BlockVectorSet copy = new BlockVectorSet();
+        visited.forEach((x, y, z) -> copy.add(x, y, z));
+        return copy;
+    }
+
+    public void setVisitedBitmap(ChunkBitmapSet set) {
+        this.visited = set;
+        this.visitedSet = null;
+    }
+
+    /**
+     * @return the visited blocks, or null if they are recorded in a {@link #setVisited(BlockVectorSet)} set
+     */
+    public ChunkBitmapSet getVisitedBitmap() {
+        return visitedSet == null ? visited : null;
     }
 
     public boolean isVisited(BlockVector3 pos) {
-        return visited.contains(pos);
+        return isVisited(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
+    }
+
+    private boolean isVisited(int x, int y, int z) {
+        return visitedSet != null ? visitedSet.contains(x, y, z) : visited.contains(x, y, z);
+    }
+
+    private void addVisited(int x, int y, int z) {
+        if (visitedSet != null) {
+            visitedSet.add(x, y, z);
+        } else {
+            visited.add(x, y, z);
+        }
     }
 
     public void setMaxBranch(int maxBranch) {
@@ -188,8 +235,8 @@ public void setMaxBranch(int maxBranch) {
      */
     private void visit(BlockVector3 from, BlockVector3 to) {
         BlockVector3 blockVector = to;
-        if (!visited.contains(blockVector)) {
-            visited.add(blockVector);
+        if (!isVisited(blockVector)) {
+            addVisited(blockVector.getBlockX(), blockVector.getBlockY(), blockVector.getBlockZ());
             if (isVisitable(from, to)) {
                 queue.add(blockVector);
             }
@@ -236,7 +283,7 @@ public Operation resume(RunContext run) throws WorldEditException {
                             if (y < 0 || y >= 256) {
                                 continue;
                             }
-                            if (!visited.contains(x, y, z)) {
+                            if (!isVisited(x, y, z)) {
                                 chunkLoadSet.add(cx, 0, cz);
                             }
                         }
@@ -256,10 +303,10 @@ public Operation resume(RunContext run) throws WorldEditException {
                     }
                     int x = from.getBlockX() + direction.x;
                     int z = from.getBlockZ() + direction.z;
-                    if (!visited.contains(x, y, z)) {
+                    if (!isVisited(x, y, z)) {
                         if (isVisitable(from, BlockVector3.at(x, y, z))) {
                             j++;
-                            visited.add(x, y, z);
+                            addVisited(x, y, z);
                             tempQueue.add(x, y, z);
                         }
                     }
@@ -27,6 +27,7 @@
 import com.boydti.fawe.object.exception.FaweException;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.function.BatchRegionFunction;
 import com.sk89q.worldedit.function.RegionFunction;
 import com.sk89q.worldedit.function.operation.Operation;
 import com.sk89q.worldedit.function.operation.Operations;
@@ -38,9 +39,14 @@
 
 /**
  * Utility class to apply region functions to {@link com.sk89q.worldedit.regions.Region}.
+ * <p>
+ * <p>If the function is a batched {@link BatchRegionFunction} (e.g. an expression mask or pattern),
+ * positions are collected and applied in batches of {@link #BATCH_SIZE}.</p>
  */
 public class RegionVisitor implements Operation {
 
+    public static final int BATCH_SIZE = 4096;
+
     public final Region region;
     public final Iterable<? extends BlockVector3> iterable;
     public final RegionFunction function;
@@ -48,6 +54,10 @@ public class RegionVisitor implements Operation {
     private boolean useCuboidIterator = false;
     public int affected = 0;
 
+    private final BatchRegionFunction batch;
+    private int[] batchX, batchY, batchZ;
+    private int batchSize;
+
     /**
      * Deprecated in favor of the other constructors which will preload chunks during iteration
      *
@@ -72,6 +82,14 @@ public RegionVisitor(Iterable<? extends BlockVector3> iterable, RegionFunction f
         this.iterable = iterable;
         this.function = function;
         this.queue = hasQueue != null && hasQueue.getQueue() instanceof MappedFaweQueue ? (MappedFaweQueue) hasQueue.getQueue() : null;
+        if (function instanceof BatchRegionFunction && ((BatchRegionFunction) function).isBatched()) {
+            this.batch = (BatchRegionFunction) function;
+            this.batchX = new int[BATCH_SIZE];
+            this.batchY = new int[BATCH_SIZE];
+            this.batchZ = new int[BATCH_SIZE];
+        } else {
+            this.batch = null;
+        }
     }
 
     /**
@@ -180,15 +198,34 @@ public Operation resume(final RunContext run) throws WorldEditException {
                 apply(pt);
             }
         }
+        flush();
         return null;
     }
 
     private void apply(BlockVector3 pt) throws WorldEditException {
+        if (batch != null) {
+            int i = batchSize;
+            batchX[i] = pt.getBlockX();
+            batchY[i] = pt.getBlockY();
+            batchZ[i] = pt.getBlockZ();
+            if (++batchSize == BATCH_SIZE) {
+                flush();
+            }
+            return;
+        }
         if (function.apply(pt)) {
             affected++;
         }
     }
 
+    private void flush() throws WorldEditException {
+        if (batchSize != 0) {
+            int size = batchSize;
+            batchSize = 0;
+            affected += batch.apply(batchX, batchY, batchZ, size);
+        }
+    }
+
     @Override
     public void cancel() {
     }
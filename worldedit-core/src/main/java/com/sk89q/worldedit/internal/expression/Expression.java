@@ -19,20 +19,25 @@
 
 package com.sk89q.worldedit.internal.expression;
 
+import com.boydti.fawe.object.metrics.FaweMetrics;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.internal.expression.lexer.Lexer;
 import com.sk89q.worldedit.internal.expression.lexer.tokens.Token;
 import com.sk89q.worldedit.internal.expression.parser.Parser;
+import com.sk89q.worldedit.internal.expression.runtime.CompiledExpression;
 import com.sk89q.worldedit.internal.expression.runtime.Constant;
 import com.sk89q.worldedit.internal.expression.runtime.EvaluationException;
+import com.sk89q.worldedit.internal.expression.runtime.ExpressionCompiler;
 import com.sk89q.worldedit.internal.expression.runtime.ExpressionEnvironment;
 import com.sk89q.worldedit.internal.expression.runtime.ExpressionTimeoutException;
+import com.sk89q.worldedit.internal.expression.runtime.ExpressionWatchdog;
 import com.sk89q.worldedit.internal.expression.runtime.Functions;
 import com.sk89q.worldedit.internal.expression.runtime.RValue;
 import com.sk89q.worldedit.internal.expression.runtime.ReturnException;
 import com.sk89q.worldedit.internal.expression.runtime.Variable;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +47,8 @@
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.IntConsumer;
+import javax.annotation.Nullable;
 
 /**
  * Compiles and evaluates expressions.
@@ -64,7 +71,8 @@
  * <p>To compile an equation, run
  * {@code Expression.compile("expression here", "var1", "var2"...)}.
  * If you wish to run the equation multiple times, you can then optimize it,
- * by calling {@link #optimize()}. You can then run the equation as many times
+ * by calling {@link #optimize()}, which also compiles it to bytecode where
+ * possible (see {@link ExpressionCompiler}). You can then run the equation as many times
  * as you want by calling {@link #evaluate(double...)}. You do not need to
  * pass values for all variables specified while compiling.
  * To query variables after evaluation, you can use
@@ -87,11 +95,15 @@ public class Expression {
     private final String[] variableNames;
     private Variable[] variableArray;
     private RValue root;
+    private CompiledExpression compiled;
     private final Functions functions = new Functions();
     private ExpressionEnvironment environment;
 
     public static Expression compile(String expression, String... variableNames) throws ExpressionException {
-        return new Expression(expression, variableNames);
+        long start = FaweMetrics.EXPRESSION_PARSE.start();
+        Expression compiled = new Expression(expression, variableNames);
+        FaweMetrics.EXPRESSION_PARSE.stop(start);
+        return compiled;
     }
 
     public Expression(double constant) {
@@ -132,7 +144,6 @@ public double evaluate(double... values) throws EvaluationException {
             Variable var = variableArray[i];
             var.value = values[i];
         }
-        pushInstance();
         return evaluate(values, WorldEdit.getInstance().getConfiguration().calculationTimeout);
     }
 
@@ -148,7 +159,11 @@ public double evaluate(double[] values, int timeout) throws EvaluationException
         }
         try {
             if (timeout < 0) {
-                return evaluateRoot();
+                return evaluateRoot(Long.MAX_VALUE);
+            }
+            if (compiled != null && compiled.isInline()) {
+                // Compiled loops check the deadline, so there's no need to evaluate on an interruptible thread
+                return evaluateRoot(ExpressionWatchdog.now() + timeout);
             }
             return evaluateRootTimed(timeout);
         } catch (ReturnException e) {
@@ -157,7 +172,8 @@ public double evaluate(double[] values, int timeout) throws EvaluationException
     }
 
     private double evaluateRootTimed(int timeout) throws EvaluationException {
-        Future<Double> result = evalThread.submit(this::evaluateRoot);
+        long deadline = ExpressionWatchdog.now() + timeout;
+        Future<Double> result = evalThread.submit(() -> evaluateRoot(deadline));
         try {
             return result.get(timeout, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
@@ -178,17 +194,191 @@ private double evaluateRootTimed(int timeout) throws EvaluationException {
         }
     }
 
-    private Double evaluateRoot() throws EvaluationException {
+    private double evaluateRoot(long deadline) throws EvaluationException {
         pushInstance();
         try {
+            if (compiled != null) {
+                return compiled.evaluate(deadline);
+            }
             return root.getValue();
         } finally {
             popInstance();
         }
     }
 
+    /**
+     * Evaluate the expression for many values at once (e.g. every block of a chunk section)<br>
+     * - inputs[i] are the values of the i-th variable, the same order as when compiling
+     * - A failed evaluation (error or timeout) results in NaN, instead of stopping the batch
+     * - Each evaluation has the normal timeout, but the batch only needs a single thread handoff (or none if compiled)
+     * - An evaluation exceeding the timeout is interrupted, and the batch continues with the next one
+     *
+     * @param inputs  the values of the first variables
+     * @param length  the number of evaluations
+     * @param results the array to store the results in
+     * @param before  called with the index before each evaluation (e.g. to update the environment), may be null
+     */
+    public void evaluateBatch(double[][] inputs, int length, double[] results, @Nullable IntConsumer before) {
+        if (root instanceof Constant) {
+            Arrays.fill(results, 0, length, ((Constant) root).getValue());
+            return;
+        }
+        if (inputs.length > variableArray.length) {
+            throw new IllegalArgumentException("Expected " + variableArray.length + " variables");
+        }
+        int timeout = WorldEdit.getInstance().getConfiguration().calculationTimeout;
+        if (timeout < 0 || (compiled != null && compiled.isInline())) {
+            evaluateBatchRoot(inputs, 0, length, results, before, timeout, null);
+            return;
+        }
+        // Interpreted loops only stop when interrupted, so the batch runs on another thread
+        // This thread interrupts any evaluation exceeding the time limit, and the batch continues with the next one
+        double[] async = new double[length];
+        int start = 0;
+        while (start < length) {
+            BatchProgress progress = new BatchProgress(start, length);
+            int from = start;
+            Future<?> result = evalThread.submit(() -> evaluateBatchRoot(inputs, from, length, async, before, timeout, progress));
+            int stopped;
+            try {
+                stopped = progress.supervise(result, timeout);
+            } catch (InterruptedException e) {
+                result.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+            System.arraycopy(async, from, results, from, stopped - from);
+            if (stopped < length) {
+                // The evaluation didn't stop when interrupted, so the rest of the batch continues on a new thread
+                results[stopped] = Double.NaN;
+            }
+            start = stopped + 1;
+        }
+    }
+
+    private void evaluateBatchRoot(double[][] inputs, int start, int length, double[] results, IntConsumer before, int timeout, BatchProgress progress) {
+        pushInstance();
+        try {
+            for (int i = start; i < length; i++) {
+                if (progress != null && !progress.next(i)) {
+                    return;
+                }
+                for (int j = 0; j < inputs.length; j++) {
+                    variableArray[j].value = inputs[j][i];
+                }
+                if (before != null) {
+                    before.accept(i);
+                }
+                double value;
+                try {
+                    long deadline = timeout < 0 ? Long.MAX_VALUE : ExpressionWatchdog.now() + timeout;
+                    value = compiled != null ? compiled.evaluate(deadline) : root.getValue();
+                } catch (ReturnException e) {
+                    value = e.getValue();
+                } catch (EvaluationException e) {
+                    value = Double.NaN;
+                }
+                results[i] = value;
+            }
+            if (progress != null) {
+                progress.next(length);
+            }
+        } finally {
+            popInstance();
+            if (progress != null) {
+                progress.finish();
+            }
+        }
+    }
+
+    /**
+     * The evaluation a batch thread is on, so that it can be interrupted if it takes too long<br>
+     * - An interrupt is only sent while the same evaluation is in progress (both sides hold the lock)
+     */
+    private static final class BatchProgress {
+        private final int length;
+        // The evaluation in progress, or -1 once the thread has been abandoned
+        private int index;
+        private long started;
+        private Thread thread;
+        private boolean interrupted;
+        private boolean finished;
+
+        private BatchProgress(int start, int length) {
+            this.index = start;
+            this.length = length;
+        }
+
+        /**
+         * Called by the batch thread before each evaluation (and with the length once done)
+         *
+         * @return false if the batch thread has been abandoned
+         */
+        private synchronized boolean next(int i) {
+            if (index == -1) {
+                return false;
+            }
+            // Clear an interrupt sent for the previous evaluation
+            Thread.interrupted();
+            thread = Thread.currentThread();
+            index = i;
+            started = ExpressionWatchdog.now();
+            interrupted = false;
+            notifyAll();
+            return true;
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait for the batch, interrupting any evaluation which exceeds the timeout
+         *
+         * @return the length once done, or the evaluation the thread was abandoned on (if it ignored the interrupt)
+         */
+        private synchronized int supervise(Future<?> result, int timeout) throws InterruptedException, ExecutionException {
+            while (index != length) {
+                if (finished) {
+                    // The batch thread threw an exception
+                    result.get();
+                    return index;
+                }
+                long wait = timeout;
+                if (thread != null) {
+                    long elapsed = ExpressionWatchdog.now() - started;
+                    if (!interrupted) {
+                        if (elapsed >= timeout) {
+                            thread.interrupt();
+                            interrupted = true;
+                        } else {
+                            wait = timeout - elapsed;
+                        }
+                    } else if (elapsed >= timeout * 2L) {
+                        int stuck = index;
+                        index = -1;
+                        result.cancel(true);
+                        return stuck;
+                    } else {
+                        wait = timeout * 2L - elapsed;
+                    }
+                }
+                wait(Math.max(1, wait));
+            }
+            return length;
+        }
+    }
+
     public void optimize() throws EvaluationException {
         root = root.optimize();
+        compiled = ExpressionCompiler.compile(root);
     }
 
     public RValue getRoot() {
@@ -0,0 +1,72 @@
+/*
+ * WorldEdit, a Minecraft world manipulation toolkit
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) WorldEdit team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sk89q.worldedit.internal.expression.runtime;
+
+/**
+ * An expression compiled to a JVM class (see {@link ExpressionCompiler})
+ */
+public abstract class CompiledExpression {
+
+    /**
+     * Nodes which are evaluated by the interpreter
+     */
+    protected final RValue[] nodes;
+    /**
+     * The variables used by the compiled code, which are copied to locals during the evaluation
+     */
+    protected final Variable[] variables;
+
+    private boolean inline;
+
+    protected CompiledExpression(RValue[] nodes, Variable[] variables) {
+        this.nodes = nodes;
+        this.variables = variables;
+    }
+
+    /**
+     * Evaluate the expression on the current thread
+     *
+     * @param deadline the {@link ExpressionWatchdog#now()} time at which loops are stopped
+     * @return the result
+     * @throws EvaluationException
+     */
+    public abstract double evaluate(long deadline) throws EvaluationException;
+
+    /**
+     * @return true if every loop checks the deadline, so it's safe to evaluate without moving to a thread which can be interrupted
+     */
+    public boolean isInline() {
+        return inline;
+    }
+
+    void setInline(boolean inline) {
+        this.inline = inline;
+    }
+
+    public static void checkTimeout(long deadline) throws ExpressionTimeoutException {
+        if (ExpressionWatchdog.now() > deadline) {
+            throw new ExpressionTimeoutException("Calculations exceeded time limit.");
+        }
+    }
+
+    public static EvaluationException loopLimit(int position) {
+        return new EvaluationException(position, "Loop exceeded 256 iterations.");
+    }
+}
@@ -0,0 +1,973 @@
+/*
+ * WorldEdit, a Minecraft world manipulation toolkit
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) WorldEdit team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sk89q.worldedit.internal.expression.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles an expression tree to a JVM class, so that evaluating it doesn't need a virtual (or reflective) call per node<br>
+ * - Variables are kept in double locals, and are written back to the {@link Variable} before returning
+ * - Operators, math functions, if/else, sequences, return, break/continue and loops are compiled
+ * - Other nodes (e.g. query, megabuf, switch) are called from the compiled code and evaluated by the interpreter
+ * - Compiled loops check {@link ExpressionWatchdog} for the timeout, instead of needing an interruptible thread
+ */
+public final class ExpressionCompiler {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private static final String PACKAGE = "com/sk89q/worldedit/internal/expression/runtime/";
+    private static final String SUPER = PACKAGE + "CompiledExpression";
+    private static final String RVALUE = PACKAGE + "RValue";
+    private static final String VARIABLE = PACKAGE + "Variable";
+    private static final String EXCEPTION = PACKAGE + "EvaluationException";
+    private static final String CONSTRUCTOR = "([L" + RVALUE + ";[L" + VARIABLE + ";)V";
+
+    private static final Map<String, String> MATH = new HashMap<>();
+
+    static {
+        for (String name : Arrays.asList("sin", "cos", "tan", "asin", "acos", "atan", "sinh", "cosh", "tanh", "sqrt", "cbrt", "abs", "ceil", "floor", "rint", "exp", "log10")) {
+            MATH.put(name + "1", name);
+        }
+        MATH.put("ln1", "log");
+        MATH.put("log1", "log");
+        MATH.put("atan22", "atan2");
+        MATH.put("min2", "min");
+        MATH.put("max2", "max");
+        MATH.put("min3", "min");
+        MATH.put("max3", "max");
+        MATH.put("round1", "round");
+    }
+
+    private static final class Unsupported extends RuntimeException {
+        private Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static final class Label {
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    private static final class Loop {
+        private final Label breakLabel;
+        private final Label continueLabel;
+        private final int stack;
+
+        private Loop(Label breakLabel, Label continueLabel, int stack) {
+            this.breakLabel = breakLabel;
+            this.continueLabel = continueLabel;
+            this.stack = stack;
+        }
+    }
+
+    private static final class Loader extends ClassLoader {
+        private Loader() {
+            super(CompiledExpression.class.getClassLoader());
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Compile an (optimized) expression
+     *
+     * @param root the root node
+     * @return the compiled expression, or null if it can't be compiled
+     */
+    public static CompiledExpression compile(RValue root) {
+        if (root instanceof Constant || root instanceof Variable) {
+            return null;
+        }
+        try {
+            ExpressionCompiler collect = new ExpressionCompiler(new IdentityHashMap<>(), new IdentityHashMap<>());
+            collect.generate(root);
+            if (collect.nodes.size() == 1 && collect.nodes.get(0) == root) {
+                // Nothing would be compiled
+                return null;
+            }
+            // The variables need to be known before the code is generated
+            ExpressionCompiler compiler = new ExpressionCompiler(collect.slots, collect.assigned);
+            return compiler.define(compiler.generate(root));
+        } catch (Unsupported ignore) {
+            return null;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolSize = 1;
+
+    private byte[] code = new byte[256];
+    private int length;
+    private int stack;
+    private int maxStack;
+    private int maxLocals;
+
+    private final IdentityHashMap<Variable, Integer> slots;
+    private final IdentityHashMap<Variable, Boolean> assigned;
+    private final List<RValue> nodes = new ArrayList<>();
+    private final List<Loop> loops = new ArrayList<>();
+    private boolean inline = true;
+
+    private ExpressionCompiler(IdentityHashMap<Variable, Integer> slots, IdentityHashMap<Variable, Boolean> assigned) {
+        this.slots = slots;
+        this.assigned = assigned;
+    }
+
+    private CompiledExpression define(byte[] bytes) throws ReflectiveOperationException, IOException {
+        String name = PACKAGE + "GeneratedExpression" + COUNTER.incrementAndGet();
+        Class<?> clazz = new Loader().define(name.replace('/', '.'), classFile(name, bytes));
+        Variable[] variables = new Variable[slots.size()];
+        for (Map.Entry<Variable, Integer> entry : slots.entrySet()) {
+            variables[(entry.getValue() - 5) >> 1] = entry.getKey();
+        }
+        CompiledExpression compiled = (CompiledExpression) clazz.getConstructor(RValue[].class, Variable[].class).newInstance(nodes.toArray(new RValue[nodes.size()]), variables);
+        compiled.setInline(inline);
+        return compiled;
+    }
+
+    /*
+     * Locals: 0 = this, 1 = deadline, 3 = nodes, 4 = variables, 5+ = variable values, then loop counters
+     */
+    private byte[] generate(RValue root) {
+        maxLocals = 5 + (slots.size() << 1);
+        load(0);
+        fieldInsn(0xB4, SUPER, "nodes", "[L" + RVALUE + ";", 0);
+        op(0x3A, -1);
+        u1(3);
+        load(0);
+        fieldInsn(0xB4, SUPER, "variables", "[L" + VARIABLE + ";", 0);
+        op(0x3A, -1);
+        u1(4);
+        reload();
+        gen(root);
+        writeBack();
+        op(0xAF, -2);
+        if (maxLocals > 255 || length > 0xFFFF) {
+            throw new Unsupported("Method too large");
+        }
+        return Arrays.copyOf(code, length);
+    }
+
+    private void gen(RValue node) {
+        if (node instanceof Constant) {
+            pushDouble(((Constant) node).getValue());
+        } else if (node instanceof Variable) {
+            op(0x18, 2);
+            u1(slot((Variable) node));
+        } else if (node instanceof Sequence) {
+            RValue[] sequence = ((Sequence) node).sequence;
+            if (sequence.length == 0) {
+                op(0x0E, 2);
+            }
+            for (int i = 0; i < sequence.length; i++) {
+                gen(sequence[i]);
+                if (i != sequence.length - 1) {
+                    op(0x58, -2);
+                }
+            }
+        } else if (node instanceof Conditional) {
+            Conditional conditional = (Conditional) node;
+            Label falseLabel = new Label();
+            Label end = new Label();
+            jumpIfFalse(conditional.condition, falseLabel);
+            int base = stack;
+            gen(conditional.truePart);
+            jump(0xA7, end, 0);
+            stack = base;
+            place(falseLabel);
+            if (conditional.falsePart == null) {
+                op(0x0E, 2);
+            } else {
+                gen(conditional.falsePart);
+            }
+            place(end);
+        } else if (node instanceof Return) {
+            gen(((Return) node).value);
+            writeBack();
+            op(0xAF, -2);
+            // Unreachable, but the code after it still expects a value
+            stack += 2;
+        } else if (node instanceof Break) {
+            if (loops.isEmpty()) {
+                interpret(node);
+                return;
+            }
+            Loop loop = loops.get(loops.size() - 1);
+            if (loop.stack != stack) {
+                throw new Unsupported("Break inside an expression");
+            }
+            jump(0xA7, ((Break) node).doContinue ? loop.continueLabel : loop.breakLabel, 0);
+            stack += 2;
+        } else if (node instanceof For) {
+            genFor((For) node);
+        } else if (node instanceof While) {
+            genWhile((While) node);
+        } else if (node instanceof SimpleFor && ((SimpleFor) node).counter instanceof Variable) {
+            genSimpleFor((SimpleFor) node);
+        } else if (node instanceof Function && !(node instanceof LValueFunction)) {
+            Function function = (Function) node;
+            Class<?> owner = function.method.getDeclaringClass();
+            if (!(owner == Operators.class && genOperator(function)) && !(owner == Functions.class && genMath(function))) {
+                interpret(node);
+            }
+        } else {
+            interpret(node);
+        }
+    }
+
+    private boolean genOperator(Function function) {
+        RValue[] args = function.args;
+        switch (function.method.getName()) {
+            case "add":
+                return binary(args, 0x63);
+            case "sub":
+                return binary(args, 0x67);
+            case "mul":
+                return binary(args, 0x6B);
+            case "div":
+                return binary(args, 0x6F);
+            case "mod":
+                return binary(args, 0x73);
+            case "pow":
+                if (args.length != 2) return false;
+                gen(args[0]);
+                gen(args[1]);
+                pow();
+                return true;
+            case "neg":
+                if (args.length != 1) return false;
+                gen(args[0]);
+                op(0x77, 0);
+                return true;
+            case "inv":
+                if (args.length != 1) return false;
+                gen(args[0]);
+                op(0x8F, 0); // d2l
+                op(0x02, 1); // iconst_m1
+                op(0x85, 1); // i2l
+                op(0x83, -2); // lxor
+                op(0x8A, 0); // l2d
+                return true;
+            case "shl":
+            case "shr":
+                if (args.length != 2) return false;
+                gen(args[0]);
+                op(0x8F, 0);
+                gen(args[1]);
+                op(0x8F, 0);
+                op(0x88, -1); // l2i
+                op(function.method.getName().equals("shl") ? 0x79 : 0x7B, -1);
+                op(0x8A, 0);
+                return true;
+            case "not":
+            case "lth":
+            case "gth":
+            case "leq":
+            case "geq":
+            case "equ":
+            case "neq":
+            case "and":
+            case "or":
+                if (args.length != (function.method.getName().equals("not") ? 1 : 2)) return false;
+                Label falseLabel = new Label();
+                Label end = new Label();
+                int base = stack;
+                jumpIfFalse(function, falseLabel);
+                op(0x0F, 2);
+                jump(0xA7, end, 0);
+                stack = base;
+                place(falseLabel);
+                op(0x0E, 2);
+                place(end);
+                return true;
+            case "ass":
+                if (args.length != 2 || !(args[0] instanceof Variable)) return false;
+                gen(args[1]);
+                op(0x5C, 2);
+                store((Variable) args[0]);
+                return true;
+            case "aadd":
+                return compound(args, 0x63);
+            case "asub":
+                return compound(args, 0x67);
+            case "amul":
+                return compound(args, 0x6B);
+            case "adiv":
+                return compound(args, 0x6F);
+            case "amod":
+                return compound(args, 0x73);
+            case "aexp":
+                return compound(args, -1);
+            case "inc":
+            case "dec":
+            case "postinc":
+            case "postdec": {
+                if (args.length != 1 || !(args[0] instanceof Variable)) return false;
+                String name = function.method.getName();
+                boolean post = name.startsWith("post");
+                Variable variable = (Variable) args[0];
+                op(0x18, 2);
+                u1(slot(variable));
+                if (post) {
+                    op(0x5C, 2);
+                }
+                op(0x0F, 2);
+                op(name.endsWith("inc") ? 0x63 : 0x67, -2);
+                if (!post) {
+                    op(0x5C, 2);
+                }
+                store(variable);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private boolean binary(RValue[] args, int opcode) {
+        if (args.length != 2) {
+            return false;
+        }
+        gen(args[0]);
+        gen(args[1]);
+        op(opcode, -2);
+        return true;
+    }
+
+    private boolean compound(RValue[] args, int opcode) {
+        if (args.length != 2 || !(args[0] instanceof Variable)) {
+            return false;
+        }
+        Variable variable = (Variable) args[0];
+        op(0x18, 2);
+        u1(slot(variable));
+        gen(args[1]);
+        if (opcode == -1) {
+            pow();
+        } else {
+            op(opcode, -2);
+        }
+        op(0x5C, 2);
+        store(variable);
+        return true;
+    }
+
+    private void pow() {
+        methodInsn(0xB8, "java/lang/Math", "pow", "(DD)D", -2);
+    }
+
+    private boolean genMath(Function function) {
+        RValue[] args = function.args;
+        String name = MATH.get(function.method.getName() + args.length);
+        if (name == null) {
+            return false;
+        }
+        for (Class<?> type : function.method.getParameterTypes()) {
+            if (type != RValue.class) {
+                return false;
+            }
+        }
+        for (RValue arg : args) {
+            gen(arg);
+        }
+        switch (args.length) {
+            case 1:
+                if (name.equals("round")) {
+                    methodInsn(0xB8, "java/lang/Math", name, "(D)J", 0);
+                    op(0x8A, 0);
+                } else {
+                    methodInsn(0xB8, "java/lang/Math", name, "(D)D", 0);
+                }
+                break;
+            case 3:
+                // f(a, f(b, c))
+                methodInsn(0xB8, "java/lang/Math", name, "(DD)D", -2);
+            case 2:
+                methodInsn(0xB8, "java/lang/Math", name, "(DD)D", -2);
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Jump to a label if a node is not > 0, without computing 1.0 or 0.0 for comparisons
+     */
+    private void jumpIfFalse(RValue node, Label label) {
+        if (node instanceof Constant) {
+            if (!(((Constant) node).getValue() > 0)) {
+                jump(0xA7, label, 0);
+            }
+            return;
+        }
+        if (node instanceof Function && ((Function) node).method.getDeclaringClass() == Operators.class) {
+            Function function = (Function) node;
+            RValue[] args = function.args;
+            if (args.length == 2) {
+                switch (function.method.getName()) {
+                    // Jump if the comparison is false, dcmpg/dcmpl is chosen so NaN is false
+                    case "lth":
+                        compare(args, 0x98, 0x9C, label);
+                        return;
+                    case "gth":
+                        compare(args, 0x97, 0x9E, label);
+                        return;
+                    case "leq":
+                        compare(args, 0x98, 0x9D, label);
+                        return;
+                    case "geq":
+                        compare(args, 0x97, 0x9B, label);
+                        return;
+                    case "equ":
+                        compare(args, 0x97, 0x9A, label);
+                        return;
+                    case "neq":
+                        compare(args, 0x97, 0x99, label);
+                        return;
+                    case "and":
+                        jumpIfFalse(args[0], label);
+                        jumpIfFalse(args[1], label);
+                        return;
+                    case "or": {
+                        Label trueLabel = new Label();
+                        gen(args[0]);
+                        op(0x0E, 2);
+                        op(0x97, -3);
+                        jump(0x9D, trueLabel, -1);
+                        jumpIfFalse(args[1], label);
+                        place(trueLabel);
+                        return;
+                    }
+                }
+            } else if (args.length == 1 && function.method.getName().equals("not")) {
+                gen(args[0]);
+                op(0x0E, 2);
+                op(0x97, -3);
+                jump(0x9D, label, -1);
+                return;
+            }
+        }
+        gen(node);
+        op(0x0E, 2);
+        op(0x97, -3);
+        jump(0x9E, label, -1);
+    }
+
+    private void compare(RValue[] args, int compare, int jump, Label label) {
+        gen(args[0]);
+        gen(args[1]);
+        op(compare, -3);
+        jump(jump, label, -1);
+    }
+
+    private int local(int size) {
+        int index = maxLocals;
+        maxLocals += size;
+        return index;
+    }
+
+    /**
+     * Check the iteration limit and timeout at the start of a loop iteration
+     */
+    private void loopCheck(int iterations, int position) {
+        Label ok = new Label();
+        op(0x15, 1);
+        u1(iterations);
+        pushInt(256);
+        jump(0xA4, ok, -2);
+        pushInt(position);
+        methodInsn(0xB8, SUPER, "loopLimit", "(I)L" + EXCEPTION + ";", 0);
+        op(0xBF, -1);
+        place(ok);
+        op(0x84, 0);
+        u1(iterations);
+        u1(1);
+        op(0x16, 2);
+        u1(1);
+        methodInsn(0xB8, SUPER, "checkTimeout", "(J)V", -2);
+    }
+
+    private int loopStart() {
+        int iterations = local(1);
+        int ret = local(2);
+        op(0x03, 1);
+        op(0x36, -1);
+        u1(iterations);
+        op(0x0E, 2);
+        op(0x39, -2);
+        u1(ret);
+        return iterations;
+    }
+
+    private void loopBody(RValue body, Label breakLabel, Label continueLabel, int ret) {
+        loops.add(new Loop(breakLabel, continueLabel, stack));
+        gen(body);
+        loops.remove(loops.size() - 1);
+        op(0x39, -2);
+        u1(ret);
+    }
+
+    private void loopEnd(Label end, int ret) {
+        place(end);
+        op(0x18, 2);
+        u1(ret);
+    }
+
+    private void genFor(For node) {
+        gen(node.init);
+        op(0x58, -2);
+        int iterations = loopStart();
+        int ret = iterations + 1;
+        Label condition = new Label();
+        Label increment = new Label();
+        Label end = new Label();
+        place(condition);
+        jumpIfFalse(node.condition, end);
+        loopCheck(iterations, node.getPosition());
+        loopBody(node.body, end, increment, ret);
+        place(increment);
+        gen(node.increment);
+        op(0x58, -2);
+        jump(0xA7, condition, 0);
+        loopEnd(end, ret);
+    }
+
+    private void genWhile(While node) {
+        int iterations = loopStart();
+        int ret = iterations + 1;
+        Label condition = new Label();
+        Label end = new Label();
+        if (node.footChecked) {
+            Label body = new Label();
+            place(body);
+            loopCheck(iterations, node.getPosition());
+            loopBody(node.body, end, condition, ret);
+            place(condition);
+            gen(node.condition);
+            op(0x0E, 2);
+            op(0x97, -3);
+            jump(0x9D, body, -1);
+        } else {
+            place(condition);
+            jumpIfFalse(node.condition, end);
+            loopCheck(iterations, node.getPosition());
+            loopBody(node.body, end, condition, ret);
+            jump(0xA7, condition, 0);
+        }
+        loopEnd(end, ret);
+    }
+
+    private void genSimpleFor(SimpleFor node) {
+        int counter = local(2);
+        int last = local(2);
+        gen(node.first);
+        op(0x39, -2);
+        u1(counter);
+        gen(node.last);
+        op(0x39, -2);
+        u1(last);
+        int iterations = loopStart();
+        int ret = iterations + 1;
+        Label condition = new Label();
+        Label increment = new Label();
+        Label end = new Label();
+        place(condition);
+        op(0x18, 2);
+        u1(counter);
+        op(0x18, 2);
+        u1(last);
+        op(0x98, -3);
+        jump(0x9D, end, -1);
+        loopCheck(iterations, node.getPosition());
+        op(0x18, 2);
+        u1(counter);
+        store((Variable) node.counter);
+        loopBody(node.body, end, increment, ret);
+        place(increment);
+        op(0x18, 2);
+        u1(counter);
+        op(0x0F, 2);
+        op(0x63, -2);
+        op(0x39, -2);
+        u1(counter);
+        jump(0xA7, condition, 0);
+        loopEnd(end, ret);
+    }
+
+    /**
+     * Call the interpreter for a node
+     */
+    private void interpret(RValue node) {
+        if (!loops.isEmpty() && mayBreak(node)) {
+            throw new Unsupported("Interpreted break in a compiled loop");
+        }
+        if (hasLoop(node)) {
+            inline = false;
+        }
+        int index = nodes.size();
+        nodes.add(node);
+        writeBack();
+        op(0x2D, 1); // aload_3
+        pushInt(index);
+        op(0x32, -1);
+        ensure(5);
+        code[length++] = (byte) 0xB9;
+        u2(constant("I:" + RVALUE + ".getValue()D", 11, RVALUE, "getValue", "()D"));
+        u1(1);
+        u1(0);
+        adjust(1);
+        // The node may have changed any variable
+        reload();
+    }
+
+    private static boolean mayBreak(RValue node) {
+        if (node instanceof Constant || node instanceof Variable || node instanceof For || node instanceof While || node instanceof SimpleFor) {
+            return false;
+        }
+        if (node instanceof Function) {
+            for (RValue arg : ((Function) node).args) {
+                if (mayBreak(arg)) return true;
+            }
+            return false;
+        }
+        if (node instanceof Sequence) {
+            for (RValue child : ((Sequence) node).sequence) {
+                if (mayBreak(child)) return true;
+            }
+            return false;
+        }
+        if (node instanceof Conditional) {
+            Conditional conditional = (Conditional) node;
+            return mayBreak(conditional.condition) || mayBreak(conditional.truePart) || (conditional.falsePart != null && mayBreak(conditional.falsePart));
+        }
+        if (node instanceof Return) {
+            return mayBreak(((Return) node).value);
+        }
+        return true;
+    }
+
+    private static boolean hasLoop(RValue node) {
+        if (node instanceof Constant || node instanceof Variable || node instanceof Break) {
+            return false;
+        }
+        if (node instanceof Function) {
+            for (RValue arg : ((Function) node).args) {
+                if (hasLoop(arg)) return true;
+            }
+            return false;
+        }
+        if (node instanceof Sequence) {
+            for (RValue child : ((Sequence) node).sequence) {
+                if (hasLoop(child)) return true;
+            }
+            return false;
+        }
+        if (node instanceof Conditional) {
+            Conditional conditional = (Conditional) node;
+            return hasLoop(conditional.condition) || hasLoop(conditional.truePart) || (conditional.falsePart != null && hasLoop(conditional.falsePart));
+        }
+        if (node instanceof Return) {
+            return hasLoop(((Return) node).value);
+        }
+        return true;
+    }
+
+    private int slot(Variable variable) {
+        Integer slot = slots.get(variable);
+        if (slot == null) {
+            slots.put(variable, slot = 5 + (slots.size() << 1));
+        }
+        return slot;
+    }
+
+    private void store(Variable variable) {
+        assigned.put(variable, true);
+        op(0x39, -2);
+        u1(slot(variable));
+    }
+
+    private void reload() {
+        for (Map.Entry<Variable, Integer> entry : slots.entrySet()) {
+            int slot = entry.getValue();
+            load(4);
+            pushInt((slot - 5) >> 1);
+            op(0x32, -1);
+            fieldInsn(0xB4, VARIABLE, "value", "D", 1);
+            op(0x39, -2);
+            u1(slot);
+        }
+    }
+
+    private void writeBack() {
+        for (Map.Entry<Variable, Integer> entry : slots.entrySet()) {
+            if (!assigned.containsKey(entry.getKey())) {
+                continue;
+            }
+            int slot = entry.getValue();
+            load(4);
+            pushInt((slot - 5) >> 1);
+            op(0x32, -1);
+            op(0x18, 2);
+            u1(slot);
+            fieldInsn(0xB5, VARIABLE, "value", "D", -3);
+        }
+    }
+
+    /*
+     * Bytecode
+     */
+
+    private void ensure(int size) {
+        if (length + size > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length << 1, length + size));
+        }
+    }
+
+    private void adjust(int delta) {
+        stack += delta;
+        if (stack > maxStack) {
+            maxStack = stack;
+        }
+    }
+
+    private void op(int opcode, int delta) {
+        ensure(1);
+        code[length++] = (byte) opcode;
+        adjust(delta);
+    }
+
+    private void u1(int value) {
+        ensure(1);
+        code[length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        ensure(2);
+        code[length++] = (byte) (value >> 8);
+        code[length++] = (byte) value;
+    }
+
+    private void load(int local) {
+        op(0x19, 1);
+        u1(local);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            op(0x03 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(0x10, 1);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(0x11, 1);
+            u2(value);
+        } else {
+            throw new Unsupported("Constant too large");
+        }
+    }
+
+    private void pushDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            op(0x0E, 2);
+        } else if (value == 1.0) {
+            op(0x0F, 2);
+        } else {
+            op(0x14, 2);
+            u2(doubleConstant(value));
+        }
+    }
+
+    private void fieldInsn(int opcode, String owner, String name, String desc, int delta) {
+        op(opcode, delta);
+        u2(constant("F:" + owner + "." + name + desc, 9, owner, name, desc));
+    }
+
+    private void methodInsn(int opcode, String owner, String name, String desc, int delta) {
+        op(opcode, delta);
+        u2(constant("M:" + owner + "." + name + desc, 10, owner, name, desc));
+    }
+
+    private void jump(int opcode, Label label, int delta) {
+        int position = length;
+        op(opcode, delta);
+        if (label.position != -1) {
+            offset(position, label.position);
+        } else {
+            label.jumps.add(position);
+            u2(0);
+        }
+    }
+
+    private void place(Label label) {
+        label.position = length;
+        for (int position : label.jumps) {
+            int end = length;
+            length = position + 1;
+            offset(position, end);
+            length = end;
+        }
+    }
+
+    private void offset(int from, int to) {
+        int offset = to - from;
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new Unsupported("Jump too large");
+        }
+        u2(offset);
+    }
+
+    /*
+     * Class file
+     */
+
+    private int utf8(String value) {
+        Integer index = poolIndex.get("U:" + value);
+        if (index == null) {
+            try {
+                pool.writeByte(1);
+                pool.writeUTF(value);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            poolIndex.put("U:" + value, index = poolSize++);
+        }
+        return index;
+    }
+
+    private int classConstant(String name) {
+        Integer index = poolIndex.get("C:" + name);
+        if (index == null) {
+            int nameIndex = utf8(name);
+            try {
+                pool.writeByte(7);
+                pool.writeShort(nameIndex);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            poolIndex.put("C:" + name, index = poolSize++);
+        }
+        return index;
+    }
+
+    private int doubleConstant(double value) {
+        String key = "D:" + Double.doubleToRawLongBits(value);
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            try {
+                pool.writeByte(6);
+                pool.writeLong(Double.doubleToRawLongBits(value));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            poolIndex.put(key, index = poolSize);
+            // Doubles take two entries
+            poolSize += 2;
+        }
+        return index;
+    }
+
+    private int constant(String key, int tag, String owner, String name, String desc) {
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            int ownerIndex = classConstant(owner);
+            int nameIndex = utf8(name);
+            int descIndex = utf8(desc);
+            try {
+                pool.writeByte(12);
+                pool.writeShort(nameIndex);
+                pool.writeShort(descIndex);
+                int nameAndType = poolSize++;
+                pool.writeByte(tag);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            poolIndex.put(key, index = poolSize++);
+        }
+        return index;
+    }
+
+    private byte[] classFile(String name, byte[] evaluate) throws IOException {
+        int thisClass = classConstant(name);
+        int superClass = classConstant(SUPER);
+        int superInit = constant("M:" + SUPER + ".<init>" + CONSTRUCTOR, 10, SUPER, "<init>", CONSTRUCTOR);
+        int initName = utf8("<init>");
+        int initDesc = utf8(CONSTRUCTOR);
+        int evaluateName = utf8("evaluate");
+        int evaluateDesc = utf8("(J)D");
+        int codeName = utf8("Code");
+        if (poolSize > 0xFFFF) {
+            throw new Unsupported("Constant pool too large");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + poolBytes.size() + evaluate.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        // Java 5 class files don't need stack map frames
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolSize);
+        pool.flush();
+        poolBytes.writeTo(out);
+        out.writeShort(0x0001 | 0x0010 | 0x0020);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+        // Constructor: super(nodes, variables)
+        byte[] init = {0x2A, 0x2B, 0x2C, (byte) 0xB7, (byte) (superInit >> 8), (byte) superInit, (byte) 0xB1};
+        method(out, initName, initDesc, codeName, 3, 3, init);
+        method(out, evaluateName, evaluateDesc, codeName, maxStack, maxLocals, evaluate);
+        out.writeShort(0); // attributes
+        return bytes.toByteArray();
+    }
+
+    private static void method(DataOutputStream out, int name, int desc, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(0x0001);
+        out.writeShort(name);
+        out.writeShort(desc);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * WorldEdit, a Minecraft world manipulation toolkit
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) WorldEdit team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sk89q.worldedit.internal.expression.runtime;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A coarse clock used for the timeout of compiled expressions<br>
+ * - Compiled loops check the time every iteration, which is a volatile read instead of a system call
+ * - The clock thread is started on demand, and stops once nothing has used it for a while
+ */
+public final class ExpressionWatchdog {
+
+    private static final int TICK_MS = 2;
+    private static final int IDLE_TICKS = 5000;
+
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static volatile long time = System.currentTimeMillis();
+    private static volatile boolean used;
+
+    private ExpressionWatchdog() {
+    }
+
+    /**
+     * @return the current time in milliseconds (accurate to a few ms)
+     */
+    public static long now() {
+        if (!used) {
+            used = true;
+            if (!running.get()) {
+                start();
+            }
+        }
+        return time;
+    }
+
+    private static void start() {
+        if (running.compareAndSet(false, true)) {
+            time = System.currentTimeMillis();
+            Thread thread = new Thread(ExpressionWatchdog::tick, "worldedit-expression-watchdog");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static void tick() {
+        int ticks = 0;
+        while (true) {
+            try {
+                Thread.sleep(TICK_MS);
+            } catch (InterruptedException e) {
+                running.set(false);
+                return;
+            }
+            time = System.currentTimeMillis();
+            if (++ticks >= IDLE_TICKS) {
+                ticks = 0;
+                if (used) {
+                    used = false;
+                    continue;
+                }
+                running.set(false);
+                // Something may have used the clock before it was marked as stopped
+                if (!used || !running.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -83,7 +83,8 @@ public int getBlockDataRel(double x, double y, double z) {
     }
 
     public void setCurrentBlock(int x, int y, int z) {
-        current.setComponents(x, y, z);
+        // current may have been replaced by an immutable vector
+        current = current.setComponents(x, y, z);
     }
 
     public void setCurrentBlock(Vector3 current) {
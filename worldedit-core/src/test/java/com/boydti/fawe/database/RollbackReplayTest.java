@@ -0,0 +1,74 @@
+package com.boydti.fawe.database;
+
+import static org.junit.Assert.assertEquals;
+
+import com.boydti.fawe.object.RunnableVal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RollbackReplayTest {
+
+    @Test
+    public void testOverlappingWaves() {
+        RollbackReplay<String> replay = new RollbackReplay<>();
+        // Wave 0: separate chunks
+        replay.add("a", 0, 0, 15, 15);
+        replay.add("b", 64, 0, 79, 15);
+        // Wave 1: c overlaps a, d overlaps b
+        replay.add("c", 8, 8, 31, 31);
+        replay.add("d", 70, 0, 100, 15);
+
+        Set<String> done = ConcurrentHashMap.newKeySet();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        // Both edits of a wave have to be running at the same time to get past the barrier
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        replay.run(new RunnableVal<String>() {
+            @Override
+            public void run(String edit) {
+                try {
+                    if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+                        errors.add(edit + " was replayed on a fork join pool");
+                    }
+                    if (edit.equals("c") && !done.containsAll(Arrays.asList("a", "b"))) {
+                        errors.add("c was replayed before wave 0 finished");
+                    }
+                    if (edit.equals("d") && !done.containsAll(Arrays.asList("a", "b"))) {
+                        errors.add("d was replayed before wave 0 finished");
+                    }
+                    barrier.await(10, TimeUnit.SECONDS);
+                    done.add(edit);
+                } catch (Exception e) {
+                    errors.add(edit + ": " + e);
+                }
+            }
+        }, 4);
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(4, done.size());
+    }
+
+    @Test
+    public void testSerialOrder() {
+        // Every edit overlaps the one before it, so they are replayed in the order they were added
+        RollbackReplay<Integer> replay = new RollbackReplay<>();
+        for (int i = 0; i < 8; i++) {
+            replay.add(i, 0, 0, 15, 15);
+        }
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        replay.run(new RunnableVal<Integer>() {
+            @Override
+            public void run(Integer edit) {
+                order.add(edit);
+            }
+        }, 4);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), order);
+        assertEquals(8, replay.size());
+    }
+}
@@ -0,0 +1,126 @@
+package com.boydti.fawe.jnbt.anvil;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.boydti.fawe.util.MainUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MCAFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFailedWrite() throws Exception {
+        File file = folder.newFile("r.0.0.mca");
+        MCAFile mca = new MCAFile(null, file);
+        mca.init();
+        mca.setChunk(chunk(0, 0, payload(1, 6000)));
+        mca.setChunk(chunk(1, 0, payload(2, 6000)));
+        mca.flush(null);
+        byte[] before0 = read(file, 0, 0);
+        byte[] before1 = read(file, 1, 0);
+        long length = file.length();
+
+        // The first chunk fits in its sectors, the second one shrinks
+        MCAFile failing = new MCAFile(null, file) {
+            @Override
+            void writeSafe(FileChannel channel, int offset, byte[] data) throws IOException {
+                // Write part of the data, then fail
+                channel.write(ByteBuffer.wrap(data, 0, data.length / 2), offset);
+                throw new IOException("Injected write failure");
+            }
+        };
+        failing.init();
+        failing.setChunk(chunk(0, 0, payload(3, 6000)));
+        failing.setChunk(chunk(1, 0, payload(4, 3000)));
+        failing.flush(null);
+
+        assertArrayEquals(before0, read(file, 0, 0));
+        assertArrayEquals(before1, read(file, 1, 0));
+        assertArrayEquals(payload(1, 6000), decompress(read(file, 0, 0)));
+        assertArrayEquals(payload(2, 6000), decompress(read(file, 1, 0)));
+        // The sectors allocated for the failed writes are not kept
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    public void testRewrite() throws Exception {
+        File file = folder.newFile("r.0.0.mca");
+        MCAFile mca = new MCAFile(null, file);
+        mca.init();
+        mca.setChunk(chunk(0, 0, payload(1, 6000)));
+        mca.setChunk(chunk(1, 0, payload(2, 6000)));
+        mca.flush(null);
+        int offset = offset(file, 0, 0);
+
+        // Written after both chunks (sectors 2 to 5), then the old sectors are freed
+        mca = new MCAFile(null, file);
+        mca.init();
+        mca.setChunk(chunk(0, 0, payload(3, 6000)));
+        mca.flush(null);
+        assertEquals(6 << 12, offset(file, 0, 0));
+        assertArrayEquals(payload(3, 6000), decompress(read(file, 0, 0)));
+        assertArrayEquals(payload(2, 6000), decompress(read(file, 1, 0)));
+        long length = file.length();
+
+        // The freed sectors are reused
+        mca = new MCAFile(null, file);
+        mca.init();
+        mca.setChunk(chunk(0, 0, payload(5, 6000)));
+        mca.flush(null);
+        assertEquals(offset, offset(file, 0, 0));
+        assertArrayEquals(payload(5, 6000), decompress(read(file, 0, 0)));
+        assertArrayEquals(payload(2, 6000), decompress(read(file, 1, 0)));
+        assertEquals(length - (2 << 12), file.length());
+    }
+
+    private static MCAChunk chunk(int cx, int cz, byte[] payload) {
+        return new MCAChunk(null, cx, cz) {
+            @Override
+            public byte[] toBytes(byte[] buffer) {
+                return payload;
+            }
+        };
+    }
+
+    /**
+     * Random data doesn't compress, so the size on disk is about the same
+     */
+    private static byte[] payload(int seed, int length) {
+        byte[] payload = new byte[length];
+        new Random(seed).nextBytes(payload);
+        return payload;
+    }
+
+    private static int offset(File file, int cx, int cz) {
+        MCAFile mca = new MCAFile(null, file);
+        mca.init();
+        try {
+            return mca.getOffset(cx, cz);
+        } finally {
+            mca.clear();
+        }
+    }
+
+    private static byte[] read(File file, int cx, int cz) throws IOException {
+        MCAFile mca = new MCAFile(null, file);
+        mca.init();
+        try {
+            return mca.getChunkCompressedBytes(mca.getOffset(cx, cz));
+        } finally {
+            mca.clear();
+        }
+    }
+
+    private static byte[] decompress(byte[] data) throws Exception {
+        return MainUtil.decompress(data, null, null);
+    }
+}
@@ -0,0 +1,171 @@
+package com.boydti.fawe.object.changeset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.RegionWrapper;
+import com.boydti.fawe.util.MathMan;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChunkIndexedBlockFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private boolean asyncWrite;
+
+    @Before
+    public void setup() {
+        asyncWrite = Settings.IMP.HISTORY.ASYNC_WRITE;
+        Settings.IMP.HISTORY.ASYNC_WRITE = false;
+    }
+
+    @After
+    public void restore() {
+        Settings.IMP.HISTORY.ASYNC_WRITE = asyncWrite;
+    }
+
+    @Test
+    public void testHeader() throws IOException {
+        File file = folder.newFile("header.bd");
+        new ChunkIndexedBlockFile.Writer(file, 4, 1, 160, -320).close();
+        assertTrue(ChunkIndexedBlockFile.isChunkIndexed(file));
+        assertArrayEquals(new int[]{4, 160, -320}, ChunkIndexedBlockFile.readHeader(file));
+
+        File legacy = folder.newFile("legacy.bd");
+        try (FileOutputStream out = new FileOutputStream(legacy)) {
+            out.write(new byte[]{11, 0, 0, 0});
+        }
+        assertFalse(ChunkIndexedBlockFile.isChunkIndexed(legacy));
+        assertFalse(ChunkIndexedBlockFile.isChunkIndexed(new File(folder.getRoot(), "missing.bd")));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = folder.newFile("changes.bd");
+        List<int[]> changes = randomChanges(20000, 64);
+        try (ChunkIndexedBlockFile.Writer writer = new ChunkIndexedBlockFile.Writer(file, 4, 1, 0, 0)) {
+            for (int[] change : changes) {
+                writer.add(change[0], change[1], change[2], change[3], change[4]);
+            }
+        }
+        assertChanges(changes, file, null);
+    }
+
+    @Test
+    public void testManyChunks() throws IOException {
+        // More chunks than can be pending, and chunks with more than one block
+        File file = folder.newFile("many.bd");
+        List<int[]> changes = randomChanges(50000, 1024);
+        for (int i = 0; i < 10000; i++) {
+            changes.add(new int[]{i & 15, i & 255, (i >> 4) & 15, i, i + 1});
+        }
+        try (ChunkIndexedBlockFile.Writer writer = new ChunkIndexedBlockFile.Writer(file, 3, 1, 0, 0)) {
+            for (int[] change : changes) {
+                writer.add(change[0], change[1], change[2], change[3], change[4]);
+            }
+        }
+        assertChanges(changes, file, null);
+    }
+
+    @Test
+    public void testRegion() throws IOException {
+        File file = folder.newFile("region.bd");
+        List<int[]> changes = randomChanges(20000, 64);
+        try (ChunkIndexedBlockFile.Writer writer = new ChunkIndexedBlockFile.Writer(file, 4, 1, 0, 0)) {
+            for (int[] change : changes) {
+                writer.add(change[0], change[1], change[2], change[3], change[4]);
+            }
+        }
+        // Chunks 0,0 to 1,1
+        RegionWrapper region = new RegionWrapper(8, 20, 0, 255, 0, 31);
+        List<int[]> expected = new ArrayList<>();
+        for (int[] change : changes) {
+            if (region.isInChunk(change[0] >> 4, change[2] >> 4)) {
+                expected.add(change);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertChanges(expected, file, new RegionWrapper[]{region});
+    }
+
+    @Test
+    public void testWithoutFooter() throws IOException {
+        File file = folder.newFile("partial.bd");
+        List<int[]> changes = randomChanges(20000, 64);
+        ChunkIndexedBlockFile.Writer writer = new ChunkIndexedBlockFile.Writer(file, 4, 1, 0, 0);
+        for (int[] change : changes) {
+            writer.add(change[0], change[1], change[2], change[3], change[4]);
+        }
+        // Readable before the index is written
+        writer.flush();
+        assertChanges(changes, file, null);
+        writer.close();
+        assertChanges(changes, file, null);
+    }
+
+    /**
+     * @return { x, y, z, from, to } in chunks from -chunks/2 to chunks/2 (on both axes)
+     */
+    private static List<int[]> randomChanges(int count, int chunks) {
+        Random random = new Random(count);
+        int size = (int) Math.sqrt(chunks) << 4;
+        List<int[]> changes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(size) - (size >> 1);
+            int y = random.nextInt(256);
+            int z = random.nextInt(size) - (size >> 1);
+            changes.add(new int[]{x, y, z, random.nextInt(100000), random.nextInt(100)});
+        }
+        return changes;
+    }
+
+    /**
+     * Chunks may be read in any order, but the changes to each chunk must be in the order they were written
+     */
+    private static void assertChanges(List<int[]> expected, File file, RegionWrapper[] regions) throws IOException {
+        Long2ObjectOpenHashMap<List<int[]>> expectedByChunk = byChunk(expected);
+        List<int[]> actual = new ArrayList<>();
+        try (ChunkIndexedBlockFile.Reader reader = new ChunkIndexedBlockFile.Reader(file, regions)) {
+            while (reader.next()) {
+                actual.add(new int[]{reader.x, reader.y, reader.z, reader.from, reader.to});
+            }
+        }
+        Long2ObjectOpenHashMap<List<int[]>> actualByChunk = byChunk(actual);
+        assertEquals(expectedByChunk.keySet(), actualByChunk.keySet());
+        for (long pair : expectedByChunk.keySet()) {
+            List<int[]> expectedChunk = expectedByChunk.get(pair);
+            List<int[]> actualChunk = actualByChunk.get(pair);
+            assertEquals(expectedChunk.size(), actualChunk.size());
+            for (int i = 0; i < expectedChunk.size(); i++) {
+                assertArrayEquals(expectedChunk.get(i), actualChunk.get(i));
+            }
+        }
+    }
+
+    private static Long2ObjectOpenHashMap<List<int[]>> byChunk(List<int[]> changes) {
+        Long2ObjectOpenHashMap<List<int[]>> map = new Long2ObjectOpenHashMap<>();
+        for (int[] change : changes) {
+            long pair = MathMan.pairInt(change[0] >> 4, change[2] >> 4);
+            List<int[]> list = map.get(pair);
+            if (list == null) {
+                map.put(pair, list = new ArrayList<>());
+            }
+            list.add(change);
+        }
+        return map;
+    }
+}
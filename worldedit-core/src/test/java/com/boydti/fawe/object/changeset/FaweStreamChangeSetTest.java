@@ -0,0 +1,178 @@
+package com.boydti.fawe.object.changeset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.change.MutableSectionChange;
+import com.sk89q.worldedit.world.block.BlockID;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FaweStreamChangeSetTest {
+    private boolean sectionRecords;
+    private boolean smallEdits;
+    private int compressionLevel;
+    private boolean storeRedo;
+
+    @Before
+    public void setup() {
+        sectionRecords = Settings.IMP.HISTORY.SECTION_RECORDS;
+        smallEdits = Settings.IMP.HISTORY.SMALL_EDITS;
+        compressionLevel = Settings.IMP.HISTORY.COMPRESSION_LEVEL;
+        storeRedo = Settings.IMP.HISTORY.STORE_REDO;
+        Settings.IMP.HISTORY.SECTION_RECORDS = true;
+        Settings.IMP.HISTORY.SMALL_EDITS = false;
+        Settings.IMP.HISTORY.COMPRESSION_LEVEL = 1;
+    }
+
+    @After
+    public void restore() {
+        Settings.IMP.HISTORY.SECTION_RECORDS = sectionRecords;
+        Settings.IMP.HISTORY.SMALL_EDITS = smallEdits;
+        Settings.IMP.HISTORY.COMPRESSION_LEVEL = compressionLevel;
+        Settings.IMP.HISTORY.STORE_REDO = storeRedo;
+    }
+
+    @Test
+    public void testSingleIdPalette() throws Exception {
+        int[] previous = new int[4096];
+        int[] current = new int[4096];
+        Arrays.fill(previous, 5);
+        Arrays.fill(current, 7);
+        MutableSectionChange change = roundTrip(true, previous, current);
+        // Every block changed, so there is no bitmask
+        assertNull(change.changed);
+        for (int i = 0; i < 4096; i++) {
+            assertTrue(change.isChanged(i));
+            assertEquals(5, change.getFrom(i));
+            assertEquals(7, change.getTo(i));
+        }
+    }
+
+    @Test
+    public void testFullSection() throws Exception {
+        int[] previous = new int[4096];
+        int[] current = new int[4096];
+        for (int i = 0; i < 4096; i++) {
+            // 300 distinct ids, so the indexes span byte boundaries
+            previous[i] = 1 + (i % 300);
+            current[i] = 1000 + (i % 3);
+        }
+        MutableSectionChange change = roundTrip(true, previous, current);
+        assertNull(change.changed);
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(previous[i], change.getFrom(i));
+            assertEquals(current[i], change.getTo(i));
+        }
+    }
+
+    @Test
+    public void testBitmask() throws Exception {
+        int[] previous = new int[4096];
+        int[] current = new int[4096];
+        for (int i = 0; i < 4096; i++) {
+            previous[i] = 1 + (i % 5);
+            // 0 is not set, and the same id is not a change
+            if (i % 3 == 0) {
+                current[i] = 0;
+            } else if (i % 3 == 1) {
+                current[i] = previous[i];
+            } else {
+                current[i] = 20 + (i % 7);
+            }
+        }
+        MutableSectionChange change = roundTrip(true, previous, current);
+        assertNotNull(change.changed);
+        for (int i = 0; i < 4096; i++) {
+            boolean changed = i % 3 == 2;
+            assertEquals("index " + i, changed, change.isChanged(i));
+            if (changed) {
+                assertEquals(previous[i], change.getFrom(i));
+                assertEquals(current[i], change.getTo(i));
+            }
+        }
+    }
+
+    @Test
+    public void testNoPrevious() throws Exception {
+        int[] current = new int[4096];
+        for (int i = 0; i < 2048; i++) {
+            current[i << 1] = 3 + (i & 1);
+        }
+        MutableSectionChange change = roundTrip(true, null, current);
+        assertNotNull(change.changed);
+        for (int i = 0; i < 4096; i++) {
+            assertEquals((i & 1) == 0, change.isChanged(i));
+            if (change.isChanged(i)) {
+                assertEquals(BlockID.AIR, change.getFrom(i));
+                assertEquals(current[i], change.getTo(i));
+            }
+        }
+    }
+
+    @Test
+    public void testNoRedo() throws Exception {
+        int[] previous = new int[4096];
+        int[] current = new int[4096];
+        for (int i = 0; i < 4096; i++) {
+            previous[i] = 1 + (i % 17);
+            current[i] = i % 4 == 0 ? 0 : 100;
+        }
+        MutableSectionChange change = roundTrip(false, previous, current);
+        assertNotNull(change.changed);
+        assertNull(change.to);
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(i % 4 != 0, change.isChanged(i));
+            if (change.isChanged(i)) {
+                assertEquals(previous[i], change.getFrom(i));
+                assertEquals(BlockID.AIR, change.getTo(i));
+            }
+        }
+    }
+
+    @Test
+    public void testFewChanges() throws Exception {
+        Settings.IMP.HISTORY.STORE_REDO = true;
+        int[] previous = new int[4096];
+        int[] current = new int[4096];
+        Arrays.fill(previous, 1);
+        for (int i = 0; i < 511; i++) {
+            current[i] = 2;
+        }
+        MemoryOptimizedHistory history = new MemoryOptimizedHistory("world");
+        // Recorded per block instead
+        assertFalse(history.addSection(0, 0, 0, previous, current));
+        history.close();
+        assertFalse(history.getSectionIterator(null).hasNext());
+    }
+
+    private MutableSectionChange roundTrip(boolean redo, int[] previous, int[] current) throws Exception {
+        Settings.IMP.HISTORY.STORE_REDO = redo;
+        MemoryOptimizedHistory history = new MemoryOptimizedHistory("world");
+        assertTrue(history.addSection(2, 3, -4, previous, current));
+        history.close();
+        Iterator<MutableSectionChange> iter = history.getSectionIterator(null);
+        assertTrue(iter.hasNext());
+        MutableSectionChange change = iter.next();
+        assertEquals(2, change.cx);
+        assertEquals(3, change.cy);
+        assertEquals(-4, change.cz);
+        // The change is reused by the iterator, so copy it before checking for more
+        MutableSectionChange copy = new MutableSectionChange();
+        copy.cx = change.cx;
+        copy.cy = change.cy;
+        copy.cz = change.cz;
+        copy.changed = change.changed == null ? null : change.changed.clone();
+        System.arraycopy(change.from, 0, copy.from, 0, 4096);
+        copy.to = change.to == null ? null : change.to.clone();
+        assertFalse(iter.hasNext());
+        return copy;
+    }
+}
@@ -0,0 +1,156 @@
+package com.boydti.fawe.object.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sk89q.worldedit.math.BlockVector3;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class ChunkBitmapSetTest {
+
+    @Test
+    public void testBounds() {
+        ChunkBitmapSet set = new ChunkBitmapSet();
+        assertTrue(set.add(0, 0, 0));
+        assertTrue(set.add(0, 255, 0));
+        for (int y : new int[]{-1, 256}) {
+            try {
+                set.add(0, y, 0);
+                fail("y=" + y + " was added");
+            } catch (UnsupportedOperationException expected) {
+            }
+            assertFalse(set.contains(0, y, 0));
+            assertFalse(set.remove(0, y, 0));
+        }
+        assertEquals(2, set.size());
+        assertTrue(set.contains(0, 0, 0));
+        assertTrue(set.contains(0, 255, 0));
+    }
+
+    @Test
+    public void testAgainstHashSet() {
+        ChunkBitmapSet set = new ChunkBitmapSet();
+        Set<BlockVector3> reference = randomPositions(set, 20000);
+        assertEquals(reference.size(), set.size());
+        for (BlockVector3 v : reference) {
+            assertTrue(set.contains(v));
+            assertFalse(set.add(v));
+        }
+        assertFalse(set.contains(BlockVector3.at(1000, 64, 1000)));
+
+        List<BlockVector3> visited = new ArrayList<>();
+        set.forEach((x, y, z) -> visited.add(BlockVector3.at(x, y, z)));
+        assertEquals(reference, new HashSet<>(visited));
+        assertEquals(reference.size(), visited.size());
+
+        // The iterator, forEach and get(int) all use the same order
+        List<BlockVector3> iterated = new ArrayList<>();
+        for (BlockVector3 v : set) {
+            iterated.add(BlockVector3.at(v.getBlockX(), v.getBlockY(), v.getBlockZ()));
+        }
+        assertEquals(visited, iterated);
+        for (int i = 0; i < iterated.size(); i += 7) {
+            assertEquals(iterated.get(i), set.get(i));
+        }
+        assertEquals(iterated.get(iterated.size() - 1), set.get(iterated.size() - 1));
+        assertNull(set.get(-1));
+        assertNull(set.get(set.size()));
+    }
+
+    @Test
+    public void testOrderInChunk() {
+        ChunkBitmapSet set = new ChunkBitmapSet();
+        set.add(5, 200, 3);
+        set.add(1, 0, 15);
+        set.add(15, 0, 0);
+        set.add(0, 17, 0);
+        // By section, then y, z, x
+        List<BlockVector3> iterated = new ArrayList<>();
+        for (BlockVector3 v : set) {
+            iterated.add(BlockVector3.at(v.getBlockX(), v.getBlockY(), v.getBlockZ()));
+        }
+        List<BlockVector3> expected = new ArrayList<>();
+        expected.add(BlockVector3.at(15, 0, 0));
+        expected.add(BlockVector3.at(1, 0, 15));
+        expected.add(BlockVector3.at(0, 17, 0));
+        expected.add(BlockVector3.at(5, 200, 3));
+        assertEquals(expected, iterated);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        ChunkBitmapSet set = new ChunkBitmapSet();
+        Set<BlockVector3> reference = randomPositions(set, 5000);
+        long memory = set.getMemoryUsage();
+
+        Iterator<BlockVector3> iter = set.iterator();
+        boolean remove = false;
+        while (iter.hasNext()) {
+            BlockVector3 v = iter.next();
+            if (remove) {
+                reference.remove(BlockVector3.at(v.getBlockX(), v.getBlockY(), v.getBlockZ()));
+                iter.remove();
+            }
+            remove = !remove;
+        }
+        assertEquals(reference.size(), set.size());
+        Set<BlockVector3> remaining = new HashSet<>();
+        set.forEach((x, y, z) -> remaining.add(BlockVector3.at(x, y, z)));
+        assertEquals(reference, remaining);
+
+        // Emptied sections and chunks are freed
+        iter = set.iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+        assertTrue(set.isEmpty());
+        assertFalse(set.iterator().hasNext());
+        assertEquals(0, set.getChunkCount());
+        assertEquals(0, set.getMemoryUsage());
+        assertTrue(memory > 0);
+    }
+
+    @Test
+    public void testRemove() {
+        ChunkBitmapSet set = new ChunkBitmapSet();
+        set.add(0, 0, 0);
+        set.add(0, 16, 0);
+        long memory = set.getMemoryUsage();
+        assertTrue(set.remove(0, 16, 0));
+        assertFalse(set.remove(0, 16, 0));
+        assertTrue(set.getMemoryUsage() < memory);
+        assertEquals(1, set.getChunkCount());
+        assertTrue(set.remove(BlockVector3.at(0, 0, 0)));
+        assertEquals(0, set.getChunkCount());
+        assertEquals(0, set.getMemoryUsage());
+        // Added again after its chunk was freed
+        assertTrue(set.add(0, 0, 0));
+        assertTrue(set.contains(0, 0, 0));
+        assertEquals(1, set.size());
+    }
+
+    /**
+     * Positions in chunks on both sides of 0, added to the set and to the returned reference
+     */
+    private static Set<BlockVector3> randomPositions(ChunkBitmapSet set, int count) {
+        Random random = new Random(count);
+        Set<BlockVector3> reference = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(128) - 64;
+            int y = random.nextInt(256);
+            int z = random.nextInt(128) - 64;
+            assertEquals(reference.add(BlockVector3.at(x, y, z)), set.add(x, y, z));
+        }
+        return reference;
+    }
+}
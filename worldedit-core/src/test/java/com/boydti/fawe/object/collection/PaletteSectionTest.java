@@ -0,0 +1,67 @@
+package com.boydti.fawe.object.collection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class PaletteSectionTest {
+
+    @Test
+    public void testSingleId() {
+        int[] raw = new int[4096];
+        Arrays.fill(raw, 42);
+        PaletteSection section = assertRoundTrip(raw, 1);
+        assertTrue(section.getMemoryUsage() < 128);
+    }
+
+    @Test
+    public void testPaletteSizes() {
+        // Each size uses 1, 2, 4 or 8 bits per entry, including the largest size for each
+        for (int size : new int[]{2, 3, 4, 5, 16, 17, 100, 256}) {
+            Random random = new Random(size);
+            int[] raw = new int[4096];
+            for (int i = 0; i < 4096; i++) {
+                raw[i] = i < size ? i * 31 : random.nextInt(size) * 31;
+            }
+            assertRoundTrip(raw, size);
+        }
+    }
+
+    @Test
+    public void testRuns() {
+        // Repeated ids use the last palette index
+        int[] raw = new int[4096];
+        for (int i = 0; i < 4096; i++) {
+            raw[i] = (i >> 8) + 1000;
+        }
+        assertRoundTrip(raw, 16);
+    }
+
+    @Test
+    public void testTooManyIds() {
+        int[] raw = new int[4096];
+        for (int i = 0; i < 4096; i++) {
+            raw[i] = i % 257;
+        }
+        assertNull(PaletteSection.pack(raw));
+    }
+
+    private static PaletteSection assertRoundTrip(int[] raw, int paletteSize) {
+        PaletteSection section = PaletteSection.pack(raw);
+        assertNotNull(section);
+        assertEquals(paletteSize, section.getPaletteSize());
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(raw[i], section.get(i));
+        }
+        int[] buffer = new int[4096];
+        Arrays.fill(buffer, -1);
+        assertArrayEquals(raw, section.unpack(buffer));
+        return section;
+    }
+}
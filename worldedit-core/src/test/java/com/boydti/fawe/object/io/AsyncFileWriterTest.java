@@ -0,0 +1,88 @@
+package com.boydti.fawe.object.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.boydti.fawe.config.Settings;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncFileWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private boolean asyncWrite;
+    private int writeQueueKb;
+
+    @Before
+    public void setup() {
+        asyncWrite = Settings.IMP.HISTORY.ASYNC_WRITE;
+        writeQueueKb = Settings.IMP.HISTORY.WRITE_QUEUE_KB;
+        Settings.IMP.HISTORY.ASYNC_WRITE = true;
+        Settings.IMP.HISTORY.WRITE_QUEUE_KB = 64;
+    }
+
+    @After
+    public void restore() {
+        Settings.IMP.HISTORY.ASYNC_WRITE = asyncWrite;
+        Settings.IMP.HISTORY.WRITE_QUEUE_KB = writeQueueKb;
+    }
+
+    /**
+     * The writer is global and can't be restarted after shutdown, so both cases are in one test
+     */
+    @Test
+    public void testWriteBeforeAndAfterShutdown() throws IOException {
+        byte[] data = new byte[100000];
+        new Random(0).nextBytes(data);
+        File file = folder.newFile("async.bd");
+        AtomicBoolean written = new AtomicBoolean();
+        try (OutputStream out = AsyncFileWriter.openFile(file)) {
+            assertFalse(out instanceof FileOutputStream);
+            out.write(data, 0, 10);
+            for (int i = 10; i < 20000; i++) {
+                out.write(data[i]);
+            }
+            out.write(data, 20000, data.length - 20000);
+        }
+        AsyncFileWriter.afterWrites(() -> written.set(true));
+        AsyncFileWriter.awaitWrites(file);
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+
+        AsyncFileWriter.shutdown();
+        assertTrue(written.get());
+        assertFalse(isWriterRunning());
+
+        // Written synchronously, without starting a new writer
+        File after = folder.newFile("sync.bd");
+        try (OutputStream out = AsyncFileWriter.openFile(after)) {
+            assertTrue(out instanceof FileOutputStream);
+            out.write(data);
+        }
+        written.set(false);
+        AsyncFileWriter.afterWrites(() -> written.set(true));
+        assertTrue(written.get());
+        assertFalse(isWriterRunning());
+        assertArrayEquals(data, Files.readAllBytes(after.toPath()));
+    }
+
+    private static boolean isWriterRunning() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("FAWE history writer") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
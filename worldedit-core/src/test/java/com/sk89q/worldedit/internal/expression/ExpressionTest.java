@@ -22,6 +22,9 @@
 import static java.lang.Math.atan2;
 import static java.lang.Math.sin;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -34,7 +37,9 @@
 import com.sk89q.worldedit.extension.platform.Platform;
 import com.sk89q.worldedit.internal.expression.lexer.LexerException;
 import com.sk89q.worldedit.internal.expression.parser.ParserException;
+import com.sk89q.worldedit.internal.expression.runtime.CompiledExpression;
 import com.sk89q.worldedit.internal.expression.runtime.EvaluationException;
+import com.sk89q.worldedit.internal.expression.runtime.ExpressionCompiler;
 import com.sk89q.worldedit.internal.expression.runtime.ExpressionEnvironment;
 
 import static java.lang.Math.atan2;
@@ -195,6 +200,118 @@ public void testTimeout() throws Exception {
         }
     }
 
+    @Test
+    public void testBatchTimeout() throws Exception {
+        // Not optimized, so the loops are interpreted
+        Expression expression = Expression.compile("if (x == 3) { for(i=0;i<256;i++){for(j=0;j<256;j++){for(k=0;k<256;k++){for(l=0;l<256;l++){ln(pi)}}}} } x", "x");
+        double[][] inputs = new double[1][8];
+        for (int i = 0; i < 8; i++) {
+            inputs[0][i] = i;
+        }
+        double[] results = new double[8];
+        expression.evaluateBatch(inputs, 8, results, null);
+        // Only the evaluation which timed out fails, the rest of the batch has its own time limit
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i == 3 ? Double.NaN : i, results[i], 0);
+        }
+    }
+
+    @Test
+    public void testCompiledBreak() throws ExpressionException {
+        // Compiled break and continue
+        assertInline(compile("a=0; for (i=0; i<10; ++i) { if (i == 5) continue; a+=i; } a", "a", "i"));
+        assertEquals(40, evalBoth("a=0; for (i=0; i<10; ++i) { if (i == 5) continue; a+=i; } a", "a", "i"), 0);
+        assertEquals(10, evalBoth("a=0; for (i=0; i<10; ++i) { if (i == 5) break; a+=i; } a", "a", "i"), 0);
+
+        // A break in an interpreted node can't jump out of a compiled loop, so nothing is compiled
+        Expression expression = compile("a=0; for (i=0; i<10; ++i) { switch (i) { case 5: break; default: a+=i; } } a", "a", "i");
+        assertNull(ExpressionCompiler.compile(expression.getRoot()));
+        assertEquals(40, evalBoth("a=0; for (i=0; i<10; ++i) { switch (i) { case 5: break; default: a+=i; } } a", "a", "i"), 0);
+    }
+
+    @Test
+    public void testCompiledInterpretedLoop() throws ExpressionException {
+        // The loop is in an interpreted node, so the expression has to be evaluated on a thread which can be interrupted
+        CompiledExpression compiled = ExpressionCompiler.compile(compile("a=0; switch (1) { case 1: for (i=0; i<5; ++i) { a+=i; } default: } a*2", "a", "i").getRoot());
+        assertNotNull(compiled);
+        assertFalse(compiled.isInline());
+        assertEquals(20, evalBoth("a=0; switch (1) { case 1: for (i=0; i<5; ++i) { a+=i; } default: } a*2", "a", "i"), 0);
+    }
+
+    @Test
+    public void testCompiledWriteBack() throws ExpressionException {
+        // Variables are written back before an interpreted node, and reloaded after it
+        assertEquals(76, evalBoth("x=3; y=0; switch (1) { case 1: y = x * 2; x = 7; default: } x * 10 + y", "x", "y"), 0);
+        // swap is interpreted, inside a compiled loop
+        assertEquals(1102, evalBoth("x=1; y=0; for (i=0; i<3; ++i) { x = x * 10 + i; swap(x, y); } x * 1000 + y", "x", "y", "i"), 0);
+    }
+
+    @Test
+    public void testCompiledReturn() throws ExpressionException {
+        assertInline(compile("for (i=0; i<10; ++i) { if (i == 4) return i * 3; } 100", "i"));
+        assertEquals(12, evalBoth("for (i=0; i<10; ++i) { if (i == 4) return i * 3; } 100", "i"), 0);
+        // The variables are written back on return
+        assertEquals(-3, evalBoth("a=0; while (1) { ++a; if (a >= 3) return -a; } 0", "a"), 0);
+        assertEquals(-3, evalBoth("a=0; do { ++a; if (a >= 3) return -a; } while (1); 0", "a"), 0);
+        assertEquals(2, evalBoth("a=0; for (i=1,10) { a=i; if (i == 2) return a; } 0", "a", "i"), 0);
+    }
+
+    @Test
+    public void testCompiledLoopLimit() throws ExpressionException {
+        assertEquals(257, evalBoth("a=0; for (i=0; i<257; ++i) { ++a; } a", "a", "i"), 0);
+        assertEquals(257, evalBoth("a=0; while (a < 257) { ++a; } a", "a"), 0);
+        assertEquals(257, evalBoth("a=0; for (i=1,257) { ++a; } a", "a", "i"), 0);
+        assertThrowsBoth("a=0; for (i=0; i<258; ++i) { ++a; } a", "Loop exceeded 256 iterations");
+        assertThrowsBoth("a=0; while (1) { ++a; } a", "Loop exceeded 256 iterations");
+        assertThrowsBoth("a=0; do { ++a; } while (1); a", "Loop exceeded 256 iterations");
+        assertThrowsBoth("a=0; for (i=1,258) { ++a; } a", "Loop exceeded 256 iterations");
+    }
+
+    @Test
+    public void testCompiledTimeout() throws ExpressionException {
+        String loops = "for(i=0;i<256;i++){for(j=0;j<256;j++){for(k=0;k<256;k++){for(l=0;l<256;l++){ln(pi)}}}}";
+        assertInline(compile(loops));
+        assertThrowsBoth(loops, "Calculations exceeded time limit");
+        // Interpreted loops in a compiled expression
+        assertThrowsBoth("a=1; switch (a) { case 1: " + loops + " default: } a", "Calculations exceeded time limit");
+    }
+
+    private static void assertInline(Expression expression) {
+        CompiledExpression compiled = ExpressionCompiler.compile(expression.getRoot());
+        assertNotNull(compiled);
+        assertTrue(compiled.isInline());
+    }
+
+    /**
+     * Evaluate an expression with and without compiling it, and check that the results and variables are the same
+     */
+    private double evalBoth(String expressionString, String... variableNames) throws ExpressionException {
+        Expression interpreted = Expression.compile(expressionString, variableNames);
+        Expression compiled = compile(expressionString, variableNames);
+        double[] values = new double[variableNames.length];
+        double expected = interpreted.evaluate(values);
+        assertEquals(expected, compiled.evaluate(values), 0);
+        for (String name : variableNames) {
+            assertEquals(name, interpreted.getVariable(name, false).getValue(), compiled.getVariable(name, false).getValue(), 0);
+        }
+        return expected;
+    }
+
+    private void assertThrowsBoth(String expressionString, String message) throws ExpressionException {
+        for (boolean optimize : new boolean[]{false, true}) {
+            Expression expression = Expression.compile(expressionString);
+            if (optimize) {
+                expression.optimize();
+            }
+            try {
+                expression.evaluate();
+                fail("Error expected");
+            } catch (EvaluationException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(message));
+            }
+        }
+    }
+
     private double simpleEval(String expressionString) throws ExpressionException {
         final Expression expression = compile(expressionString);
 